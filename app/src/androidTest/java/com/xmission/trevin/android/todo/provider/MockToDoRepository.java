@@ -1101,6 +1101,60 @@ public class MockToDoRepository implements ToDoRepository {
         return ids;
     }
 
+    @Override
+    public synchronized List<ToDoItem> getPrivateItemText(
+            long afterId, int limit) {
+        Log.d(TAG, String.format(".getPrivateItemText(%d, %d)",
+                afterId, limit));
+        List<ToDoItem> items = new ArrayList<>();
+        for (ToDoItem storedItem : itemTable.tailMap(afterId + 1).values()) {
+            if (items.size() >= limit)
+                break;
+            if (!storedItem.isPrivate())
+                continue;
+            // Only copy the fields the real repository would have selected
+            ToDoItem item = new ToDoItem();
+            item.setId(storedItem.getId());
+            item.setPrivate(storedItem.getPrivate());
+            if (storedItem.isEncrypted()) {
+                item.setEncryptedDescription(
+                        storedItem.getEncryptedDescription());
+                item.setEncryptedNote(storedItem.getEncryptedNote());
+            } else {
+                item.setDescription(storedItem.getDescription());
+                item.setNote(storedItem.getNote());
+            }
+            items.add(item);
+        }
+        return items;
+    }
+
+    @Override
+    public synchronized List<ToDoItem> getItemSummaries(
+            long afterId, int limit) {
+        Log.d(TAG, String.format(".getItemSummaries(%d, %d)",
+                afterId, limit));
+        List<ToDoItem> items = new ArrayList<>();
+        for (ToDoItem storedItem : itemTable.tailMap(afterId + 1).values()) {
+            if (items.size() >= limit)
+                break;
+            // Only copy the fields the real repository would have selected
+            ToDoItem item = new ToDoItem();
+            item.setId(storedItem.getId());
+            item.setCreateTime(storedItem.getCreateTime());
+            item.setModTime(storedItem.getModTime());
+            item.setCategoryId(storedItem.getCategoryId());
+            item.setPrivate(storedItem.getPrivate());
+            if (storedItem.isEncrypted())
+                item.setEncryptedDescription(
+                        storedItem.getEncryptedDescription());
+            else
+                item.setDescription(storedItem.getDescription());
+            items.add(item);
+        }
+        return items;
+    }
+
     @Override
     public ToDoItem getItemById(long itemId) {
         Log.d(TAG, String.format(".getItemById(%d)", itemId));
@@ -1170,6 +1224,25 @@ public class MockToDoRepository implements ToDoRepository {
     public synchronized ToDoItem insertItem(@NonNull ToDoItem item)
             throws IllegalArgumentException, SQLException {
         Log.d(TAG, String.format(".insertItem(%s)", item));
+        storeNewItem(item);
+        if (transactionLevel <= 0)
+            notifyObservers();
+        return item;
+    }
+
+    /**
+     * Add a new To Do item to the items table without notifying
+     * any observers.
+     *
+     * @param item the To Do item to add
+     *
+     * @throws IllegalArgumentException if any fields are invalid
+     * or the item&rsquo;s ID is already in use
+     * @throws SQLException if the item&rsquo;s category ID is not
+     * found in the categories table
+     */
+    private void storeNewItem(ToDoItem item)
+            throws IllegalArgumentException, SQLException {
         checkToDoFields(item);
         // Allow setting the ID for inserts, used when importing data.
         if (item.getId() != null) {
@@ -1183,11 +1256,27 @@ public class MockToDoRepository implements ToDoRepository {
         }
         ToDoItem itemClone = cloneForStorage(item);
         itemTable.put(item.getId(), itemClone);
-        if (transactionLevel <= 0)
-            notifyObservers();
         // Ensure the category name is set
         item.setCategoryName(categories.get(item.getCategoryId()));
-        return item;
+    }
+
+    @Override
+    public synchronized void insertItems(@NonNull final List<ToDoItem> items)
+            throws IllegalArgumentException, SQLException {
+        Log.d(TAG, String.format(".insertItems(%d items)", items.size()));
+        Runnable batch = new Runnable() {
+            @Override
+            public void run() {
+                for (ToDoItem item : items)
+                    storeNewItem(item);
+            }
+        };
+        // Copying the tables for a rollback is expensive, so
+        // only do it if we're not already in a transaction.
+        if (transactionLevel > 0)
+            batch.run();
+        else
+            runInTransaction(batch);
     }
 
     @Override
@@ -1207,6 +1296,41 @@ public class MockToDoRepository implements ToDoRepository {
         return item;
     }
 
+    @Override
+    public synchronized void updateItemText(@NonNull ToDoItem item)
+        throws IllegalArgumentException, SQLException {
+        Log.d(TAG, String.format(".updateItemText(%d)", item.getId()));
+        if (item.getId() == null)
+            throw new IllegalArgumentException("Missing item ID");
+        ToDoItem storedItem = itemTable.get(item.getId());
+        if (storedItem == null)
+            throw new SQLException("No rows matched item " + item.getId());
+        if (item.isEncrypted()) {
+            if ((item.getEncryptedDescription() == null) ||
+                    (item.getEncryptedDescription().length == 0))
+                throw new IllegalArgumentException(
+                        "Description must be encrypted");
+        } else {
+            if (StringUtils.isEmpty(item.getDescription()))
+                throw new IllegalArgumentException(
+                        "Description cannot be empty");
+        }
+        storedItem.setPrivate(item.getPrivate());
+        if (item.isEncrypted()) {
+            storedItem.setDescription(null);
+            storedItem.setNote(null);
+            storedItem.setEncryptedDescription(item.getEncryptedDescription());
+            storedItem.setEncryptedNote(item.getEncryptedNote());
+        } else {
+            storedItem.setDescription(item.getDescription());
+            storedItem.setNote(item.getNote());
+            storedItem.setEncryptedDescription(null);
+            storedItem.setEncryptedNote(null);
+        }
+        if (transactionLevel <= 0)
+            notifyObservers();
+    }
+
     @Override
     public synchronized void updateAlarmNotificationTime(
             long itemId, @NonNull Instant notificationTime) {
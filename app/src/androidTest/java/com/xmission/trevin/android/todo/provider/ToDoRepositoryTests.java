@@ -938,6 +938,105 @@ public class ToDoRepositoryTests {
         }
     }
 
+    /**
+     * Test reading and rewriting only the text of private items,
+     * as done when changing the password.  The other columns of
+     * each item must be left as they were.
+     */
+    @Test
+    public void testPrivateItemText() {
+        ToDoItem publicToDo = new ToDoItem();
+        publicToDo.setCategoryId(ToDoCategory.UNFILED);
+        publicToDo.setPrivate(0);
+        publicToDo.setDescription(SRAND.nextAscii(RAND.nextInt(20) + 8));
+        ToDoItem privateToDo = new ToDoItem();
+        privateToDo.setCategoryId(ToDoCategory.UNFILED);
+        privateToDo.setPrivate(StringEncryption.NO_ENCRYPTION);
+        privateToDo.setDescription(SRAND.nextAscii(RAND.nextInt(20) + 8));
+        privateToDo.setNote(SRAND.nextAscii(RAND.nextInt(200) + 20));
+        privateToDo.setPriority(RAND.nextInt(10) + 1);
+        privateToDo.setDue(LocalDate.now().plusDays(RAND.nextInt(30)));
+        ToDoItem encryptedToDo = new ToDoItem();
+        encryptedToDo.setCategoryId(ToDoCategory.UNFILED);
+        encryptedToDo.setPrivate(StringEncryption.encryptionType());
+        byte[] descriptionEncryption = new byte[64 + 32 * RAND.nextInt(8)];
+        RAND.nextBytes(descriptionEncryption);
+        encryptedToDo.setEncryptedDescription(descriptionEncryption);
+
+        List<ToDoItem> inserted = new ArrayList<>();
+        try {
+            for (ToDoItem item : new ToDoItem[] {
+                    publicToDo, privateToDo, encryptedToDo }) {
+                item.setCreateTimeNow();
+                item.setModTime(item.getCreateTime());
+                inserted.add(repo.insertItem(item));
+            }
+            long afterId = publicToDo.getId() - 1;
+
+            List<ToDoItem> page = repo.getPrivateItemText(afterId, 1);
+            assertEquals("Number of items in the first page", 1, page.size());
+            ToDoItem textItem = page.get(0);
+            assertEquals("ID of the first private item",
+                    privateToDo.getId(), textItem.getId());
+            assertEquals("Description", privateToDo.getDescription(),
+                    textItem.getDescription());
+            assertEquals("Note", privateToDo.getNote(), textItem.getNote());
+            assertNull("Due date should not have been read",
+                    textItem.getDue());
+
+            page = repo.getPrivateItemText(textItem.getId(), 10);
+            assertEquals("Number of items in the second page", 1, page.size());
+            ToDoItem encryptedText = page.get(0);
+            assertEquals("ID of the encrypted item",
+                    encryptedToDo.getId(), encryptedText.getId());
+            assertArrayEquals("Encrypted description", descriptionEncryption,
+                    encryptedText.getEncryptedDescription());
+            assertNull("Encrypted note", encryptedText.getEncryptedNote());
+
+            // Swap the encryption of the two private items
+            byte[] noteEncryption = new byte[128 + 32 * RAND.nextInt(16)];
+            RAND.nextBytes(noteEncryption);
+            RAND.nextBytes(descriptionEncryption);
+            textItem.setPrivate(StringEncryption.encryptionType());
+            textItem.setEncryptedDescription(descriptionEncryption);
+            textItem.setEncryptedNote(noteEncryption);
+            textItem.setDescription(null);
+            textItem.setNote(null);
+            repo.updateItemText(textItem);
+            encryptedText.setPrivate(StringEncryption.NO_ENCRYPTION);
+            encryptedText.setDescription("Decrypted");
+            encryptedText.setEncryptedDescription(null);
+            repo.updateItemText(encryptedText);
+
+            ToDoItem returnToDo = repo.getItemById(privateToDo.getId());
+            assertArrayEquals("Encrypted description after update",
+                    descriptionEncryption,
+                    returnToDo.getEncryptedDescription());
+            assertArrayEquals("Encrypted note after update",
+                    noteEncryption, returnToDo.getEncryptedNote());
+            privateToDo.setPrivate(StringEncryption.encryptionType());
+            privateToDo.setDescription(null);
+            privateToDo.setNote(null);
+            privateToDo.setEncryptedDescription(
+                    returnToDo.getEncryptedDescription());
+            privateToDo.setEncryptedNote(returnToDo.getEncryptedNote());
+            privateToDo.setCategoryName(returnToDo.getCategoryName());
+            assertEquals("Encrypted item after update",
+                    privateToDo, returnToDo);
+
+            returnToDo = repo.getItemById(encryptedToDo.getId());
+            encryptedToDo.setPrivate(StringEncryption.NO_ENCRYPTION);
+            encryptedToDo.setDescription("Decrypted");
+            encryptedToDo.setEncryptedDescription(null);
+            encryptedToDo.setCategoryName(returnToDo.getCategoryName());
+            assertEquals("Decrypted item after update",
+                    encryptedToDo, returnToDo);
+        } finally {
+            for (ToDoItem item : inserted)
+                repo.deleteItem(item.getId());
+        }
+    }
+
     /**
      * Test that when an item&rsquo;s category is deleted,
      * the item is reassigned to the &ldquo;Unfiled&rdquo; category.
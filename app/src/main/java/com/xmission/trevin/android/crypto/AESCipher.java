@@ -1,5 +1,7 @@
 package com.xmission.trevin.android.crypto;
 
+import androidx.annotation.VisibleForTesting;
+
 import java.security.AlgorithmParameters;
 import java.security.InvalidAlgorithmParameterException;
 import java.security.InvalidKeyException;
@@ -20,25 +22,65 @@ import javax.crypto.ShortBufferException;
 public class AESCipher
     extends CipherSpi
 {
-    private AESLightEngine          baseEngine;
+    private BlockCipher             baseEngine;
     private GenericBlockCipher      cipher;
-    private static SecureRandom     sRandom;
     private boolean                 initialized;
     private boolean                 padded;
 
+    private static volatile boolean useFastEngine = true;
+
     protected AESCipher(
-        AESLightEngine engine)
+        BlockCipher engine)
     {
         baseEngine = engine;
 
         cipher = new BufferedGenericBlockCipher(engine);
     }
 
+    /**
+     * Create a cipher using the table-driven {@link AESFastEngine}.
+     */
     public AESCipher()
     {
-        baseEngine = new AESLightEngine();
+        this(createEngine());
+    }
 
-        cipher = new BufferedGenericBlockCipher(baseEngine);
+    /**
+     * Create a new instance of the AES engine used for our ciphers.
+     * This is the {@link AESFastEngine} except when a test has
+     * selected the {@link AESLightEngine} to compare the two.
+     *
+     * @return an uninitialised AES engine.
+     */
+    public static BlockCipher createEngine()
+    {
+        return useFastEngine ? new AESFastEngine() : new AESLightEngine();
+    }
+
+    /**
+     * Choose which engine new ciphers will use.  Both engines produce
+     * identical output; the fast engine needs 8Kbytes of static tables
+     * while the light engine computes each round from the S boxes.
+     * This is only for tests which check that the engines agree;
+     * the application always uses the fast engine.
+     *
+     * @param fast true to use the {@link AESFastEngine},
+     * false to use the {@link AESLightEngine}.
+     */
+    @VisibleForTesting
+    static void setUseFastEngine(
+        boolean fast)
+    {
+        useFastEngine = fast;
+    }
+
+    /**
+     * @return true if new ciphers will use the {@link AESFastEngine}.
+     */
+    @VisibleForTesting
+    static boolean isUsingFastEngine()
+    {
+        return useFastEngine;
     }
 
     protected int engineGetBlockSize()
@@ -197,10 +239,9 @@ public class AESCipher
         Key     key)
         throws InvalidKeyException
     {
-        if (sRandom == null)
-            sRandom = new SecureRandom();
-
-        engineInit(opmode, key, sRandom);
+        // ECB mode with PKCS7 padding has no use for random data,
+        // so don't bother creating (or sharing) a SecureRandom.
+        engineInit(opmode, key, (SecureRandom) null);
     }
 
     protected byte[] engineUpdate(
@@ -369,7 +410,7 @@ public class AESCipher
 
         public String getAlgorithmName();
 
-        public AESLightEngine getUnderlyingCipher();
+        public BlockCipher getUnderlyingCipher();
 
         public int getOutputSize(int len);
 
@@ -390,7 +431,7 @@ public class AESCipher
     {
         private BufferedBlockCipher cipher;
 
-        BufferedGenericBlockCipher(AESLightEngine cipher)
+        BufferedGenericBlockCipher(BlockCipher cipher)
         {
             this.cipher = new PaddedBufferedBlockCipher(cipher);
         }
@@ -411,7 +452,7 @@ public class AESCipher
             return cipher.getUnderlyingCipher().getAlgorithmName();
         }
 
-        public AESLightEngine getUnderlyingCipher()
+        public BlockCipher getUnderlyingCipher()
         {
             return cipher.getUnderlyingCipher();
         }
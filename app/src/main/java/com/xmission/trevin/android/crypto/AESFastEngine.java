@@ -0,0 +1,272 @@
+package com.xmission.trevin.android.crypto;
+
+import static com.xmission.trevin.android.crypto.AESLightEngine.S;
+import static com.xmission.trevin.android.crypto.AESLightEngine.Si;
+
+/**
+ * an implementation of the AES (Rijndael), from FIPS-197.
+ * <p>
+ * For further details see: <a href="http://csrc.nist.gov/encryption/aes/">http://csrc.nist.gov/encryption/aes/</a>.
+ *
+ * This implementation is based on optimizations from Dr. Brian Gladman's paper and C code at
+ * <a href="http://fp.gladman.plus.com/cryptography_technology/rijndael/">http://fp.gladman.plus.com/cryptography_technology/rijndael/</a>
+ *
+ * This file contains the fast version with 8Kbytes of static tables for round precomputation:
+ * 4 256 word tables for encryption and 4 for decryption.  Each table entry
+ * combines the S box lookup with the MixColumns (or InvMixColumns) step for
+ * one byte position, so a full round is 16 table lookups and XORs.
+ * <p>
+ * Rather than carry the tables as literals they are computed once from the
+ * S boxes of {@link AESLightEngine} when this class is loaded, using the same
+ * little-endian column layout; the key schedule is identical too, so the two
+ * engines produce byte-for-byte identical output.  The key schedule
+ * is the one computed by {@link AESLightEngine}.
+ */
+public class AESFastEngine
+    implements BlockCipher
+{
+    // The encryption round tables
+    private static final int[] T0 = new int[256];
+    private static final int[] T1 = new int[256];
+    private static final int[] T2 = new int[256];
+    private static final int[] T3 = new int[256];
+
+    // The decryption round tables
+    private static final int[] Tinv0 = new int[256];
+    private static final int[] Tinv1 = new int[256];
+    private static final int[] Tinv2 = new int[256];
+    private static final int[] Tinv3 = new int[256];
+
+    static
+    {
+        for (int i = 0; i < 256; i++)
+        {
+            int t = AESLightEngine.mcol(S[i]&255);
+            T0[i] = t;
+            T1[i] = AESLightEngine.shift(t, 24);
+            T2[i] = AESLightEngine.shift(t, 16);
+            T3[i] = AESLightEngine.shift(t, 8);
+
+            t = AESLightEngine.inv_mcol(Si[i]&255);
+            Tinv0[i] = t;
+            Tinv1[i] = AESLightEngine.shift(t, 24);
+            Tinv2[i] = AESLightEngine.shift(t, 16);
+            Tinv3[i] = AESLightEngine.shift(t, 8);
+        }
+    }
+
+    private int         ROUNDS;
+    private int[][]     WorkingKey = null;
+    private int         C0, C1, C2, C3;
+    private boolean     forEncryption;
+
+    private static final int BLOCK_SIZE = 16;
+
+    /**
+     * default constructor - 128 bit block size.
+     */
+    public AESFastEngine()
+    {
+    }
+
+    /**
+     * initialise an AES cipher.
+     *
+     * @param forEncryption whether or not we are for encryption.
+     * @param params the parameters required to set up the cipher.
+     * @exception IllegalArgumentException if the params argument is
+     * inappropriate.
+     */
+    public void init(
+        boolean           forEncryption,
+        KeyParameter  params)
+    {
+        WorkingKey = AESLightEngine.generateWorkingKey(params.getKey(), forEncryption);
+        ROUNDS = WorkingKey.length - 1;
+        this.forEncryption = forEncryption;
+    }
+
+    /**
+     * initialise an AES cipher from a key which has already been expanded.
+     *
+     * @param forEncryption whether or not we are for encryption.
+     * @param schedule the expanded key, which is shared rather than copied.
+     */
+    public void init(
+        boolean           forEncryption,
+        AESKeySchedule    schedule)
+    {
+        WorkingKey = schedule.getWorkingKey(forEncryption);
+        ROUNDS = WorkingKey.length - 1;
+        this.forEncryption = forEncryption;
+    }
+
+    public String getAlgorithmName()
+    {
+        return "AES";
+    }
+
+    public int getBlockSize()
+    {
+        return BLOCK_SIZE;
+    }
+
+    public int processBlock(
+        byte[] in,
+        int inOff,
+        byte[] out,
+        int outOff)
+    {
+        if (WorkingKey == null)
+        {
+            throw new IllegalStateException("AES engine not initialised");
+        }
+
+        if ((inOff + BLOCK_SIZE) > in.length)
+        {
+            throw new DataLengthException("input buffer too short");
+        }
+
+        if ((outOff + BLOCK_SIZE) > out.length)
+        {
+            throw new OutputLengthException("output buffer too short");
+        }
+
+        unpackBlock(in, inOff);
+        if (forEncryption)
+        {
+            encryptBlock(WorkingKey);
+        }
+        else
+        {
+            decryptBlock(WorkingKey);
+        }
+        packBlock(out, outOff);
+
+        return BLOCK_SIZE;
+    }
+
+    public void reset()
+    {
+    }
+
+    private void unpackBlock(
+        byte[]      bytes,
+        int         off)
+    {
+        int     index = off;
+
+        C0 = (bytes[index++] & 0xff);
+        C0 |= (bytes[index++] & 0xff) << 8;
+        C0 |= (bytes[index++] & 0xff) << 16;
+        C0 |= bytes[index++] << 24;
+
+        C1 = (bytes[index++] & 0xff);
+        C1 |= (bytes[index++] & 0xff) << 8;
+        C1 |= (bytes[index++] & 0xff) << 16;
+        C1 |= bytes[index++] << 24;
+
+        C2 = (bytes[index++] & 0xff);
+        C2 |= (bytes[index++] & 0xff) << 8;
+        C2 |= (bytes[index++] & 0xff) << 16;
+        C2 |= bytes[index++] << 24;
+
+        C3 = (bytes[index++] & 0xff);
+        C3 |= (bytes[index++] & 0xff) << 8;
+        C3 |= (bytes[index++] & 0xff) << 16;
+        C3 |= bytes[index++] << 24;
+    }
+
+    private void packBlock(
+        byte[]      bytes,
+        int         off)
+    {
+        int     index = off;
+
+        bytes[index++] = (byte)C0;
+        bytes[index++] = (byte)(C0 >> 8);
+        bytes[index++] = (byte)(C0 >> 16);
+        bytes[index++] = (byte)(C0 >> 24);
+
+        bytes[index++] = (byte)C1;
+        bytes[index++] = (byte)(C1 >> 8);
+        bytes[index++] = (byte)(C1 >> 16);
+        bytes[index++] = (byte)(C1 >> 24);
+
+        bytes[index++] = (byte)C2;
+        bytes[index++] = (byte)(C2 >> 8);
+        bytes[index++] = (byte)(C2 >> 16);
+        bytes[index++] = (byte)(C2 >> 24);
+
+        bytes[index++] = (byte)C3;
+        bytes[index++] = (byte)(C3 >> 8);
+        bytes[index++] = (byte)(C3 >> 16);
+        bytes[index++] = (byte)(C3 >> 24);
+    }
+
+    private void encryptBlock(int[][] KW)
+    {
+        int r, r0, r1, r2, r3;
+        int t0 = C0 ^ KW[0][0];
+        int t1 = C1 ^ KW[0][1];
+        int t2 = C2 ^ KW[0][2];
+        int t3 = C3 ^ KW[0][3];
+
+        for (r = 1; r < ROUNDS - 1;)
+        {
+            r0 = T0[t0&255] ^ T1[(t1>>8)&255] ^ T2[(t2>>16)&255] ^ T3[(t3>>24)&255] ^ KW[r][0];
+            r1 = T0[t1&255] ^ T1[(t2>>8)&255] ^ T2[(t3>>16)&255] ^ T3[(t0>>24)&255] ^ KW[r][1];
+            r2 = T0[t2&255] ^ T1[(t3>>8)&255] ^ T2[(t0>>16)&255] ^ T3[(t1>>24)&255] ^ KW[r][2];
+            r3 = T0[t3&255] ^ T1[(t0>>8)&255] ^ T2[(t1>>16)&255] ^ T3[(t2>>24)&255] ^ KW[r++][3];
+            t0 = T0[r0&255] ^ T1[(r1>>8)&255] ^ T2[(r2>>16)&255] ^ T3[(r3>>24)&255] ^ KW[r][0];
+            t1 = T0[r1&255] ^ T1[(r2>>8)&255] ^ T2[(r3>>16)&255] ^ T3[(r0>>24)&255] ^ KW[r][1];
+            t2 = T0[r2&255] ^ T1[(r3>>8)&255] ^ T2[(r0>>16)&255] ^ T3[(r1>>24)&255] ^ KW[r][2];
+            t3 = T0[r3&255] ^ T1[(r0>>8)&255] ^ T2[(r1>>16)&255] ^ T3[(r2>>24)&255] ^ KW[r++][3];
+        }
+
+        r0 = T0[t0&255] ^ T1[(t1>>8)&255] ^ T2[(t2>>16)&255] ^ T3[(t3>>24)&255] ^ KW[r][0];
+        r1 = T0[t1&255] ^ T1[(t2>>8)&255] ^ T2[(t3>>16)&255] ^ T3[(t0>>24)&255] ^ KW[r][1];
+        r2 = T0[t2&255] ^ T1[(t3>>8)&255] ^ T2[(t0>>16)&255] ^ T3[(t1>>24)&255] ^ KW[r][2];
+        r3 = T0[t3&255] ^ T1[(t0>>8)&255] ^ T2[(t1>>16)&255] ^ T3[(t2>>24)&255] ^ KW[r++][3];
+
+        // the final round is a simple function of S
+
+        C0 = (S[r0&255]&255) ^ ((S[(r1>>8)&255]&255)<<8) ^ ((S[(r2>>16)&255]&255)<<16) ^ (S[(r3>>24)&255]<<24) ^ KW[r][0];
+        C1 = (S[r1&255]&255) ^ ((S[(r2>>8)&255]&255)<<8) ^ ((S[(r3>>16)&255]&255)<<16) ^ (S[(r0>>24)&255]<<24) ^ KW[r][1];
+        C2 = (S[r2&255]&255) ^ ((S[(r3>>8)&255]&255)<<8) ^ ((S[(r0>>16)&255]&255)<<16) ^ (S[(r1>>24)&255]<<24) ^ KW[r][2];
+        C3 = (S[r3&255]&255) ^ ((S[(r0>>8)&255]&255)<<8) ^ ((S[(r1>>16)&255]&255)<<16) ^ (S[(r2>>24)&255]<<24) ^ KW[r][3];
+    }
+
+    private void decryptBlock(int[][] KW)
+    {
+        int r, r0, r1, r2, r3;
+        int t0 = C0 ^ KW[ROUNDS][0];
+        int t1 = C1 ^ KW[ROUNDS][1];
+        int t2 = C2 ^ KW[ROUNDS][2];
+        int t3 = C3 ^ KW[ROUNDS][3];
+
+        for (r = ROUNDS-1; r>1;)
+        {
+            r0 = Tinv0[t0&255] ^ Tinv1[(t3>>8)&255] ^ Tinv2[(t2>>16)&255] ^ Tinv3[(t1>>24)&255] ^ KW[r][0];
+            r1 = Tinv0[t1&255] ^ Tinv1[(t0>>8)&255] ^ Tinv2[(t3>>16)&255] ^ Tinv3[(t2>>24)&255] ^ KW[r][1];
+            r2 = Tinv0[t2&255] ^ Tinv1[(t1>>8)&255] ^ Tinv2[(t0>>16)&255] ^ Tinv3[(t3>>24)&255] ^ KW[r][2];
+            r3 = Tinv0[t3&255] ^ Tinv1[(t2>>8)&255] ^ Tinv2[(t1>>16)&255] ^ Tinv3[(t0>>24)&255] ^ KW[r--][3];
+            t0 = Tinv0[r0&255] ^ Tinv1[(r3>>8)&255] ^ Tinv2[(r2>>16)&255] ^ Tinv3[(r1>>24)&255] ^ KW[r][0];
+            t1 = Tinv0[r1&255] ^ Tinv1[(r0>>8)&255] ^ Tinv2[(r3>>16)&255] ^ Tinv3[(r2>>24)&255] ^ KW[r][1];
+            t2 = Tinv0[r2&255] ^ Tinv1[(r1>>8)&255] ^ Tinv2[(r0>>16)&255] ^ Tinv3[(r3>>24)&255] ^ KW[r][2];
+            t3 = Tinv0[r3&255] ^ Tinv1[(r2>>8)&255] ^ Tinv2[(r1>>16)&255] ^ Tinv3[(r0>>24)&255] ^ KW[r--][3];
+        }
+
+        r0 = Tinv0[t0&255] ^ Tinv1[(t3>>8)&255] ^ Tinv2[(t2>>16)&255] ^ Tinv3[(t1>>24)&255] ^ KW[r][0];
+        r1 = Tinv0[t1&255] ^ Tinv1[(t0>>8)&255] ^ Tinv2[(t3>>16)&255] ^ Tinv3[(t2>>24)&255] ^ KW[r][1];
+        r2 = Tinv0[t2&255] ^ Tinv1[(t1>>8)&255] ^ Tinv2[(t0>>16)&255] ^ Tinv3[(t3>>24)&255] ^ KW[r][2];
+        r3 = Tinv0[t3&255] ^ Tinv1[(t2>>8)&255] ^ Tinv2[(t1>>16)&255] ^ Tinv3[(t0>>24)&255] ^ KW[r][3];
+
+        // the final round's table is a simple function of Si
+
+        C0 = (Si[r0&255]&255) ^ ((Si[(r3>>8)&255]&255)<<8) ^ ((Si[(r2>>16)&255]&255)<<16) ^ (Si[(r1>>24)&255]<<24) ^ KW[0][0];
+        C1 = (Si[r1&255]&255) ^ ((Si[(r0>>8)&255]&255)<<8) ^ ((Si[(r3>>16)&255]&255)<<16) ^ (Si[(r2>>24)&255]<<24) ^ KW[0][1];
+        C2 = (Si[r2&255]&255) ^ ((Si[(r1>>8)&255]&255)<<8) ^ ((Si[(r0>>16)&255]&255)<<16) ^ (Si[(r3>>24)&255]<<24) ^ KW[0][2];
+        C3 = (Si[r3&255]&255) ^ ((Si[(r2>>8)&255]&255)<<8) ^ ((Si[(r1>>16)&255]&255)<<16) ^ (Si[(r0>>24)&255]<<24) ^ KW[0][3];
+    }
+}
@@ -0,0 +1,56 @@
+package com.xmission.trevin.android.crypto;
+
+import java.util.Arrays;
+
+/**
+ * The expanded round keys for one AES key, in both the encryption and
+ * decryption forms.  Expanding the key is the most expensive part of
+ * initialising an AES engine, so this lets it be done once and the
+ * result shared by any number of engines on any number of threads;
+ * the round keys are never modified after construction, except by
+ * {@link #wipe()}.
+ */
+public final class AESKeySchedule
+{
+    private final int[][]   encryptionKey;
+    private final int[][]   decryptionKey;
+
+    /**
+     * Expand an AES key.
+     *
+     * @param key the raw key, which must be 128, 192, or 256 bits.
+     * @exception IllegalArgumentException if the key length is invalid.
+     */
+    public AESKeySchedule(
+        byte[]  key)
+    {
+        encryptionKey = AESLightEngine.generateWorkingKey(key, true);
+        decryptionKey = AESLightEngine.generateWorkingKey(key, false);
+    }
+
+    /**
+     * return the round keys for one direction.
+     *
+     * @param forEncryption true for the encryption round keys,
+     * false for the decryption round keys.
+     * @return the round keys, which the caller must not modify.
+     */
+    int[][] getWorkingKey(
+        boolean forEncryption)
+    {
+        return forEncryption ? encryptionKey : decryptionKey;
+    }
+
+    /**
+     * Overwrite the round keys with zeroes.  Any engine still using
+     * this schedule will produce garbage afterwards.
+     */
+    public void wipe()
+    {
+        for (int i = 0; i < encryptionKey.length; i++)
+        {
+            Arrays.fill(encryptionKey[i], 0);
+            Arrays.fill(decryptionKey[i], 0);
+        }
+    }
+}
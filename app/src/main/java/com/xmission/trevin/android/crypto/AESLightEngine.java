@@ -26,9 +26,10 @@ package com.xmission.trevin.android.crypto;
  *
  */
 public class AESLightEngine
+    implements BlockCipher
 {
     // The S box
-    private static final byte[] S = {
+    static final byte[] S = {
         (byte)99, (byte)124, (byte)119, (byte)123, (byte)242, (byte)107, (byte)111, (byte)197,
         (byte)48,   (byte)1, (byte)103,  (byte)43, (byte)254, (byte)215, (byte)171, (byte)118,
         (byte)202, (byte)130, (byte)201, (byte)125, (byte)250,  (byte)89,  (byte)71, (byte)240,
@@ -64,7 +65,7 @@ public class AESLightEngine
     };
 
     // The inverse S-box
-    private static final byte[] Si = {
+    static final byte[] Si = {
         (byte)82,   (byte)9, (byte)106, (byte)213,  (byte)48,  (byte)54, (byte)165,  (byte)56,
         (byte)191,  (byte)64, (byte)163, (byte)158, (byte)129, (byte)243, (byte)215, (byte)251,
         (byte)124, (byte)227,  (byte)57, (byte)130, (byte)155,  (byte)47, (byte)255, (byte)135,
@@ -100,11 +101,11 @@ public class AESLightEngine
         };
 
     // vector used in calculating key schedule (powers of x in GF(256))
-    private static final int[] rcon = {
+    static final int[] rcon = {
          0x01, 0x02, 0x04, 0x08, 0x10, 0x20, 0x40, 0x80, 0x1b, 0x36, 0x6c, 0xd8, 0xab, 0x4d, 0x9a,
          0x2f, 0x5e, 0xbc, 0x63, 0xc6, 0x97, 0x35, 0x6a, 0xd4, 0xb3, 0x7d, 0xfa, 0xef, 0xc5, 0x91 };
 
-    private static int shift(int r, int shift)
+    static int shift(int r, int shift)
     {
         return (r >>> shift) | (r << -shift);
     }
@@ -130,13 +131,13 @@ public class AESLightEngine
 
     */
 
-    private static int mcol(int x)
+    static int mcol(int x)
     {
         int f2 = FFmulX(x);
         return f2 ^ shift(x ^ f2, 8) ^ shift(x, 16) ^ shift(x, 24);
     }
 
-    private static int inv_mcol(int x)
+    static int inv_mcol(int x)
     {
         int f2 = FFmulX(x);
         int f4 = FFmulX(f2);
@@ -147,7 +148,7 @@ public class AESLightEngine
     }
 
 
-    private static int subWord(int x)
+    static int subWord(int x)
     {
         return (S[x&255]&255 | ((S[(x>>8)&255]&255)<<8) | ((S[(x>>16)&255]&255)<<16) | S[(x>>24)&255]<<24);
     }
@@ -158,7 +159,7 @@ public class AESLightEngine
      * AES specified a fixed block size of 128 bits and key sizes 128/192/256 bits
      * This code is written assuming those are the only possible values
      */
-    private int[][] generateWorkingKey(
+    static int[][] generateWorkingKey(
                                     byte[] key,
                                     boolean forEncryption)
     {
@@ -170,7 +171,7 @@ public class AESLightEngine
             throw new IllegalArgumentException("Key length not 128/192/256 bits.");
         }
 
-        ROUNDS = KC + 6;  // This is not always true for the generalized Rijndael that allows larger block sizes
+        int ROUNDS = KC + 6;  // This is not always true for the generalized Rijndael that allows larger block sizes
         int[][] W = new int[ROUNDS+1][4];   // 4 words in a block
         
         //
@@ -247,10 +248,26 @@ public class AESLightEngine
         KeyParameter  params)
     {
 	WorkingKey = generateWorkingKey(params.getKey(), forEncryption);
+	ROUNDS = WorkingKey.length - 1;
 	this.forEncryption = forEncryption;
 	return;
     }
 
+    /**
+     * initialise an AES cipher from a key which has already been expanded.
+     *
+     * @param forEncryption whether or not we are for encryption.
+     * @param schedule the expanded key, which is shared rather than copied.
+     */
+    public void init(
+        boolean           forEncryption,
+        AESKeySchedule    schedule)
+    {
+        WorkingKey = schedule.getWorkingKey(forEncryption);
+        ROUNDS = WorkingKey.length - 1;
+        this.forEncryption = forEncryption;
+    }
+
     public String getAlgorithmName()
     {
         return "AES";
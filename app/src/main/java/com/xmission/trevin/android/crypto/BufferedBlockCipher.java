@@ -15,7 +15,7 @@ public class BufferedBlockCipher
     protected int           bufOff;
 
     protected boolean       forEncryption;
-    protected AESLightEngine   cipher;
+    protected BlockCipher      cipher;
 
     protected boolean       partialBlockOkay;
 
@@ -32,7 +32,7 @@ public class BufferedBlockCipher
      * @param cipher the underlying block cipher this buffering object wraps.
      */
     public BufferedBlockCipher(
-        AESLightEngine     cipher)
+        BlockCipher        cipher)
     {
         this.cipher = cipher;
 
@@ -46,7 +46,7 @@ public class BufferedBlockCipher
      *
      * @return the cipher this object wraps.
      */
-    public AESLightEngine getUnderlyingCipher()
+    public BlockCipher getUnderlyingCipher()
     {
         return cipher;
     }
@@ -72,6 +72,25 @@ public class BufferedBlockCipher
         cipher.init(forEncryption, params);
     }
 
+    /**
+     * initialise the cipher with a key which has already been expanded.
+     *
+     * @param forEncryption if true the cipher is initialised for
+     *  encryption, if false for decryption.
+     * @param schedule the expanded key, which is shared with the
+     * underlying cipher rather than copied.
+     */
+    public void init(
+        boolean             forEncryption,
+        AESKeySchedule      schedule)
+    {
+        this.forEncryption = forEncryption;
+
+        reset();
+
+        cipher.init(forEncryption, schedule);
+    }
+
     /**
      * return the blocksize for the underlying cipher.
      *
@@ -82,6 +82,28 @@ public class HMac
         ipadState = digest.copy();
     }
 
+    /**
+     * return the SHA-256 chaining state after hashing the key XOR ipad
+     * block, i.e. the starting point of every inner hash with this key.
+     *
+     * @return a copy of the 8 word inner state.
+     */
+    int[] getInnerState()
+    {
+        return ipadState.getState();
+    }
+
+    /**
+     * return the SHA-256 chaining state after hashing the key XOR opad
+     * block, i.e. the starting point of every outer hash with this key.
+     *
+     * @return a copy of the 8 word outer state.
+     */
+    int[] getOuterState()
+    {
+        return opadState.getState();
+    }
+
     public int getMacSize()
     {
         return digestSize;
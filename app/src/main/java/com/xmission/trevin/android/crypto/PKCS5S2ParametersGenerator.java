@@ -45,16 +45,78 @@ public class PKCS5S2ParametersGenerator
 
         System.arraycopy(state, 0, out, outOff, state.length);
 
-        for (int count = 1; count < c; count++)
+        if (c > 1)
         {
-            hMac.update(state, 0, state.length);
-            hMac.doFinal(state, 0);
+            iterate(c - 1, out, outOff);
+        }
+    }
 
-            for (int j = 0; j != state.length; j++)
+    /**
+     * Run the remaining iterations of F.  Every message after the first
+     * is exactly one digest long, so rather than going through the HMac
+     * (which converts each message to and from bytes and re-pads it)
+     * this starts from copies of the precomputed inner and outer SHA-256
+     * states and runs just the one compression each hash needs, on a
+     * block whose padding is fixed.
+     */
+    private void iterate(
+        int     count,
+        byte[]  out,
+        int     outOff)
+    {
+        final int[] innerState = hMac.getInnerState();
+        final int[] outerState = hMac.getOuterState();
+        // The length of each hashed message: one block of key pad
+        // followed by one digest, in bits
+        final int bitLength = (64 + SHA256Digest.DIGEST_LENGTH) * 8;
+
+        int[]   u = new int[8];
+        int[]   result = new int[8];
+        int[]   H = new int[8];
+        int[]   X = new int[64];
+
+        for (int j = 0; j < 8; j++)
+        {
+            u[j] = Pack.bigEndianToInt(state, j * 4);
+            result[j] = Pack.bigEndianToInt(out, outOff + j * 4);
+        }
+
+        for (int i = 0; i < count; i++)
+        {
+            // inner hash: H(K XOR ipad || U)
+            System.arraycopy(u, 0, X, 0, 8);
+            X[8] = 0x80000000;
+            X[9] = 0; X[10] = 0; X[11] = 0; X[12] = 0; X[13] = 0; X[14] = 0;
+            X[15] = bitLength;
+            System.arraycopy(innerState, 0, H, 0, 8);
+            SHA256Digest.compress(H, X);
+
+            // outer hash: H(K XOR opad || inner hash)
+            System.arraycopy(H, 0, X, 0, 8);
+            X[8] = 0x80000000;
+            X[9] = 0; X[10] = 0; X[11] = 0; X[12] = 0; X[13] = 0; X[14] = 0;
+            X[15] = bitLength;
+            System.arraycopy(outerState, 0, u, 0, 8);
+            SHA256Digest.compress(u, X);
+
+            for (int j = 0; j < 8; j++)
             {
-                out[outOff + j] ^= state[j];
+                result[j] ^= u[j];
             }
         }
+
+        for (int j = 0; j < 8; j++)
+        {
+            Pack.intToBigEndian(result[j], out, outOff + j * 4);
+        }
+
+        // don't leave intermediate key material behind
+        java.util.Arrays.fill(u, 0);
+        java.util.Arrays.fill(result, 0);
+        java.util.Arrays.fill(H, 0);
+        java.util.Arrays.fill(X, 0);
+        java.util.Arrays.fill(innerState, 0);
+        java.util.Arrays.fill(outerState, 0);
     }
 
     private byte[] generateDerivedKey(
@@ -19,7 +19,7 @@ public class PaddedBufferedBlockCipher
      * @param padding the padding type.
      */
     public PaddedBufferedBlockCipher(
-        AESLightEngine         cipher,
+        BlockCipher            cipher,
         PKCS7Padding  padding)
     {
         this.cipher = cipher;
@@ -35,7 +35,7 @@ public class PaddedBufferedBlockCipher
      * @param cipher the underlying block cipher this buffering object wraps.
      */
     public PaddedBufferedBlockCipher(
-        AESLightEngine     cipher)
+        BlockCipher        cipher)
     {
         this(cipher, new PKCS7Padding());
     }
@@ -63,6 +63,26 @@ public class PaddedBufferedBlockCipher
         cipher.init(forEncryption, params);
     }
 
+    /**
+     * initialise the cipher with a key which has already been expanded.
+     *
+     * @param forEncryption if true the cipher is initialised for
+     *  encryption, if false for decryption.
+     * @param schedule the expanded key, which is shared with the
+     * underlying cipher rather than copied.
+     */
+    public void init(
+        boolean             forEncryption,
+        AESKeySchedule      schedule)
+    {
+        this.forEncryption = forEncryption;
+
+        reset();
+        padding.init(null);
+
+        cipher.init(forEncryption, schedule);
+    }
+
     /**
      * return the minimum size of the output buffer required for an update
      * plus a doFinal with an input of len bytes.
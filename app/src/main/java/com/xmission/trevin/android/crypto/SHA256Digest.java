@@ -20,6 +20,7 @@ public class SHA256Digest
     private int     H1, H2, H3, H4, H5, H6, H7, H8;
 
     private int[]   X = new int[64];
+    private int[]   state = new int[8];
     private int     xOff;
 
     /**
@@ -147,6 +148,52 @@ public class SHA256Digest
     }
 
     protected void processBlock()
+    {
+        int[] H = state;
+        H[0] = H1;
+        H[1] = H2;
+        H[2] = H3;
+        H[3] = H4;
+        H[4] = H5;
+        H[5] = H6;
+        H[6] = H7;
+        H[7] = H8;
+
+        compress(H, X);
+
+        H1 = H[0];
+        H2 = H[1];
+        H3 = H[2];
+        H4 = H[3];
+        H5 = H[4];
+        H6 = H[5];
+        H7 = H[6];
+        H8 = H[7];
+
+        //
+        // reset the offset and clean out the word buffer.
+        //
+        xOff = 0;
+        for (int i = 0; i < 16; i++)
+        {
+            X[i] = 0;
+        }
+    }
+
+    /**
+     * Run the SHA-256 compression function over one block.  This is
+     * separate from {@link #processBlock()} so that
+     * {@link PKCS5S2ParametersGenerator} can run it directly on a
+     * precomputed HMAC midstate.
+     *
+     * @param H the 8 word chaining state, which is updated in place.
+     * @param X a 64 word array whose first 16 words hold the message
+     * block; the remaining words are overwritten with the expanded
+     * message schedule.
+     */
+    static void compress(
+        int[]   H,
+        int[]   X)
     {
         //
         // expand 16 word block into 64 word blocks.
@@ -159,14 +206,14 @@ public class SHA256Digest
         //
         // set up working variables.
         //
-        int     a = H1;
-        int     b = H2;
-        int     c = H3;
-        int     d = H4;
-        int     e = H5;
-        int     f = H6;
-        int     g = H7;
-        int     h = H8;
+        int     a = H[0];
+        int     b = H[1];
+        int     c = H[2];
+        int     d = H[3];
+        int     e = H[4];
+        int     f = H[5];
+        int     g = H[6];
+        int     h = H[7];
 
         int t = 0;     
         for(int i = 0; i < 8; i ++)
@@ -220,27 +267,30 @@ public class SHA256Digest
             ++t;
         }
 
-        H1 += a;
-        H2 += b;
-        H3 += c;
-        H4 += d;
-        H5 += e;
-        H6 += f;
-        H7 += g;
-        H8 += h;
+        H[0] += a;
+        H[1] += b;
+        H[2] += c;
+        H[3] += d;
+        H[4] += e;
+        H[5] += f;
+        H[6] += g;
+        H[7] += h;
+    }
 
-        //
-        // reset the offset and clean out the word buffer.
-        //
-        xOff = 0;
-        for (int i = 0; i < 16; i++)
-        {
-            X[i] = 0;
-        }
+    /**
+     * return a copy of the chaining state.  This is only meaningful
+     * when a whole number of blocks has been processed, in which case
+     * it can be used with {@link #compress} to continue the hash.
+     *
+     * @return the 8 word chaining state.
+     */
+    int[] getState()
+    {
+        return new int[] { H1, H2, H3, H4, H5, H6, H7, H8 };
     }
 
     /* SHA-256 functions */
-    private int Ch(
+    private static int Ch(
         int    x,
         int    y,
         int    z)
@@ -248,7 +298,7 @@ public class SHA256Digest
         return (x & y) ^ ((~x) & z);
     }
 
-    private int Maj(
+    private static int Maj(
         int    x,
         int    y,
         int    z)
@@ -256,25 +306,25 @@ public class SHA256Digest
         return (x & y) ^ (x & z) ^ (y & z);
     }
 
-    private int Sum0(
+    private static int Sum0(
         int    x)
     {
         return ((x >>> 2) | (x << 30)) ^ ((x >>> 13) | (x << 19)) ^ ((x >>> 22) | (x << 10));
     }
 
-    private int Sum1(
+    private static int Sum1(
         int    x)
     {
         return ((x >>> 6) | (x << 26)) ^ ((x >>> 11) | (x << 21)) ^ ((x >>> 25) | (x << 7));
     }
 
-    private int Theta0(
+    private static int Theta0(
         int    x)
     {
         return ((x >>> 7) | (x << 25)) ^ ((x >>> 18) | (x << 14)) ^ (x >>> 3);
     }
 
-    private int Theta1(
+    private static int Theta1(
         int    x)
     {
         return ((x >>> 17) | (x << 15)) ^ ((x >>> 19) | (x << 13)) ^ (x >>> 10);
@@ -23,6 +23,7 @@ import android.util.Log;
 import androidx.multidex.MultiDexApplication;
 
 import com.xmission.trevin.android.todo.receiver.AlarmInitReceiver;
+import com.xmission.trevin.android.todo.util.StringEncryption;
 
 /**
  * Perform one-time initialization tasks for the To Do application.
@@ -49,6 +50,16 @@ public class ToDoApplication extends MultiDexApplication {
              */
             AlarmInitReceiver.onCreate(this);
         }
+
+        // Check whether the platform's AES cipher is compatible with
+        // our bundled engine off the main thread, so that the answer
+        // is ready by the time the user unlocks private records.
+        new Thread(new Runnable() {
+            @Override
+            public void run() {
+                StringEncryption.verifyPlatformCipher();
+            }
+        }, "PlatformCipherSelfTest").start();
     }
 
     @Override
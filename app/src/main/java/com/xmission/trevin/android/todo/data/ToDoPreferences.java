@@ -98,6 +98,15 @@ public class ToDoPreferences
     /** Label for the preferences option "Include Private" */
     public static final String TPREF_EXPORT_PRIVATE = "ExportPrivate";
 
+    /** Label for the preferences option "Compress" (export) */
+    public static final String TPREF_EXPORT_COMPRESSED = "ExportCompressed";
+
+    /** Label for the preferences option "Snapshot" (export) */
+    public static final String TPREF_EXPORT_SNAPSHOT = "ExportSnapshot";
+
+    /** Label for the preferences option "Changes Only" (export) */
+    public static final String TPREF_EXPORT_INCREMENTAL = "ExportIncremental";
+
     /** Label for the last imported file name */
     public static final String TPREF_IMPORT_FILE = "ImportFile";
 
@@ -383,6 +392,46 @@ public class ToDoPreferences
             return this;
         }
 
+        /**
+         * Change whether to compress the export file.
+         *
+         * @param compress {@code true} if the export file
+         *                 should be compressed
+         *
+         * @return this Editor for chaining
+         */
+        public Editor setExportCompressed(boolean compress) {
+            actualEditor.putBoolean(TPREF_EXPORT_COMPRESSED, compress);
+            return this;
+        }
+
+        /**
+         * Change whether to export a binary snapshot instead of XML.
+         *
+         * @param snapshot {@code true} if the export file
+         *                 should be a snapshot
+         *
+         * @return this Editor for chaining
+         */
+        public Editor setExportSnapshot(boolean snapshot) {
+            actualEditor.putBoolean(TPREF_EXPORT_SNAPSHOT, snapshot);
+            return this;
+        }
+
+        /**
+         * Change whether to export only the changes since the last
+         * incremental export.
+         *
+         * @param incremental {@code true} if the export file should
+         *                    only hold the changes
+         *
+         * @return this Editor for chaining
+         */
+        public Editor setExportIncremental(boolean incremental) {
+            actualEditor.putBoolean(TPREF_EXPORT_INCREMENTAL, incremental);
+            return this;
+        }
+
         /**
          * Change the name of the import file.
          *
@@ -467,6 +516,9 @@ public class ToDoPreferences
         listeners.put(TPREF_SCROLL_THRESHOLD, new LinkedList<>());
         listeners.put(TPREF_EXPORT_FILE, new LinkedList<>());
         listeners.put(TPREF_EXPORT_PRIVATE, new LinkedList<>());
+        listeners.put(TPREF_EXPORT_COMPRESSED, new LinkedList<>());
+        listeners.put(TPREF_EXPORT_SNAPSHOT, new LinkedList<>());
+        listeners.put(TPREF_EXPORT_INCREMENTAL, new LinkedList<>());
         listeners.put(TPREF_IMPORT_FILE, new LinkedList<>());
         listeners.put(TPREF_IMPORT_TYPE, new LinkedList<>());
         listeners.put(TPREF_IMPORT_PRIVATE, new LinkedList<>());
@@ -819,6 +871,61 @@ public class ToDoPreferences
         edit().setExportPrivate(include).finish();
     }
 
+    /**
+     * @return whether to compress the export file (default {@code false})
+     */
+    public boolean exportCompressed() {
+        return prefs.getBoolean(TPREF_EXPORT_COMPRESSED, false);
+    }
+
+    /**
+     * Change whether to compress the export file (immediate).
+     *
+     * @param compress {@code true} if the export file
+     *                 should be compressed
+     */
+    public void setExportCompressed(boolean compress) {
+        edit().setExportCompressed(compress).finish();
+    }
+
+    /**
+     * @return whether to export a binary snapshot instead of XML
+     * (default {@code false})
+     */
+    public boolean exportSnapshot() {
+        return prefs.getBoolean(TPREF_EXPORT_SNAPSHOT, false);
+    }
+
+    /**
+     * Change whether to export a binary snapshot instead of XML
+     * (immediate).
+     *
+     * @param snapshot {@code true} if the export file
+     *                 should be a snapshot
+     */
+    public void setExportSnapshot(boolean snapshot) {
+        edit().setExportSnapshot(snapshot).finish();
+    }
+
+    /**
+     * @return whether to export only the changes since the last
+     * incremental export (default {@code false})
+     */
+    public boolean exportIncremental() {
+        return prefs.getBoolean(TPREF_EXPORT_INCREMENTAL, false);
+    }
+
+    /**
+     * Change whether to export only the changes since the last
+     * incremental export (immediate).
+     *
+     * @param incremental {@code true} if the export file should
+     *                    only hold the changes
+     */
+    public void setExportIncremental(boolean incremental) {
+        edit().setExportIncremental(incremental).finish();
+    }
+
     /**
      * @param defaultFile the default filename to return
      *
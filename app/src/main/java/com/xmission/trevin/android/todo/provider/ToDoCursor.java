@@ -38,6 +38,15 @@ public interface ToDoCursor extends Closeable {
     /** @return the To Do item that this cursor points to */
     ToDoItem getItem();
 
+    /**
+     * Get just the ID of the To Do item that this cursor points to.
+     * This is cheaper than {@link #getItem()} when the caller
+     * does not need any of the other item data.
+     *
+     * @return the ID of the current item
+     */
+    long getItemId();
+
     /** @return the current position if this cursor in the row set */
     int getPosition();
 
@@ -316,6 +316,11 @@ public class ToDoCursorImpl implements ToDoCursor {
         return item;
     }
 
+    @Override
+    public long getItemId() {
+        return dbCursor.getLong(idColumn);
+    }
+
     @Override
     public int getPosition() {
         return dbCursor.getPosition();
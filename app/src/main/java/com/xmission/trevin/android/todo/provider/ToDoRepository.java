@@ -348,6 +348,44 @@ public interface ToDoRepository {
      */
     long[] getPrivateItemIds();
 
+    /**
+     * Get the text of a page of private To Do items in order by ID.
+     * This is meant for the {@link PasswordChangeWorker}, which only
+     * needs to re-encrypt the description and note of each item;
+     * the returned items have <i>only</i> their {@code id},
+     * {@code private}, and either their {@code description} and
+     * {@code note} (if not encrypted) or {@code encryptedDescription}
+     * and {@code encryptedNote} (if encrypted) fields set.
+     *
+     * @param afterId return only items whose ID is greater than this.
+     * To read all private items, start with 0 and then pass the ID
+     * of the last item in each page to get the next.
+     * @param limit the maximum number of items to return
+     *
+     * @return a list of partially filled To Do items,
+     * which will be empty when there are no more private items.
+     */
+    List<ToDoItem> getPrivateItemText(long afterId, int limit);
+
+    /**
+     * Get a page of To Do items in order by ID with just the fields
+     * an importer needs to decide whether an item from a backup file
+     * is the same as one in the database.  The returned items have
+     * <i>only</i> their {@code id}, {@code createTime}, {@code modTime},
+     * {@code categoryId}, {@code private}, and either {@code description}
+     * (if not encrypted) or {@code encryptedDescription} (if encrypted)
+     * fields set.
+     *
+     * @param afterId return only items whose ID is greater than this.
+     * To read all items, start with 0 and then pass the ID
+     * of the last item in each page to get the next.
+     * @param limit the maximum number of items to return
+     *
+     * @return a list of partially filled To Do items,
+     * which will be empty when there are no more items.
+     */
+    List<ToDoItem> getItemSummaries(long afterId, int limit);
+
     /**
      * Get a single To Do item by its ID.
      *
@@ -380,6 +418,24 @@ public interface ToDoRepository {
     ToDoItem insertItem(@NonNull ToDoItem item)
         throws IllegalArgumentException, SQLException;
 
+    /**
+     * Add a batch of new To Do items in a single transaction.  This is
+     * meant for restoring backups, where looking up each item&rsquo;s
+     * category name and logging every insert would cost more than
+     * the inserts themselves.  Each item is subject to the same rules
+     * as {@link #insertItem(ToDoItem)}, and will have its {@code id}
+     * and {@code categoryName} fields set afterward.
+     *
+     * @param items the To Do items to add
+     *
+     * @throws IllegalArgumentException if any item&rsquo;s
+     * {@code description} is empty or &hellip;
+     * @throws SQLException if we failed to insert any of the items,
+     * in which case none of the batch will have been added
+     */
+    void insertItems(@NonNull List<ToDoItem> items)
+        throws IllegalArgumentException, SQLException;
+
     /**
      * Modify an existing To Do item.  The item&rsquo;s category will be set
      * by its {@code categoryId}, <i>not</i> its {@code categoryName}.
@@ -402,6 +458,24 @@ public interface ToDoRepository {
     ToDoItem updateItem(@NonNull ToDoItem item)
         throws IllegalArgumentException, SQLException;
 
+    /**
+     * Change only the privacy level, description, and note of a
+     * To Do item, leaving all of its other columns (including the
+     * modification time) as they are.  This is the counterpart of
+     * {@link #getPrivateItemText(long, int)}.  As with
+     * {@link #updateItem(ToDoItem)}, if the item is encrypted its
+     * {@code encryptedDescription} and (if applicable)
+     * {@code encryptedNote} fields <i>must</i> be set.
+     *
+     * @param item the To Do item whose text to change
+     *
+     * @throws IllegalArgumentException if the item has no ID, or if
+     * its description or note are inconsistent with its privacy level
+     * @throws SQLException if we failed to update the To Do item
+     */
+    void updateItemText(@NonNull ToDoItem item)
+        throws IllegalArgumentException, SQLException;
+
     /**
      * Change the last notification time of a To Do item.
      * This is a convenience method for the alarm service
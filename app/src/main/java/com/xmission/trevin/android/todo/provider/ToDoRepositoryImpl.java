@@ -1018,6 +1018,73 @@ public class ToDoRepositoryImpl implements ToDoRepository {
         }
     }
 
+    @Override
+    public List<ToDoItem> getPrivateItemText(long afterId, int limit) {
+        Log.d(TAG, String.format(".getPrivateItemText(%d, %d)",
+                afterId, limit));
+        SQLiteQueryBuilder qb = new SQLiteQueryBuilder();
+        qb.setTables(TODO_TABLE_NAME);
+        String selection = ToDoItemColumns.PRIVATE + " >= ? AND "
+                + ToDoItemColumns._ID + " > ?";
+        String[] selectionArgs = new String[] {
+                "1", Long.toString(afterId) };
+        try (Cursor c = qb.query(getDb(), new String[] {
+                ToDoItemColumns._ID, ToDoItemColumns.PRIVATE,
+                        ToDoItemColumns.DESCRIPTION, ToDoItemColumns.NOTE },
+                selection, selectionArgs, null, null,
+                ToDoItemColumns._ID, Integer.toString(limit))) {
+            List<ToDoItem> items = new ArrayList<>(c.getCount());
+            while (c.moveToNext()) {
+                ToDoItem item = new ToDoItem();
+                item.setId(c.getLong(0));
+                item.setPrivate(c.getInt(1));
+                // How we read the text depends on whether it is encrypted
+                if (item.getPrivate() <= StringEncryption.NO_ENCRYPTION) {
+                    item.setDescription(c.getString(2));
+                    item.setNote(c.getString(3));
+                } else {
+                    item.setEncryptedDescription(c.getBlob(2));
+                    item.setEncryptedNote(c.getBlob(3));
+                }
+                items.add(item);
+            }
+            return items;
+        }
+    }
+
+    @Override
+    public List<ToDoItem> getItemSummaries(long afterId, int limit) {
+        Log.d(TAG, String.format(".getItemSummaries(%d, %d)",
+                afterId, limit));
+        SQLiteQueryBuilder qb = new SQLiteQueryBuilder();
+        qb.setTables(TODO_TABLE_NAME);
+        String selection = ToDoItemColumns._ID + " > ?";
+        String[] selectionArgs = new String[] { Long.toString(afterId) };
+        try (Cursor c = qb.query(getDb(), new String[] {
+                ToDoItemColumns._ID, ToDoItemColumns.CREATE_TIME,
+                        ToDoItemColumns.MOD_TIME, ToDoItemColumns.CATEGORY_ID,
+                        ToDoItemColumns.PRIVATE, ToDoItemColumns.DESCRIPTION },
+                selection, selectionArgs, null, null,
+                ToDoItemColumns._ID, Integer.toString(limit))) {
+            List<ToDoItem> items = new ArrayList<>(c.getCount());
+            while (c.moveToNext()) {
+                ToDoItem item = new ToDoItem();
+                item.setId(c.getLong(0));
+                item.setCreateTime(Instant.ofEpochMilli(c.getLong(1)));
+                item.setModTime(Instant.ofEpochMilli(c.getLong(2)));
+                item.setCategoryId(c.getLong(3));
+                item.setPrivate(c.getInt(4));
+                // How we read the text depends on whether it is encrypted
+                if (item.getPrivate() <= StringEncryption.NO_ENCRYPTION)
+                    item.setDescription(c.getString(5));
+                else
+                    item.setEncryptedDescription(c.getBlob(5));
+                items.add(item);
+            }
+            return items;
+        }
+    }
+
     @Override
     public ToDoItem getItemById(long itemId) {
         Log.d(TAG, String.format(".getItemById(%d)", itemId));
@@ -1091,22 +1158,7 @@ public class ToDoRepositoryImpl implements ToDoRepository {
      * (if {@code private} > {@value StringEncryption#NO_ENCRYPTION}).
      */
     private ContentValues todoToContentValues(ToDoItem item) {
-        if (!item.isEncrypted()) {
-            if (TextUtils.isEmpty(item.getDescription()))
-                throw new IllegalArgumentException("Description cannot be empty");
-            if ((item.getEncryptedNote() != null) &&
-                    (item.getEncryptedNote().length > 0) &&
-                    TextUtils.isEmpty(item.getNote()))
-                throw new IllegalArgumentException("Note cannot be encrypted");
-        } else {
-            if ((item.getEncryptedDescription() == null) ||
-                    (item.getEncryptedDescription().length == 0))
-                throw new IllegalArgumentException("Description must be encrypted");
-            if (!TextUtils.isEmpty(item.getNote()) &&
-                    ((item.getEncryptedNote() == null) ||
-                            (item.getEncryptedNote().length == 0)))
-                throw new IllegalArgumentException("Note must be encrypted");
-        }
+        checkItemText(item);
         if (item.getCreateTime() == null)
             item.setCreateTimeNow();
         if (item.getModTime() == null)
@@ -1116,7 +1168,6 @@ public class ToDoRepositoryImpl implements ToDoRepository {
                 item.getCreateTime().toEpochMilli());
         values.put(ToDoItemColumns.MOD_TIME,
                 item.getModTime().toEpochMilli());
-        values.put(ToDoItemColumns.PRIVATE, item.getPrivate());
         values.put(ToDoItemColumns.CATEGORY_ID, item.getCategoryId());
         if (item.getDue() == null)
             values.putNull(ToDoItemColumns.DUE_TIME);
@@ -1217,6 +1268,53 @@ public class ToDoRepositoryImpl implements ToDoRepository {
             }
         }
         values.put(ToDoItemColumns.HIDE_DAYS_EARLIER, item.getHideDaysEarlier());
+        putItemText(values, item);
+        return values;
+    }
+
+    /**
+     * Check that the description and note of a ToDoItem
+     * are consistent with its privacy level.
+     *
+     * @param item the ToDoItem to be inserted or updated
+     *
+     * @throws IllegalArgumentException if the {@code description} field
+     * is empty (if {@code private} &le;
+     * {@value StringEncryption#NO_ENCRYPTION}) or
+     * {@code encryptedDescription} is empty (if {@code private} >
+     * {@value StringEncryption#NO_ENCRYPTION}); or if a note is present
+     * and only encrypted or only unencrypted, respectively.
+     */
+    private static void checkItemText(ToDoItem item) {
+        if (!item.isEncrypted()) {
+            if (TextUtils.isEmpty(item.getDescription()))
+                throw new IllegalArgumentException("Description cannot be empty");
+            if ((item.getEncryptedNote() != null) &&
+                    (item.getEncryptedNote().length > 0) &&
+                    TextUtils.isEmpty(item.getNote()))
+                throw new IllegalArgumentException("Note cannot be encrypted");
+        } else {
+            if ((item.getEncryptedDescription() == null) ||
+                    (item.getEncryptedDescription().length == 0))
+                throw new IllegalArgumentException("Description must be encrypted");
+            if (!TextUtils.isEmpty(item.getNote()) &&
+                    ((item.getEncryptedNote() == null) ||
+                            (item.getEncryptedNote().length == 0)))
+                throw new IllegalArgumentException("Note must be encrypted");
+        }
+    }
+
+    /**
+     * Add the privacy level, description, and note of a ToDoItem
+     * to a set of ContentValues.  The description and note are
+     * taken from the plain text or encrypted fields depending on
+     * the item&rsquo;s privacy level.
+     *
+     * @param values the ContentValues to add the columns to
+     * @param item the ToDoItem whose text to store
+     */
+    private static void putItemText(ContentValues values, ToDoItem item) {
+        values.put(ToDoItemColumns.PRIVATE, item.getPrivate());
         if (item.getPrivate() <= 1) {
             values.put(ToDoItemColumns.DESCRIPTION, item.getDescription());
             if (TextUtils.isEmpty(item.getNote()))
@@ -1232,7 +1330,6 @@ public class ToDoRepositoryImpl implements ToDoRepository {
             else
                 values.put(ToDoItemColumns.NOTE, item.getEncryptedNote());
         }
-        return values;
     }
 
     @Override
@@ -1266,6 +1363,53 @@ public class ToDoRepositoryImpl implements ToDoRepository {
         }
     }
 
+    @Override
+    public void insertItems(@NonNull List<ToDoItem> items)
+            throws IllegalArgumentException, SQLException {
+        Log.d(TAG, String.format(Locale.US, ".insertItems(%d items)",
+                items.size()));
+        if (items.isEmpty())
+            return;
+        // Categories are few, so look up each one's name only once
+        Map<Long,String> categoryNames = new HashMap<>();
+        SQLiteDatabase db = getDb();
+        boolean nestedTransaction = db.inTransaction();
+        db.beginTransaction();
+        try {
+            for (ToDoItem item : items) {
+                ContentValues values = todoToContentValues(item);
+                if (item.getId() != null)
+                    values.put(ToDoItemColumns._ID, item.getId());
+                long rowId = db.insertOrThrow(TODO_TABLE_NAME, null, values);
+                if (rowId < 0) {
+                    Log.e(TAG, String.format(
+                            "Failed to insert %s; reason unknown", item));
+                    throw new SQLException("Failed to insert To Do item");
+                }
+                item.setId(rowId);
+                if (item.getCategoryName() == null) {
+                    if (!categoryNames.containsKey(item.getCategoryId())) {
+                        ToDoCategory category =
+                                getCategoryById(item.getCategoryId());
+                        categoryNames.put(item.getCategoryId(),
+                                (category == null) ? null : category.getName());
+                    }
+                    item.setCategoryName(
+                            categoryNames.get(item.getCategoryId()));
+                }
+            }
+            db.setTransactionSuccessful();
+        } catch (SQLException e) {
+            Log.e(TAG, String.format(Locale.US,
+                    "Failed to insert a batch of %d items", items.size()), e);
+            throw e;
+        } finally {
+            db.endTransaction();
+        }
+        if (!nestedTransaction)
+            notifyObservers();
+    }
+
     @Override
     public ToDoItem updateItem(@NonNull ToDoItem item)
             throws IllegalArgumentException, SQLException {
@@ -1290,6 +1434,31 @@ public class ToDoRepositoryImpl implements ToDoRepository {
         }
     }
 
+    @Override
+    public void updateItemText(@NonNull ToDoItem item)
+            throws IllegalArgumentException, SQLException {
+        Log.d(TAG, String.format(".updateItemText(%d)", item.getId()));
+        if (item.getId() == null)
+            throw new IllegalArgumentException("Missing item ID");
+        checkItemText(item);
+        ContentValues values = new ContentValues();
+        putItemText(values, item);
+        try {
+            SQLiteDatabase db = getDb();
+            boolean inTransaction = db.inTransaction();
+            int count = db.update(TODO_TABLE_NAME, values,
+                    ToDoItemColumns._ID + " = ?",
+                    new String[] { Long.toString(item.getId()) });
+            if (count <= 0)
+                throw new SQLException("No rows matched item " + item.getId());
+            if (!inTransaction)
+                notifyObservers();
+        } catch (SQLException e) {
+            Log.e(TAG, "Failed to update the text of item " + item.getId(), e);
+            throw e;
+        }
+    }
+
     @Override
     public void updateAlarmNotificationTime(
             long itemId, @NonNull Instant notificationTime)
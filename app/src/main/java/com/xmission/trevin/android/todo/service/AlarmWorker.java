@@ -318,7 +318,8 @@ public class AlarmWorker extends Worker {
             if (showPrivate) {
                 if (showEncrypted) {
                     try {
-                        descr = encryptor.decrypt(
+                        descr = encryptor.decryptDescription(
+                                alarm.getId(), alarm.getLastModified(),
                                 alarm.getEncryptedDescription());
                     } catch (Exception e) {
                         descr = context.getString(
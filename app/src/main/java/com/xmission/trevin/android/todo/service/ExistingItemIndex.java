@@ -0,0 +1,308 @@
+/*
+ * Copyright © 2026 Trevin Beattie
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.xmission.trevin.android.todo.service;
+
+import com.xmission.trevin.android.todo.data.ToDoItem;
+import com.xmission.trevin.android.todo.provider.ToDoRepository;
+import com.xmission.trevin.android.todo.util.EncryptionException;
+import com.xmission.trevin.android.todo.util.LongIntHashMap;
+import com.xmission.trevin.android.todo.util.StringEncryption;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * A compact index of the To Do items already in the database, which
+ * lets the {@link ImportMerger} decide how each item from a backup
+ * file relates to the database without querying for it.  For every
+ * item this holds only what the import rules compare: its create time,
+ * modification time, category, privacy level, and a fingerprint of
+ * its description.  These are kept in parallel primitive arrays,
+ * addressed by a {@link LongIntHashMap} from the item ID to its slot.
+ * <p>
+ * The description of an encrypted item is decrypted while the index
+ * is loaded if we are given the key, a page at a time; otherwise its
+ * fingerprint is {@linkplain #hasFingerprint(int) unknown} and it
+ * never matches anything.
+ * </p>
+ * <p>
+ * A fingerprint is the length of the description together with a
+ * 64-bit FNV-1a hash of its characters.  Since the merger only compares
+ * them between items which already have the same ID, create time, and
+ * category, the chance of two different descriptions of the same length
+ * colliding is negligible, so the merger trusts the fingerprint rather
+ * than reading the description back from the database.
+ * This class is not thread-safe.
+ * </p>
+ *
+ * @author Trevin Beattie
+ */
+class ExistingItemIndex {
+
+    /** The number of items to read from the database at a time */
+    static final int PAGE_SIZE = 1000;
+
+    /** Flag for a slot whose description fingerprint is known */
+    private static final byte FLAG_FINGERPRINT = 1;
+
+    /** Flag for a slot whose item has been deleted */
+    private static final byte FLAG_DELETED = 2;
+
+    /** FNV-1a 64-bit offset basis */
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+
+    /** FNV-1a 64-bit prime */
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    /** Map from item ID to its slot in the arrays */
+    private final LongIntHashMap slotsById;
+
+    private long[] itemIds;
+    private long[] createTimes;
+    private long[] modTimes;
+    private long[] categoryIds;
+    private int[] privacy;
+    private long[] fingerprints;
+    private int[] descriptionLengths;
+    private byte[] flags;
+
+    /** The number of slots in use */
+    private int size = 0;
+
+    /**
+     * Create an empty index.
+     *
+     * @param expectedSize the number of items the index
+     * should hold without having to grow
+     */
+    ExistingItemIndex(int expectedSize) {
+        int capacity = Math.max(16, expectedSize);
+        slotsById = new LongIntHashMap(capacity);
+        itemIds = new long[capacity];
+        createTimes = new long[capacity];
+        modTimes = new long[capacity];
+        categoryIds = new long[capacity];
+        privacy = new int[capacity];
+        fingerprints = new long[capacity];
+        descriptionLengths = new int[capacity];
+        flags = new byte[capacity];
+    }
+
+    /**
+     * Read the index of all To Do items in the database.
+     *
+     * @param repository the repository to read
+     * @param decryptor the encryption object holding the key for
+     * the database&rsquo;s private items, or {@code null} to leave
+     * the fingerprints of encrypted descriptions unknown
+     *
+     * @return the index
+     *
+     * @throws RuntimeException if we fail to decrypt an existing item
+     */
+    static ExistingItemIndex load(ToDoRepository repository,
+                                  StringEncryption decryptor) {
+        ExistingItemIndex index =
+                new ExistingItemIndex(repository.countItems());
+        byte[][] codes = new byte[PAGE_SIZE][];
+        String[] plainText = new String[PAGE_SIZE];
+        long afterId = 0;
+        while (true) {
+            List<ToDoItem> page =
+                    repository.getItemSummaries(afterId, PAGE_SIZE);
+            boolean anyEncrypted = false;
+            for (int i = 0; i < page.size(); i++) {
+                ToDoItem item = page.get(i);
+                codes[i] = ((decryptor != null) && item.isEncrypted())
+                        ? item.getEncryptedDescription() : null;
+                anyEncrypted |= (codes[i] != null);
+            }
+            if (anyEncrypted) {
+                try {
+                    decryptor.decryptAll(codes, plainText);
+                } catch (EncryptionException e) {
+                    throw new RuntimeException(String.format(Locale.US,
+                            "Failed to decrypt existing To Do items"
+                            + " after #%d", afterId), e);
+                }
+            }
+            for (int i = 0; i < page.size(); i++) {
+                ToDoItem item = page.get(i);
+                if (!item.isEncrypted())
+                    index.put(item, item.getDescription());
+                else if (codes[i] != null)
+                    index.put(item, plainText[i]);
+                else
+                    index.put(item, null);
+            }
+            if (page.size() < PAGE_SIZE)
+                break;
+            afterId = page.get(page.size() - 1).getId();
+        }
+        // Don't leave plain text lying around
+        Arrays.fill(plainText, null);
+        return index;
+    }
+
+    /**
+     * Compute the fingerprint of a description.
+     *
+     * @param text the description; may be {@code null}
+     *
+     * @return the 64-bit FNV-1a hash of the text&rsquo;s characters
+     */
+    static long fingerprint(String text) {
+        long hash = FNV_OFFSET_BASIS;
+        if (text == null)
+            return hash;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            hash = (hash ^ (c & 0xff)) * FNV_PRIME;
+            hash = (hash ^ (c >>> 8)) * FNV_PRIME;
+        }
+        return hash;
+    }
+
+    /**
+     * Add or replace the entry for an item.
+     *
+     * @param item the item; only its ID, create time, modification
+     * time, category ID, and privacy level are used
+     * @param description the item&rsquo;s plain text description,
+     * or {@code null} if it is encrypted and we can&rsquo;t read it
+     */
+    void put(ToDoItem item, String description) {
+        int slot = slotsById.get(item.getId(), -1);
+        if (slot < 0) {
+            if (size == itemIds.length)
+                grow();
+            slot = size++;
+            slotsById.put(item.getId(), slot);
+        }
+        itemIds[slot] = item.getId();
+        createTimes[slot] = item.getCreateTime().toEpochMilli();
+        modTimes[slot] = item.getModTime().toEpochMilli();
+        categoryIds[slot] = item.getCategoryId();
+        privacy[slot] = item.getPrivate();
+        if (description != null) {
+            fingerprints[slot] = fingerprint(description);
+            descriptionLengths[slot] = description.length();
+            flags[slot] = FLAG_FINGERPRINT;
+        } else {
+            fingerprints[slot] = 0;
+            descriptionLengths[slot] = 0;
+            flags[slot] = 0;
+        }
+    }
+
+    /** Double the capacity of the arrays */
+    private void grow() {
+        int capacity = itemIds.length * 2;
+        itemIds = Arrays.copyOf(itemIds, capacity);
+        createTimes = Arrays.copyOf(createTimes, capacity);
+        modTimes = Arrays.copyOf(modTimes, capacity);
+        categoryIds = Arrays.copyOf(categoryIds, capacity);
+        privacy = Arrays.copyOf(privacy, capacity);
+        fingerprints = Arrays.copyOf(fingerprints, capacity);
+        descriptionLengths = Arrays.copyOf(descriptionLengths, capacity);
+        flags = Arrays.copyOf(flags, capacity);
+    }
+
+    /**
+     * Mark an item as deleted.  Its slot is not reused,
+     * but it will no longer be {@linkplain #find(long) found}.
+     *
+     * @param itemId the ID of the deleted item
+     */
+    void remove(long itemId) {
+        int slot = slotsById.get(itemId, -1);
+        if (slot >= 0)
+            flags[slot] = FLAG_DELETED;
+    }
+
+    /**
+     * Look up an item.
+     *
+     * @param itemId the ID of the item to find
+     *
+     * @return the item&rsquo;s slot in the index,
+     * or -1 if there is no item with that ID
+     */
+    int find(long itemId) {
+        int slot = slotsById.get(itemId, -1);
+        if ((slot < 0) || ((flags[slot] & FLAG_DELETED) != 0))
+            return -1;
+        return slot;
+    }
+
+    /** @return the number of items in the index, including deleted ones */
+    int size() {
+        return size;
+    }
+
+    /** @return the ID of the item in the given slot */
+    long getItemId(int slot) {
+        return itemIds[slot];
+    }
+
+    /** @return the create time of the item in the given slot (ms) */
+    long getCreateTime(int slot) {
+        return createTimes[slot];
+    }
+
+    /** @return the modification time of the item in the given slot (ms) */
+    long getModTime(int slot) {
+        return modTimes[slot];
+    }
+
+    /** @return the category ID of the item in the given slot */
+    long getCategoryId(int slot) {
+        return categoryIds[slot];
+    }
+
+    /** @return whether the item in the given slot is private */
+    boolean isPrivate(int slot) {
+        return privacy[slot] > 0;
+    }
+
+    /**
+     * @return whether the fingerprint of the description
+     * of the item in the given slot is known
+     */
+    boolean hasFingerprint(int slot) {
+        return (flags[slot] & FLAG_FINGERPRINT) != 0;
+    }
+
+    /**
+     * Check whether the description of the item in the given slot
+     * matches another description, by comparing their fingerprints.
+     *
+     * @param slot the slot of the item
+     * @param description the other (plain text) description
+     *
+     * @return {@code true} if the fingerprints match; {@code false}
+     * if they differ or the item&rsquo;s fingerprint is unknown
+     */
+    boolean descriptionMatches(int slot, String description) {
+        if ((description == null) || !hasFingerprint(slot) ||
+                (descriptionLengths[slot] != description.length()))
+            return false;
+        return fingerprints[slot] == fingerprint(description);
+    }
+
+}
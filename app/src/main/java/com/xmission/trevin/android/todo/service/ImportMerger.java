@@ -0,0 +1,753 @@
+/*
+ * Copyright © 2026 Trevin Beattie
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.xmission.trevin.android.todo.service;
+
+import static com.xmission.trevin.android.todo.data.ToDoPreferences.*;
+
+import android.util.Log;
+
+import com.xmission.trevin.android.todo.data.ToDoCategory;
+import com.xmission.trevin.android.todo.data.ToDoItem;
+import com.xmission.trevin.android.todo.data.ToDoPreferences;
+import com.xmission.trevin.android.todo.provider.ToDoRepository;
+import com.xmission.trevin.android.todo.service.XMLImporter.CategoryEntry;
+import com.xmission.trevin.android.todo.service.XMLImporter.ImportType;
+import com.xmission.trevin.android.todo.service.XMLImporter.OpMode;
+import com.xmission.trevin.android.todo.util.EncryptionException;
+import com.xmission.trevin.android.todo.util.PasswordMismatchException;
+import com.xmission.trevin.android.todo.util.PasswordRequiredException;
+import com.xmission.trevin.android.todo.util.StringEncryption;
+
+import java.time.DateTimeException;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.util.*;
+
+/**
+ * Merges preferences, categories, and To Do items read from a backup
+ * file into the database according to an {@link ImportType}.  This
+ * holds the rules shared by every backup format; an importer only
+ * has to read its file and hand the records to this class in order:
+ * preferences and metadata, then categories, then items.
+ * <p>
+ * This must be used from within a single repository transaction.
+ * </p>
+ *
+ * @author Trevin Beattie
+ */
+class ImportMerger {
+
+    /** Tag for the debug logger */
+    public static final String LOG_TAG = "ImportMerger";
+
+    /**
+     * The number of new items to hold before inserting them
+     * all at once when doing a clean import
+     */
+    static final int INSERT_BATCH_SIZE = 500;
+
+    /** Per-entry database operations */
+    private enum Operation {
+        /** New item; add the record */
+        INSERT,
+        /** Existing item; replace the record */
+        UPDATE,
+        /** Existing item; do not modify it */
+        SKIP
+    }
+
+    /** The To Do preferences */
+    private final ToDoPreferences prefs;
+
+    /** The repository to which we write records */
+    private final ToDoRepository repository;
+
+    /** How to merge items from the file with those in the database */
+    private final ImportType importType;
+
+    /** Whether to import private records */
+    private final boolean importPrivate;
+
+    /** The encryption object used to decrypt records from the file */
+    private final StringEncryption decryptor;
+
+    /**
+     * The encryption object used to encrypt private records for the database
+     */
+    private final StringEncryption encryptor;
+
+    /** Progress updater for the import */
+    private final ProgressBarUpdater progressUpdater;
+
+    /**
+     * The total number of records declared in the import file,
+     * or -1 if its size is unknown.
+     */
+    int totalRecords = -1;
+
+    /** The current number of records processed */
+    int processedRecords = 0;
+
+    /** Categories from the import file, mapped by the file&rsquo;s id */
+    private final Map<Long,CategoryEntry> categoriesByID = new HashMap<>();
+
+    /** Flag indicating we have merged the categories */
+    private boolean categoriesRead = false;
+
+    /** Next free record ID (counting both the import file and local database) */
+    private long nextFreeRecordID = 1;
+
+    /** Flag indicating the import file is an incremental export */
+    private boolean delta = false;
+
+    /**
+     * The time at which an incremental export was written,
+     * if known; items in the database modified after this
+     * are not deleted by the file&rsquo;s tombstones.
+     */
+    private Instant deltaExportTime = null;
+
+    /**
+     * Index of the items already in the database, used to decide
+     * conflicts when doing anything other than a clean import.
+     * This is loaded when we reach the To Do items.
+     */
+    private ExistingItemIndex existingItems = null;
+
+    /** New items waiting to be inserted in the next batch */
+    private final List<ToDoItem> pendingInserts =
+            new ArrayList<>(INSERT_BATCH_SIZE);
+
+    /**
+     * Create a new merger with the provided parameters.
+     *
+     * @param prefs the To Do preferences.
+     * @param repository The repository to which we should write records.
+     * @param importType how to merge items from the import file
+     * with those in the database.
+     * @param importPrivate whether to include private records and the
+     * password hash in the import.
+     * @param decryptor an encryption object used to decrypt encrypted
+     * records from the import file, or {@code null} if no password
+     * was given for the file or we are not importing private records.
+     * @param encryptor an encryption object used to encrypt private
+     * records before writing to the database, or {@code null} to leave
+     * private records unencrypted or if not importing private records.
+     * @param progressUpdater a class to call back while we are processing
+     * the data to mark our progress.
+     */
+    ImportMerger(ToDoPreferences prefs,
+                 ToDoRepository repository,
+                 ImportType importType,
+                 boolean importPrivate,
+                 StringEncryption decryptor,
+                 StringEncryption encryptor,
+                 ProgressBarUpdater progressUpdater) {
+        this.prefs = prefs;
+        this.repository = repository;
+        this.importType = importType;
+        this.importPrivate = importPrivate;
+        this.decryptor = decryptor;
+        this.encryptor = encryptor;
+        this.progressUpdater = progressUpdater;
+    }
+
+    /** @return whether the categories have been merged */
+    boolean isCategoriesRead() {
+        return categoriesRead;
+    }
+
+    /**
+     * Count a record which the importer has processed itself,
+     * such as a preference or metadatum, and update the progress.
+     *
+     * @param mode the current mode of operation
+     */
+    void countRecord(OpMode mode) {
+        processedRecords++;
+        progressUpdater.updateProgress(XMLImporter.getModeText(mode),
+                processedRecords, totalRecords, true);
+    }
+
+    /**
+     * Set the current preferences by the ones read from the import file.
+     *
+     * @param prefsMap the preference values read from the file,
+     * keyed by preference name
+     */
+    void setPreferences(Map<String,String> prefsMap) {
+        Log.d(LOG_TAG, ".setPreferences(" + prefsMap.keySet() + ")");
+        if (importType == ImportType.TEST)
+            // Don't set anything in test mode.
+            return;
+
+        ToDoPreferences.Editor prefsEditor =
+                prefs.edit();
+        if (prefsMap.containsKey(TPREF_SORT_ORDER)) {
+            try {
+                prefsEditor.setSortOrder(
+                        Integer.parseInt(prefsMap.get(TPREF_SORT_ORDER)));
+            } catch (NumberFormatException x) {
+                Log.e(LOG_TAG, "Invalid sort order index: "
+                        + prefsMap.get(TPREF_SORT_ORDER));
+                // Ignore this change
+            }
+        }
+        if (prefsMap.containsKey(TPREF_SHOW_CHECKED))
+            prefsEditor.setShowChecked(
+                    Boolean.parseBoolean(prefsMap.get(TPREF_SHOW_CHECKED)));
+        if (prefsMap.containsKey(TPREF_SHOW_DUE_DATE))
+            prefsEditor.setShowDueDate(
+                    Boolean.parseBoolean(prefsMap.get(TPREF_SHOW_DUE_DATE)));
+        if (prefsMap.containsKey(TPREF_SHOW_PRIORITY))
+            prefsEditor.setShowPriority(
+                    Boolean.parseBoolean(prefsMap.get(TPREF_SHOW_PRIORITY)));
+        if (prefsMap.containsKey(TPREF_SHOW_CATEGORY))
+            prefsEditor.setShowCategory(
+                    Boolean.parseBoolean(prefsMap.get(TPREF_SHOW_CATEGORY)));
+        if (prefsMap.containsKey(TPREF_NOTIFICATION_VIBRATE))
+            prefsEditor.setNotificationVibrate(
+                    Boolean.parseBoolean(prefsMap.get(
+                            TPREF_NOTIFICATION_VIBRATE)));
+        /*
+         * Note that we are not changing whether private/encrypted records
+         * are shown.  If the user wanted encrypted records, he should have
+         * set the password in the PreferencesActivity both when exporting
+         * and importing the file.
+         */
+        if (prefsMap.containsKey(TPREF_NOTIFICATION_SOUND)) {
+            try {
+                prefsEditor.setNotificationSound(
+                        Long.parseLong(prefsMap.get(TPREF_NOTIFICATION_SOUND)));
+            } catch (NumberFormatException x) {
+                Log.e(LOG_TAG, "Invalid notification sound index: "
+                        + prefsMap.get(TPREF_NOTIFICATION_SOUND), x);
+                // Ignore this change
+            }
+        }
+        if (prefsMap.containsKey(TPREF_SELECTED_CATEGORY)) {
+            try {
+                prefsEditor.setSelectedCategory(
+                        Long.parseLong(prefsMap.get(TPREF_SELECTED_CATEGORY)));
+            } catch (NumberFormatException x) {
+                Log.e(LOG_TAG, "Invalid category index: "
+                        + prefsMap.get(TPREF_SELECTED_CATEGORY), x);
+                // Ignore this change
+            }
+        }
+        Boolean useLocalZone = null;
+        if (prefsMap.containsKey(TPREF_LOCAL_TIME_ZONE)) {
+            useLocalZone = Boolean.parseBoolean(
+                    prefsMap.get(TPREF_LOCAL_TIME_ZONE));
+        }
+        ZoneId fixedZone = null;
+        if (prefsMap.containsKey(TPREF_FIXED_TIME_ZONE)) {
+            try {
+                fixedZone = ZoneId.of(prefsMap.get(TPREF_FIXED_TIME_ZONE));
+                // Set this regardless of the useLocalZone flag so it's
+                // available when the user toggles from local back to fixed.
+                prefsEditor.setTimeZone(fixedZone);
+            } catch (DateTimeException x) {
+                Log.e(LOG_TAG, "Invalid time zone ID: "
+                        + prefsMap.get(TPREF_FIXED_TIME_ZONE), x);
+                // Ignore this zone
+            }
+        }
+        if (useLocalZone == Boolean.TRUE)
+            prefsEditor.setTimeZoneLocal();
+
+        prefsEditor.finish();
+    }
+
+    /**
+     * Import metadata from the import file.
+     * At this time we only support checking the password hash,
+     * but this <i>must</i> be done before attempting to import any
+     * encrypted records.
+     *
+     * @throws RuntimeException if {@code importPrivate} is true
+     * and the metadata includes {@value StringEncryption#METADATA_PASSWORD_HASH}
+     * but {@code xmlPassword} is {@code null} or does not match
+     * the password hash.
+     */
+    void checkMetadata(Map<String,byte[]> metadata) {
+        Log.d(LOG_TAG, ".checkMetadata(" + metadata.keySet() + ")");
+        if (importPrivate && metadata.containsKey(
+                StringEncryption.METADATA_PASSWORD_HASH)) {
+            if (decryptor == null)
+                throw new PasswordRequiredException("Import file is password-"
+                        + "protected but no password was provided");
+            if (!decryptor.checkPassword(metadata.get(
+                    StringEncryption.METADATA_PASSWORD_HASH)))
+                throw new PasswordMismatchException("Password does not match"
+                        + " the one used to encrypt the import file");
+        }
+    }
+
+    /**
+     * Merge the category list from the import file with the database.
+     *
+     * @param categories the categories read from the file
+     */
+    void mergeCategories(List<CategoryEntry> categories) {
+        Log.d(LOG_TAG, ".mergeCategories(" + importType + ")");
+        String opText = XMLImporter.getModeText(OpMode.CATEGORIES);
+        long maxId = -1;
+        for (CategoryEntry category : categories) {
+            if (category.id > maxId)
+                maxId = category.id;
+        }
+        // Read in the current list of categories
+        Map<Long,String> categoryIDMap = new HashMap<>();
+        Map<String,Long> categoryNameMap = new HashMap<>();
+        if (importType == ImportType.CLEAN) {
+            Log.d(LOG_TAG,
+                    ".mergeCategories: removing all existing categories");
+            repository.deleteAllCategories();
+        } else {
+            for (ToDoCategory category : repository.getCategories()) {
+                categoryIDMap.put(category.getId(), category.getName());
+                categoryNameMap.put(category.getName(), category.getId());
+                if (category.getId() > maxId)
+                    maxId = category.getId();
+            }
+        }
+
+        switch (importType) {
+
+            case CLEAN:
+                // There are no pre-existing categories
+                for (CategoryEntry fileCategory : categories) {
+                    // Skip the Unfiled category
+                    if (fileCategory.id == ToDoCategory.UNFILED) {
+                        fileCategory.newID = fileCategory.id;
+                    } else {
+                        Log.d(LOG_TAG, String.format(
+                                ".mergeCategories: adding %d \"%s\"",
+                                fileCategory.id, fileCategory.name));
+                        ToDoCategory localCategory = new ToDoCategory();
+                        localCategory.setId(fileCategory.id);
+                        localCategory.setName(fileCategory.name);
+                        localCategory = repository.insertCategory(localCategory);
+                        fileCategory.newID = localCategory.getId();
+                    }
+                    categoriesByID.put(fileCategory.id, fileCategory);
+                    processedRecords++;
+                    progressUpdater.updateProgress(opText,
+                            processedRecords, totalRecords, true);
+                }
+                break;
+
+            case REVERT:
+                /*
+                 * First remove all conflicting names.
+                 * DO NOT add new categories in the same loop,
+                 * as that may lead to inconsistencies between
+                 * what's in the database and our maps.
+                 */
+                for (CategoryEntry fileCategory : categories) {
+                    if ((categoryNameMap.containsKey(fileCategory.name)) &&
+                            (categoryNameMap.get(fileCategory.name)
+                                    != fileCategory.id)) {
+                        long oldId = categoryNameMap.get(fileCategory.name);
+                        Log.d(LOG_TAG, String.format(Locale.US,
+                                ".mergeCategories: \"%s\" already exists"
+                                        + " with ID %d; deleting it.",
+                                fileCategory.name, oldId));
+                        repository.deleteCategory(oldId);
+                        categoryIDMap.remove(oldId);
+                        categoryNameMap.remove(fileCategory.name);
+                    }
+                }
+                for (CategoryEntry fileCategory : categories) {
+                    if (categoryIDMap.containsKey(fileCategory.id)) {
+                        if (!categoryIDMap.get(fileCategory.id)
+                                .equals(fileCategory.name)) {
+                            Log.d(LOG_TAG, String.format(Locale.US,
+                                    ".mergeCategories: replacing"
+                                            + " \"%s\" with \"%s\"",
+                                    categoryIDMap.get(fileCategory.id),
+                                    fileCategory.name));
+                            repository.updateCategory(fileCategory.id,
+                                    fileCategory.name);
+                        }
+                        fileCategory.newID = fileCategory.id;
+                    }
+                    else {
+                        Log.d(LOG_TAG, String.format(Locale.US,
+                                ".mergeCategories: adding %d \"%s\"",
+                                fileCategory.id, fileCategory.name));
+                        ToDoCategory localCategory = new ToDoCategory();
+                        localCategory.setId(fileCategory.id);
+                        localCategory.setName(fileCategory.name);
+                        localCategory = repository.insertCategory(localCategory);
+                        fileCategory.newID = localCategory.getId();
+                    }
+                    categoriesByID.put(fileCategory.id, fileCategory);
+                    processedRecords++;
+                    progressUpdater.updateProgress(opText,
+                            processedRecords, totalRecords, true);
+                }
+                break;
+
+            case UPDATE:
+                /*
+                 * Overwrite if newer.  But since categories
+                 * have no time stamp, this item acts like merge.
+                 */
+            case MERGE:
+            case ADD:
+                for (CategoryEntry fileCategory : categories) {
+                    if (categoryNameMap.containsKey(fileCategory.name)) {
+                        fileCategory.newID =
+                                categoryNameMap.get(fileCategory.name);
+                    } else {
+                        Log.d(LOG_TAG, String.format(Locale.US,
+                                ".mergeCategories: adding \"%s\"",
+                                fileCategory.name));
+                        ToDoCategory localCategory = new ToDoCategory();
+                        localCategory.setId(fileCategory.id);
+                        localCategory.setName(fileCategory.name);
+                        // Use a new ID if there is a conflict
+                        if (categoryIDMap.containsKey(fileCategory.id))
+                            localCategory.setId(++maxId);
+                        localCategory = repository.insertCategory(localCategory);
+                        fileCategory.newID = localCategory.getId();
+                    }
+                    categoriesByID.put(fileCategory.id, fileCategory);
+                    processedRecords++;
+                    progressUpdater.updateProgress(opText,
+                            processedRecords, totalRecords, true);
+                }
+                break;
+
+            case TEST:
+                // Do nothing.
+                for (CategoryEntry fileCategory : categories) {
+                    fileCategory.newID = fileCategory.id;
+                    categoriesByID.put(fileCategory.newID, fileCategory);
+                }
+                processedRecords += categories.size();
+                progressUpdater.updateProgress(opText,
+                        processedRecords, totalRecords, true);
+                break;
+            }
+
+        categoriesRead = true;
+    }
+
+    /**
+     * Prepare to import To Do records.
+     *
+     * @param maxId the maximum item ID declared by the import file,
+     * if any; otherwise this should be -1.
+     *
+     * @throws IllegalStateException if the categories have not
+     * been merged yet
+     * @throws PasswordMismatchException if the current password
+     * does not match the database
+     */
+    void startToDoSection(long maxId) {
+        if (!categoriesRead)
+            throw new IllegalStateException(
+                    "To Do items encountered before categories");
+        if ((encryptor != null) && !encryptor.checkPassword(repository))
+            throw new PasswordMismatchException(
+                    "Current password is incorrect");
+        if (importType == ImportType.CLEAN) {
+            Log.d(LOG_TAG, "Removing all existing To Do items");
+            repository.deleteAllItems();
+        } else if (importType != ImportType.TEST) {
+            getExistingItems();
+        }
+        nextFreeRecordID = Math.max(maxId, repository.getMaxItemId()) + 1;
+    }
+
+    /**
+     * Get the index of items in the database, reading it
+     * if we haven&rsquo;t done so yet.
+     *
+     * @return the index of existing items
+     */
+    private ExistingItemIndex getExistingItems() {
+        if (existingItems == null) {
+            long startTime = System.nanoTime();
+            // Only a merge compares descriptions
+            existingItems = ExistingItemIndex.load(repository,
+                    (importType == ImportType.MERGE) ? encryptor : null);
+            Log.d(LOG_TAG, String.format(Locale.US,
+                    "Indexed %d existing To Do items in %.3f seconds",
+                    existingItems.size(),
+                    (System.nanoTime() - startTime) / 1.0e+9));
+        }
+        return existingItems;
+    }
+
+    /**
+     * Note that the import file is an incremental export, which only
+     * holds the items changed since the previous export along with
+     * tombstones for the items deleted in between.
+     *
+     * @param exportTime the time at which the file was exported,
+     * or {@code null} if unknown
+     *
+     * @throws IllegalStateException if this is a clean import, which
+     * would leave nothing in the database but the changed items
+     */
+    void startDelta(Instant exportTime) {
+        if (importType == ImportType.CLEAN)
+            throw new IllegalStateException("An incremental export cannot"
+                    + " be used for a clean import; restore the full"
+                    + " export it is based on first");
+        delta = true;
+        deltaExportTime = exportTime;
+    }
+
+    /** @return whether the import file is an incremental export */
+    boolean isDelta() {
+        return delta;
+    }
+
+    /**
+     * Apply a tombstone from an incremental export: an item which
+     * was deleted some time after the previous export.  When reverting,
+     * the item with the same ID is removed from the database; when
+     * updating, it is only removed if it has not been modified since
+     * the file was exported.  The other import types leave the
+     * database&rsquo;s items alone, since their ID&rsquo;s need not
+     * correspond to those in the file.
+     *
+     * @param itemId the ID of the deleted item
+     */
+    void deleteToDo(long itemId) {
+        if ((importType == ImportType.REVERT) ||
+                (importType == ImportType.UPDATE)) {
+            ExistingItemIndex index = getExistingItems();
+            int slot = index.find(itemId);
+            if ((slot >= 0) && (importPrivate || !index.isPrivate(slot))) {
+                if ((importType == ImportType.UPDATE) &&
+                        (deltaExportTime != null) &&
+                        (index.getModTime(slot)
+                                > deltaExportTime.toEpochMilli())) {
+                    Log.d(LOG_TAG, String.format(Locale.US,
+                            "To Do item #%d was modified after it was"
+                                    + " deleted from the export; keeping it",
+                            itemId));
+                } else {
+                    repository.deleteItem(itemId);
+                    index.remove(itemId);
+                }
+            }
+        }
+
+        processedRecords++;
+        progressUpdater.updateProgress(XMLImporter.getModeText(OpMode.ITEMS),
+                processedRecords, totalRecords, true);
+    }
+
+    /**
+     * Merge a To Do item from the import file into the database.
+     * When doing a clean import, new items are held and inserted
+     * in batches; {@link #flushInserts()} must be called after
+     * the last item.
+     *
+     * @param item the item read from the import file.  Its category
+     * ID is that of the file, and its text may be encrypted with the
+     * file&rsquo;s password.  This object will be modified and may
+     * be kept until the next batch is inserted.
+     *
+     * @throws RuntimeException if we fail to encrypt a private item.
+     */
+    void mergeToDo(ToDoItem item) {
+        if (item.isPrivate() && !importPrivate) {
+            // Skip private records
+            processedRecords++;
+            return;
+        }
+
+        if (categoriesByID.containsKey(item.getCategoryId())) {
+            item.setCategoryId(categoriesByID.get(
+                    item.getCategoryId()).newID);
+        } else {
+            Log.d(LOG_TAG, String.format(Locale.US,
+                    "To Do item #%d's category #%d was not imported",
+                    item.getId(),
+                    item.getCategoryId()));
+            item.setCategoryId(ToDoCategory.UNFILED);
+        }
+
+        if (item.isEncrypted()) {
+            if (decryptor == null)
+                throw new PasswordRequiredException(
+                        "No password provided for decrypting private records");
+            try {
+                String[] plainText = decryptor.decryptAll(
+                        item.getEncryptedDescription(),
+                        item.getEncryptedNote());
+                item.setDescription(plainText[0]);
+                if (plainText[1] != null)
+                    item.setNote(plainText[1]);
+                // Temporarily mark unencrypted
+                item.setPrivate(StringEncryption.NO_ENCRYPTION);
+            } catch (EncryptionException e) {
+                throw new EncryptionException(String.format(Locale.US,
+                        "Failed to decrypt To Do item #%d",
+                        item.getId()), e);
+            }
+        }
+        /*
+         * Keep the plain text description now,
+         * since it may be encrypted before we compare it.
+         */
+        String plainDescription = item.getDescription();
+        if (item.isPrivate() && (encryptor != null)) {
+            // Re-encrypt if possible
+            try {
+                byte[][] cipherText = encryptor.encryptAll(
+                        item.getDescription(),
+                        item.getNote());
+                item.setEncryptedDescription(cipherText[0]);
+                item.setDescription(null);
+                if (cipherText[1] != null) {
+                    item.setEncryptedNote(cipherText[1]);
+                    item.setNote(null);
+                }
+                item.setPrivate(StringEncryption.encryptionType());
+            } catch (EncryptionException e) {
+                throw new EncryptionException(String.format(Locale.US,
+                        "Failed to encrypt To Do item #%d",
+                        item.getId()), e);
+            }
+        }
+
+        ExistingItemIndex index = null;
+        int slot = -1;
+        if ((importType != ImportType.CLEAN) &&
+                (importType != ImportType.TEST)) {
+            index = getExistingItems();
+            slot = index.find(item.getId());
+        }
+        long createTime = item.getCreateTime().toEpochMilli();
+
+        // Assume we're going to insert a new record by default
+        Operation op = Operation.INSERT;
+        switch (importType) {
+
+            case CLEAN:
+                // All items are new
+                break;
+
+            case REVERT:
+                // Overwrite if it's the same item (same ID and creation time)
+                if (slot >= 0) {
+                    if (index.getCreateTime(slot) == createTime)
+                        op = Operation.UPDATE;
+                    else
+                        // Not the same item!  Assign a new ID.
+                        item.setId(nextFreeRecordID++);
+                }
+                break;
+
+            case UPDATE:
+                // Overwrite if it's the same item _and_ newer
+                if (slot >= 0) {
+                    if (index.getCreateTime(slot) == createTime) {
+                        if (item.getModTime().toEpochMilli()
+                                > index.getModTime(slot))
+                            op = Operation.UPDATE;
+                        else
+                            op = Operation.SKIP;
+                    } else {
+                        // Not the same item!  Assign a new ID.
+                        item.setId(nextFreeRecordID++);
+                    }
+                }
+                break;
+
+            case MERGE:
+                // Overwrite if newer and the same category and description;
+                // make a new entry if the category or description differ.
+                if (slot >= 0) {
+                    if ((index.getCreateTime(slot) == createTime) &&
+                            (index.getCategoryId(slot)
+                                    == item.getCategoryId()) &&
+                            index.descriptionMatches(slot,
+                                    plainDescription)) {
+                        if (item.getModTime().toEpochMilli()
+                                > index.getModTime(slot))
+                            op = Operation.UPDATE;
+                        else
+                            op = Operation.SKIP;
+                    } else {
+                        // Conflict; change the ID
+                        item.setId(nextFreeRecordID++);
+                    }
+                }
+                break;
+
+            case ADD:
+                // All items are new, but may need a new ID
+                if (slot >= 0)
+                    item.setId(nextFreeRecordID++);
+                break;
+
+            case TEST:
+                // Do nothing
+                op = Operation.SKIP;
+                break;
+
+        }
+
+        switch (op) {
+
+            case INSERT:
+                if (importType == ImportType.CLEAN) {
+                    // There is nothing to look up, so inserts can wait
+                    pendingInserts.add(item);
+                    if (pendingInserts.size() >= INSERT_BATCH_SIZE)
+                        flushInserts();
+                } else {
+                    repository.insertItem(item);
+                    // Later items in the file may have the same ID
+                    index.put(item, plainDescription);
+                }
+                break;
+
+            case UPDATE:
+                repository.updateItem(item);
+                index.put(item, plainDescription);
+                break;
+
+        }
+
+        processedRecords++;
+        progressUpdater.updateProgress(XMLImporter.getModeText(OpMode.ITEMS),
+                processedRecords, totalRecords, true);
+    }
+
+    /**
+     * Insert any new items which are waiting for the next batch.
+     * This must be called after the last To Do item has been merged.
+     */
+    void flushInserts() {
+        if (pendingInserts.isEmpty())
+            return;
+        repository.insertItems(pendingInserts);
+        pendingInserts.clear();
+    }
+
+}
@@ -53,7 +53,8 @@ import java.util.*;
  *
  * @author Trevin Beattie
  */
-public class PalmImportWorker extends Worker implements ProgressBarUpdater {
+public class PalmImportWorker extends Worker
+        implements ProgressBarUpdater, ProgressAggregator.Listener {
 
     public static final String TAG = "PalmImportWorker";
 
@@ -100,13 +101,15 @@ public class PalmImportWorker extends Worker implements ProgressBarUpdater {
     private final boolean importPrivate;
 
     /**
-     * The password used to encrypt private records in the database.
+     * The key used to encrypt private records in the database,
+     * borrowed from the global encryption object while the worker runs.
      * If {@code null}, private records will not be encrypted.
      */
-    private String currentPassword = null;
+    private StringEncryption.KeyHandle keyHandle = null;
 
-    /** Internal time when we last updated the async progress */
-    private long lastProgressTimeNano;
+    /** Limits how often we post progress and measures throughput */
+    private final ProgressAggregator progressAggregator =
+            new ProgressAggregator(this);
 
     private String lastProgressMessage = null;
 
@@ -153,18 +156,6 @@ public class PalmImportWorker extends Worker implements ProgressBarUpdater {
         importPrivate = params.getInputData().getBoolean(
                 IMPORT_PRIVATE, false);
 
-        /*
-         * Note: We don't verify the current password when initializing
-         * the worker; there could be a race condition where it may change
-         * between here and importing data.  This check will be done
-         * by the import method inside a database transaction.
-         */
-        if (importPrivate) {
-            StringEncryption se = StringEncryption.holdGlobalEncryption();
-            if (se.hasKey())
-                currentPassword = new String(se.getPassword());
-        }
-
         datFileName = params.getInputData().getString(PALM_DATA_FILENAME);
         if (datFileName.startsWith("content://")) {
             // This is a URI from the Storage Access Framework
@@ -234,15 +225,24 @@ public class PalmImportWorker extends Worker implements ProgressBarUpdater {
     public Result doWork() {
         Log.d(TAG, ".doWork");
         long startTimeNano = System.nanoTime();
-        lastProgressTimeNano = startTimeNano;
         updateProgress(context.getString(
                 R.string.ProgressMessageImportReading), 0, 0, false);
         repository.open(context);
+        /*
+         * Note: We don't verify the current password here; there could
+         * be a race condition where it may change between here and
+         * importing data.  This check will be done by the import method
+         * inside a database transaction.  Borrowing the key means
+         * the importer doesn't have to derive it again.
+         */
+        if (importPrivate)
+            keyHandle = StringEncryption.borrowGlobalKey();
         try {
             PalmImporter.importData(repository, datFileName,
                     inStream, importType, importPrivate,
-                    currentPassword, this);
-            return Result.success();
+                    (keyHandle == null) ? null : keyHandle.getEncryption(),
+                    this);
+            return Result.success(progressAggregator.toSummaryData());
         }
 
         catch (Exception e) {
@@ -256,6 +256,10 @@ public class PalmImportWorker extends Worker implements ProgressBarUpdater {
 
         finally {
             long now = System.nanoTime();
+            if (keyHandle != null) {
+                keyHandle.release();
+                keyHandle = null;
+            }
             repository.release(context);
             Log.d(TAG, String.format("Finished work in %.4f seconds",
                     (now - startTimeNano) / 1.0e+9));
@@ -269,27 +273,33 @@ public class PalmImportWorker extends Worker implements ProgressBarUpdater {
      *                   adding categories, adding items)
      * @param importCount the number of items imported so far
      * @param totalCount the total number of items to be imported
-     * @param throttle if {@code true}, skip updating the progress
-     *                 if it&rsquo;s been less than 250 ms since
-     *                 we last posted our progress.
+     * @param throttle if {@code true}, let the aggregator skip
+     *                 this update if we posted our progress recently.
      */
     @Override
     public void updateProgress(String modeString,
                                 int importCount, int totalCount,
                                 boolean throttle) {
         lastProgressMessage = modeString;
-        if (throttle) {
-            long now = System.nanoTime();
-            if ((now - lastProgressTimeNano) < 250000000L)
-                return;
-            lastProgressTimeNano = now;
-        }
-        Data progressData = new Data.Builder()
-                .putString(PROGRESS_CURRENT_MODE, modeString)
-                .putInt(PROGRESS_MAX_COUNT, totalCount)
-                .putInt(PROGRESS_CURRENT_COUNT, importCount)
-                .build();
-        setProgressAsync(progressData);
+        progressAggregator.updateProgress(modeString,
+                importCount, totalCount, throttle);
+    }
+
+    /**
+     * Post a progress update which got through the aggregator.
+     *
+     * @param modeString the current mode of operation
+     * @param currentCount the number of records processed so far
+     * @param totalCount the total number of records to process
+     * @param recordsPerSecond the measured throughput
+     * @param etaMillis the estimated time remaining, or -1 if unknown
+     */
+    @Override
+    public void onProgress(String modeString,
+                           int currentCount, int totalCount,
+                           float recordsPerSecond, long etaMillis) {
+        setProgressAsync(ProgressAggregator.toProgressData(modeString,
+                currentCount, totalCount, recordsPerSecond, etaMillis));
     }
 
     /**
@@ -268,6 +268,45 @@ public class PalmImporter implements Runnable {
             encryptor = new StringEncryption();
             encryptor.setPassword(currentPassword.toCharArray());
         }
+        try {
+            importData(repository, fileName, inStream, importType,
+                    importPrivate, encryptor, progressUpdater);
+        } finally {
+            if (encryptor != null)
+                encryptor.forgetPassword();
+        }
+    }
+
+    /**
+     * Import the categories and To Do records from a Palm database
+     * to our To Do database, encrypting private records with a key
+     * that has already been set up; e.g. one borrowed from the global
+     * encryption object with {@link StringEncryption#borrowGlobalKey()},
+     * which avoids deriving the key again.
+     * @param repository The repository to which we should write records.
+     * It should have already been opened by the caller.
+     * @param fileName the name of the XML file being read, if known
+     * (may be {@code null}).
+     * @param inStream the stream from which we should read the Palm data.
+     * @param importType how to merge items from the Palm DB file
+     * with those in the database.
+     * @param importPrivate whether to include private records in the import.
+     * @param encryptor the encryption object with which to encrypt any
+     * private records imported, or {@code null} to leave them unencrypted
+     * or if we are not importing any private records.  Its password is
+     * checked against the database before any records are imported.
+     * The caller remains responsible for forgetting its password.
+     * @param progressUpdater a class to call back while we are processing
+     * the data to mark our progress.
+     */
+    public static void importData(ToDoRepository repository,
+                                  String fileName,
+                                  InputStream inStream,
+                                  ImportType importType,
+                                  boolean importPrivate,
+                                  StringEncryption encryptor,
+                                  ProgressBarUpdater progressUpdater)
+            throws IOException {
         progressUpdater.updateProgress(modeText.get(OpMode.START),
                 0, -1, true);
         try {
@@ -1135,11 +1174,11 @@ public class PalmImporter implements Runnable {
             newRecord.setNote(dataToDo.note
                     .replace("\r", ""));
         if (newRecord.isEncrypted()) try {
-            newRecord.setEncryptedDescription(encryptor.encrypt(
-                    newRecord.getDescription()));
-            if (newRecord.getNote() != null)
-                newRecord.setEncryptedNote(encryptor.encrypt(
-                        newRecord.getNote()));
+            byte[][] cipherText = encryptor.encryptAll(
+                    newRecord.getDescription(), newRecord.getNote());
+            newRecord.setEncryptedDescription(cipherText[0]);
+            if (cipherText[1] != null)
+                newRecord.setEncryptedNote(cipherText[1]);
         } catch (EncryptionException gsx) {
             newRecord.setPrivate(StringEncryption.NO_ENCRYPTION);
         }
@@ -17,6 +17,7 @@
 package com.xmission.trevin.android.todo.service;
 
 import com.xmission.trevin.android.todo.R;
+import com.xmission.trevin.android.todo.data.ToDoPreferences;
 import com.xmission.trevin.android.todo.provider.ToDoRepository;
 import com.xmission.trevin.android.todo.provider.ToDoRepositoryImpl;
 import com.xmission.trevin.android.todo.util.AuthenticationException;
@@ -43,7 +44,8 @@ import java.util.Locale;
  *
  * @author Trevin Beattie
  */
-public class PasswordChangeWorker extends Worker implements ProgressBarUpdater {
+public class PasswordChangeWorker extends Worker
+        implements ProgressBarUpdater, ProgressAggregator.Listener {
 
     private static final String TAG = "PasswordChangeWorker";
 
@@ -67,8 +69,9 @@ public class PasswordChangeWorker extends Worker implements ProgressBarUpdater {
     /** The new password (if any) used to (re-)encrypt private records */
     private char[] newPassword;
 
-    /** Internal time when we last updated the async progress */
-    private long lastProgressTimeNano;
+    /** Limits how often we post progress and measures throughput */
+    private final ProgressAggregator progressAggregator =
+            new ProgressAggregator(this);
 
     /**
      * Initialize the PasswordChangeWorker using the standard system services
@@ -118,8 +121,10 @@ public class PasswordChangeWorker extends Worker implements ProgressBarUpdater {
 
     /**
      * Main entry point of the worker.  This checks the old password,
-     * runs the main work loop in a database transaction, then updates
-     * or clears the password in the global encryption object as needed.
+     * locks private records in the UI, runs the main work loop in a
+     * series of database transactions (resuming an interrupted change
+     * if there is one), then updates or clears the password in the
+     * global encryption object as needed.
      */
     @Override
     @NonNull
@@ -135,18 +140,70 @@ public class PasswordChangeWorker extends Worker implements ProgressBarUpdater {
         final String badPasswordMessage =
                 context.getString(R.string.ToastBadPassword);
 
+        /*
+         * If private records are unlocked with the old password,
+         * borrow the key rather than deriving it again.
+         */
+        StringEncryption.KeyHandle keyHandle = null;
+        StringEncryption oldEncryption = null;
+        StringEncryption newEncryption = null;
+        if (oldPassword != null) {
+            keyHandle = StringEncryption.borrowGlobalKey();
+            if (keyHandle != null) {
+                char[] globalPassword =
+                        keyHandle.getEncryption().getPassword();
+                if (Arrays.equals(globalPassword, oldPassword)) {
+                    oldEncryption = keyHandle.getEncryption();
+                } else {
+                    keyHandle.release();
+                    keyHandle = null;
+                }
+                Arrays.fill(globalPassword, (char) 0);
+            }
+            if (oldEncryption == null) {
+                oldEncryption = new StringEncryption();
+                oldEncryption.setPassword(oldPassword);
+            }
+        }
+        if (newPassword != null) {
+            newEncryption = new StringEncryption();
+            newEncryption.setPassword(newPassword);
+            newEncryption.addSalt();
+        }
+
+        /*
+         * Until the change is finished the database holds a mix of
+         * items under the old and new keys, so lock private records
+         * in the UI while we work.  If they were unlocked, the new
+         * key is put back when we're done.
+         */
+        ToDoPreferences prefs = ToDoPreferences.getInstance(context);
+        boolean wasUnlocked = globalEncryption.hasKey();
+        boolean wasShowingEncrypted = prefs.showEncrypted();
+        if (wasUnlocked) {
+            globalEncryption.forgetPassword();
+            prefs.setShowEncrypted(false);
+        }
+
         repository.open(context);
         try {
-            PasswordChanger.changePassword(repository,
-                    oldPassword, newPassword, this);
+            /*
+             * Commit the change in chunks so that if we are interrupted,
+             * WorkManager can run us again with the same passwords
+             * and pick up where we left off.
+             */
+            PasswordChanger.changePasswordInChunks(repository,
+                    oldEncryption, newEncryption,
+                    PasswordChanger.DEFAULT_CHUNK_SIZE, this);
 
-            if ((newPassword != null) && globalEncryption.hasKey()) {
-                globalEncryption.setPassword(newPassword);
-                globalEncryption.checkPassword(repository);
+            if ((newEncryption != null) && wasUnlocked) {
+                // The new key was derived for the change; no need to again
+                globalEncryption.adoptKey(newEncryption);
+                prefs.setShowEncrypted(wasShowingEncrypted);
             } else {
                 globalEncryption.forgetPassword();
             }
-            return Result.success();
+            return Result.success(progressAggregator.toSummaryData());
         }
 
         catch (AuthenticationException ae) {
@@ -178,6 +235,12 @@ public class PasswordChangeWorker extends Worker implements ProgressBarUpdater {
         finally {
             long now = System.nanoTime();
             repository.release(context);
+            if (keyHandle != null)
+                keyHandle.release();
+            else if (oldEncryption != null)
+                oldEncryption.forgetPassword();
+            if (newEncryption != null)
+                newEncryption.forgetPassword();
             StringEncryption.releaseGlobalEncryption(context);
             if (oldPassword != null)
                 Arrays.fill(oldPassword, (char) 0);
@@ -193,18 +256,25 @@ public class PasswordChangeWorker extends Worker implements ProgressBarUpdater {
     public void updateProgress(String mode,
                                int currentCount, int totalCount,
                                boolean throttle) {
-        if (throttle) {
-            long now = System.nanoTime();
-            if ((now - lastProgressTimeNano) < 250000000L)
-                return;
-            lastProgressTimeNano = now;
-        }
-        Data progressData = new Data.Builder()
-                .putString(PROGRESS_CURRENT_MODE, mode)
-                .putInt(PROGRESS_MAX_COUNT, totalCount)
-                .putInt(PROGRESS_CURRENT_COUNT, currentCount)
-                .build();
-        setProgressAsync(progressData);
+        progressAggregator.updateProgress(mode,
+                currentCount, totalCount, throttle);
+    }
+
+    /**
+     * Post a progress update which got through the aggregator.
+     *
+     * @param modeString the current mode of operation
+     * @param currentCount the number of records processed so far
+     * @param totalCount the total number of records to process
+     * @param recordsPerSecond the measured throughput
+     * @param etaMillis the estimated time remaining, or -1 if unknown
+     */
+    @Override
+    public void onProgress(String modeString,
+                           int currentCount, int totalCount,
+                           float recordsPerSecond, long etaMillis) {
+        setProgressAsync(ProgressAggregator.toProgressData(modeString,
+                currentCount, totalCount, recordsPerSecond, etaMillis));
     }
 
     /**
@@ -21,14 +21,25 @@ import android.util.Log;
 import androidx.annotation.NonNull;
 
 import com.xmission.trevin.android.todo.data.ToDoItem;
+import com.xmission.trevin.android.todo.data.ToDoMetadata;
 import com.xmission.trevin.android.todo.provider.ToDoRepository;
+import com.xmission.trevin.android.todo.util.InvalidPasswordHashException;
 import com.xmission.trevin.android.todo.util.PasswordMismatchException;
 import com.xmission.trevin.android.todo.util.PasswordRequiredException;
 import com.xmission.trevin.android.todo.util.StringEncryption;
 
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayDeque;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 /**
  * Encrypts and decrypts private entries in the database
@@ -40,6 +51,32 @@ public class PasswordChanger implements Runnable {
 
     private static final String TAG = "PasswordChangeer";
 
+    /** The number of items to run through the cipher at a time */
+    private static final int BATCH_SIZE = 64;
+
+    /**
+     * The default number of items to change in each transaction
+     * when changing the password in chunks
+     */
+    public static final int DEFAULT_CHUNK_SIZE = 8 * BATCH_SIZE;
+
+    /**
+     * Name of the metadata used to record the progress of a password
+     * change being done in chunks.  This is only present while such
+     * a change is incomplete.
+     */
+    public static final String METADATA_CHANGE_CHECKPOINT =
+            "PasswordChanger.Checkpoint";
+
+    /**
+     * The number of threads used to decrypt and re-encrypt items.
+     * We leave one core for the thread reading and writing the database;
+     * with fewer than three cores there&rsquo;s nothing to gain from
+     * a separate pool, so the batches are processed in line.
+     */
+    private static int cryptoThreads = Math.min(4,
+            Runtime.getRuntime().availableProcessors() - 1);
+
     /** Modes of operation */
     public enum OpMode {
         START,
@@ -73,6 +110,17 @@ public class PasswordChanger implements Runnable {
         modeText.put(mode, text);
     }
 
+    /**
+     * Change the number of threads used to decrypt and re-encrypt items.
+     * This is intended for unit testing.
+     *
+     * @param threads the number of threads; 1 or less to process
+     * items on the same thread that reads and writes them
+     */
+    static void setCryptoThreads(int threads) {
+        cryptoThreads = threads;
+    }
+
     @NonNull
     private final ToDoRepository repository;
 
@@ -91,6 +139,218 @@ public class PasswordChanger implements Runnable {
     /** Progress updater passed to the {@link #changePassword} method */
     private final ProgressBarUpdater progressUpdater;
 
+    /** The progress message for the current operation */
+    private String progressMode;
+
+    /** The total number of items to be changed */
+    private int changeTarget;
+
+    /** The number of items written back so far */
+    private int numChanged;
+
+    /** The number of items decrypted so far */
+    private int countDecrypted = 0;
+
+    /** The number of items encrypted so far */
+    private int countEncrypted = 0;
+
+    /**
+     * Whether the last call to {@link #processItems} reached the end
+     * of the private items
+     */
+    private boolean reachedEnd;
+
+    /** The saved progress of a password change done in chunks */
+    private Checkpoint checkpoint;
+
+    /**
+     * The progress of a password change done in chunks.  This is
+     * stored in the database along with each chunk of changed items,
+     * so that if the change is interrupted it can pick up from the
+     * last item committed.  Since the items up to that point have been
+     * encrypted with the new key and the rest are still encrypted with
+     * the old key, the checkpoint also holds the salted hashes of both
+     * passwords; the database can be read at any checkpoint by
+     * checking each password against its hash to recover the salt
+     * and key.  The stored bytes consist of:
+     * <table>
+     *   <tr><th>Size</th><th>Content</th></tr>
+     *   <tr><td>1</td><td>Checkpoint format version (1)</td></tr>
+     *   <tr><td>8</td><td>The ID of the last item changed</td></tr>
+     *   <tr><td>4</td><td>The number of items changed so far</td></tr>
+     *   <tr><td>4</td><td>The total number of items to change</td></tr>
+     *   <tr><td>2</td><td>Length of the old password hash,
+     *   or 0 if there was no old password</td></tr>
+     *   <tr><td>?</td><td>The old password hash</td></tr>
+     *   <tr><td>2</td><td>Length of the new password hash,
+     *   or 0 if the password is being removed</td></tr>
+     *   <tr><td>?</td><td>The new password hash</td></tr>
+     * </table>
+     * All numbers are in MSB order.
+     */
+    static final class Checkpoint {
+        static final int VERSION = 1;
+        /** The hash of the old password, or {@code null} if none */
+        byte[] oldPasswordHash;
+        /** The hash of the new password, or {@code null} if none */
+        byte[] newPasswordHash;
+        /** Items with ID&rsquo;s up to this have been changed */
+        long lastId;
+        /** The number of items changed so far */
+        int numChanged;
+        /** The total number of items to be changed */
+        int changeTarget;
+
+        /** @return the checkpoint in the form stored in the database */
+        byte[] toBytes() {
+            int oldLength = (oldPasswordHash == null)
+                    ? 0 : oldPasswordHash.length;
+            int newLength = (newPasswordHash == null)
+                    ? 0 : newPasswordHash.length;
+            ByteBuffer bb = ByteBuffer.allocate(21 + oldLength + newLength)
+                    .order(ByteOrder.BIG_ENDIAN);
+            bb.put((byte) VERSION);
+            bb.putLong(lastId);
+            bb.putInt(numChanged);
+            bb.putInt(changeTarget);
+            bb.putShort((short) oldLength);
+            if (oldLength > 0)
+                bb.put(oldPasswordHash);
+            bb.putShort((short) newLength);
+            if (newLength > 0)
+                bb.put(newPasswordHash);
+            return bb.array();
+        }
+
+        /**
+         * Read a checkpoint from the form stored in the database.
+         *
+         * @param data the stored checkpoint
+         *
+         * @return the checkpoint
+         *
+         * @throws InvalidPasswordHashException if the data is
+         * not a valid checkpoint
+         */
+        static Checkpoint fromBytes(byte[] data)
+                throws InvalidPasswordHashException {
+            ByteBuffer bb = ByteBuffer.wrap(data).order(ByteOrder.BIG_ENDIAN);
+            Checkpoint cp = new Checkpoint();
+            try {
+                int version = bb.get() & 0xff;
+                if (version != VERSION)
+                    throw new InvalidPasswordHashException(
+                            "Unsupported password change checkpoint version "
+                                    + version);
+                cp.lastId = bb.getLong();
+                cp.numChanged = bb.getInt();
+                cp.changeTarget = bb.getInt();
+                int length = bb.getShort() & 0xffff;
+                if (length > 0) {
+                    cp.oldPasswordHash = new byte[length];
+                    bb.get(cp.oldPasswordHash);
+                }
+                length = bb.getShort() & 0xffff;
+                if (length > 0) {
+                    cp.newPasswordHash = new byte[length];
+                    bb.get(cp.newPasswordHash);
+                }
+            } catch (BufferUnderflowException bux) {
+                throw new InvalidPasswordHashException(
+                        "Invalid password change checkpoint");
+            }
+            if ((cp.oldPasswordHash == null) && (cp.newPasswordHash == null))
+                throw new InvalidPasswordHashException(
+                        "Password change checkpoint has no passwords");
+            return cp;
+        }
+    }
+
+    /**
+     * A batch of items passing through the password change pipeline,
+     * along with the buffers for running their descriptions and notes
+     * through the cipher together.  Each item&rsquo;s description goes
+     * in an even slot of the buffers and its note in the following
+     * odd slot.  Calling the batch decrypts the items with the old
+     * password and encrypts them with the new one.
+     */
+    private class Batch implements Callable<Batch> {
+        final ToDoItem[] items = new ToDoItem[BATCH_SIZE];
+        final String[] plainText = new String[2 * BATCH_SIZE];
+        final byte[][] cipherText = new byte[2 * BATCH_SIZE][];
+        /** The number of items in the batch */
+        int size = 0;
+        /** Whether any of the items in the batch are encrypted */
+        boolean anyEncrypted = false;
+        /** The number of items in the batch which were decrypted */
+        int decrypted = 0;
+        /** The number of items in the batch which were encrypted */
+        int encrypted = 0;
+
+        /**
+         * Clear out the slots past a given point,
+         * which may be left over from the last batch.
+         *
+         * @param from the number of items to keep
+         */
+        void clear(int from) {
+            Arrays.fill(items, from, BATCH_SIZE, null);
+            Arrays.fill(plainText, 2 * from, 2 * BATCH_SIZE, null);
+            Arrays.fill(cipherText, 2 * from, 2 * BATCH_SIZE, null);
+        }
+
+        @Override
+        public Batch call() {
+            decrypted = 0;
+            encrypted = 0;
+            if (anyEncrypted) {
+                for (int i = 0; i < size; i++) {
+                    ToDoItem item = items[i];
+                    cipherText[2 * i] = item.isEncrypted()
+                            ? item.getEncryptedDescription() : null;
+                    cipherText[2 * i + 1] = item.isEncrypted()
+                            ? item.getEncryptedNote() : null;
+                }
+                oldEncryption.decryptAll(cipherText, plainText);
+                for (int i = 0; i < size; i++) {
+                    ToDoItem item = items[i];
+                    if (!item.isEncrypted())
+                        continue;
+                    item.setDescription(plainText[2 * i]);
+                    item.setEncryptedDescription(null);
+                    if (item.getEncryptedNote() != null) {
+                        item.setNote(plainText[2 * i + 1]);
+                        item.setEncryptedNote(null);
+                    }
+                    item.setPrivate(StringEncryption.NO_ENCRYPTION);
+                    decrypted++;
+                }
+            }
+
+            if (newEncryption != null) {
+                for (int i = 0; i < size; i++) {
+                    plainText[2 * i] = items[i].getDescription();
+                    plainText[2 * i + 1] = items[i].getNote();
+                }
+                newEncryption.encryptAll(plainText, cipherText);
+                for (int i = 0; i < size; i++) {
+                    ToDoItem item = items[i];
+                    item.setEncryptedDescription(cipherText[2 * i]);
+                    item.setDescription(null);
+                    if (item.getNote() != null) {
+                        item.setEncryptedNote(cipherText[2 * i + 1]);
+                        item.setNote(null);
+                    }
+                    item.setPrivate(StringEncryption.encryptionType());
+                    encrypted++;
+                }
+            }
+            // Don't hang on to any decrypted text
+            Arrays.fill(plainText, 0, 2 * size, null);
+            return this;
+        }
+    }
+
     /**
      * Change the password.  Decrypt any encrypted records in the database
      * using the old password, encrypt any private records using the new
@@ -119,10 +379,9 @@ public class PasswordChanger implements Runnable {
             newEncryption.setPassword(newPassword);
             newEncryption.addSalt();
         }
-        PasswordChanger changer = new PasswordChanger(repository,
-                oldEncryption, newEncryption, progressUpdater);
         try {
-            repository.runInTransaction(changer);
+            changePassword(repository, oldEncryption, newEncryption,
+                    progressUpdater);
         } finally {
             if (oldEncryption != null)
                 oldEncryption.forgetPassword();
@@ -131,6 +390,108 @@ public class PasswordChanger implements Runnable {
         }
     }
 
+    /**
+     * Change the password using encryption objects which have already
+     * been set up by the caller; e.g. the old key may be borrowed from
+     * the global encryption object with
+     * {@link StringEncryption#borrowGlobalKey()}, which avoids deriving
+     * it again.  The caller remains responsible for forgetting the
+     * passwords of both objects.
+     *
+     * @param repository The repository in which to store the password changes
+     * @param oldEncryption an encryption object with the old password
+     * (or {@code null} if there was no password previously set).
+     * @param newEncryption an encryption object with the new password
+     * and fresh salt (or {@code null} if removing the password).
+     * @param progressUpdater a class to call back while we are processing
+     * the data to mark our progress.
+     */
+    public static void changePassword(ToDoRepository repository,
+                                      StringEncryption oldEncryption,
+                                      StringEncryption newEncryption,
+                                      ProgressBarUpdater progressUpdater) {
+        PasswordChanger changer = new PasswordChanger(repository,
+                oldEncryption, newEncryption, progressUpdater);
+        repository.runInTransaction(changer);
+    }
+
+    /**
+     * Change the password in a series of transactions rather than one,
+     * committing the changes every {@code chunkSize} items along with a
+     * {@link Checkpoint} of our progress.  This keeps the rollback
+     * journal small on a very large database.  Between chunks the
+     * database holds a mix of items encrypted with the old and new
+     * keys, which neither key can fully read; callers must keep
+     * private records locked for as long as {@link #hasCheckpoint}
+     * is {@code true}.  If the change is interrupted,
+     * calling this again (or {@link #changePassword}) with the same
+     * passwords resumes it after the last committed chunk; the new
+     * password&rsquo;s salt is taken from the checkpoint, so the
+     * salt already set on {@code newEncryption} will be replaced.
+     * Until the change is finished, a different password change
+     * will be refused.
+     * <p>
+     * As with {@link #changePassword(ToDoRepository, StringEncryption,
+     * StringEncryption, ProgressBarUpdater)}, the caller remains
+     * responsible for forgetting the passwords of both objects.
+     * </p>
+     *
+     * @param repository The repository in which to store the password changes
+     * @param oldEncryption an encryption object with the old password
+     * (or {@code null} if there was no password previously set).
+     * @param newEncryption an encryption object with the new password
+     * and fresh salt (or {@code null} if removing the password).
+     * @param chunkSize the number of items to change in each transaction
+     * @param progressUpdater a class to call back while we are processing
+     * the data to mark our progress.
+     *
+     * @throws IllegalArgumentException if {@code chunkSize} is less than 1
+     * @throws PasswordMismatchException if either password doesn&rsquo;t
+     * match those of an interrupted password change
+     */
+    public static void changePasswordInChunks(ToDoRepository repository,
+                                              StringEncryption oldEncryption,
+                                              StringEncryption newEncryption,
+                                              int chunkSize,
+                                              ProgressBarUpdater progressUpdater) {
+        if (chunkSize < 1)
+            throw new IllegalArgumentException(
+                    "Chunk size must be positive");
+        PasswordChanger changer = new PasswordChanger(repository,
+                oldEncryption, newEncryption, progressUpdater);
+        changer.runInChunks(chunkSize);
+    }
+
+    /**
+     * @param repository the repository to check
+     *
+     * @return whether the repository has an unfinished password change
+     * which must be resumed with the same passwords.  Until it is,
+     * private records can&rsquo;t be read with either password.
+     */
+    public static boolean hasCheckpoint(ToDoRepository repository) {
+        return repository.getMetadataByName(
+                METADATA_CHANGE_CHECKPOINT) != null;
+    }
+
+    /**
+     * Read the checkpoint of an unfinished password change.
+     * This is intended for unit testing.
+     *
+     * @param repository the repository to check
+     *
+     * @return the checkpoint, or {@code null} if there is none
+     *
+     * @throws InvalidPasswordHashException if the stored
+     * checkpoint is invalid
+     */
+    static Checkpoint readCheckpoint(ToDoRepository repository)
+            throws InvalidPasswordHashException {
+        ToDoMetadata saved = repository.getMetadataByName(
+                METADATA_CHANGE_CHECKPOINT);
+        return (saved == null) ? null : Checkpoint.fromBytes(saved.getValue());
+    }
+
     private PasswordChanger(ToDoRepository repository,
                             StringEncryption oldEncryption,
                             StringEncryption newEncryption,
@@ -143,84 +504,335 @@ public class PasswordChanger implements Runnable {
 
     @Override
     public void run() {
-        String progressMode;
+        // Finish off any interrupted chunked change in one go
+        if (!resumeCheckpoint()) {
+            verifyPasswords();
+            changeTarget = repository.countPrivateItems();
+            numChanged = 0;
+        }
+        long startTime = System.nanoTime();
+        processItems((checkpoint == null) ? 0 : checkpoint.lastId,
+                Integer.MAX_VALUE);
+        long now = System.nanoTime();
+        Log.d(TAG, String.format(
+                "%d items decrypted, %d encrypted in %.3fs",
+                countDecrypted, countEncrypted,
+                (now - startTime) / 1.0e+9));
+        finish();
+    }
+
+    /**
+     * Change the password in chunks, committing each one along with
+     * a checkpoint.  The first transaction verifies the passwords and
+     * records the starting checkpoint (or picks up an existing one);
+     * the last one stores the new password hash and removes the
+     * checkpoint.
+     *
+     * @param chunkSize the number of items to change in each transaction
+     */
+    private void runInChunks(final int chunkSize) {
+        repository.runInTransaction(new Runnable() {
+            @Override
+            public void run() {
+                if (resumeCheckpoint())
+                    return;
+                verifyPasswords();
+                changeTarget = repository.countPrivateItems();
+                numChanged = 0;
+                checkpoint = new Checkpoint();
+                if (oldEncryption != null)
+                    checkpoint.oldPasswordHash = repository.getMetadataByName(
+                            StringEncryption.METADATA_PASSWORD_HASH).getValue();
+                if (newEncryption != null)
+                    checkpoint.newPasswordHash =
+                            newEncryption.getPasswordHash();
+                checkpoint.changeTarget = changeTarget;
+                repository.upsertMetadata(METADATA_CHANGE_CHECKPOINT,
+                        checkpoint.toBytes());
+            }
+        });
+
+        long startTime = System.nanoTime();
+        reachedEnd = false;
+        while (!reachedEnd) {
+            repository.runInTransaction(new Runnable() {
+                @Override
+                public void run() {
+                    long lastId = processItems(checkpoint.lastId, chunkSize);
+                    if (lastId == checkpoint.lastId)
+                        return;
+                    checkpoint.lastId = lastId;
+                    checkpoint.numChanged = numChanged;
+                    repository.upsertMetadata(METADATA_CHANGE_CHECKPOINT,
+                            checkpoint.toBytes());
+                }
+            });
+        }
+        long now = System.nanoTime();
+        Log.d(TAG, String.format(
+                "%d items decrypted, %d encrypted in %.3fs",
+                countDecrypted, countEncrypted,
+                (now - startTime) / 1.0e+9));
+
+        repository.runInTransaction(new Runnable() {
+            @Override
+            public void run() {
+                finish();
+            }
+        });
+    }
+
+    /**
+     * Check the old password against the database
+     * and set the progress message accordingly.
+     *
+     * @throws PasswordMismatchException if the old password is incorrect
+     * @throws PasswordRequiredException if the database has a password
+     * but no old password was given
+     */
+    private void verifyPasswords() {
         if (oldEncryption != null) {
             if (!oldEncryption.checkPassword(repository))
                 throw new PasswordMismatchException(
                         "The old password is incorrect");
-            progressMode = (newEncryption == null)
-                    ? modeText.get(OpMode.DECRYPT)
-                    : modeText.get(OpMode.REENCRYPT);
         } else {
             if (newEncryption.hasPassword(repository))
                 throw new PasswordRequiredException(
                         "The old password has not been provided");
+        }
+        setProgressMode();
+    }
+
+    /** Set the progress message for the kind of change we&rsquo;re making */
+    private void setProgressMode() {
+        if (oldEncryption != null)
+            progressMode = (newEncryption == null)
+                    ? modeText.get(OpMode.DECRYPT)
+                    : modeText.get(OpMode.REENCRYPT);
+        else
             progressMode = modeText.get(OpMode.ENCRYPT);
+    }
+
+    /**
+     * Pick up the checkpoint of an interrupted password change, if any.
+     * Both passwords are checked against the hashes in the checkpoint;
+     * this also sets the new password&rsquo;s salt and key to the ones
+     * used for the items which have already been changed.
+     *
+     * @return {@code true} if a checkpoint was found,
+     * {@code false} if this is a new password change
+     *
+     * @throws PasswordMismatchException if either password does not
+     * match the interrupted change
+     * @throws PasswordRequiredException if the interrupted change
+     * had a password which was not given this time
+     */
+    private boolean resumeCheckpoint() {
+        checkpoint = readCheckpoint(repository);
+        if (checkpoint == null)
+            return false;
+        if (checkpoint.oldPasswordHash == null) {
+            if (oldEncryption != null)
+                throw new PasswordMismatchException("An unfinished password"
+                        + " change was setting a new password");
+        } else {
+            if (oldEncryption == null)
+                throw new PasswordRequiredException("The old password of"
+                        + " the unfinished change has not been provided");
+            if (!oldEncryption.checkPassword(checkpoint.oldPasswordHash))
+                throw new PasswordMismatchException("The old password does"
+                        + " not match the unfinished password change");
+        }
+        if (checkpoint.newPasswordHash == null) {
+            if (newEncryption != null)
+                throw new PasswordMismatchException("An unfinished password"
+                        + " change was removing the password");
+        } else {
+            if (newEncryption == null)
+                throw new PasswordRequiredException("The new password of"
+                        + " the unfinished change has not been provided");
+            if (!newEncryption.checkPassword(checkpoint.newPasswordHash))
+                throw new PasswordMismatchException("The new password does"
+                        + " not match the unfinished password change");
         }
+        setProgressMode();
+        changeTarget = checkpoint.changeTarget;
+        numChanged = checkpoint.numChanged;
+        Log.i(TAG, String.format(
+                "Resuming password change after item %d (%d of %d done)",
+                checkpoint.lastId, numChanged, changeTarget));
+        return true;
+    }
 
-        long[] privateItemIds = repository.getPrivateItemIds();
-        // The total number of entries to be changed
-        int changeTarget = privateItemIds.length;
-        // The current number of entries changed
-        int numChanged = 0;
-        int countDecrypted = 0;
-        int countEncrypted = 0;
-        long startTime = System.nanoTime();
-        for (long id : privateItemIds) {
-            ToDoItem item = repository.getItemById(id);
-            if (item == null) {
-                Log.w(TAG, String.format(
-                        "To Do item #%d disappeared while"
-                                + " changing the password!", id));
-                continue;
-            }
-            if (item.isEncrypted()) {
-                if (oldEncryption == null)
-                    throw new IllegalStateException("Encrypted record"
-                            + " found but no old password was provided");
-                item.setDescription(oldEncryption.decrypt(
-                        item.getEncryptedDescription()));
-                item.setEncryptedDescription(null);
-                if (item.getEncryptedNote() != null) {
-                    item.setNote(oldEncryption.decrypt(
-                            item.getEncryptedNote()));
-                    item.setEncryptedNote(null);
+    /**
+     * Decrypt and re-encrypt private items, starting after a given ID.
+     *
+     * @param afterId the ID of the last item already changed,
+     * or 0 to start from the beginning
+     * @param limit the maximum number of items to change
+     *
+     * @return the ID of the last item changed, or {@code afterId}
+     * if there were no more items.  Sets {@link #reachedEnd} if
+     * there are no private items left after the returned ID.
+     */
+    private long processItems(long afterId, int limit) {
+        /*
+         * This is a pipeline: this thread reads batches of items and
+         * hands each one to the crypto pool, which decrypts and
+         * re-encrypts them, while this thread goes on to read the next
+         * batches.  The finished batches are written back by this
+         * thread too, in the order they were read, since the database
+         * may only be used by the thread running the transaction.
+         * Batches are recycled once written so their buffers get reused.
+         * Only the ID, privacy, description, and note of each item are
+         * read and written; the other columns are left untouched.
+         */
+        final int threads = cryptoThreads;
+        ExecutorService cryptoPool = (threads > 1)
+                ? Executors.newFixedThreadPool(threads) : null;
+        ArrayDeque<Future<Batch>> inFlight = new ArrayDeque<>();
+        ArrayDeque<Batch> spareBatches = new ArrayDeque<>();
+        long lastId = afterId;
+        int remaining = limit;
+        reachedEnd = false;
+        try {
+            while (remaining > 0) {
+                Batch batch = spareBatches.isEmpty()
+                        ? new Batch() : spareBatches.pop();
+                int wanted = Math.min(BATCH_SIZE, remaining);
+                if (readBatch(lastId, wanted, batch) < wanted)
+                    reachedEnd = true;
+                if (batch.size == 0) {
+                    spareBatches.push(batch);
+                    break;
                 }
-                item.setPrivate(StringEncryption.NO_ENCRYPTION);
-                countDecrypted++;
-            }
-            if (newEncryption != null) {
-                item.setEncryptedDescription(newEncryption.encrypt(
-                        item.getDescription()));
-                item.setDescription(null);
-                if (item.getNote() != null) {
-                    item.setEncryptedNote(newEncryption.encrypt(
-                            item.getNote()));
-                    item.setNote(null);
+                lastId = batch.items[batch.size - 1].getId();
+                remaining -= batch.size;
+                if (cryptoPool == null) {
+                    batch.call();
+                    writeBatch(batch);
+                    spareBatches.push(batch);
+                } else {
+                    inFlight.add(cryptoPool.submit(batch));
+                    if (inFlight.size() >= 2 * threads) {
+                        batch = awaitBatch(inFlight.remove());
+                        writeBatch(batch);
+                        spareBatches.push(batch);
+                    }
                 }
-                item.setPrivate(StringEncryption.encryptionType());
-                countEncrypted++;
+                if (reachedEnd)
+                    break;
             }
-            repository.updateItem(item);
-            numChanged++;
-
-            // Periodically update our progress
-            progressUpdater.updateProgress(progressMode,
-                    numChanged, changeTarget, true);
+            while (!inFlight.isEmpty()) {
+                Batch batch = awaitBatch(inFlight.remove());
+                writeBatch(batch);
+                spareBatches.push(batch);
+            }
+        } finally {
+            if (cryptoPool != null) {
+                for (Future<Batch> f : inFlight)
+                    f.cancel(true);
+                cryptoPool.shutdownNow();
+            }
+            // Don't hang on to any decrypted text
+            for (Batch batch : spareBatches)
+                batch.clear(0);
         }
-        long now = System.nanoTime();
-        Log.d(TAG, String.format(
-                "%d items decrypted, %d encrypted in %.3fs",
-                countDecrypted, countEncrypted,
-                (now - startTime) / 1.0e+9));
+        return lastId;
+    }
+
+    /**
+     * Store the new password hash (or remove the old one)
+     * and any checkpoint once all items have been changed.
+     */
+    private void finish() {
         if (newEncryption == null) {
             if (oldEncryption != null)
                 oldEncryption.removePassword(repository);
         } else {
             newEncryption.storePassword(repository);
         }
+        if (checkpoint != null)
+            repository.deleteMetadata(METADATA_CHANGE_CHECKPOINT);
         progressUpdater.updateProgress(modeText.get(OpMode.FINISH),
                 numChanged, changeTarget, false);
     }
 
+    /**
+     * Read the next batch of private items from the database.
+     *
+     * @param afterId the ID of the last item in the previous batch,
+     * or 0 for the first batch
+     * @param limit the maximum number of items to read,
+     * up to {@link #BATCH_SIZE}
+     * @param batch the batch to fill in
+     *
+     * @return the number of items read, which is less than
+     * {@code limit} if there are no more private items
+     *
+     * @throws IllegalStateException if an encrypted item is found
+     * but there is no old password
+     */
+    private int readBatch(long afterId, int limit, Batch batch) {
+        batch.size = 0;
+        batch.anyEncrypted = false;
+        for (ToDoItem item : repository.getPrivateItemText(
+                afterId, limit)) {
+            if (item.isEncrypted()) {
+                if (oldEncryption == null)
+                    throw new IllegalStateException("Encrypted record"
+                            + " found but no old password was provided");
+                batch.anyEncrypted = true;
+            }
+            batch.items[batch.size++] = item;
+        }
+        if (batch.size < BATCH_SIZE)
+            batch.clear(batch.size);
+        return batch.size;
+    }
+
+    /**
+     * Wait for the crypto pool to finish a batch.
+     *
+     * @param future the pending batch
+     *
+     * @return the finished batch
+     *
+     * @throws RuntimeException (or a subclass) if the batch failed
+     */
+    private static Batch awaitBatch(Future<Batch> future) {
+        try {
+            return future.get();
+        } catch (ExecutionException ee) {
+            Throwable cause = ee.getCause();
+            if (cause instanceof RuntimeException)
+                throw (RuntimeException) cause;
+            if (cause instanceof Error)
+                throw (Error) cause;
+            throw new RuntimeException(cause);
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(
+                    "Interrupted while changing the password", ie);
+        }
+    }
+
+    /**
+     * Write a finished batch of items back to the database.
+     *
+     * @param batch the batch to write
+     */
+    private void writeBatch(Batch batch) {
+        countDecrypted += batch.decrypted;
+        countEncrypted += batch.encrypted;
+        for (int i = 0; i < batch.size; i++) {
+            repository.updateItemText(batch.items[i]);
+            numChanged++;
+
+            // Periodically update our progress
+            progressUpdater.updateProgress(progressMode,
+                    numChanged, changeTarget, true);
+        }
+    }
+
 }
@@ -0,0 +1,288 @@
+/*
+ * Copyright © 2026 Trevin Beattie
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.xmission.trevin.android.todo.service;
+
+import android.util.Log;
+
+import androidx.work.Data;
+
+import java.util.Locale;
+
+/**
+ * A {@link ProgressBarUpdater} which sits between a long-running
+ * operation and whatever displays its progress.  The importers,
+ * exporter, and password changer report their progress for every
+ * record; passing each of those on (e.g. as a WorkManager progress
+ * update) costs far more than processing the record itself.
+ * This only forwards a throttled update once a given time has
+ * passed or the count has advanced by a given percentage of the
+ * total since the last one was forwarded, whichever comes first.
+ * Unthrottled updates and any change in the mode or total are
+ * always forwarded.
+ * <p>
+ * Along the way this measures the throughput in records per second
+ * and estimates the time remaining.  The rate is measured from the
+ * first update with the current total, since a change of total
+ * usually means the operation has moved on to a new phase
+ * (e.g. from categories to items).
+ * </p><p>
+ * The workers publish what gets through as WorkManager {@link Data}
+ * using {@link #toProgressData} and {@link #toSummaryData()}.
+ * </p>
+ *
+ * @author Trevin Beattie
+ */
+public class ProgressAggregator implements ProgressBarUpdater {
+
+    private static final String TAG = "ProgressAggregator";
+
+    /** Default minimum time between forwarded updates in milliseconds */
+    public static final long DEFAULT_INTERVAL_MILLIS = 250;
+
+    /**
+     * Default percentage of the total by which the count must advance
+     * to force an update before the interval has passed
+     */
+    public static final int DEFAULT_PERCENT_STEP = 5;
+
+    /** Receiver of the progress updates which get through */
+    public interface Listener {
+        /**
+         * Called for each progress update that is forwarded.
+         *
+         * @param modeString the current mode of operation
+         * @param currentCount the number of records processed so far
+         * @param totalCount the total number of records to process,
+         *                   or 0 if indeterminate
+         * @param recordsPerSecond the throughput in the current phase,
+         *                   or 0 if it can&rsquo;t be measured yet
+         * @param etaMillis the estimated time remaining in the current
+         *                  phase in milliseconds, or -1 if unknown
+         */
+        void onProgress(String modeString,
+                        int currentCount, int totalCount,
+                        float recordsPerSecond, long etaMillis);
+    }
+
+    private final Listener listener;
+    private final long intervalNanos;
+    private final int percentStep;
+
+    /** Internal time when this aggregator was created */
+    private final long startNanos;
+
+    private String modeString = null;
+    private int currentCount = 0;
+    private int totalCount = Integer.MIN_VALUE;
+
+    /** Internal time when the current phase started */
+    private long phaseStartNanos;
+    /** The count at the start of the current phase */
+    private int phaseStartCount;
+
+    /** Internal time when we last forwarded an update */
+    private long lastForwardNanos;
+    /**
+     * The count at which the next throttled update will be
+     * forwarded regardless of the time
+     */
+    private long nextForwardCount;
+
+    /**
+     * Create an aggregator using the default interval and step.
+     *
+     * @param listener the receiver of forwarded progress updates
+     */
+    public ProgressAggregator(Listener listener) {
+        this(listener, DEFAULT_INTERVAL_MILLIS, DEFAULT_PERCENT_STEP);
+    }
+
+    /**
+     * Create an aggregator.
+     *
+     * @param listener the receiver of forwarded progress updates
+     * @param intervalMillis the minimum time between forwarded
+     *                       throttled updates in milliseconds
+     * @param percentStep the percentage of the total by which the
+     *                    count must advance to forward a throttled
+     *                    update before the interval has passed
+     *
+     * @throws IllegalArgumentException if the interval is negative
+     * or the step is not between 1 and 100
+     */
+    public ProgressAggregator(Listener listener,
+                              long intervalMillis, int percentStep) {
+        if (intervalMillis < 0)
+            throw new IllegalArgumentException(
+                    "Negative interval: " + intervalMillis);
+        if ((percentStep < 1) || (percentStep > 100))
+            throw new IllegalArgumentException(
+                    "Percent step out of range: " + percentStep);
+        this.listener = listener;
+        intervalNanos = intervalMillis * 1000000L;
+        this.percentStep = percentStep;
+        startNanos = nanoTime();
+        phaseStartNanos = startNanos;
+        lastForwardNanos = startNanos;
+    }
+
+    /**
+     * Get the current internal time in nanoseconds.
+     * Tests may override this to control the clock.
+     *
+     * @return the time from {@link System#nanoTime()}
+     */
+    protected long nanoTime() {
+        return System.nanoTime();
+    }
+
+    @Override
+    public void updateProgress(String modeString,
+                               int currentCount, int totalCount,
+                               boolean throttle) {
+        this.currentCount = currentCount;
+        if (totalCount != this.totalCount) {
+            this.totalCount = totalCount;
+            this.modeString = modeString;
+            phaseStartNanos = nanoTime();
+            phaseStartCount = currentCount;
+            forward(phaseStartNanos);
+            return;
+        }
+        if ((modeString != this.modeString) && ((modeString == null)
+                || !modeString.equals(this.modeString))) {
+            this.modeString = modeString;
+            throttle = false;
+        }
+        if (throttle && (currentCount < nextForwardCount)) {
+            long now = nanoTime();
+            if ((now - lastForwardNanos) < intervalNanos)
+                return;
+            forward(now);
+        } else {
+            forward(nanoTime());
+        }
+    }
+
+    /**
+     * Pass the current progress on to the listener
+     * and set the thresholds for the next update.
+     *
+     * @param now the current internal time
+     */
+    private void forward(long now) {
+        lastForwardNanos = now;
+        if (totalCount > 0)
+            nextForwardCount = (long) currentCount + Math.max(1L,
+                    (long) totalCount * percentStep / 100);
+        else
+            nextForwardCount = Long.MAX_VALUE;
+        float rate = rate(now);
+        long eta = -1;
+        if ((rate > 0) && (totalCount > 0))
+            eta = Math.max(0L, (long) ((totalCount - currentCount)
+                    * 1000.0 / rate));
+        listener.onProgress(modeString, currentCount, totalCount, rate, eta);
+    }
+
+    /**
+     * Compute the throughput of the current phase.
+     *
+     * @param now the current internal time
+     *
+     * @return the number of records per second,
+     * or 0 if it can&rsquo;t be measured yet
+     */
+    private float rate(long now) {
+        long elapsed = now - phaseStartNanos;
+        int processed = currentCount - phaseStartCount;
+        if ((elapsed <= 0) || (processed <= 0))
+            return 0;
+        return (float) (processed * 1.0e+9 / elapsed);
+    }
+
+    /**
+     * @return the most recent count reported, whether or not
+     * it was forwarded
+     */
+    public int getCurrentCount() {
+        return currentCount;
+    }
+
+    /**
+     * @return the time since this aggregator was created
+     * in milliseconds
+     */
+    public long getElapsedMillis() {
+        return (nanoTime() - startNanos) / 1000000L;
+    }
+
+    /**
+     * @return the current throughput of the last phase
+     * in records per second, or 0 if it can&rsquo;t be measured
+     */
+    public float getRecordsPerSecond() {
+        return rate(nanoTime());
+    }
+
+    /**
+     * Package a forwarded progress update for
+     * {@link androidx.work.ListenableWorker#setProgressAsync}.
+     * The arguments are those passed to {@link Listener#onProgress}.
+     *
+     * @param modeString the current mode of operation
+     * @param currentCount the number of records processed so far
+     * @param totalCount the total number of records to process
+     * @param recordsPerSecond the measured throughput
+     * @param etaMillis the estimated time remaining, or -1 if unknown
+     *
+     * @return the progress data
+     */
+    public static Data toProgressData(String modeString,
+                                      int currentCount, int totalCount,
+                                      float recordsPerSecond,
+                                      long etaMillis) {
+        return new Data.Builder()
+                .putString(PROGRESS_CURRENT_MODE, modeString)
+                .putInt(PROGRESS_MAX_COUNT, totalCount)
+                .putInt(PROGRESS_CURRENT_COUNT, currentCount)
+                .putFloat(PROGRESS_RECORDS_PER_SECOND, recordsPerSecond)
+                .putLong(PROGRESS_ETA_MILLIS, etaMillis)
+                .build();
+    }
+
+    /**
+     * Log the throughput of the finished work and package it
+     * as the output of a successful worker.
+     *
+     * @return the summary data
+     */
+    public Data toSummaryData() {
+        int count = getCurrentCount();
+        long elapsed = getElapsedMillis();
+        float rate = getRecordsPerSecond();
+        Log.i(TAG, String.format(Locale.US,
+                "Processed %d records in %d ms (%.1f records/s)",
+                count, elapsed, rate));
+        return new Data.Builder()
+                .putInt(PROGRESS_CURRENT_COUNT, count)
+                .putFloat(PROGRESS_RECORDS_PER_SECOND, rate)
+                .putLong(PROGRESS_ELAPSED_MILLIS, elapsed)
+                .build();
+    }
+
+}
@@ -36,6 +36,23 @@ public interface ProgressBarUpdater {
      * categories or items that have been imported so far
      */
     public static final String PROGRESS_CURRENT_COUNT = "ProgressCurrentCount";
+    /**
+     * The key of the progress (and final output) data that holds
+     * the measured throughput in records per second
+     */
+    public static final String PROGRESS_RECORDS_PER_SECOND =
+            "ProgressRecordsPerSecond";
+    /**
+     * The key of the progress data that holds the estimated time
+     * remaining in milliseconds, or -1 if it isn&rsquo;t known
+     */
+    public static final String PROGRESS_ETA_MILLIS = "ProgressEtaMillis";
+    /**
+     * The key of the final output data that holds the total
+     * time the operation took in milliseconds
+     */
+    public static final String PROGRESS_ELAPSED_MILLIS =
+            "ProgressElapsedMillis";
 
     /**
      * Update the progress indicator.
@@ -46,9 +63,9 @@ public interface ProgressBarUpdater {
      *                  so far.  Must not exceed {@code totalCount}.
      * @param totalCount the total number of items to be processed.
      *                  Set to 0 if the progress is indeterminate.
-     * @param throttle if {@code true}, skip updating the progress
-     *                 if it&rsquo;s been less than 250 ms since
-     *                 we last posted our progress.
+     * @param throttle if {@code true}, the update may be skipped
+     *                 if we posted our progress recently; see
+     *                 {@link ProgressAggregator}.
      */
     void updateProgress(String modeString,
                         int currentCount, int totalCount,
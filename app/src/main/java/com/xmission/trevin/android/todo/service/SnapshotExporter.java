@@ -0,0 +1,532 @@
+/*
+ * Copyright © 2026 Trevin Beattie
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.xmission.trevin.android.todo.service;
+
+import android.util.Log;
+
+import com.xmission.trevin.android.todo.data.*;
+import com.xmission.trevin.android.todo.data.repeat.*;
+import com.xmission.trevin.android.todo.provider.ToDoCursor;
+import com.xmission.trevin.android.todo.provider.ToDoRepository;
+import com.xmission.trevin.android.todo.provider.ToDoRepositoryImpl;
+import com.xmission.trevin.android.todo.provider.ToDoSchema;
+import com.xmission.trevin.android.todo.service.XMLExporter.OpMode;
+import com.xmission.trevin.android.todo.util.StringEncryption;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.*;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * This class exports the To Do list to a binary snapshot, which can
+ * be restored much faster than an XML backup.  The snapshot holds
+ * the same preferences, metadata, categories, and items as the XML
+ * export; encrypted descriptions and notes are stored as is.
+ * <p>
+ * All numbers are big-endian.  The file starts with a header:
+ * </p>
+ * <pre>
+ *   magic         8 bytes  &ldquo;ToDoSnap&rdquo;
+ *   version       int      {@value #FORMAT_VERSION}
+ *   db-version    int      the database version that was exported
+ *   exported      long     the export time in milliseconds
+ *   flags         int      {@link #FLAG_PRIVATE}
+ * </pre>
+ * <p>
+ * This is followed by the records, grouped into sections by type
+ * in the order preferences, metadata, categories, and items.  Each
+ * record is a type byte and an int length followed by that many bytes
+ * of data; readers must skip any data beyond the fields they know,
+ * which later versions may add.  After the records is an index with
+ * an int count of sections followed by one entry per section:
+ * </p>
+ * <pre>
+ *   type          byte     the type of record in the section
+ *   count         int      the number of records
+ *   offset        long     the file position of the first record
+ *   length        long     the total length of the records
+ *   max-id        long     the highest ID in the database, or -1
+ * </pre>
+ * <p>
+ * The file ends with a trailer giving the file position of the
+ * index as a long, the CRC-32 of everything before the trailer as
+ * an int, and the magic number again.
+ * </p>
+ * <p>
+ * Strings are written as an int byte length (-1 for {@code null})
+ * followed by UTF-8; binary data the same way without any encoding.
+ * </p>
+ *
+ * @author Trevin Beattie
+ */
+public class SnapshotExporter {
+
+    /** Tag for the debug logger */
+    public static final String LOG_TAG = "SnapshotExporter";
+
+    /** The usual file name extension for snapshot files */
+    public static final String FILE_SUFFIX = ".tdsnap";
+
+    /** The magic number at the start and end of every snapshot */
+    static final byte[] MAGIC = {
+            'T', 'o', 'D', 'o', 'S', 'n', 'a', 'p' };
+
+    /** The current version of the snapshot format */
+    public static final int FORMAT_VERSION = 1;
+
+    /** Header flag indicating private records were included */
+    public static final int FLAG_PRIVATE = 1;
+
+    /** The size of the snapshot header in bytes */
+    static final int HEADER_SIZE = MAGIC.length + 4 + 4 + 8 + 4;
+
+    /** The size of each index entry in bytes */
+    static final int INDEX_ENTRY_SIZE = 1 + 4 + 8 + 8 + 8;
+
+    /** The size of the snapshot trailer in bytes */
+    static final int TRAILER_SIZE = 8 + 4 + MAGIC.length;
+
+    /** The size of each record&rsquo;s type and length prefix */
+    static final int RECORD_PREFIX_SIZE = 1 + 4;
+
+    /* Record types */
+    static final byte RECORD_PREFERENCE = 1;
+    static final byte RECORD_METADATUM = 2;
+    static final byte RECORD_CATEGORY = 3;
+    static final byte RECORD_ITEM = 4;
+
+    /* Flags for the optional fields of a To Do item */
+    static final int ITEM_CHECKED = 0x01;
+    static final int ITEM_COMPLETED = 0x02;
+    static final int ITEM_DUE = 0x04;
+    static final int ITEM_HIDE = 0x08;
+    static final int ITEM_ALARM = 0x10;
+    static final int ITEM_NOTIFICATION = 0x20;
+    static final int ITEM_REPEAT = 0x40;
+    static final int ITEM_NOTE = 0x80;
+
+    /*
+     * Flags for the fields of a repeat interval.  These correspond
+     * to the repeat columns in the database and are written in this
+     * order; only the ones which apply to the interval are present.
+     */
+    static final int REPEAT_INCREMENT = 0x01;
+    static final int REPEAT_WEEK_DAYS = 0x02;
+    static final int REPEAT_DAY = 0x04;
+    static final int REPEAT_DAY2 = 0x08;
+    static final int REPEAT_WEEK = 0x10;
+    static final int REPEAT_WEEK2 = 0x20;
+    static final int REPEAT_MONTH = 0x40;
+    static final int REPEAT_END = 0x80;
+
+    /** The size of the output buffer in bytes */
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /** Writer for the snapshot file, keeping track of our position */
+    private final DataOutputStream out;
+
+    /** Checksum of everything written before the trailer */
+    private final CRC32 crc = new CRC32();
+
+    /** Buffer in which each record is assembled */
+    private final ByteArrayOutputStream recordBuffer =
+            new ByteArrayOutputStream(1024);
+
+    /** Writer for the record buffer */
+    private final DataOutputStream record =
+            new DataOutputStream(recordBuffer);
+
+    /** The index entries for the sections written so far */
+    private final ByteArrayOutputStream indexBuffer =
+            new ByteArrayOutputStream();
+
+    /** Writer for the index */
+    private final DataOutputStream index = new DataOutputStream(indexBuffer);
+
+    /** The number of sections written so far */
+    private int sectionCount = 0;
+
+    /** The type of records in the current section */
+    private byte sectionType;
+
+    /** The file position at which the current section started */
+    private long sectionStart;
+
+    /** The number of records in the current section */
+    private int sectionRecords;
+
+    /**
+     * Create a snapshot writer.
+     *
+     * @param outStream the stream to which to write the snapshot
+     */
+    private SnapshotExporter(OutputStream outStream) {
+        out = new DataOutputStream(new CheckedOutputStream(
+                new BufferedOutputStream(outStream, BUFFER_SIZE), crc));
+    }
+
+    /**
+     * Export the preferences, metadata, categories, and To Do records
+     * from the database to a snapshot file.
+     *
+     * @param prefs the To Do preferences.
+     * @param repository The repository from which to read records.
+     * It should have already been opened by the caller.
+     * @param outStream the stream to which we should write the snapshot.
+     * @param exportPrivate whether to include private records and the
+     * password hash in the export.  Encrypted records are written
+     * without decrypting them.
+     * @param progressUpdater a class to call back while we are processing
+     * the data to mark our progress.
+     *
+     * @throws IOException if there was an error writing the output stream
+     */
+    public static void export(ToDoPreferences prefs,
+                              ToDoRepository repository,
+                              OutputStream outStream,
+                              boolean exportPrivate,
+                              ProgressBarUpdater progressUpdater)
+            throws IOException {
+        SnapshotExporter exporter = new SnapshotExporter(outStream);
+        try {
+            exporter.write(prefs, repository, exportPrivate, progressUpdater);
+        } finally {
+            exporter.out.close();
+        }
+    }
+
+    /**
+     * Write the entire snapshot.
+     *
+     * @see #export
+     */
+    private void write(ToDoPreferences prefs,
+                       ToDoRepository repository,
+                       boolean exportPrivate,
+                       ProgressBarUpdater progressUpdater)
+            throws IOException {
+        // Get all of the preferences, metadata, and categories;
+        // these should be very short collections.
+        Map<String,?> prefsMap = prefs.getAllPreferences();
+        List<ToDoMetadata> metadata = repository.getMetadata();
+        List<ToDoCategory> categories = repository.getCategories();
+        int itemCount = repository.countItems();
+        if (!exportPrivate)
+            itemCount -= repository.countPrivateItems();
+        // Exclude the XML export watermark, and the password hash
+        // if we are not exporting private records
+        Iterator<ToDoMetadata> iter = metadata.iterator();
+        while (iter.hasNext()) {
+            String name = iter.next().getName();
+            if (XMLExporter.METADATA_EXPORT_WATERMARK.equals(name)
+                    || (!exportPrivate && StringEncryption
+                    .METADATA_PASSWORD_HASH.equals(name)))
+                iter.remove();
+        }
+        int totalCount = prefsMap.size() + metadata.size()
+                + categories.size() + itemCount;
+
+        out.write(MAGIC);
+        out.writeInt(FORMAT_VERSION);
+        out.writeInt(ToDoRepositoryImpl.DATABASE_VERSION);
+        out.writeLong(System.currentTimeMillis());
+        out.writeInt(exportPrivate ? FLAG_PRIVATE : 0);
+
+        progressUpdater.updateProgress(
+                XMLExporter.getModeText(OpMode.SETTINGS),
+                0, totalCount, true);
+        startSection(RECORD_PREFERENCE);
+        for (String key : prefsMap.keySet()) {
+            Object value = prefsMap.get(key);
+            writeString(key);
+            writeString((value == null) ? null : value.toString());
+            endRecord();
+        }
+        endSection(-1);
+
+        startSection(RECORD_METADATUM);
+        for (ToDoMetadata datum : metadata) {
+            record.writeLong(datum.getId());
+            writeString(datum.getName());
+            writeBytes(datum.getValue());
+            endRecord();
+        }
+        endSection(-1);
+        int count = prefsMap.size() + metadata.size();
+
+        progressUpdater.updateProgress(
+                XMLExporter.getModeText(OpMode.CATEGORIES),
+                count, totalCount, true);
+        startSection(RECORD_CATEGORY);
+        for (ToDoCategory category : categories) {
+            record.writeLong(category.getId());
+            writeString(category.getName());
+            endRecord();
+        }
+        endSection(repository.getMaxCategoryId());
+        count += categories.size();
+
+        progressUpdater.updateProgress(
+                XMLExporter.getModeText(OpMode.ITEMS),
+                count, totalCount, true);
+        long maxItemId = repository.getMaxItemId();
+        startSection(RECORD_ITEM);
+        try (ToDoCursor cursor = repository.getItems(
+                ToDoPreferences.ALL_CATEGORIES, true,
+                LocalDate.now(prefs.getTimeZone()),
+                exportPrivate, exportPrivate,
+                ToDoRepositoryImpl.TODO_TABLE_NAME + "."
+                        + ToDoSchema.ToDoItemColumns._ID)) {
+            while (cursor.moveToNext()) {
+                writeItem(cursor.getItem());
+                endRecord();
+                count++;
+                progressUpdater.updateProgress(
+                        XMLExporter.getModeText(OpMode.ITEMS),
+                        count, totalCount, true);
+            }
+        }
+        endSection(maxItemId);
+
+        progressUpdater.updateProgress(
+                XMLExporter.getModeText(OpMode.FINISH),
+                count, totalCount, false);
+
+        long indexOffset = out.size();
+        out.writeInt(sectionCount);
+        indexBuffer.writeTo(out);
+        // The checksum covers everything up to this point
+        long checksum = crc.getValue();
+        out.writeLong(indexOffset);
+        out.writeInt((int) checksum);
+        out.write(MAGIC);
+        Log.i(LOG_TAG, String.format(Locale.US,
+                "Wrote %d preferences, %d metadata, %d categories,"
+                        + " and %d items in %d bytes",
+                prefsMap.size(), metadata.size(), categories.size(),
+                count - prefsMap.size() - metadata.size()
+                        - categories.size(), out.size()));
+    }
+
+    /**
+     * Begin a new section of records.
+     *
+     * @param type the type of record in this section
+     */
+    private void startSection(byte type) {
+        sectionType = type;
+        sectionStart = out.size();
+        sectionRecords = 0;
+    }
+
+    /**
+     * Finish the current section and add it to the index.
+     *
+     * @param maxId the highest ID in the database of the section&rsquo;s
+     * type of record, or -1 if not applicable
+     *
+     * @throws IOException if there was an error writing the index
+     */
+    private void endSection(long maxId) throws IOException {
+        index.writeByte(sectionType);
+        index.writeInt(sectionRecords);
+        index.writeLong(sectionStart);
+        index.writeLong(out.size() - sectionStart);
+        index.writeLong(maxId);
+        sectionCount++;
+    }
+
+    /**
+     * Write out the record that has been assembled in the record
+     * buffer with its type and length.
+     *
+     * @throws IOException if there was an error writing the output stream
+     */
+    private void endRecord() throws IOException {
+        out.writeByte(sectionType);
+        out.writeInt(recordBuffer.size());
+        recordBuffer.writeTo(out);
+        recordBuffer.reset();
+        sectionRecords++;
+    }
+
+    /** Add a string to the current record */
+    private void writeString(String s) throws IOException {
+        writeBytes((s == null) ? null : s.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /** Add binary data to the current record */
+    private void writeBytes(byte[] data) throws IOException {
+        if (data == null) {
+            record.writeInt(-1);
+        } else {
+            record.writeInt(data.length);
+            record.write(data);
+        }
+    }
+
+    /**
+     * Add the fields of a To Do item to the current record.
+     *
+     * @param item the item to write
+     *
+     * @throws IOException if there was an error writing the record
+     */
+    private void writeItem(ToDoItem item) throws IOException {
+        int flags = 0;
+        if (item.isChecked())
+            flags |= ITEM_CHECKED;
+        if (item.getCompleted() != null)
+            flags |= ITEM_COMPLETED;
+        if (item.getDue() != null)
+            flags |= ITEM_DUE;
+        if (item.getHideDaysEarlier() != null)
+            flags |= ITEM_HIDE;
+        if (item.getAlarm() != null) {
+            flags |= ITEM_ALARM;
+            if (item.getAlarm().getNotificationTime() != null)
+                flags |= ITEM_NOTIFICATION;
+        }
+        if (item.getRepeatInterval() != null)
+            flags |= ITEM_REPEAT;
+        if (item.isEncrypted() ? (item.getEncryptedNote() != null)
+                : (item.getNote() != null))
+            flags |= ITEM_NOTE;
+
+        record.writeLong(item.getId());
+        record.writeLong(item.getCategoryId());
+        record.writeInt(item.getPrivate());
+        record.writeInt(item.getPriority());
+        record.writeInt(flags);
+        record.writeLong(item.getCreateTime().toEpochMilli());
+        record.writeLong(item.getModTime().toEpochMilli());
+        if (item.getCompleted() != null)
+            record.writeLong(item.getCompleted().toEpochMilli());
+        if (item.getDue() != null)
+            record.writeLong(item.getDue().toEpochDay());
+        if (item.getHideDaysEarlier() != null)
+            record.writeInt(item.getHideDaysEarlier());
+        if (item.getAlarm() != null) {
+            record.writeLong(item.getAlarm().getTime().toNanoOfDay());
+            record.writeInt(item.getAlarm().getAlarmDaysEarlier());
+            if (item.getAlarm().getNotificationTime() != null)
+                record.writeLong(item.getAlarm()
+                        .getNotificationTime().toEpochMilli());
+        }
+        if (item.getRepeatInterval() != null)
+            writeRepeat(item.getRepeatInterval());
+        if (item.isEncrypted()) {
+            writeBytes(item.getEncryptedDescription());
+            if (item.getEncryptedNote() != null)
+                writeBytes(item.getEncryptedNote());
+        } else {
+            writeString(item.getDescription());
+            if (item.getNote() != null)
+                writeString(item.getNote());
+        }
+    }
+
+    /**
+     * Add a repeat interval to the current record.  The fields are
+     * the same as the database columns which hold the interval.
+     *
+     * @param repeat the repeat interval to write
+     *
+     * @throws IOException if there was an error writing the record
+     */
+    private void writeRepeat(RepeatInterval repeat) throws IOException {
+        int flags = 0;
+        int increment = 0;
+        int weekDays = 0;
+        int day = 0;
+        int day2 = 0;
+        int week = 0;
+        int week2 = 0;
+        int month = 0;
+        LocalDate end = null;
+        if (repeat instanceof AbstractRepeat) {
+            increment = ((AbstractRepeat) repeat).getIncrement();
+            end = ((AbstractRepeat) repeat).getEnd();
+            flags |= REPEAT_INCREMENT;
+            if (end != null)
+                flags |= REPEAT_END;
+        }
+        if (repeat instanceof AbstractAdjustableRepeat) {
+            AbstractAdjustableRepeat aar = (AbstractAdjustableRepeat) repeat;
+            weekDays = WeekDays.toBitMap(aar.getAllowedWeekDays())
+                    | aar.getDirection().getValue();
+            flags |= REPEAT_WEEK_DAYS;
+        }
+        if (repeat instanceof AbstractDateRepeat) {
+            day = ((AbstractDateRepeat) repeat).getDate();
+            flags |= REPEAT_DAY;
+        }
+        if (repeat instanceof RepeatMonthlyOnDay) {
+            day = ((RepeatMonthlyOnDay) repeat).getDay().getValue();
+            week = ((RepeatMonthlyOnDay) repeat).getWeek();
+            flags |= REPEAT_DAY | REPEAT_WEEK;
+        }
+        if (repeat instanceof RepeatSemiMonthlyOnDates) {
+            day2 = ((RepeatSemiMonthlyOnDates) repeat).getDate2();
+            flags |= REPEAT_DAY2;
+        }
+        if (repeat instanceof RepeatSemiMonthlyOnDays) {
+            day2 = ((RepeatSemiMonthlyOnDays) repeat).getDay2().getValue();
+            week2 = ((RepeatSemiMonthlyOnDays) repeat).getWeek2();
+            flags |= REPEAT_DAY2 | REPEAT_WEEK2;
+        }
+        if (repeat instanceof RepeatWeekly) {
+            weekDays = WeekDays.toBitMap(((RepeatWeekly) repeat).getWeekDays());
+            flags |= REPEAT_WEEK_DAYS;
+        }
+        if (repeat instanceof RepeatYearlyOnDate) {
+            month = ((RepeatYearlyOnDate) repeat).getMonth().getValue();
+            flags |= REPEAT_MONTH;
+        }
+        if (repeat instanceof RepeatYearlyOnDay) {
+            month = ((RepeatYearlyOnDay) repeat).getMonth().getValue();
+            flags |= REPEAT_MONTH;
+        }
+
+        record.writeInt(repeat.getId());
+        record.writeInt(flags);
+        if ((flags & REPEAT_INCREMENT) != 0)
+            record.writeInt(increment);
+        if ((flags & REPEAT_WEEK_DAYS) != 0)
+            record.writeInt(weekDays);
+        if ((flags & REPEAT_DAY) != 0)
+            record.writeInt(day);
+        if ((flags & REPEAT_DAY2) != 0)
+            record.writeInt(day2);
+        if ((flags & REPEAT_WEEK) != 0)
+            record.writeInt(week);
+        if ((flags & REPEAT_WEEK2) != 0)
+            record.writeInt(week2);
+        if ((flags & REPEAT_MONTH) != 0)
+            record.writeInt(month);
+        if ((flags & REPEAT_END) != 0)
+            record.writeLong(end.toEpochDay());
+    }
+
+}
@@ -0,0 +1,625 @@
+/*
+ * Copyright © 2026 Trevin Beattie
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.xmission.trevin.android.todo.service;
+
+import static com.xmission.trevin.android.todo.service.SnapshotExporter.*;
+
+import android.util.Log;
+
+import com.xmission.trevin.android.todo.data.ToDoAlarm;
+import com.xmission.trevin.android.todo.data.ToDoItem;
+import com.xmission.trevin.android.todo.data.ToDoPreferences;
+import com.xmission.trevin.android.todo.data.repeat.*;
+import com.xmission.trevin.android.todo.provider.ToDoRepository;
+import com.xmission.trevin.android.todo.service.XMLImporter.CategoryEntry;
+import com.xmission.trevin.android.todo.service.XMLImporter.ImportType;
+import com.xmission.trevin.android.todo.service.XMLImporter.OpMode;
+import com.xmission.trevin.android.todo.util.StringEncryption;
+
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.*;
+import java.util.zip.CRC32;
+
+/**
+ * This class restores the To Do list from a snapshot written by
+ * {@link SnapshotExporter}.  The file is memory-mapped rather than
+ * read through a stream, and new items are inserted in batches
+ * when doing a clean import.  Records are merged with the database
+ * by the same rules as an XML import.
+ *
+ * @author Trevin Beattie
+ */
+public class SnapshotImporter implements Runnable {
+
+    /** Tag for the debug logger */
+    public static final String LOG_TAG = "SnapshotImporter";
+
+    /** The name of the snapshot file being read, if known */
+    private final String fileName;
+
+    /** The contents of the snapshot */
+    private final ByteBuffer snapshot;
+
+    /** Merges the records we read into the database */
+    private final ImportMerger merger;
+
+    /**
+     * The sections of the snapshot indexed by record type;
+     * each entry holds the count, offset, length, and maximum ID
+     */
+    private final Map<Byte,long[]> sections = new HashMap<>();
+
+    /** Scratch buffer for decoding strings */
+    private byte[] stringBuffer = new byte[256];
+
+    /**
+     * Create a new importer instance with the provided parameters.
+     * This will be passed to the repository to run in a single
+     * transaction.
+     *
+     * @see #importData(ToDoPreferences, ToDoRepository, String,
+     * FileChannel, ImportType, boolean, String, StringEncryption,
+     * ProgressBarUpdater)
+     */
+    private SnapshotImporter(ToDoPreferences prefs,
+                             ToDoRepository repository,
+                             String fileName,
+                             ByteBuffer snapshot,
+                             ImportType importType,
+                             boolean importPrivate,
+                             StringEncryption decryptor,
+                             StringEncryption encryptor,
+                             ProgressBarUpdater progressUpdater) {
+        this.fileName = fileName;
+        this.snapshot = snapshot;
+        merger = new ImportMerger(prefs, repository, importType,
+                importPrivate, decryptor, encryptor, progressUpdater);
+    }
+
+    /**
+     * Check whether a file is a snapshot without changing
+     * the channel&rsquo;s position.
+     *
+     * @param channel the channel from which to read the file
+     *
+     * @return {@code true} if the file starts with the snapshot
+     * magic number, {@code false} otherwise.
+     *
+     * @throws IOException if there was an error reading the file
+     */
+    public static boolean isSnapshot(FileChannel channel) throws IOException {
+        ByteBuffer head = ByteBuffer.allocate(MAGIC.length);
+        long position = 0;
+        while (head.hasRemaining()) {
+            int n = channel.read(head, position);
+            if (n < 0)
+                return false;
+            position += n;
+        }
+        return Arrays.equals(head.array(), MAGIC);
+    }
+
+    /**
+     * Import the preferences, metadata, categories, and To Do records
+     * from a snapshot file to the database.
+     *
+     * @param prefs the To Do preferences.
+     * @param repository The repository to which we should write records.
+     * It should have already been opened by the caller.
+     * @param fileName the name of the snapshot file being read, if known
+     * (may be {@code null}).
+     * @param channel the channel from which to map the snapshot file.
+     * @param importType how to merge items from the snapshot
+     * with those in the database.
+     * @param importPrivate whether to include private records and the
+     * password hash in the import.
+     * @param snapshotPassword the password with which the snapshot was
+     * exported, or {@code null} if the snapshot contains no encrypted
+     * records or we are not importing any private records.
+     * @param currentPassword the password with which to encrypt any private
+     * records imported, or {@code null} to leave them unencrypted or if
+     * we are not importing any private records.
+     * @param progressUpdater a class to call back while we are processing
+     * the data to mark our progress.
+     *
+     * @throws StreamCorruptedException if the file is not a valid snapshot
+     * @throws IOException if there was an error reading the file
+     */
+    public static void importData(ToDoPreferences prefs,
+                                  ToDoRepository repository,
+                                  String fileName,
+                                  FileChannel channel,
+                                  ImportType importType,
+                                  boolean importPrivate,
+                                  String snapshotPassword,
+                                  String currentPassword,
+                                  ProgressBarUpdater progressUpdater)
+            throws IOException {
+        StringEncryption encryptor = null;
+        if (currentPassword != null) {
+            encryptor = new StringEncryption();
+            encryptor.setPassword(currentPassword.toCharArray());
+        }
+        try {
+            importData(prefs, repository, fileName, channel, importType,
+                    importPrivate, snapshotPassword, encryptor,
+                    progressUpdater);
+        } finally {
+            if (encryptor != null)
+                encryptor.forgetPassword();
+        }
+    }
+
+    /**
+     * Import the preferences, metadata, categories, and To Do records
+     * from a snapshot file to the database, encrypting private records
+     * with a key that has already been set up.
+     *
+     * @param prefs the To Do preferences.
+     * @param repository The repository to which we should write records.
+     * It should have already been opened by the caller.
+     * @param fileName the name of the snapshot file being read, if known
+     * (may be {@code null}).
+     * @param channel the channel from which to map the snapshot file.
+     * The caller remains responsible for closing it.
+     * @param importType how to merge items from the snapshot
+     * with those in the database.
+     * @param importPrivate whether to include private records and the
+     * password hash in the import.
+     * @param snapshotPassword the password with which the snapshot was
+     * exported, or {@code null} if the snapshot contains no encrypted
+     * records or we are not importing any private records.
+     * @param encryptor the encryption object with which to encrypt any
+     * private records imported, or {@code null} to leave them unencrypted
+     * or if we are not importing any private records.
+     * The caller remains responsible for forgetting its password.
+     * @param progressUpdater a class to call back while we are processing
+     * the data to mark our progress.
+     *
+     * @throws StreamCorruptedException if the file is not a valid snapshot
+     * @throws IOException if there was an error reading the file
+     */
+    public static void importData(ToDoPreferences prefs,
+                                  ToDoRepository repository,
+                                  String fileName,
+                                  FileChannel channel,
+                                  ImportType importType,
+                                  boolean importPrivate,
+                                  String snapshotPassword,
+                                  StringEncryption encryptor,
+                                  ProgressBarUpdater progressUpdater)
+            throws IOException {
+        long size = channel.size();
+        if (size > Integer.MAX_VALUE)
+            throw new IOException(String.format(Locale.US,
+                    "%s is too large to restore (%d bytes)",
+                    (fileName == null) ? "Snapshot" : fileName, size));
+        MappedByteBuffer snapshot =
+                channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        StringEncryption decryptor = null;
+        if (snapshotPassword != null) {
+            decryptor = new StringEncryption();
+            decryptor.setPassword(snapshotPassword.toCharArray());
+        }
+        try {
+            SnapshotImporter importer = new SnapshotImporter(prefs,
+                    repository, fileName, snapshot, importType,
+                    importPrivate, decryptor, encryptor, progressUpdater);
+            // Check the whole file before touching the database
+            importer.readIndex();
+            repository.runInTransaction(importer);
+            progressUpdater.updateProgress(
+                    XMLImporter.getModeText(OpMode.FINISH),
+                    importer.merger.processedRecords,
+                    importer.merger.totalRecords, false);
+        } catch (UncaughtIOException ue) {
+            Log.e(LOG_TAG, "Error reading the snapshot", ue);
+            throw ue.getCause();
+        } finally {
+            if (decryptor != null)
+                decryptor.forgetPassword();
+        }
+    }
+
+    /**
+     * Create an exception for a snapshot which is not valid.
+     *
+     * @param format the format of the error message
+     * @param args any arguments to the message
+     *
+     * @return the exception to throw
+     */
+    private StreamCorruptedException corrupted(String format, Object... args) {
+        return new StreamCorruptedException(String.format(Locale.US,
+                "%s: %s", (fileName == null) ? "Snapshot" : fileName,
+                String.format(Locale.US, format, args)));
+    }
+
+    /**
+     * Verify the snapshot&rsquo;s header, trailer, and checksum,
+     * and read its index of sections.
+     *
+     * @throws StreamCorruptedException if the file is not a valid snapshot
+     * @throws IOException if the snapshot was written by a newer
+     * version of the app
+     */
+    private void readIndex() throws IOException {
+        final int size = snapshot.capacity();
+        byte[] magic = new byte[MAGIC.length];
+        if (size < HEADER_SIZE + 4 + TRAILER_SIZE)
+            throw corrupted("file is too short (%d bytes)", size);
+        snapshot.position(0);
+        snapshot.get(magic);
+        if (!Arrays.equals(magic, MAGIC))
+            throw corrupted("not a snapshot file");
+        int version = snapshot.getInt();
+        if (version > FORMAT_VERSION)
+            throw new IOException(String.format(Locale.US,
+                    "Snapshot format version %d is not supported", version));
+        int dbVersion = snapshot.getInt();
+        long exportTime = snapshot.getLong();
+        int flags = snapshot.getInt();
+
+        final int trailerStart = size - TRAILER_SIZE;
+        snapshot.position(trailerStart);
+        long indexOffset = snapshot.getLong();
+        int checksum = snapshot.getInt();
+        snapshot.get(magic);
+        if (!Arrays.equals(magic, MAGIC))
+            throw corrupted("missing trailer; the file may be truncated");
+
+        CRC32 crc = new CRC32();
+        byte[] chunk = new byte[64 * 1024];
+        snapshot.position(0);
+        while (snapshot.position() < trailerStart) {
+            int n = Math.min(chunk.length,
+                    trailerStart - snapshot.position());
+            snapshot.get(chunk, 0, n);
+            crc.update(chunk, 0, n);
+        }
+        if ((int) crc.getValue() != checksum)
+            throw corrupted("checksum mismatch");
+
+        if ((indexOffset < HEADER_SIZE) ||
+                (indexOffset > trailerStart - 4))
+            throw corrupted("invalid index position %d", indexOffset);
+        snapshot.position((int) indexOffset);
+        int sectionCount = snapshot.getInt();
+        if ((sectionCount < 0) || ((long) sectionCount * INDEX_ENTRY_SIZE
+                != trailerStart - indexOffset - 4))
+            throw corrupted("invalid index size %d", sectionCount);
+        long totalRecords = 0;
+        for (int i = 0; i < sectionCount; i++) {
+            byte type = snapshot.get();
+            long[] entry = new long[] {
+                    snapshot.getInt(), snapshot.getLong(),
+                    snapshot.getLong(), snapshot.getLong() };
+            if ((entry[0] < 0) || (entry[1] < HEADER_SIZE) ||
+                    (entry[2] < 0) || (entry[1] + entry[2] > indexOffset))
+                throw corrupted("invalid section %d", type);
+            sections.put(type, entry);
+            totalRecords += entry[0];
+        }
+        for (byte type : new byte[] { RECORD_PREFERENCE, RECORD_METADATUM,
+                RECORD_CATEGORY, RECORD_ITEM }) {
+            if (!sections.containsKey(type))
+                throw corrupted("section %d is missing", type);
+        }
+        merger.totalRecords = (int) Math.min(totalRecords, Integer.MAX_VALUE);
+        Log.i(LOG_TAG, String.format(Locale.US,
+                "Beginning snapshot, format version %d, DB version %d,"
+                        + " exported at %s%s, %d total records",
+                version, dbVersion, Instant.ofEpochMilli(exportTime),
+                ((flags & FLAG_PRIVATE) != 0) ? " with private records" : "",
+                totalRecords));
+    }
+
+    @Override
+    public void run() {
+        try {
+            Map<String,String> prefsMap = new HashMap<>();
+            ByteBuffer record = startSection(RECORD_PREFERENCE);
+            while (nextRecord(record, RECORD_PREFERENCE)) {
+                String name = readString(record);
+                if (name == null)
+                    throw corrupted("preference without a name");
+                prefsMap.put(name, readString(record));
+                merger.countRecord(OpMode.SETTINGS);
+            }
+
+            Map<String,byte[]> metadata = new HashMap<>();
+            record = startSection(RECORD_METADATUM);
+            while (nextRecord(record, RECORD_METADATUM)) {
+                record.getLong(); // The metadata ID is not imported
+                String name = readString(record);
+                if (name == null)
+                    throw corrupted("metadatum without a name");
+                metadata.put(name, readBytes(record));
+                merger.countRecord(OpMode.SETTINGS);
+            }
+            merger.checkMetadata(metadata);
+
+            List<CategoryEntry> categories = new ArrayList<>(
+                    (int) sections.get(RECORD_CATEGORY)[0]);
+            record = startSection(RECORD_CATEGORY);
+            while (nextRecord(record, RECORD_CATEGORY)) {
+                CategoryEntry category = new CategoryEntry();
+                category.id = record.getLong();
+                category.name = readString(record);
+                if (category.name == null)
+                    throw corrupted("category %d without a name",
+                            category.id);
+                categories.add(category);
+            }
+            merger.mergeCategories(categories);
+
+            merger.startToDoSection(sections.get(RECORD_ITEM)[3]);
+            record = startSection(RECORD_ITEM);
+            while (nextRecord(record, RECORD_ITEM))
+                merger.mergeToDo(readItem(record));
+            merger.flushInserts();
+
+            if (!prefsMap.isEmpty())
+                merger.setPreferences(prefsMap);
+        } catch (BufferUnderflowException bx) {
+            throw new UncaughtIOException(corrupted("truncated record"));
+        } catch (StreamCorruptedException cx) {
+            throw new UncaughtIOException(cx);
+        }
+    }
+
+    /**
+     * Prepare to read a section of records.
+     *
+     * @param type the type of records to read
+     *
+     * @return a view of the snapshot whose position and limit are
+     * both set to the start of the first record, ready for
+     * {@link #nextRecord(ByteBuffer, byte)}.
+     */
+    private ByteBuffer startSection(byte type) {
+        long[] entry = sections.get(type);
+        ByteBuffer section = snapshot.duplicate();
+        section.position((int) entry[1]);
+        section.limit((int) entry[1]);
+        return section;
+    }
+
+    /**
+     * Advance to the next record in a section.  The buffer&rsquo;s
+     * limit is moved to the end of the record, so any fields added
+     * by a later version of the format which we haven&rsquo;t read
+     * will be skipped.
+     *
+     * @param record the view of the section, positioned at the end
+     * of the previous record&rsquo;s fields
+     * @param type the type of record expected
+     *
+     * @return {@code true} if there is another record,
+     * {@code false} at the end of the section.
+     *
+     * @throws StreamCorruptedException if the record is not the
+     * expected type or extends past the end of the section
+     */
+    private boolean nextRecord(ByteBuffer record, byte type)
+            throws StreamCorruptedException {
+        int end = record.limit();
+        if (end != record.position()) {
+            // Skip the rest of the previous record
+            record.position(end);
+        }
+        long[] entry = sections.get(type);
+        int sectionEnd = (int) (entry[1] + entry[2]);
+        record.limit(sectionEnd);
+        if (end == sectionEnd)
+            return false;
+        if (sectionEnd - end < RECORD_PREFIX_SIZE)
+            throw corrupted("truncated record header at %d", end);
+        byte actualType = record.get();
+        int length = record.getInt();
+        if (actualType != type)
+            throw corrupted("record type %d at %d in section %d",
+                    actualType, end, type);
+        if ((length < 0) || (length > sectionEnd - record.position()))
+            throw corrupted("invalid record length %d at %d", length, end);
+        record.limit(record.position() + length);
+        return true;
+    }
+
+    /**
+     * Read a string from a record.
+     *
+     * @param record the record to read
+     *
+     * @return the string, which may be {@code null}
+     *
+     * @throws StreamCorruptedException if the length is invalid
+     */
+    private String readString(ByteBuffer record)
+            throws StreamCorruptedException {
+        int length = record.getInt();
+        if (length < 0)
+            return null;
+        if (length > record.remaining())
+            throw corrupted("invalid string length %d", length);
+        if (length > stringBuffer.length)
+            stringBuffer = new byte[Math.max(length, 2 * stringBuffer.length)];
+        record.get(stringBuffer, 0, length);
+        return new String(stringBuffer, 0, length, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Read binary data from a record.
+     *
+     * @param record the record to read
+     *
+     * @return the data, which may be {@code null}
+     *
+     * @throws StreamCorruptedException if the length is invalid
+     */
+    private byte[] readBytes(ByteBuffer record)
+            throws StreamCorruptedException {
+        int length = record.getInt();
+        if (length < 0)
+            return null;
+        if (length > record.remaining())
+            throw corrupted("invalid data length %d", length);
+        byte[] data = new byte[length];
+        record.get(data);
+        return data;
+    }
+
+    /**
+     * Read a To Do item from a record.
+     *
+     * @param record the record to read
+     *
+     * @return the To Do item
+     *
+     * @throws StreamCorruptedException if any field is invalid
+     */
+    private ToDoItem readItem(ByteBuffer record)
+            throws StreamCorruptedException {
+        ToDoItem item = new ToDoItem();
+        item.setId(record.getLong());
+        item.setCategoryId(record.getLong());
+        item.setPrivate(record.getInt());
+        item.setPriority(record.getInt());
+        int flags = record.getInt();
+        item.setChecked((flags & ITEM_CHECKED) != 0);
+        item.setCreateTime(Instant.ofEpochMilli(record.getLong()));
+        item.setModTime(Instant.ofEpochMilli(record.getLong()));
+        try {
+            if ((flags & ITEM_COMPLETED) != 0)
+                item.setCompleted(Instant.ofEpochMilli(record.getLong()));
+            if ((flags & ITEM_DUE) != 0)
+                item.setDue(LocalDate.ofEpochDay(record.getLong()));
+            if ((flags & ITEM_HIDE) != 0)
+                item.setHideDaysEarlier(record.getInt());
+            if ((flags & ITEM_ALARM) != 0) {
+                ToDoAlarm alarm = new ToDoAlarm(
+                        LocalTime.ofNanoOfDay(record.getLong()),
+                        record.getInt());
+                if ((flags & ITEM_NOTIFICATION) != 0)
+                    alarm.setNotificationTime(
+                            Instant.ofEpochMilli(record.getLong()));
+                item.setAlarm(alarm);
+            }
+            if ((flags & ITEM_REPEAT) != 0)
+                item.setRepeatInterval(readRepeat(record));
+        } catch (RuntimeException e) {
+            if (e instanceof BufferUnderflowException)
+                throw e;
+            StreamCorruptedException cx = corrupted(
+                    "invalid value in item %d: %s",
+                    item.getId(), e.getMessage());
+            cx.initCause(e);
+            throw cx;
+        }
+        if (item.isEncrypted()) {
+            item.setEncryptedDescription(readBytes(record));
+            if ((flags & ITEM_NOTE) != 0)
+                item.setEncryptedNote(readBytes(record));
+        } else {
+            item.setDescription(readString(record));
+            if ((flags & ITEM_NOTE) != 0)
+                item.setNote(readString(record));
+        }
+        return item;
+    }
+
+    /**
+     * Read a repeat interval from a record.
+     *
+     * @param record the record to read
+     *
+     * @return the repeat interval
+     *
+     * @throws IllegalArgumentException if the repeat type
+     * or any of its fields are invalid
+     */
+    private static RepeatInterval readRepeat(ByteBuffer record) {
+        RepeatInterval repeat = RepeatType.newInstance(record.getInt());
+        int flags = record.getInt();
+        int increment = ((flags & REPEAT_INCREMENT) != 0)
+                ? record.getInt() : 0;
+        int weekDays = ((flags & REPEAT_WEEK_DAYS) != 0)
+                ? record.getInt() : 0;
+        int day = ((flags & REPEAT_DAY) != 0) ? record.getInt() : 0;
+        int day2 = ((flags & REPEAT_DAY2) != 0) ? record.getInt() : 0;
+        int week = ((flags & REPEAT_WEEK) != 0) ? record.getInt() : 0;
+        int week2 = ((flags & REPEAT_WEEK2) != 0) ? record.getInt() : 0;
+        int month = ((flags & REPEAT_MONTH) != 0) ? record.getInt() : 0;
+        LocalDate end = ((flags & REPEAT_END) != 0)
+                ? LocalDate.ofEpochDay(record.getLong()) : null;
+
+        // Apply the fields in the same order as the database cursor
+        if (repeat instanceof AbstractRepeat) {
+            AbstractRepeat ar = (AbstractRepeat) repeat;
+            if ((flags & REPEAT_INCREMENT) != 0)
+                ar.setIncrement(increment);
+            if (end != null)
+                ar.setEnd(end);
+        }
+        if ((repeat instanceof AbstractAdjustableRepeat) &&
+                ((flags & REPEAT_WEEK_DAYS) != 0)) {
+            AbstractAdjustableRepeat aar = (AbstractAdjustableRepeat) repeat;
+            aar.setAllowedWeekDays(WeekDays.fromBitMap(weekDays));
+            aar.setDirection(WeekdayDirection.fromBitMap(weekDays));
+        }
+        if ((repeat instanceof AbstractDateRepeat) &&
+                ((flags & REPEAT_DAY) != 0))
+            ((AbstractDateRepeat) repeat).setDate(day);
+        if (repeat instanceof RepeatMonthlyOnDay) {
+            RepeatMonthlyOnDay rmd = (RepeatMonthlyOnDay) repeat;
+            if ((flags & REPEAT_DAY) != 0)
+                rmd.setDay(WeekDays.fromValue(day));
+            if ((flags & REPEAT_WEEK) != 0)
+                rmd.setWeek(week);
+        }
+        if ((repeat instanceof RepeatSemiMonthlyOnDates) &&
+                ((flags & REPEAT_DAY2) != 0))
+            ((RepeatSemiMonthlyOnDates) repeat).setDate2(day2);
+        if (repeat instanceof RepeatSemiMonthlyOnDays) {
+            RepeatSemiMonthlyOnDays rsmd = (RepeatSemiMonthlyOnDays) repeat;
+            if ((flags & REPEAT_DAY2) != 0)
+                rsmd.setDay2(WeekDays.fromValue(day2));
+            if ((flags & REPEAT_WEEK2) != 0)
+                rsmd.setWeek2(week2);
+        }
+        if ((repeat instanceof RepeatWeekly) &&
+                ((flags & REPEAT_WEEK_DAYS) != 0))
+            ((RepeatWeekly) repeat).setWeekDays(WeekDays.fromBitMap(weekDays));
+        if ((repeat instanceof RepeatYearlyOnDate) &&
+                ((flags & REPEAT_MONTH) != 0))
+            ((RepeatYearlyOnDate) repeat).setMonth(Months.fromValue(month));
+        if ((repeat instanceof RepeatYearlyOnDay) &&
+                ((flags & REPEAT_MONTH) != 0))
+            ((RepeatYearlyOnDay) repeat).setMonth(Months.fromValue(month));
+        return repeat;
+    }
+
+}
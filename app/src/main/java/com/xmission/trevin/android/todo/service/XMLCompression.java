@@ -0,0 +1,127 @@
+/*
+ * Copyright © 2026 Trevin Beattie
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.xmission.trevin.android.todo.service;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Locale;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Compression for XML export files.  Compressed exports are written
+ * in the standard gzip format (RFC 1952) so they can be opened with
+ * ordinary tools, and are recognized on import by the gzip magic
+ * number regardless of the file name.
+ *
+ * @author Trevin Beattie
+ */
+public final class XMLCompression {
+
+    /** The first byte of a gzip stream */
+    private static final int GZIP_MAGIC_1 = 0x1f;
+
+    /** The second byte of a gzip stream */
+    private static final int GZIP_MAGIC_2 = 0x8b;
+
+    /**
+     * The default compression level for exports.  Export files are
+     * mostly repeated markup, which compresses well even at the
+     * fastest levels, so the higher levels cost more CPU time than
+     * they save in file size.
+     */
+    public static final int DEFAULT_LEVEL = 3;
+
+    /** Size of the compression buffers */
+    static final int BUFFER_SIZE = 64 * 1024;
+
+    /** This class only has static methods */
+    private XMLCompression() {}
+
+    /**
+     * Wrap an output stream so that everything written to it
+     * is compressed.  Closing the returned stream finishes the
+     * compressed data and closes the underlying stream.
+     *
+     * @param out the stream to which to write the compressed data
+     * @param level the compression level, from
+     * {@link Deflater#BEST_SPEED} to {@link Deflater#BEST_COMPRESSION},
+     * or {@link Deflater#DEFAULT_COMPRESSION}
+     *
+     * @return the compressing stream
+     *
+     * @throws IllegalArgumentException if {@code level} is not valid
+     * @throws IOException if the gzip header could not be written
+     */
+    public static OutputStream compress(OutputStream out, final int level)
+            throws IllegalArgumentException, IOException {
+        if ((level < Deflater.DEFAULT_COMPRESSION)
+                || (level > Deflater.BEST_COMPRESSION))
+            throw new IllegalArgumentException(String.format(Locale.US,
+                    "Invalid compression level: %d", level));
+        return new GZIPOutputStream(out, BUFFER_SIZE) {
+            {
+                def.setLevel(level);
+            }
+        };
+    }
+
+    /**
+     * Check whether a stream holds compressed data by looking at its
+     * first two bytes.  The stream must support
+     * {@link InputStream#mark(int) mark}; it is reset to where it
+     * was before this call.
+     *
+     * @param in the stream to check
+     *
+     * @return {@code true} if the stream starts with the gzip
+     * magic number
+     *
+     * @throws IOException if the stream could not be read
+     */
+    public static boolean isCompressed(InputStream in) throws IOException {
+        in.mark(2);
+        try {
+            return (in.read() == GZIP_MAGIC_1) && (in.read() == GZIP_MAGIC_2);
+        } finally {
+            in.reset();
+        }
+    }
+
+    /**
+     * Prepare an input stream for reading XML data, inflating
+     * it if it holds compressed data.
+     *
+     * @param in the stream to read
+     *
+     * @return a stream which will return the uncompressed XML
+     *
+     * @throws IOException if the stream could not be read
+     * or has a corrupt gzip header
+     */
+    public static InputStream decompress(InputStream in) throws IOException {
+        if (!in.markSupported())
+            in = new BufferedInputStream(in, BUFFER_SIZE);
+        if (isCompressed(in))
+            return new GZIPInputStream(in, BUFFER_SIZE);
+        return in;
+    }
+
+}
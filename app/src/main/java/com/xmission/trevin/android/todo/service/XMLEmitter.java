@@ -0,0 +1,418 @@
+/*
+ * Copyright © 2026 Trevin Beattie
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.xmission.trevin.android.todo.service;
+
+import com.xmission.trevin.android.todo.util.Base64Codec;
+import com.xmission.trevin.android.todo.util.ISODateTimeCodec;
+
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalTime;
+
+/**
+ * A buffered writer for the XML export file.  Markup is written as
+ * fragments which have been encoded ahead of time (see
+ * {@link #fragment(String)}); text is escaped and encoded to UTF-8
+ * in a single pass straight into a large byte buffer, and numbers
+ * are formatted without going through {@link String}s.  This produces
+ * exactly the same bytes as a UTF-8 {@link java.io.PrintStream}
+ * would for the same content, including replacing any unpaired
+ * surrogate characters with &lsquo;?&rsquo;.
+ * <p>
+ * This class is not thread-safe.
+ * </p>
+ *
+ * @author Trevin Beattie
+ */
+class XMLEmitter implements Closeable, Flushable {
+
+    /** The size of the output buffer in bytes */
+    static final int BUFFER_SIZE = 64 * 1024;
+
+    /** The number of characters of text to encode at a time */
+    private static final int CHAR_BUFFER_SIZE = 1024;
+
+    /**
+     * The system line separator, which is what
+     * {@link java.io.PrintStream#println()} writes
+     */
+    static final String LINE_SEPARATOR =
+            System.getProperty("line.separator", "\n");
+
+    /** The encoded line separator */
+    private static final byte[] NEWLINE = fragment(LINE_SEPARATOR);
+
+    private static final byte[] TRUE = fragment("true");
+    private static final byte[] FALSE = fragment("false");
+
+    /**
+     * Replacements for the characters which must be escaped in XML
+     * text, indexed by character; {@code null} for all other characters.
+     */
+    private static final byte[][] ESCAPES = new byte[128][];
+    static {
+        ESCAPES['&'] = fragment("&amp;");
+        ESCAPES['<'] = fragment("&lt;");
+        ESCAPES['>'] = fragment("&gt;");
+        ESCAPES['"'] = fragment("&quot;");
+        ESCAPES['\''] = fragment("&apos;");
+    }
+
+    /**
+     * The most bytes any single step of encoding may add to the buffer:
+     * a four-byte UTF-8 sequence, the longest escape sequence,
+     * a long integer with its sign, or a timestamp.  (Base64 data
+     * is written a line at a time; see {@link #base64(byte[])}.)
+     */
+    private static final int MAX_STEP = ISODateTimeCodec.TIMESTAMP_MAX_LENGTH;
+
+    /** The stream to which we write the encoded XML */
+    private final OutputStream out;
+
+    /** The output buffer */
+    private final byte[] buf = new byte[BUFFER_SIZE];
+
+    /** The number of bytes in the output buffer */
+    private int pos = 0;
+
+    /** Scratch buffer for copying characters out of strings */
+    private final char[] chars = new char[CHAR_BUFFER_SIZE];
+
+    /**
+     * Create a new XML emitter.
+     *
+     * @param out the stream to which to write the XML
+     */
+    XMLEmitter(OutputStream out) {
+        this.out = out;
+    }
+
+    /**
+     * Encode a piece of markup ahead of time for use with
+     * {@link #write(byte[])}.
+     *
+     * @param markup the markup, which will not be escaped
+     *
+     * @return the UTF-8 encoding of the markup
+     */
+    static byte[] fragment(String markup) {
+        return markup.getBytes(StandardCharsets.UTF_8);
+    }
+
+    /** Write out the buffer if it may not have room for another step */
+    private void ensureRoom() throws IOException {
+        if (pos > buf.length - MAX_STEP)
+            flushBuffer();
+    }
+
+    /** Write out everything in the buffer to the underlying stream */
+    private void flushBuffer() throws IOException {
+        if (pos > 0) {
+            out.write(buf, 0, pos);
+            pos = 0;
+        }
+    }
+
+    /**
+     * Write a pre-encoded fragment.
+     *
+     * @param fragment the bytes to write
+     *
+     * @throws IOException if there was an error writing the stream
+     */
+    void write(byte[] fragment) throws IOException {
+        write(fragment, 0, fragment.length);
+    }
+
+    /**
+     * Write part of an array of pre-encoded bytes, such as
+     * a chunk of markup produced by another emitter.
+     *
+     * @param data the array holding the bytes to write
+     * @param offset the index of the first byte to write
+     * @param length the number of bytes to write
+     *
+     * @throws IOException if there was an error writing the stream
+     */
+    void write(byte[] data, int offset, int length) throws IOException {
+        if (length > buf.length - pos) {
+            flushBuffer();
+            if (length > buf.length) {
+                out.write(data, offset, length);
+                return;
+            }
+        }
+        System.arraycopy(data, offset, buf, pos, length);
+        pos += length;
+    }
+
+    /**
+     * Write a string without escaping it.  This is meant for names
+     * and formatted values which are known not to contain any
+     * characters that need escaping.
+     *
+     * @param s the string to write
+     *
+     * @throws IOException if there was an error writing the stream
+     */
+    void raw(String s) throws IOException {
+        encode(s, false);
+    }
+
+    /**
+     * Write a string as XML text or an attribute value, escaping
+     * any reserved characters.  {@code null} is written as an
+     * empty string.
+     *
+     * @param s the string to write
+     *
+     * @throws IOException if there was an error writing the stream
+     */
+    void text(String s) throws IOException {
+        if (s != null)
+            encode(s, true);
+    }
+
+    /**
+     * Write a decimal number.
+     *
+     * @param n the number to write
+     *
+     * @throws IOException if there was an error writing the stream
+     */
+    void number(long n) throws IOException {
+        ensureRoom();
+        if (n < 0) {
+            if (n == Long.MIN_VALUE) {
+                raw(Long.toString(n));
+                return;
+            }
+            buf[pos++] = '-';
+            n = -n;
+        }
+        int digits = 1;
+        for (long t = n; t >= 10; t /= 10)
+            digits++;
+        int p = pos + digits;
+        pos = p;
+        do {
+            buf[--p] = (byte) ('0' + (n % 10));
+            n /= 10;
+        } while (n > 0);
+    }
+
+    /**
+     * Write a boolean value as &ldquo;true&rdquo; or &ldquo;false&rdquo;.
+     *
+     * @param b the value to write
+     *
+     * @throws IOException if there was an error writing the stream
+     */
+    void bool(boolean b) throws IOException {
+        write(b ? TRUE : FALSE);
+    }
+
+    /**
+     * Write the system line separator.
+     *
+     * @throws IOException if there was an error writing the stream
+     */
+    void newline() throws IOException {
+        write(NEWLINE);
+    }
+
+    /**
+     * Write a timestamp in ISO-8601 format in UTC,
+     * the same as {@link java.time.format.DateTimeFormatter#ISO_INSTANT}.
+     *
+     * @param timestamp the timestamp to write
+     *
+     * @throws IOException if there was an error writing the stream
+     */
+    void timestamp(Instant timestamp) throws IOException {
+        if (!ISODateTimeCodec.isFixedLayout(timestamp)) {
+            raw(ISODateTimeCodec.formatTimestamp(timestamp));
+            return;
+        }
+        ensureRoom();
+        pos = ISODateTimeCodec.formatTimestamp(
+                timestamp.toEpochMilli(), buf, pos);
+    }
+
+    /**
+     * Write a date in ISO-8601 format, the same as
+     * {@link java.time.format.DateTimeFormatter#ISO_LOCAL_DATE}.
+     *
+     * @param date the date to write
+     *
+     * @throws IOException if there was an error writing the stream
+     */
+    void date(LocalDate date) throws IOException {
+        if (!ISODateTimeCodec.isFixedLayout(date)) {
+            raw(ISODateTimeCodec.formatDate(date));
+            return;
+        }
+        ensureRoom();
+        pos = ISODateTimeCodec.formatDate(date.getYear(),
+                date.getMonthValue(), date.getDayOfMonth(), buf, pos);
+    }
+
+    /**
+     * Write a time of day in ISO-8601 format, the same as
+     * {@link java.time.format.DateTimeFormatter#ISO_LOCAL_TIME}.
+     *
+     * @param time the time to write
+     *
+     * @throws IOException if there was an error writing the stream
+     */
+    void time(LocalTime time) throws IOException {
+        if (!ISODateTimeCodec.isFixedLayout(time)) {
+            raw(ISODateTimeCodec.formatTime(time));
+            return;
+        }
+        ensureRoom();
+        pos = ISODateTimeCodec.formatTime(time.toSecondOfDay(), buf, pos);
+    }
+
+    /**
+     * Write binary data in Base64, with a line separator
+     * after every 64 characters and no padding.
+     *
+     * @param data the data to write
+     *
+     * @throws IOException if there was an error writing the stream
+     */
+    void base64(byte[] data) throws IOException {
+        // Each full line takes at most 64 characters plus a separator
+        final int lineSize = Base64Codec.LINE_CHARACTERS + NEWLINE.length;
+        int from = 0;
+        while (from < data.length) {
+            int lines = (buf.length - pos) / lineSize;
+            if (lines == 0) {
+                flushBuffer();
+                continue;
+            }
+            int to = (int) Math.min(data.length,
+                    from + (long) lines * Base64Codec.LINE_BYTES);
+            pos = Base64Codec.encode(data, from, to, buf, pos, NEWLINE);
+            from = to;
+        }
+    }
+
+    /**
+     * Encode a string to UTF-8, optionally escaping XML reserved
+     * characters, in one pass.
+     *
+     * @param s the string to encode
+     * @param escape whether to escape reserved characters
+     *
+     * @throws IOException if there was an error writing the stream
+     */
+    private void encode(String s, boolean escape) throws IOException {
+        final int len = s.length();
+        int start = 0;
+        while (start < len) {
+            int end = Math.min(len, start + chars.length);
+            // Don't split a surrogate pair between chunks
+            if ((end < len) && Character.isHighSurrogate(s.charAt(end - 1)))
+                end--;
+            s.getChars(start, end, chars, 0);
+            encode(chars, end - start, escape);
+            start = end;
+        }
+    }
+
+    /**
+     * Encode characters to UTF-8, optionally escaping XML reserved
+     * characters.
+     *
+     * @param c the characters to encode
+     * @param n the number of characters to encode
+     * @param escape whether to escape reserved characters
+     *
+     * @throws IOException if there was an error writing the stream
+     */
+    private void encode(char[] c, int n, boolean escape) throws IOException {
+        final byte[] b = buf;
+        final int limit = b.length - MAX_STEP;
+        for (int i = 0; i < n; i++) {
+            if (pos > limit)
+                flushBuffer();
+            char ch = c[i];
+            if (ch < 0x80) {
+                byte[] escaped = escape ? ESCAPES[ch] : null;
+                if (escaped == null) {
+                    b[pos++] = (byte) ch;
+                } else {
+                    System.arraycopy(escaped, 0, b, pos, escaped.length);
+                    pos += escaped.length;
+                }
+            } else if (ch < 0x800) {
+                b[pos++] = (byte) (0xc0 | (ch >> 6));
+                b[pos++] = (byte) (0x80 | (ch & 0x3f));
+            } else if (Character.isSurrogate(ch)) {
+                if (Character.isHighSurrogate(ch) && (i + 1 < n)
+                        && Character.isLowSurrogate(c[i+1])) {
+                    int cp = Character.toCodePoint(ch, c[++i]);
+                    b[pos++] = (byte) (0xf0 | (cp >> 18));
+                    b[pos++] = (byte) (0x80 | ((cp >> 12) & 0x3f));
+                    b[pos++] = (byte) (0x80 | ((cp >> 6) & 0x3f));
+                    b[pos++] = (byte) (0x80 | (cp & 0x3f));
+                } else {
+                    // Malformed; this is what the standard encoder does
+                    b[pos++] = '?';
+                }
+            } else {
+                b[pos++] = (byte) (0xe0 | (ch >> 12));
+                b[pos++] = (byte) (0x80 | ((ch >> 6) & 0x3f));
+                b[pos++] = (byte) (0x80 | (ch & 0x3f));
+            }
+        }
+    }
+
+    /**
+     * Write out any buffered data and flush the underlying stream.
+     *
+     * @throws IOException if there was an error writing the stream
+     */
+    @Override
+    public void flush() throws IOException {
+        flushBuffer();
+        out.flush();
+    }
+
+    /**
+     * Write out any buffered data and close the underlying stream.
+     *
+     * @throws IOException if there was an error writing
+     * or closing the stream
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            flushBuffer();
+        } finally {
+            out.close();
+        }
+    }
+
+}
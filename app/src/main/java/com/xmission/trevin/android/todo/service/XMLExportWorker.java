@@ -52,7 +52,8 @@ import java.util.Locale;
  *
  * @author Trevin Beattie
  */
-public class XMLExportWorker extends Worker implements ProgressBarUpdater {
+public class XMLExportWorker extends Worker
+        implements ProgressBarUpdater, ProgressAggregator.Listener {
 
     public static final String TAG = "XMLExportWorker";
 
@@ -68,6 +69,34 @@ public class XMLExportWorker extends Worker implements ProgressBarUpdater {
      */
     public static final String EXPORT_PRIVATE = "XMLExportPrivate";
 
+    /**
+     * The key of the input data that indicates whether to
+     * compress the export file.
+     */
+    public static final String EXPORT_COMPRESSED = "XMLExportCompressed";
+
+    /**
+     * The key of the input data that holds the compression level
+     * to use if the export is compressed; if not given, the export
+     * uses {@link XMLCompression#DEFAULT_LEVEL}.
+     */
+    public static final String EXPORT_COMPRESSION_LEVEL =
+            "XMLExportCompressionLevel";
+
+    /**
+     * The key of the input data that indicates whether to write
+     * a binary snapshot (see {@link SnapshotExporter}) instead of XML.
+     * Snapshots are never compressed.
+     */
+    public static final String EXPORT_SNAPSHOT = "XMLExportSnapshot";
+
+    /**
+     * The key of the input data that indicates whether to export
+     * only the changes since the last incremental export.  This does
+     * not apply to snapshots.
+     */
+    public static final String EXPORT_INCREMENTAL = "XMLExportIncremental";
+
     /**
      * Notification ID to use when running this worker in the foreground
      * (Oreo or later).  This <b>must not</b> conflict with the ID of
@@ -90,8 +119,18 @@ public class XMLExportWorker extends Worker implements ProgressBarUpdater {
     /** Whether to export private records */
     private boolean exportPrivate;
 
-    /** Internal time when we last updated the async progress */
-    private long lastProgressTimeNano;
+    /** The compression level to use, or {@code null} to not compress */
+    private Integer compressionLevel = null;
+
+    /** Whether to write a binary snapshot instead of XML */
+    private boolean exportSnapshot;
+
+    /** Whether to export only the changes since the last export */
+    private boolean exportIncremental;
+
+    /** Limits how often we post progress and measures throughput */
+    private final ProgressAggregator progressAggregator =
+            new ProgressAggregator(this);
 
     private String lastProgressMessage = null;
 
@@ -132,6 +171,14 @@ public class XMLExportWorker extends Worker implements ProgressBarUpdater {
                     "No XML output file provided");
         exportPrivate = params.getInputData().getBoolean(
                 EXPORT_PRIVATE, false);
+        exportSnapshot = params.getInputData().getBoolean(
+                EXPORT_SNAPSHOT, false);
+        exportIncremental = params.getInputData().getBoolean(
+                EXPORT_INCREMENTAL, false);
+        if (!exportSnapshot &&
+                params.getInputData().getBoolean(EXPORT_COMPRESSED, false))
+            compressionLevel = params.getInputData().getInt(
+                    EXPORT_COMPRESSION_LEVEL, XMLCompression.DEFAULT_LEVEL);
 
         String fileLocation = params.getInputData().getString(XML_DATA_FILENAME);
         if (fileLocation.startsWith("content://")) {
@@ -207,14 +254,21 @@ public class XMLExportWorker extends Worker implements ProgressBarUpdater {
     public Result doWork() {
         Log.d(TAG, ".doWork");
         long startTimeNano = System.nanoTime();
-        lastProgressTimeNano = startTimeNano;
         updateProgress(context.getString(
                 R.string.ProgressMessageStart), 0, 0, false);
         repository.open(context);
         try {
+            if (exportSnapshot) {
+                SnapshotExporter.export(preferences, repository,
+                        xmlStream, exportPrivate, this);
+                return Result.success(progressAggregator.toSummaryData());
+            }
+            OutputStream out = xmlStream;
+            if (compressionLevel != null)
+                out = XMLCompression.compress(out, compressionLevel);
             XMLExporter.export(preferences, repository,
-                    xmlStream, exportPrivate, this);
-            return Result.success();
+                    out, exportPrivate, exportIncremental, this);
+            return Result.success(progressAggregator.toSummaryData());
         } catch (Exception e) {
             Log.e(TAG, "Error exporting data to XML!", e);
             showToast(e.getMessage());
@@ -237,26 +291,32 @@ public class XMLExportWorker extends Worker implements ProgressBarUpdater {
      *                   adding categories, adding items)
      * @param currentCount the number of items exported so far
      * @param totalCount the total number of items to be exported
-     * @param throttle if {@code true}, skip updating the progress
-     *                 if it&rsquo;s been less than 250 ms since
-     *                 we last posted our progress.
+     * @param throttle if {@code true}, let the aggregator skip
+     *                 this update if we posted our progress recently.
      */
     @Override
     public void updateProgress(String modeString,
                                int currentCount, int totalCount,
                                boolean throttle) {
-        if (throttle) {
-            long now = System.nanoTime();
-            if ((now - lastProgressTimeNano) < 250000000L)
-                return;
-            lastProgressTimeNano = now;
-        }
-        Data progressData = new Data.Builder()
-                .putString(PROGRESS_CURRENT_MODE, modeString)
-                .putInt(PROGRESS_MAX_COUNT, totalCount)
-                .putInt(PROGRESS_CURRENT_COUNT, currentCount)
-                .build();
-        setProgressAsync(progressData);
+        progressAggregator.updateProgress(modeString,
+                currentCount, totalCount, throttle);
+    }
+
+    /**
+     * Post a progress update which got through the aggregator.
+     *
+     * @param modeString the current mode of operation
+     * @param currentCount the number of records processed so far
+     * @param totalCount the total number of records to process
+     * @param recordsPerSecond the measured throughput
+     * @param etaMillis the estimated time remaining, or -1 if unknown
+     */
+    @Override
+    public void onProgress(String modeString,
+                           int currentCount, int totalCount,
+                           float recordsPerSecond, long etaMillis) {
+        setProgressAsync(ProgressAggregator.toProgressData(modeString,
+                currentCount, totalCount, recordsPerSecond, etaMillis));
     }
 
     /**
@@ -24,17 +24,27 @@ import com.xmission.trevin.android.todo.provider.ToDoCursor;
 import com.xmission.trevin.android.todo.provider.ToDoRepository;
 import com.xmission.trevin.android.todo.provider.ToDoRepositoryImpl;
 import com.xmission.trevin.android.todo.provider.ToDoSchema;
+import com.xmission.trevin.android.todo.util.Base64Codec;
 import com.xmission.trevin.android.todo.util.StringEncryption;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.io.OutputStream;
-import java.io.PrintStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.time.Instant;
 import java.time.LocalDate;
-import java.time.ZoneOffset;
-import java.time.format.DateTimeFormatter;
 import java.util.*;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static com.xmission.trevin.android.todo.service.XMLEmitter.LINE_SEPARATOR;
+import static com.xmission.trevin.android.todo.service.XMLEmitter.fragment;
 
 /**
  * This class exports the To Do list to a given XML output stream.
@@ -68,6 +78,15 @@ public class XMLExporter {
     /** The total record count attribute name */
     public static final String ATTR_TOTAL_RECORDS = "total-records";
 
+    /**
+     * The attribute which marks an incremental export.  Its value is
+     * the latest modification time of any item in the previous export;
+     * the document only holds items modified (or added) after that,
+     * plus a {@value #TOMBSTONES_TAG} section listing the items
+     * deleted since the previous export.
+     */
+    public static final String ATTR_SINCE = "since";
+
     /** The preferences element name */
     public static final String PREFERENCES_TAG = "Preferences";
 
@@ -191,6 +210,43 @@ public class XMLExporter {
     /** The name of the note sub-element */
     public static final String TODO_NOTE = "note";
 
+    /** The deleted items element name (incremental exports only) */
+    public static final String TOMBSTONES_TAG = "Tombstones";
+
+    /** Name of deleted items child elements */
+    public static final String TOMBSTONE_ITEM = "tombstone";
+
+    /**
+     * Name of the metadata used to record the state of the last
+     * incremental export.  This is specific to the database it was
+     * exported from, so it is never itself exported.
+     */
+    public static final String METADATA_EXPORT_WATERMARK =
+            "XMLExporter.Watermark";
+
+    /** The number of To Do items formatted together as one chunk */
+    static final int ITEM_BATCH_SIZE = 256;
+
+    /**
+     * The number of threads used to format To Do items.  We leave
+     * one core for the thread reading the database and writing
+     * the file; with fewer than three cores there&rsquo;s nothing
+     * to gain from a separate pool, so items are formatted in line.
+     */
+    private static int formatThreads = Math.min(4,
+            Runtime.getRuntime().availableProcessors() - 1);
+
+    /**
+     * Change the number of threads used to format To Do items.
+     * This is intended for unit testing.
+     *
+     * @param threads the number of threads; 1 or less to format
+     * items on the same thread that reads and writes them
+     */
+    static void setFormatThreads(int threads) {
+        formatThreads = threads;
+    }
+
     /** Modes of operation */
     public enum OpMode {
         START, SETTINGS, CATEGORIES, ITEMS, FINISH
@@ -219,6 +275,359 @@ public class XMLExporter {
         modeText.put(mode, text);
     }
 
+    /**
+     * Get the text associated with a mode of operation.
+     *
+     * @param mode the mode whose text to get
+     *
+     * @return the text to show for that mode
+     */
+    static String getModeText(OpMode mode) {
+        return modeText.get(mode);
+    }
+
+    /**
+     * The state recorded in the database after an incremental export,
+     * against which the next incremental export is compared.  Rather
+     * than keep a log of deleted items, this records the ID of every
+     * item that was exported; any of those which are no longer in the
+     * database at the time of the next export must have been deleted
+     * in between.  The ID&rsquo;s are stored as varint-encoded
+     * differences, which takes about one byte per item.
+     */
+    static final class Watermark {
+        static final int VERSION = 1;
+        /** The size of the fixed part of the stored watermark */
+        private static final int HEADER_SIZE = 1 + 1 + 8 + 4;
+        /** Whether the export included private records */
+        final boolean includesPrivate;
+        /**
+         * The latest modification time of any exported item,
+         * in milliseconds since the epoch
+         */
+        long maxModTime = 0;
+        /** The ID&rsquo;s of the exported items, in ascending order */
+        private long[] itemIds = new long[16];
+        /** The number of ID&rsquo;s in {@link #itemIds} */
+        private int itemCount = 0;
+        /** Whether the ID&rsquo;s were recorded out of order */
+        private boolean unsorted = false;
+
+        Watermark(boolean includesPrivate) {
+            this.includesPrivate = includesPrivate;
+        }
+
+        /**
+         * Add an item which is being exported to the watermark.
+         *
+         * @param item the item being exported
+         */
+        void record(ToDoItem item) {
+            if (itemCount == itemIds.length)
+                itemIds = Arrays.copyOf(itemIds, itemCount * 2);
+            long id = item.getId();
+            if ((itemCount > 0) && (id <= itemIds[itemCount - 1]))
+                unsorted = true;
+            itemIds[itemCount++] = id;
+            maxModTime = Math.max(maxModTime,
+                    item.getModTime().toEpochMilli());
+        }
+
+        /** Put the recorded ID&rsquo;s in order if they weren&rsquo;t */
+        private void sort() {
+            if (unsorted) {
+                Arrays.sort(itemIds, 0, itemCount);
+                unsorted = false;
+            }
+        }
+
+        /**
+         * Check whether an item needs to be included in the next
+         * incremental export.
+         *
+         * @param item the item in the database
+         *
+         * @return {@code true} if the item was modified after the
+         * previous export or was not included in it
+         */
+        boolean isChanged(ToDoItem item) {
+            if (item.getModTime().toEpochMilli() > maxModTime)
+                return true;
+            sort();
+            return Arrays.binarySearch(itemIds, 0, itemCount,
+                    item.getId()) < 0;
+        }
+
+        /**
+         * Find the items from this watermark which are not in a newer one.
+         *
+         * @param current the watermark of the current export
+         *
+         * @return the ID&rsquo;s of the items which have been deleted
+         * since this watermark was made, in ascending order
+         */
+        long[] missingFrom(Watermark current) {
+            sort();
+            current.sort();
+            long[] missing = new long[itemCount];
+            int count = 0;
+            int j = 0;
+            for (int i = 0; i < itemCount; i++) {
+                while ((j < current.itemCount)
+                        && (current.itemIds[j] < itemIds[i]))
+                    j++;
+                if ((j >= current.itemCount)
+                        || (current.itemIds[j] != itemIds[i]))
+                    missing[count++] = itemIds[i];
+            }
+            return Arrays.copyOf(missing, count);
+        }
+
+        /** @return the watermark in the form stored in the database */
+        byte[] toBytes() {
+            sort();
+            ByteArrayOutputStream bytes =
+                    new ByteArrayOutputStream(HEADER_SIZE + itemCount + 16);
+            ByteBuffer bb = ByteBuffer.allocate(HEADER_SIZE)
+                    .order(ByteOrder.BIG_ENDIAN);
+            bb.put((byte) VERSION);
+            bb.put((byte) (includesPrivate ? 1 : 0));
+            bb.putLong(maxModTime);
+            bb.putInt(itemCount);
+            bytes.write(bb.array(), 0, HEADER_SIZE);
+            long lastId = 0;
+            for (int i = 0; i < itemCount; i++) {
+                long delta = itemIds[i] - lastId;
+                lastId = itemIds[i];
+                while ((delta & ~0x7fL) != 0) {
+                    bytes.write((int) ((delta & 0x7f) | 0x80));
+                    delta >>>= 7;
+                }
+                bytes.write((int) delta);
+            }
+            return bytes.toByteArray();
+        }
+
+        /**
+         * Read a watermark from the form stored in the database.
+         *
+         * @param data the stored watermark
+         *
+         * @return the watermark
+         *
+         * @throws IllegalArgumentException if the data is
+         * not a valid watermark
+         */
+        static Watermark fromBytes(byte[] data)
+                throws IllegalArgumentException {
+            ByteBuffer bb = ByteBuffer.wrap(data).order(ByteOrder.BIG_ENDIAN);
+            try {
+                int version = bb.get() & 0xff;
+                if (version != VERSION)
+                    throw new IllegalArgumentException(
+                            "Unsupported export watermark version "
+                                    + version);
+                Watermark wm = new Watermark(bb.get() != 0);
+                wm.maxModTime = bb.getLong();
+                int count = bb.getInt();
+                // Every ID takes at least one byte
+                if ((count < 0) || (count > bb.remaining()))
+                    throw new IllegalArgumentException(
+                            "Invalid export watermark item count " + count);
+                wm.itemIds = new long[Math.max(count, 16)];
+                long lastId = 0;
+                for (int i = 0; i < count; i++) {
+                    long delta = 0;
+                    int shift = 0;
+                    byte b;
+                    do {
+                        if (shift > 63)
+                            throw new IllegalArgumentException(
+                                    "Invalid export watermark item ID");
+                        b = bb.get();
+                        delta |= (long) (b & 0x7f) << shift;
+                        shift += 7;
+                    } while ((b & 0x80) != 0);
+                    if (delta <= 0)
+                        throw new IllegalArgumentException(
+                                "Export watermark item ID's are out of order");
+                    lastId += delta;
+                    wm.itemIds[i] = lastId;
+                }
+                wm.itemCount = count;
+                return wm;
+            } catch (BufferUnderflowException bux) {
+                throw new IllegalArgumentException(
+                        "Truncated export watermark");
+            }
+        }
+
+        /**
+         * Read the watermark left by the last incremental export.
+         *
+         * @param repository the repository holding the watermark
+         *
+         * @return the watermark, or {@code null} if there is none or
+         * it cannot be read (in which case we need a full export).
+         */
+        static Watermark read(ToDoRepository repository) {
+            ToDoMetadata saved = repository.getMetadataByName(
+                    METADATA_EXPORT_WATERMARK);
+            if ((saved == null) || (saved.getValue() == null))
+                return null;
+            try {
+                return fromBytes(saved.getValue());
+            } catch (IllegalArgumentException x) {
+                Log.w(LOG_TAG, "Ignoring the last export watermark", x);
+                return null;
+            }
+        }
+
+        /**
+         * Save this watermark for the next incremental export.
+         *
+         * @param repository the repository in which to store the watermark
+         */
+        void store(ToDoRepository repository) {
+            Log.i(LOG_TAG, String.format(
+                    "Recording export watermark for %d items", itemCount));
+            repository.upsertMetadata(METADATA_EXPORT_WATERMARK, toBytes());
+        }
+    }
+
+    /*
+     * Markup fragments, encoded ahead of time.  Elements which end
+     * with a line separator in some places and a plain newline in
+     * others are written that way for compatibility with exports
+     * from earlier versions of this class.
+     */
+    private static final byte[] XML_DECLARATION = fragment(
+            "<?xml version=\"1.0\" encoding=\"utf-8\"?>" + LINE_SEPARATOR);
+    private static final byte[] DOCUMENT_START = fragment(
+            "<" + DOCUMENT_TAG + " " + ATTR_VERSION + "=\"2\" "
+                    + ATTR_DB_VERSION + "=\"");
+    private static final byte[] DOCUMENT_EXPORTED = fragment(
+            "\" " + ATTR_EXPORTED + "=\"");
+    private static final byte[] DOCUMENT_SINCE = fragment(
+            "\" " + ATTR_SINCE + "=\"");
+    private static final byte[] DOCUMENT_TOTAL = fragment(
+            "\" " + ATTR_TOTAL_RECORDS + "=\"");
+    private static final byte[] DOCUMENT_END = fragment(
+            "</" + DOCUMENT_TAG + ">\n");
+    /** Closes an attribute value and its start tag, ending the line */
+    private static final byte[] END_START_TAG = fragment("\">\n");
+    /** Closes an attribute value and its empty element, ending the line */
+    private static final byte[] END_EMPTY_TAG = fragment("\"/>\n");
+    private static final byte[] PREFERENCES_START = fragment(
+            "  <" + PREFERENCES_TAG + " " + ATTR_COUNT + "=\"");
+    private static final byte[] PREFERENCES_END = fragment(
+            "  </" + PREFERENCES_TAG + ">\n");
+    private static final byte[] PREFERENCE_START = fragment("    <");
+    private static final byte[] PREFERENCE_VALUE = fragment(">");
+    private static final byte[] PREFERENCE_END = fragment("</");
+    private static final byte[] TAG_END_LINE = fragment(">\n");
+    private static final byte[] METADATA_START = fragment(
+            "  <" + METADATA_TAG + " " + ATTR_COUNT + "=\"");
+    private static final byte[] METADATA_END = fragment(
+            "  </" + METADATA_TAG + ">\n");
+    private static final byte[] METADATA_ITEM_START = fragment(
+            "    <" + METADATA_ITEM + " " + ATTR_ID + "=\"");
+    private static final byte[] METADATA_ITEM_NAME = fragment(
+            "\" " + ATTR_NAME + "=\"");
+    private static final byte[] METADATA_ITEM_EMPTY = fragment(
+            "\"/>" + LINE_SEPARATOR);
+    private static final byte[] METADATA_ITEM_VALUE = fragment("\">");
+    private static final byte[] METADATA_ITEM_END = fragment(
+            "</" + METADATA_ITEM + ">\n");
+    private static final byte[] CATEGORIES_START = fragment(
+            "  <" + CATEGORIES_TAG + " " + ATTR_COUNT + "=\"");
+    private static final byte[] ATTR_MAX_ID_START = fragment(
+            "\" " + ATTR_MAX_ID + "=\"");
+    private static final byte[] CATEGORIES_END = fragment(
+            "  </" + CATEGORIES_TAG + ">\n");
+    private static final byte[] CATEGORY_START = fragment(
+            "    <" + CATEGORIES_ITEM + " " + ATTR_ID + "=\"");
+    private static final byte[] CATEGORY_NAME = fragment("\">");
+    private static final byte[] CATEGORY_END = fragment(
+            "</" + CATEGORIES_ITEM + ">\n");
+    private static final byte[] ITEMS_START = fragment(
+            "  <" + ITEMS_TAG + " " + ATTR_COUNT + "=\"");
+    private static final byte[] ITEMS_END = fragment(
+            "  </" + ITEMS_TAG + ">\n");
+    private static final byte[] ITEM_START = fragment(
+            "    <" + TODO_ITEM + " " + ATTR_ID + "=\"");
+    private static final byte[] ITEM_CHECKED = fragment(
+            "\" " + ATTR_CHECKED + "=\"");
+    private static final byte[] ITEM_CATEGORY = fragment(
+            "\" " + ATTR_CATEGORY_ID + "=\"");
+    private static final byte[] ITEM_PRIORITY = fragment(
+            "\" " + ATTR_PRIORITY + "=\"");
+    private static final byte[] ITEM_PRIVATE = fragment(
+            "\" " + ATTR_PRIVATE + "=\"true");
+    private static final byte[] ITEM_ENCRYPTION = fragment(
+            "\" " + ATTR_ENCRYPTION + "=\"");
+    private static final byte[] ITEM_START_END = fragment(
+            "\">" + LINE_SEPARATOR);
+    private static final byte[] ITEM_END = fragment(
+            "    </" + TODO_ITEM + ">\n");
+    private static final byte[] DESCRIPTION_START = fragment(
+            "      <" + TODO_DESCRIPTION + ">");
+    private static final byte[] DESCRIPTION_END = fragment(
+            "</" + TODO_DESCRIPTION + ">\n");
+    private static final byte[] CREATED_START = fragment(
+            "      <" + TODO_CREATED + " " + ATTR_TIME + "=\"");
+    private static final byte[] MODIFIED_START = fragment(
+            "      <" + TODO_MODIFIED + " " + ATTR_TIME + "=\"");
+    private static final byte[] COMPLETED_START = fragment(
+            "      <" + TODO_COMPLETED + " " + ATTR_TIME + "=\"");
+    private static final byte[] DUE_START = fragment(
+            "      <" + TODO_DUE + " " + ATTR_DATE + "=\"");
+    private static final byte[] DUE_END = fragment(
+            "      </" + TODO_DUE + ">\n");
+    private static final byte[] HIDE_START = fragment(
+            "        <" + DUE_HIDE + " " + ATTR_DAYS_EARLIER + "=\"");
+    private static final byte[] ALARM_START = fragment(
+            "        <" + DUE_ALARM + " " + ATTR_DAYS_EARLIER + "=\"");
+    private static final byte[] ALARM_TIME = fragment(
+            "\" " + ATTR_TIME + "=\"");
+    private static final byte[] NOTIFICATION_START = fragment(
+            "        <" + DUE_NOTIFICATION + " " + ATTR_TIME + "=\"");
+    private static final byte[] NOTE_START = fragment(
+            "        <" + TODO_NOTE + ">");
+    private static final byte[] NOTE_END = fragment(
+            "</" + TODO_NOTE + ">\n");
+    private static final byte[] REPEAT_START = fragment(
+            "        <" + DUE_REPEAT + " " + ATTR_TYPE + "=\"");
+    private static final byte[] REPEAT_INCREMENT = fragment(
+            "\" " + ATTR_INCREMENT + "=\"");
+    private static final byte[] REPEAT_WEEK_DAYS = fragment(
+            " " + ATTR_WEEK_DAYS + "=\"");
+    private static final byte[] REPEAT_DIRECTION = fragment(
+            "\" " + ATTR_DIRECTION + "=\"");
+    private static final byte[] REPEAT_DAY1 = fragment(
+            " " + ATTR_DAY1 + "=\"");
+    private static final byte[] REPEAT_WEEK1 = fragment(
+            "\" " + ATTR_WEEK1 + "=\"");
+    private static final byte[] REPEAT_DAY2 = fragment(
+            "\" " + ATTR_DAY2 + "=\"");
+    private static final byte[] REPEAT_WEEK2 = fragment(
+            "\" " + ATTR_WEEK2 + "=\"");
+    private static final byte[] REPEAT_MONTH = fragment(
+            "\" " + ATTR_MONTH + "=\"");
+    private static final byte[] REPEAT_END = fragment(
+            " " + ATTR_END + "=\"");
+    private static final byte[] TOMBSTONES_START = fragment(
+            "  <" + TOMBSTONES_TAG + " " + ATTR_COUNT + "=\"");
+    private static final byte[] TOMBSTONES_END = fragment(
+            "  </" + TOMBSTONES_TAG + ">\n");
+    private static final byte[] TOMBSTONE_START = fragment(
+            "    <" + TOMBSTONE_ITEM + " " + ATTR_ID + "=\"");
+    private static final byte[] QUOTE = fragment("\"");
+    private static final byte[] COMMA = fragment(",");
+    private static final byte[] ALL_DAYS = fragment("ALL");
+    private static final byte[] REPEAT_TAIL = fragment(
+            "/>" + LINE_SEPARATOR);
+
     /**
      * Export the preferences, metadata, categories, and To Do records
      * from the database to an XML file.
@@ -232,42 +641,139 @@ public class XMLExporter {
      * we don&rsquo;t decrypted anything here, just write the encrypted data.
      * @param progressUpdater a class to call back while we are processing
      * the data to mark our progress.
+     *
+     * @throws IOException if there was an error writing the output stream
      */
     public static void export(ToDoPreferences prefs,
                               ToDoRepository repository,
                               OutputStream outStream,
                               boolean exportPrivate,
-                              ProgressBarUpdater progressUpdater) {
+                              ProgressBarUpdater progressUpdater)
+            throws IOException {
+        export(prefs, repository, outStream, exportPrivate,
+                false, progressUpdater);
+    }
 
-        try (PrintStream out = new PrintStream(outStream)) {
+    /**
+     * Export the preferences, metadata, categories, and To Do records
+     * from the database to an XML file, optionally only writing the
+     * To Do records which have changed since the last incremental export.
+     * <p>
+     * An incremental export compares the database against the
+     * {@link Watermark} left by the previous incremental export.
+     * It writes only the items which were modified or added since
+     * then, along with a {@value #TOMBSTONES_TAG} section for the
+     * items which have been deleted; the preferences, metadata, and
+     * categories are always written in full.  If there is no previous
+     * watermark, or it was made with a different {@code exportPrivate}
+     * setting, this writes a full export instead.  Either way, a new
+     * watermark is stored once the export has been written successfully,
+     * so the first incremental export serves as the base for the next.
+     * The full export can be restored with any import type, after which
+     * each of the following deltas should be imported in order with
+     * {@link XMLImporter.ImportType#UPDATE}.
+     * </p>
+     *
+     * @param prefs the To Do preferences.
+     * @param repository The repository from which to read records.
+     * It should have already been opened by the caller.
+     * @param outStream the stream to which we should write the data in XML.
+     * @param exportPrivate whether to include private records and the
+     * password hash in the export.  This will include encrypted records;
+     * we don&rsquo;t decrypted anything here, just write the encrypted data.
+     * @param incremental whether to write only the changes since the
+     * last incremental export.  If {@code false}, this writes a full
+     * export and leaves the watermark alone.
+     * @param progressUpdater a class to call back while we are processing
+     * the data to mark our progress.
+     *
+     * @throws IOException if there was an error writing the output stream
+     */
+    public static void export(ToDoPreferences prefs,
+                              ToDoRepository repository,
+                              OutputStream outStream,
+                              boolean exportPrivate,
+                              boolean incremental,
+                              ProgressBarUpdater progressUpdater)
+            throws IOException {
+
+        Watermark previous = null;
+        Watermark next = null;
+        if (incremental) {
+            previous = Watermark.read(repository);
+            if ((previous != null)
+                    && (previous.includesPrivate != exportPrivate)) {
+                Log.i(LOG_TAG, String.format(
+                        "The last export %s private records;"
+                                + " writing a full export",
+                        previous.includesPrivate ? "included" : "excluded"));
+                previous = null;
+            }
+            next = new Watermark(exportPrivate);
+            if (previous != null)
+                next.maxModTime = previous.maxModTime;
+        }
+
+        try (XMLEmitter out = new XMLEmitter(outStream)) {
             // Get all of the preferences, metadata, and categories;
             // these should be very short collections.
             Map<String,?> prefsMap = prefs.getAllPreferences();
             List<ToDoMetadata> metadata = repository.getMetadata();
             List<ToDoCategory> categories = repository.getCategories();
-            // Get the total count of items to export
-            int itemCount = repository.countItems();
-            if (!exportPrivate) {
-                itemCount -= repository.countPrivateItems();
-                // Exclude the password hash
-                Iterator<ToDoMetadata> iter = metadata.iterator();
-                while (iter.hasNext()) {
-                    ToDoMetadata meta = iter.next();
-                    if (StringEncryption.METADATA_PASSWORD_HASH
-                            .equals(meta.getName()))
-                        iter.remove();
+            // Exclude the export watermark, and the password hash
+            // if we are not exporting private records
+            Iterator<ToDoMetadata> iter = metadata.iterator();
+            while (iter.hasNext()) {
+                ToDoMetadata meta = iter.next();
+                if (METADATA_EXPORT_WATERMARK.equals(meta.getName())
+                        || (!exportPrivate
+                        && StringEncryption.METADATA_PASSWORD_HASH
+                        .equals(meta.getName())))
+                    iter.remove();
+            }
+            long maxItemId = repository.getMaxItemId();
+            ToDoCursor cursor = repository.getItems(
+                    ToDoPreferences.ALL_CATEGORIES, true,
+                    LocalDate.now(prefs.getTimeZone()),
+                    exportPrivate, exportPrivate,
+                    ToDoRepositoryImpl.TODO_TABLE_NAME + "."
+                            + ToDoSchema.ToDoItemColumns._ID);
+            // For a delta, find the changed items ahead of time
+            // so we know how many there are.  (There should be few.)
+            List<ToDoItem> changedItems = null;
+            long[] deletedIds = null;
+            int itemCount;
+            if (previous != null) {
+                changedItems = new ArrayList<>();
+                while (cursor.moveToNext()) {
+                    ToDoItem item = cursor.getItem();
+                    if (previous.isChanged(item))
+                        changedItems.add(item);
+                    next.record(item);
                 }
+                cursor.close();
+                deletedIds = previous.missingFrom(next);
+                itemCount = changedItems.size() + deletedIds.length;
+            } else {
+                itemCount = repository.countItems();
+                if (!exportPrivate)
+                    itemCount -= repository.countPrivateItems();
             }
             int totalCount = prefsMap.size() + metadata.size()
                     + categories.size() + itemCount;
 
-            out.println("<?xml version=\"1.0\" encoding=\"utf-8\"?>");
-            out.printf(Locale.US, "<%s %s=\"2\" %s=\"%d\" %s=\"%s\" %s=\"%d\">\n",
-                    DOCUMENT_TAG, ATTR_VERSION,
-                    ATTR_DB_VERSION, ToDoRepositoryImpl.DATABASE_VERSION,
-                    ATTR_EXPORTED, Instant.now().atOffset(ZoneOffset.UTC)
-                            .format(DateTimeFormatter.ISO_INSTANT),
-                    ATTR_TOTAL_RECORDS, totalCount);
+            out.write(XML_DECLARATION);
+            out.write(DOCUMENT_START);
+            out.number(ToDoRepositoryImpl.DATABASE_VERSION);
+            out.write(DOCUMENT_EXPORTED);
+            out.timestamp(Instant.now());
+            if (previous != null) {
+                out.write(DOCUMENT_SINCE);
+                out.timestamp(Instant.ofEpochMilli(previous.maxModTime));
+            }
+            out.write(DOCUMENT_TOTAL);
+            out.number(totalCount);
+            out.write(END_START_TAG);
 
             progressUpdater.updateProgress(modeText.get(OpMode.SETTINGS),
                     0, totalCount, true);
@@ -281,98 +787,87 @@ public class XMLExporter {
 
             progressUpdater.updateProgress(modeText.get(OpMode.ITEMS),
                     prefsCount + metaCount + catCount, totalCount, true);
-            long maxItemId = repository.getMaxItemId();
-            ToDoCursor cursor = repository.getItems(
-                    ToDoPreferences.ALL_CATEGORIES, true,
-                    LocalDate.now(prefs.getTimeZone()),
-                    exportPrivate, exportPrivate,
-                    ToDoRepositoryImpl.TODO_TABLE_NAME + "."
-                            + ToDoSchema.ToDoItemColumns._ID);
-            itemCount = writeToDoItems(cursor, maxItemId, out, progressUpdater,
-                    prefsCount + metaCount + catCount, totalCount);
+            if (previous != null) {
+                itemCount = writeToDoItems(changedItems, maxItemId, out,
+                        progressUpdater, prefsCount + metaCount + catCount,
+                        totalCount);
+                itemCount += writeTombstones(deletedIds, out);
+            } else {
+                itemCount = writeToDoItems(cursor, maxItemId, out,
+                        next, progressUpdater,
+                        prefsCount + metaCount + catCount, totalCount);
+                cursor.close();
+            }
 
             progressUpdater.updateProgress(modeText.get(OpMode.FINISH),
                     prefsCount + metaCount + catCount + itemCount,
                     totalCount, false);
 
-            out.printf(Locale.US, "</%s>\n", DOCUMENT_TAG);
+            out.write(DOCUMENT_END);
         }
-    }
 
-    private static final Pattern XML_RESERVED_CHARACTERS =
-        Pattern.compile("[\"&'<>]");
+        // Only move the watermark once the export is complete
+        if (next != null)
+            next.store(repository);
+    }
 
     /** Escape a string for XML sequences */
     public static String escapeXML(String raw) {
         if (raw == null)
-            raw = "";
-        Matcher m = XML_RESERVED_CHARACTERS.matcher(raw);
-        if (m.find()) {
-            String step1 = raw.replace("&", "&amp;");
-            String step2 = step1.replace("<", "&lt;");
-            String step3 = step2.replace(">", "&gt;");
-            String step4 = step3.replace("\"", "&quot;");
-            String step5 = step4.replace("'", "&apos;");
-            return step5;
-        } else {
-            return raw;
+            return "";
+        StringBuilder sb = null;
+        int copied = 0;
+        for (int i = 0; i < raw.length(); i++) {
+            String escaped;
+            switch (raw.charAt(i)) {
+                case '&': escaped = "&amp;"; break;
+                case '<': escaped = "&lt;"; break;
+                case '>': escaped = "&gt;"; break;
+                case '"': escaped = "&quot;"; break;
+                case '\'': escaped = "&apos;"; break;
+                default: continue;
+            }
+            if (sb == null)
+                sb = new StringBuilder(raw.length() + 16);
+            sb.append(raw, copied, i).append(escaped);
+            copied = i + 1;
         }
+        if (sb == null)
+            return raw;
+        return sb.append(raw, copied, raw.length()).toString();
     }
 
-    /** RFC 3548 sec. 4 */
-    private static final char[] BASE64_CHARACTERS = {
-        'A', 'B', 'C', 'D', 'E', 'F', 'G', 'H', 'I', 'J', 'K', 'L', 'M', 'N', 'O', 'P',
-        'Q', 'R', 'S', 'T', 'U', 'V', 'W', 'X', 'Y', 'Z', 'a', 'b', 'c', 'd', 'e', 'f',
-        'g', 'h', 'i', 'j', 'k', 'l', 'm', 'n', 'o', 'p', 'q', 'r', 's', 't', 'u', 'v',
-        'w', 'x', 'y', 'z', '0', '1', '2', '3', '4', '5', '6', '7', '8', '9', '-', '_',
-    };
-
     /** Convert a stream of bytes to Base64 */
     public static String encodeBase64(byte[] data) {
-        StringBuilder sb = new StringBuilder();
-        // Process bytes in groups of three
-        int i;
-        for (i = 0; i + 3 <= data.length; i += 3) {
-            // Insert line breaks every 64 characters
-            if ((i > 0) && (i % 48 == 0))
-                sb.append(System.getProperty("line.separator", "\n"));
-            sb.append(BASE64_CHARACTERS[(data[i] >> 2) & 0x3f])
-            .append(BASE64_CHARACTERS[((data[i] & 3) << 4) + ((data[i+1] >> 4) & 0x0f)])
-            .append(BASE64_CHARACTERS[((data[i+1] & 0xf) << 2) + ((data[i+2] >> 6) & 3)])
-            .append(BASE64_CHARACTERS[data[i+2] & 0x3f]);
-        }
-        // Special handling for the last one or two bytes -- no padding
-        if (i < data.length) {
-            sb.append(BASE64_CHARACTERS[(data[i] >> 2) & 0x3f]);
-            if (i + 1 < data.length) {
-                sb.append(BASE64_CHARACTERS[((data[i] & 3) << 4) + ((data[i+1] >> 4) & 0x0f)]);
-                sb.append(BASE64_CHARACTERS[(data[i+1] & 0xf) << 2]);
-            } else {
-                sb.append(BASE64_CHARACTERS[(data[i] & 3) << 4]);
-            }
-        }
-        return sb.toString();
+        return Base64Codec.encode(data, LINE_SEPARATOR);
     }
 
     /**
      * Write out the preferences section
      *
      * @param prefs the preferences to write out
-     * @param out the PrintStream to which we should write the data
+     * @param out the XMLEmitter to which we should write the data
      *
      * @return the total number of preference items written
+     *
+     * @throws IOException if there was an error writing the output stream
      */
     static int writePreferences(
-            Map<String,?> prefs, PrintStream out) {
-        out.printf(Locale.US, "  <%s %s=\"%d\">\n",
-                PREFERENCES_TAG, ATTR_COUNT, prefs.size());
+            Map<String,?> prefs, XMLEmitter out) throws IOException {
+        out.write(PREFERENCES_START);
+        out.number(prefs.size());
+        out.write(END_START_TAG);
         for (String key : prefs.keySet()) {
             Object value = prefs.get(key);
-            out.printf(Locale.US, "    <%s>%s</%s>\n",
-                    key, escapeXML((value == null) ? null
-                            : value.toString()), key);
+            out.write(PREFERENCE_START);
+            out.raw(key);
+            out.write(PREFERENCE_VALUE);
+            out.text((value == null) ? null : value.toString());
+            out.write(PREFERENCE_END);
+            out.raw(key);
+            out.write(TAG_END_LINE);
         }
-        out.printf(Locale.US, "  </%s>\n", PREFERENCES_TAG);
+        out.write(PREFERENCES_END);
         Log.i(LOG_TAG, String.format("Wrote %d preference settings",
                 prefs.size()));
         return prefs.size();
@@ -382,24 +877,31 @@ public class XMLExporter {
      * Write out the metadata
      *
      * @param metadata the metadata to write out
-     * @param out the PrintStream to which we should write the data
+     * @param out the XMLEmitter to which we should write the data
      *
      * @return the total number of metadata written
+     *
+     * @throws IOException if there was an error writing the output stream
      */
     static int writeMetadata(
-            List<ToDoMetadata> metadata, PrintStream out) {
-        out.printf(Locale.US, "  <%s %s=\"%d\">\n",
-                METADATA_TAG, ATTR_COUNT, metadata.size());
+            List<ToDoMetadata> metadata, XMLEmitter out) throws IOException {
+        out.write(METADATA_START);
+        out.number(metadata.size());
+        out.write(END_START_TAG);
         for (ToDoMetadata datum : metadata) {
-            out.printf(Locale.US, "    <%s %s=\"%d\" %s=\"%s\"",
-                    METADATA_ITEM, ATTR_ID, datum.getId(), ATTR_NAME,
-                    escapeXML(datum.getName()));
-            if (datum.getValue() == null)
-                out.println("/>");
-            else out.printf(Locale.US, ">%s</%s>\n",
-                    encodeBase64(datum.getValue()), METADATA_ITEM);
-        }
-        out.printf(Locale.US, "  </%s>\n", METADATA_TAG);
+            out.write(METADATA_ITEM_START);
+            out.number(datum.getId());
+            out.write(METADATA_ITEM_NAME);
+            out.text(datum.getName());
+            if (datum.getValue() == null) {
+                out.write(METADATA_ITEM_EMPTY);
+            } else {
+                out.write(METADATA_ITEM_VALUE);
+                out.base64(datum.getValue());
+                out.write(METADATA_ITEM_END);
+            }
+        }
+        out.write(METADATA_END);
         Log.i(LOG_TAG, String.format("Wrote %d metadata items",
                 metadata.size()));
         return metadata.size();
@@ -410,21 +912,28 @@ public class XMLExporter {
      *
      * @param categories the categories to write
      * @param maxId the highest category ID in the database
-     * @param out the PrintStream to which we should write the data
+     * @param out the XMLEmitter to which we should write the data
      *
      * @return the total number of categories written
+     *
+     * @throws IOException if there was an error writing the output stream
      */
     static int writeCategories(
-            List<ToDoCategory> categories, long maxId, PrintStream out) {
-        out.printf(Locale.US, "  <%s %s=\"%d\" %s=\"%d\">\n",
-                CATEGORIES_TAG, ATTR_COUNT, categories.size(),
-                ATTR_MAX_ID, maxId);
+            List<ToDoCategory> categories, long maxId, XMLEmitter out)
+            throws IOException {
+        out.write(CATEGORIES_START);
+        out.number(categories.size());
+        out.write(ATTR_MAX_ID_START);
+        out.number(maxId);
+        out.write(END_START_TAG);
         for (ToDoCategory category : categories) {
-            out.printf(Locale.US, "    <%s %s=\"%d\">%s</%s>\n",
-                    CATEGORIES_ITEM, ATTR_ID, category.getId(),
-                    escapeXML(category.getName()), CATEGORIES_ITEM);
+            out.write(CATEGORY_START);
+            out.number(category.getId());
+            out.write(CATEGORY_NAME);
+            out.text(category.getName());
+            out.write(CATEGORY_END);
         }
-        out.printf(Locale.US, "  </%s>\n", CATEGORIES_TAG);
+        out.write(CATEGORIES_END);
         Log.i(LOG_TAG, String.format("Wrote %d categories",
                 categories.size()));
         return categories.size();
@@ -435,7 +944,41 @@ public class XMLExporter {
      *
      * @param cursor the cursor over the items to write
      * @param maxId the highest item ID in the database
-     * @param out the PrintStream to which we should write the data
+     * @param out the XMLEmitter to which we should write the data
+     * @param watermark the watermark in which to record each item
+     * written, or {@code null} if this is not an incremental export
+     * @param progressUpdater a class to call back while we are processing
+     * the data to mark our progress.
+     * @param baseCount the number of records written from previous stages
+     * @param totalCount the total number of records to be written
+     * for the progress bar
+     *
+     * @return the total number of items written
+     *
+     * @throws IOException if there was an error writing the output stream
+     */
+    static int writeToDoItems(ToDoCursor cursor, long maxId, XMLEmitter out,
+                              Watermark watermark,
+                              ProgressBarUpdater progressUpdater,
+                              int baseCount, int totalCount)
+            throws IOException {
+        out.write(ITEMS_START);
+        out.number(cursor.getCount());
+        out.write(ATTR_MAX_ID_START);
+        out.number(maxId);
+        out.write(END_START_TAG);
+        int count = writeItems(new CursorIterator(cursor), out, watermark,
+                progressUpdater, baseCount, totalCount);
+        out.write(ITEMS_END);
+        return count;
+    }
+
+    /**
+     * Write the To Do list for an incremental export
+     *
+     * @param items the items which have changed since the last export
+     * @param maxId the highest item ID in the database
+     * @param out the XMLEmitter to which we should write the data
      * @param progressUpdater a class to call back while we are processing
      * the data to mark our progress.
      * @param baseCount the number of records written from previous stages
@@ -443,89 +986,323 @@ public class XMLExporter {
      * for the progress bar
      *
      * @return the total number of items written
+     *
+     * @throws IOException if there was an error writing the output stream
      */
-    static int writeToDoItems(ToDoCursor cursor, long maxId, PrintStream out,
+    static int writeToDoItems(List<ToDoItem> items, long maxId,
+                              XMLEmitter out,
                               ProgressBarUpdater progressUpdater,
-                              int baseCount, int totalCount) {
-        out.printf(Locale.US, "  <%s %s=\"%d\" %s=\"%d\">\n",
-                ITEMS_TAG, ATTR_COUNT, cursor.getCount(),
-                ATTR_MAX_ID, maxId);
+                              int baseCount, int totalCount)
+            throws IOException {
+        out.write(ITEMS_START);
+        out.number(items.size());
+        out.write(ATTR_MAX_ID_START);
+        out.number(maxId);
+        out.write(END_START_TAG);
+        int count = writeItems(items.iterator(), out, null,
+                progressUpdater, baseCount, totalCount);
+        out.write(ITEMS_END);
+        Log.i(LOG_TAG, String.format("Wrote %d changed items", count));
+        return count;
+    }
+
+    /** Adapts a {@link ToDoCursor} to an {@link Iterator} of its items */
+    private static class CursorIterator implements Iterator<ToDoItem> {
+        private final ToDoCursor cursor;
+        /** Whether we have moved to the next row but not returned it */
+        private boolean ready = false;
+
+        CursorIterator(ToDoCursor cursor) {
+            this.cursor = cursor;
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (!ready)
+                ready = cursor.moveToNext();
+            return ready;
+        }
+
+        @Override
+        public ToDoItem next() {
+            if (!hasNext())
+                throw new NoSuchElementException();
+            ready = false;
+            return cursor.getItem();
+        }
+    }
+
+    /**
+     * A batch of To Do items passing through the export pipeline,
+     * along with the buffer holding their XML.  Calling the batch
+     * formats its items into the buffer, using an emitter of its own.
+     */
+    private static class ItemBatch implements Callable<ItemBatch> {
+        final ToDoItem[] items = new ToDoItem[ITEM_BATCH_SIZE];
+        /** The number of items in the batch */
+        int size = 0;
+        /** The formatted items */
+        final ChunkBuffer chunk = new ChunkBuffer();
+        private final XMLEmitter emitter = new XMLEmitter(chunk);
+
+        @Override
+        public ItemBatch call() throws IOException {
+            chunk.reset();
+            for (int i = 0; i < size; i++)
+                writeToDoItem(items[i], emitter);
+            emitter.flush();
+            return this;
+        }
+
+        /** Let go of the items once they have been written */
+        void clear() {
+            Arrays.fill(items, 0, size, null);
+            size = 0;
+        }
+    }
+
+    /** A byte array stream whose contents can be copied out directly */
+    private static class ChunkBuffer extends ByteArrayOutputStream {
+        ChunkBuffer() {
+            super(ITEM_BATCH_SIZE * 512);
+        }
+
+        /** @return the internal buffer; only {@link #size()} bytes are valid */
+        byte[] buffer() {
+            return buf;
+        }
+    }
+
+    /**
+     * Write out To Do items.  This is a pipeline: this thread reads
+     * batches of items and hands each one to the format pool, which
+     * encodes the items into a chunk of XML, while this thread goes
+     * on to read the next batches.  The finished chunks are written
+     * by this thread too, in the order the items were read, so the
+     * output is exactly the same as formatting the items one at a time.
+     * No more than two batches per format thread are in flight at once,
+     * and batches are recycled once written so their buffers get reused.
+     *
+     * @param items the items to write
+     * @param out the XMLEmitter to which we should write the data
+     * @param watermark the watermark in which to record each item
+     * written, or {@code null} if this is not an incremental export
+     * @param progressUpdater a class to call back while we are processing
+     * the data to mark our progress.
+     * @param baseCount the number of records written from previous stages
+     * @param totalCount the total number of records to be written
+     * for the progress bar
+     *
+     * @return the total number of items written
+     *
+     * @throws IOException if there was an error writing the output stream
+     */
+    private static int writeItems(Iterator<ToDoItem> items, XMLEmitter out,
+                                  Watermark watermark,
+                                  ProgressBarUpdater progressUpdater,
+                                  int baseCount, int totalCount)
+            throws IOException {
+        final int threads = formatThreads;
         int count = 0;
-        while (cursor.moveToNext()) {
-            ToDoItem item = cursor.getItem();
-            writeToDoItem(item, out);
-            count++;
-            progressUpdater.updateProgress(modeText.get(OpMode.ITEMS),
-                    baseCount + count, totalCount, true);
+        if (threads <= 1) {
+            while (items.hasNext()) {
+                ToDoItem item = items.next();
+                writeToDoItem(item, out);
+                if (watermark != null)
+                    watermark.record(item);
+                count++;
+                progressUpdater.updateProgress(modeText.get(OpMode.ITEMS),
+                        baseCount + count, totalCount, true);
+            }
+            return count;
+        }
+
+        ExecutorService formatPool = Executors.newFixedThreadPool(threads);
+        ArrayDeque<Future<ItemBatch>> inFlight = new ArrayDeque<>();
+        ArrayDeque<ItemBatch> spareBatches = new ArrayDeque<>();
+        try {
+            while (items.hasNext()) {
+                ItemBatch batch = spareBatches.isEmpty()
+                        ? new ItemBatch() : spareBatches.pop();
+                while ((batch.size < ITEM_BATCH_SIZE) && items.hasNext()) {
+                    ToDoItem item = items.next();
+                    if (watermark != null)
+                        watermark.record(item);
+                    batch.items[batch.size++] = item;
+                }
+                inFlight.add(formatPool.submit(batch));
+                if (inFlight.size() >= 2 * threads) {
+                    batch = awaitBatch(inFlight.remove());
+                    count = writeBatch(batch, out, progressUpdater,
+                            baseCount, count, totalCount);
+                    spareBatches.push(batch);
+                }
+            }
+            while (!inFlight.isEmpty()) {
+                ItemBatch batch = awaitBatch(inFlight.remove());
+                count = writeBatch(batch, out, progressUpdater,
+                        baseCount, count, totalCount);
+                spareBatches.push(batch);
+            }
+        } finally {
+            for (Future<ItemBatch> f : inFlight)
+                f.cancel(true);
+            formatPool.shutdownNow();
         }
-        out.printf(Locale.US, "  </%s>\n", ITEMS_TAG);
         return count;
     }
 
+    /**
+     * Wait for the format pool to finish a batch.
+     *
+     * @param future the pending batch
+     *
+     * @return the finished batch
+     *
+     * @throws IOException if the batch failed to format its items
+     * @throws RuntimeException (or a subclass) if the batch failed
+     */
+    private static ItemBatch awaitBatch(Future<ItemBatch> future)
+            throws IOException {
+        try {
+            return future.get();
+        } catch (ExecutionException ee) {
+            Throwable cause = ee.getCause();
+            if (cause instanceof IOException)
+                throw (IOException) cause;
+            if (cause instanceof RuntimeException)
+                throw (RuntimeException) cause;
+            if (cause instanceof Error)
+                throw (Error) cause;
+            throw new RuntimeException(cause);
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException(
+                    "Interrupted while exporting To Do items");
+        }
+    }
+
+    /**
+     * Write a finished batch of items to the export file.
+     *
+     * @param batch the batch to write
+     * @param out the XMLEmitter to which we should write the data
+     * @param progressUpdater a class to call back while we are processing
+     * the data to mark our progress.
+     * @param baseCount the number of records written from previous stages
+     * @param count the number of items written before this batch
+     * @param totalCount the total number of records to be written
+     * for the progress bar
+     *
+     * @return the number of items written including this batch
+     *
+     * @throws IOException if there was an error writing the output stream
+     */
+    private static int writeBatch(ItemBatch batch, XMLEmitter out,
+                                  ProgressBarUpdater progressUpdater,
+                                  int baseCount, int count, int totalCount)
+            throws IOException {
+        out.write(batch.chunk.buffer(), 0, batch.chunk.size());
+        count += batch.size;
+        batch.clear();
+        progressUpdater.updateProgress(modeText.get(OpMode.ITEMS),
+                baseCount + count, totalCount, true);
+        return count;
+    }
+
+    /**
+     * Write the list of items deleted since the last incremental export
+     *
+     * @param ids the ID&rsquo;s of the deleted items
+     * @param out the XMLEmitter to which we should write the data
+     *
+     * @return the total number of tombstones written
+     *
+     * @throws IOException if there was an error writing the output stream
+     */
+    static int writeTombstones(long[] ids, XMLEmitter out)
+            throws IOException {
+        out.write(TOMBSTONES_START);
+        out.number(ids.length);
+        out.write(END_START_TAG);
+        for (long id : ids) {
+            out.write(TOMBSTONE_START);
+            out.number(id);
+            out.write(END_EMPTY_TAG);
+        }
+        out.write(TOMBSTONES_END);
+        Log.i(LOG_TAG, String.format("Wrote %d deleted items", ids.length));
+        return ids.length;
+    }
+
     /**
      * Write out a single To Do item
      *
      * @param item the item to write
-     * @param out the PrintStream to which we should write the item element
-     */
-    static void writeToDoItem(ToDoItem item, PrintStream out) {
-        out.printf(Locale.US,
-                "    <%s %s=\"%d\" %s=\"%s\" %s=\"%d\" %s=\"%d\"",
-                TODO_ITEM, ATTR_ID, item.getId(),
-                ATTR_CHECKED, item.isChecked(),
-                ATTR_CATEGORY_ID, item.getCategoryId(),
-                ATTR_PRIORITY, item.getPriority());
+     * @param out the XMLEmitter to which we should write the item element
+     *
+     * @throws IOException if there was an error writing the output stream
+     */
+    static void writeToDoItem(ToDoItem item, XMLEmitter out)
+            throws IOException {
+        out.write(ITEM_START);
+        out.number(item.getId());
+        out.write(ITEM_CHECKED);
+        out.bool(item.isChecked());
+        out.write(ITEM_CATEGORY);
+        out.number(item.getCategoryId());
+        out.write(ITEM_PRIORITY);
+        out.number(item.getPriority());
         if (item.isPrivate()) {
-            out.printf(Locale.US, " %s=\"%s\"",
-                    ATTR_PRIVATE, item.isPrivate());
-            if (item.isEncrypted())
-                out.printf(Locale.US, " %s=\"%d\"",
-                        ATTR_ENCRYPTION, item.getPrivate());
-        }
-        out.println(">");
-        out.printf(Locale.US, "      <%s>%s</%s>\n",
-                TODO_DESCRIPTION, item.isEncrypted()
-                        ? encodeBase64(item.getEncryptedDescription())
-                        : escapeXML(item.getDescription()),
-                TODO_DESCRIPTION);
-        out.printf(Locale.US, "      <%s %s=\"%s\"/>\n",
-                TODO_CREATED, ATTR_TIME,
-                item.getCreateTime().atOffset(ZoneOffset.UTC)
-                        .format(DateTimeFormatter.ISO_INSTANT));
-        out.printf(Locale.US, "      <%s %s=\"%s\"/>\n",
-                TODO_MODIFIED, ATTR_TIME,
-                item.getModTime().atOffset(ZoneOffset.UTC)
-                        .format(DateTimeFormatter.ISO_INSTANT));
-        if (item.getCompleted() != null)
-            out.printf(Locale.US, "      <%s %s=\"%s\"/>\n",
-                    TODO_COMPLETED, ATTR_TIME,
-                    item.getCompleted().atOffset(ZoneOffset.UTC)
-                            .format(DateTimeFormatter.ISO_INSTANT));
+            out.write(ITEM_PRIVATE);
+            if (item.isEncrypted()) {
+                out.write(ITEM_ENCRYPTION);
+                out.number(item.getPrivate());
+            }
+        }
+        out.write(ITEM_START_END);
+        out.write(DESCRIPTION_START);
+        if (item.isEncrypted())
+            out.base64(item.getEncryptedDescription());
+        else
+            out.text(item.getDescription());
+        out.write(DESCRIPTION_END);
+        out.write(CREATED_START);
+        out.timestamp(item.getCreateTime());
+        out.write(END_EMPTY_TAG);
+        out.write(MODIFIED_START);
+        out.timestamp(item.getModTime());
+        out.write(END_EMPTY_TAG);
+        if (item.getCompleted() != null) {
+            out.write(COMPLETED_START);
+            out.timestamp(item.getCompleted());
+            out.write(END_EMPTY_TAG);
+        }
 
         // The hide, alarm, repeat interval, and notification timestamp
         // are all contingent on having a due date.
         if (item.getDue() != null) {
-            out.printf(Locale.US, "      <%s %s=\"%s\">\n",
-                            TODO_DUE, ATTR_DATE,
-                    item.getDue().format(DateTimeFormatter.ISO_DATE));
-
-            if (item.getHideDaysEarlier() != null)
-                out.printf(Locale.US, "        <%s %s=\"%d\"/>\n",
-                        DUE_HIDE, ATTR_DAYS_EARLIER,
-                        item.getHideDaysEarlier());
+            out.write(DUE_START);
+            out.date(item.getDue());
+            out.write(END_START_TAG);
+
+            if (item.getHideDaysEarlier() != null) {
+                out.write(HIDE_START);
+                out.number(item.getHideDaysEarlier());
+                out.write(END_EMPTY_TAG);
+            }
 
             if (item.getAlarm() != null) {
-                out.printf(Locale.US, "        <%s %s=\"%d\" %s=\"%s\"/>\n",
-                        DUE_ALARM, ATTR_DAYS_EARLIER,
-                        item.getAlarm().getAlarmDaysEarlier(),
-                        ATTR_TIME, item.getAlarm().getTime().format(
-                                DateTimeFormatter.ISO_LOCAL_TIME));
-                if (item.getAlarm().getNotificationTime() != null)
-                    out.printf(Locale.US, "        <%s %s=\"%s\"/>\n",
-                            DUE_NOTIFICATION, ATTR_TIME,
-                            item.getAlarm().getNotificationTime()
-                                    .atOffset(ZoneOffset.UTC)
-                                    .format(DateTimeFormatter.ISO_INSTANT));
+                out.write(ALARM_START);
+                out.number(item.getAlarm().getAlarmDaysEarlier());
+                out.write(ALARM_TIME);
+                out.time(item.getAlarm().getTime());
+                out.write(END_EMPTY_TAG);
+                if (item.getAlarm().getNotificationTime() != null) {
+                    out.write(NOTIFICATION_START);
+                    out.timestamp(item.getAlarm().getNotificationTime());
+                    out.write(END_EMPTY_TAG);
+                }
             }
 
             if (item.getRepeatInterval() != null) {
@@ -573,83 +1350,112 @@ public class XMLExporter {
                 }
             }
 
-            out.printf(Locale.US, "      </%s>\n", TODO_DUE);
+            out.write(DUE_END);
         }
 
         if ((item.isEncrypted() ? item.getEncryptedNote()
                 : item.getNote()) != null) {
-            out.printf(Locale.US, "        <%s>%s</%s>\n",
-                    TODO_NOTE, item.isEncrypted()
-                            ? encodeBase64(item.getEncryptedNote())
-                            : escapeXML(item.getNote()),
-                    TODO_NOTE);
+            out.write(NOTE_START);
+            if (item.isEncrypted())
+                out.base64(item.getEncryptedNote());
+            else
+                out.text(item.getNote());
+            out.write(NOTE_END);
         }
 
-        out.printf(Locale.US, "    </%s>\n", TODO_ITEM);
+        out.write(ITEM_END);
     }
 
     /**
      * Write out a &ldquo;no repeat&rdquo; interval
      *
      * @param repeat the repeat interval to write
-     * @param out the PrintStream to which to write the repeat
+     * @param out the XMLEmitter to which to write the repeat
+     *
+     * @throws IOException if there was an error writing the output stream
      */
     private static void writeNoneRepeat(
-            RepeatNone repeat, PrintStream out) {
-        out.printf(Locale.US, "        <%s %s=\"%s\"/>\n",
-                DUE_REPEAT, ATTR_TYPE, repeat.getType());
+            RepeatNone repeat, XMLEmitter out) throws IOException {
+        out.write(REPEAT_START);
+        out.raw(String.valueOf(repeat.getType()));
+        out.write(END_EMPTY_TAG);
     }
 
     /**
      * Write out the header of an abstract repeat interval
      *
      * @param repeat the repeat interval
-     * @param out the PrintStream to which to write the repeat
+     * @param out the XMLEmitter to which to write the repeat
+     *
+     * @throws IOException if there was an error writing the output stream
      */
     private static void writeRepeatHeader(
-            AbstractRepeat repeat, PrintStream out) {
-        out.printf(Locale.US, "        <%s %s=\"%s\" %s=\"%d\"",
-                DUE_REPEAT, ATTR_TYPE, repeat.getType(),
-                ATTR_INCREMENT, repeat.getIncrement());
+            AbstractRepeat repeat, XMLEmitter out) throws IOException {
+        out.write(REPEAT_START);
+        out.raw(String.valueOf(repeat.getType()));
+        out.write(REPEAT_INCREMENT);
+        out.number(repeat.getIncrement());
+        out.write(QUOTE);
+    }
+
+    /**
+     * Write out a set of week days as a comma-separated list of names
+     * (or &ldquo;ALL&rdquo;)
+     *
+     * @param days the days to write
+     * @param out the XMLEmitter to which to write the days
+     *
+     * @throws IOException if there was an error writing the output stream
+     */
+    private static void writeWeekDays(
+            Set<WeekDays> days, XMLEmitter out) throws IOException {
+        if (WeekDays.ALL.equals(days)) {
+            out.write(ALL_DAYS);
+            return;
+        }
+        boolean first = true;
+        for (WeekDays day : days) {
+            if (!first)
+                out.write(COMMA);
+            out.raw(day.name());
+            first = false;
+        }
     }
 
     /**
      * Write out the allowed weekdays for an adjustable repeat interval
      *
      * @param repeat the repeat interval
-     * @param out the PrintStream to which to write the repeat
+     * @param out the XMLEmitter to which to write the repeat
+     *
+     * @throws IOException if there was an error writing the output stream
      */
     private static void writeRepeatWeekdays(
-            AbstractAdjustableRepeat repeat, PrintStream out) {
-        StringBuilder daysStr = new StringBuilder();
-        if (WeekDays.ALL.equals(repeat.getAllowedWeekDays()))
-            daysStr.append("ALL");
-        else {
-            for (WeekDays day : repeat.getAllowedWeekDays()) {
-                if (daysStr.length() > 0)
-                    daysStr.append(",");
-                daysStr.append(day.name());
-            }
-        }
-        out.printf(Locale.US, " %s=\"%s\"", ATTR_WEEK_DAYS,
-                daysStr.toString());
-        out.printf(Locale.US, " %s=\"%s\"", ATTR_DIRECTION,
-                repeat.getDirection().name());
+            AbstractAdjustableRepeat repeat, XMLEmitter out)
+            throws IOException {
+        out.write(REPEAT_WEEK_DAYS);
+        writeWeekDays(repeat.getAllowedWeekDays(), out);
+        out.write(REPEAT_DIRECTION);
+        out.raw(repeat.getDirection().name());
+        out.write(QUOTE);
     }
 
     /**
      * Write out the trailer for an abstract repeat interval
      *
      * @param repeat the repeat interval
-     * @param out the PrintStream to which to write the repeat
+     * @param out the XMLEmitter to which to write the repeat
+     *
+     * @throws IOException if there was an error writing the output stream
      */
     private static void writeRepeatTail(
-            AbstractRepeat repeat, PrintStream out) {
-        if (repeat.getEnd() != null)
-            out.printf(Locale.US, " %s=\"%s\"",
-                    ATTR_END, repeat.getEnd().format(
-                    DateTimeFormatter.ISO_LOCAL_DATE));
-        out.println("/>");
+            AbstractRepeat repeat, XMLEmitter out) throws IOException {
+        if (repeat.getEnd() != null) {
+            out.write(REPEAT_END);
+            out.date(repeat.getEnd());
+            out.write(QUOTE);
+        }
+        out.write(REPEAT_TAIL);
     }
 
     /**
@@ -657,10 +1463,13 @@ public class XMLExporter {
      * This covers daily, day-after, week-after, month-after, and year-after.
      *
      * @param repeat the repeat interval to write
-     * @param out the PrintStream to which to write the repeat
+     * @param out the XMLEmitter to which to write the repeat
+     *
+     * @throws IOException if there was an error writing the output stream
      */
     private static void writeAdjustableRepeat(
-            AbstractAdjustableRepeat repeat, PrintStream out) {
+            AbstractAdjustableRepeat repeat, XMLEmitter out)
+            throws IOException {
         writeRepeatHeader(repeat, out);
         writeRepeatWeekdays(repeat, out);
         writeRepeatTail(repeat, out);
@@ -670,22 +1479,16 @@ public class XMLExporter {
      * Write out a weekly repeat interval
      *
      * @param repeat the repeat interval to write
-     * @param out the PrintStream to which to write the repeat
+     * @param out the XMLEmitter to which to write the repeat
+     *
+     * @throws IOException if there was an error writing the output stream
      */
     private static void writeWeeklyRepeat(
-            RepeatWeekly repeat, PrintStream out) {
+            RepeatWeekly repeat, XMLEmitter out) throws IOException {
         writeRepeatHeader(repeat, out);
-        StringBuilder daysStr = new StringBuilder();
-        if (WeekDays.ALL.equals(repeat.getWeekDays()))
-            daysStr.append("ALL");
-        else {
-            for (WeekDays day : repeat.getWeekDays()) {
-                if (daysStr.length() > 0)
-                    daysStr.append(",");
-                daysStr.append(day.name());
-            }
-        }
-        out.printf(Locale.US, " %s=\"%s\"", ATTR_WEEK_DAYS, daysStr);
+        out.write(REPEAT_WEEK_DAYS);
+        writeWeekDays(repeat.getWeekDays(), out);
+        out.write(QUOTE);
         writeRepeatTail(repeat, out);
     }
 
@@ -693,14 +1496,17 @@ public class XMLExporter {
      * Write out a monthly on date repeat interval
      *
      * @param repeat the repeat interval to write
-     * @param out the PrintStream to which to write the repeat
+     * @param out the XMLEmitter to which to write the repeat
+     *
+     * @throws IOException if there was an error writing the output stream
      */
     private static void writeMonthlyOnDateRepeat(
-            RepeatMonthlyOnDate repeat, PrintStream out) {
+            RepeatMonthlyOnDate repeat, XMLEmitter out) throws IOException {
         writeRepeatHeader(repeat, out);
         writeRepeatWeekdays(repeat, out);
-        out.printf(Locale.US, " %s=\"%d\"",
-                ATTR_DAY1, repeat.getDate());
+        out.write(REPEAT_DAY1);
+        out.number(repeat.getDate());
+        out.write(QUOTE);
         writeRepeatTail(repeat, out);
     }
 
@@ -708,14 +1514,18 @@ public class XMLExporter {
      * Write out a monthly on day of week repeat interval
      *
      * @param repeat the repeat interval to write
-     * @param out the PrintStream to which to write the repeat
+     * @param out the XMLEmitter to which to write the repeat
+     *
+     * @throws IOException if there was an error writing the output stream
      */
     private static void writeMonthlyOnDayRepeat(
-            RepeatMonthlyOnDay repeat, PrintStream out) {
+            RepeatMonthlyOnDay repeat, XMLEmitter out) throws IOException {
         writeRepeatHeader(repeat, out);
-        out.printf(Locale.US, " %s=\"%s\" %s=\"%d\"",
-                ATTR_DAY1, repeat.getDay().name(),
-                ATTR_WEEK1, repeat.getWeek());
+        out.write(REPEAT_DAY1);
+        out.raw(repeat.getDay().name());
+        out.write(REPEAT_WEEK1);
+        out.number(repeat.getWeek());
+        out.write(QUOTE);
         writeRepeatTail(repeat, out);
     }
 
@@ -723,15 +1533,20 @@ public class XMLExporter {
      * Write out a semi-monthly on dates repeat interval
      *
      * @param repeat the repeat interval to write
-     * @param out the PrintStream to which to write the repeat
+     * @param out the XMLEmitter to which to write the repeat
+     *
+     * @throws IOException if there was an error writing the output stream
      */
     private static void writeSemiMonthlyOnDatesRepeat(
-            RepeatSemiMonthlyOnDates repeat, PrintStream out) {
+            RepeatSemiMonthlyOnDates repeat, XMLEmitter out)
+            throws IOException {
         writeRepeatHeader(repeat, out);
         writeRepeatWeekdays(repeat, out);
-        out.printf(Locale.US, " %s=\"%d\" %s=\"%d\"",
-                ATTR_DAY1, repeat.getDate(),
-                ATTR_DAY2, repeat.getDate2());
+        out.write(REPEAT_DAY1);
+        out.number(repeat.getDate());
+        out.write(REPEAT_DAY2);
+        out.number(repeat.getDate2());
+        out.write(QUOTE);
         writeRepeatTail(repeat, out);
     }
 
@@ -739,16 +1554,23 @@ public class XMLExporter {
      * Write out a semi-monthly on days of weeks repeat interval
      *
      * @param repeat the repeat interval to write
-     * @param out the PrintStream to which to write the repeat
+     * @param out the XMLEmitter to which to write the repeat
+     *
+     * @throws IOException if there was an error writing the output stream
      */
     private static void writeSemiMonthlyOnDaysRepeat(
-            RepeatSemiMonthlyOnDays repeat, PrintStream out) {
+            RepeatSemiMonthlyOnDays repeat, XMLEmitter out)
+            throws IOException {
         writeRepeatHeader(repeat, out);
-        out.printf(Locale.US, " %s=\"%s\" %s=\"%d\" %s=\"%s\" %s=\"%d\"",
-                ATTR_DAY1, repeat.getDay().name(),
-                ATTR_WEEK1, repeat.getWeek(),
-                ATTR_DAY2, repeat.getDay2().name(),
-                ATTR_WEEK2, repeat.getWeek2());
+        out.write(REPEAT_DAY1);
+        out.raw(repeat.getDay().name());
+        out.write(REPEAT_WEEK1);
+        out.number(repeat.getWeek());
+        out.write(REPEAT_DAY2);
+        out.raw(repeat.getDay2().name());
+        out.write(REPEAT_WEEK2);
+        out.number(repeat.getWeek2());
+        out.write(QUOTE);
         writeRepeatTail(repeat, out);
     }
 
@@ -756,15 +1578,19 @@ public class XMLExporter {
      * Write out a yearly on date repeat interval
      *
      * @param repeat the repeat interval to write
-     * @param out the PrintStream to which to write the repeat
+     * @param out the XMLEmitter to which to write the repeat
+     *
+     * @throws IOException if there was an error writing the output stream
      */
     private static void writeYearlyOnDateRepeat(
-            RepeatYearlyOnDate repeat, PrintStream out) {
+            RepeatYearlyOnDate repeat, XMLEmitter out) throws IOException {
         writeRepeatHeader(repeat, out);
         writeRepeatWeekdays(repeat, out);
-        out.printf(Locale.US, " %s=\"%d\" %s=\"%s\"",
-                ATTR_DAY1, repeat.getDate(),
-                ATTR_MONTH, repeat.getMonth().name());
+        out.write(REPEAT_DAY1);
+        out.number(repeat.getDate());
+        out.write(REPEAT_MONTH);
+        out.raw(repeat.getMonth().name());
+        out.write(QUOTE);
         writeRepeatTail(repeat, out);
     }
 
@@ -772,15 +1598,20 @@ public class XMLExporter {
      * Write out a yearly on day and week of month repeat interval
      *
      * @param repeat the repeat interval to write
-     * @param out the PrintStream to which to write the repeat
+     * @param out the XMLEmitter to which to write the repeat
+     *
+     * @throws IOException if there was an error writing the output stream
      */
     private static void writeYearlyOnDayRepeat(
-            RepeatYearlyOnDay repeat, PrintStream out) {
+            RepeatYearlyOnDay repeat, XMLEmitter out) throws IOException {
         writeRepeatHeader(repeat, out);
-        out.printf(Locale.US, " %s=\"%s\" %s=\"%d\" %s=\"%s\"",
-                ATTR_DAY1, repeat.getDay().name(),
-                ATTR_WEEK1, repeat.getWeek(),
-                ATTR_MONTH, repeat.getMonth().name());
+        out.write(REPEAT_DAY1);
+        out.raw(repeat.getDay().name());
+        out.write(REPEAT_WEEK1);
+        out.number(repeat.getWeek());
+        out.write(REPEAT_MONTH);
+        out.raw(repeat.getMonth().name());
+        out.write(QUOTE);
         writeRepeatTail(repeat, out);
     }
 
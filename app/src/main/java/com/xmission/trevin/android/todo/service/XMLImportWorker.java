@@ -55,7 +55,8 @@ import java.util.Locale;
  *
  * @author Trevin Beattie
  */
-public class XMLImportWorker extends Worker implements ProgressBarUpdater {
+public class XMLImportWorker extends Worker
+        implements ProgressBarUpdater, ProgressAggregator.Listener {
 
     public static final String TAG = "XMLImportWorker";
 
@@ -109,13 +110,15 @@ public class XMLImportWorker extends Worker implements ProgressBarUpdater {
     private String xmlPassword = null;
 
     /**
-     * The password used to encrypt private records in the database.
+     * The key used to encrypt private records in the database,
+     * borrowed from the global encryption object while the worker runs.
      * If {@code null}, private records will not be encrypted.
      */
-    private String currentPassword = null;
+    private StringEncryption.KeyHandle keyHandle = null;
 
-    /** Internal time when we last updated the async progress */
-    private long lastProgressTimeNano;
+    /** Limits how often we post progress and measures throughput */
+    private final ProgressAggregator progressAggregator =
+            new ProgressAggregator(this);
 
     private String lastProgressMessage = null;
 
@@ -178,12 +181,6 @@ public class XMLImportWorker extends Worker implements ProgressBarUpdater {
                 XML_PASSWORD, String.class))
             xmlPassword = params.getInputData().getString(XML_PASSWORD);
 
-        if (importPrivate) {
-            StringEncryption se = StringEncryption.holdGlobalEncryption();
-            if (se.hasKey())
-                currentPassword = new String(se.getPassword());
-        }
-
         importFileName = params.getInputData().getString(XML_DATA_FILENAME);
         if (importFileName.startsWith("content://")) {
             // This is a URI from the Storage Access Framework
@@ -255,15 +252,37 @@ public class XMLImportWorker extends Worker implements ProgressBarUpdater {
     public Result doWork() {
         Log.d(TAG, ".doWork");
         long startTimeNano = System.nanoTime();
-        lastProgressTimeNano = startTimeNano;
         updateProgress(context.getString(
                 R.string.ProgressMessageStart), 0, 0, false);
         repository.open(context);
+        // Borrowing the key means the importer doesn't have to derive it again
+        if (importPrivate)
+            keyHandle = StringEncryption.borrowGlobalKey();
         try {
-            XMLImporter.importData(preferences, repository,
-                    importFileName, xmlStream, importType, importPrivate,
-                    xmlPassword, currentPassword, this);
-            return Result.success();
+            // Snapshots can only be restored from a seekable file
+            if ((xmlStream instanceof FileInputStream) &&
+                    SnapshotImporter.isSnapshot(
+                            ((FileInputStream) xmlStream).getChannel())) {
+                try {
+                    SnapshotImporter.importData(preferences, repository,
+                            importFileName,
+                            ((FileInputStream) xmlStream).getChannel(),
+                            importType, importPrivate, xmlPassword,
+                            (keyHandle == null) ? null
+                                    : keyHandle.getEncryption(),
+                            this);
+                } finally {
+                    xmlStream.close();
+                }
+                return Result.success(progressAggregator.toSummaryData());
+            }
+            XMLImporter.importData(preferences, repository, importFileName,
+                    XMLCompression.decompress(xmlStream),
+                    importType, importPrivate,
+                    xmlPassword,
+                    (keyHandle == null) ? null : keyHandle.getEncryption(),
+                    this);
+            return Result.success(progressAggregator.toSummaryData());
         } catch (Exception e) {
             Log.e(TAG, "Error importing data from XML!", e);
             showToast(e.getMessage());
@@ -273,6 +292,10 @@ public class XMLImportWorker extends Worker implements ProgressBarUpdater {
                     .build());
         } finally {
             long now = System.nanoTime();
+            if (keyHandle != null) {
+                keyHandle.release();
+                keyHandle = null;
+            }
             repository.release(context);
             Log.d(TAG, String.format("Finished work in %.4f seconds",
                     (now - startTimeNano) / 1.0e+9));
@@ -286,26 +309,32 @@ public class XMLImportWorker extends Worker implements ProgressBarUpdater {
      *                   adding categories, adding items)
      * @param currentCount the number of items imported so far
      * @param totalCount the total number of items to be imported
-     * @param throttle if {@code true}, skip updating the progress
-     *                 if it&rsquo;s been less than 250 ms since
-     *                 we last posted our progress.
+     * @param throttle if {@code true}, let the aggregator skip
+     *                 this update if we posted our progress recently.
      */
     @Override
     public void updateProgress(String modeString,
                                int currentCount, int totalCount,
                                boolean throttle) {
-        if (throttle) {
-            long now = System.nanoTime();
-            if ((now - lastProgressTimeNano) < 250000000L)
-                return;
-            lastProgressTimeNano = now;
-        }
-        Data progressData = new Data.Builder()
-                .putString(PROGRESS_CURRENT_MODE, modeString)
-                .putInt(PROGRESS_MAX_COUNT, totalCount)
-                .putInt(PROGRESS_CURRENT_COUNT, currentCount)
-                .build();
-        setProgressAsync(progressData);
+        progressAggregator.updateProgress(modeString,
+                currentCount, totalCount, throttle);
+    }
+
+    /**
+     * Post a progress update which got through the aggregator.
+     *
+     * @param modeString the current mode of operation
+     * @param currentCount the number of records processed so far
+     * @param totalCount the total number of records to process
+     * @param recordsPerSecond the measured throughput
+     * @param etaMillis the estimated time remaining, or -1 if unknown
+     */
+    @Override
+    public void onProgress(String modeString,
+                           int currentCount, int totalCount,
+                           float recordsPerSecond, long etaMillis) {
+        setProgressAsync(ProgressAggregator.toProgressData(modeString,
+                currentCount, totalCount, recordsPerSecond, etaMillis));
     }
 
     /**
@@ -16,10 +16,9 @@
  */
 package com.xmission.trevin.android.todo.service;
 
-// Use all of the element and attribute names from the exporter
-import static com.xmission.trevin.android.todo.data.ToDoPreferences.*;
 import static com.xmission.trevin.android.todo.provider.ToDoSchema.ToDoItemColumns.REPEAT_NONE;
 import static com.xmission.trevin.android.todo.provider.ToDoSchema.ToDoItemColumns.REPEAT_YEAR_AFTER;
+// Use all of the element and attribute names from the exporter
 import static com.xmission.trevin.android.todo.service.XMLExporter.*;
 
 import android.util.Log;
@@ -29,19 +28,18 @@ import androidx.annotation.NonNull;
 import com.xmission.trevin.android.todo.data.*;
 import com.xmission.trevin.android.todo.data.repeat.*;
 import com.xmission.trevin.android.todo.provider.ToDoRepository;
-import com.xmission.trevin.android.todo.util.EncryptionException;
-import com.xmission.trevin.android.todo.util.PasswordMismatchException;
-import com.xmission.trevin.android.todo.util.PasswordRequiredException;
+import com.xmission.trevin.android.todo.util.Base64Codec;
+import com.xmission.trevin.android.todo.util.ISODateTimeCodec;
 import com.xmission.trevin.android.todo.util.StringEncryption;
 
 import org.xml.sax.Attributes;
 import org.xml.sax.Locator;
 import org.xml.sax.SAXException;
 import org.xml.sax.SAXParseException;
+import org.xmlpull.v1.XmlPullParserException;
 
 import java.io.IOException;
 import java.io.InputStream;
-import java.nio.ByteBuffer;
 import java.time.*;
 import java.time.format.DateTimeParseException;
 import java.util.*;
@@ -144,6 +142,40 @@ public class XMLImporter extends org.xml.sax.helpers.DefaultHandler
 
     }
 
+    /** The XML parsers which can drive the importer */
+    public enum Engine {
+        /** The platform&rsquo;s SAX parser */
+        SAX,
+        /**
+         * The platform&rsquo;s {@link org.xmlpull.v1.XmlPullParser},
+         * read through an {@link XMLPullReader}
+         */
+        PULL
+    }
+
+    /**
+     * The parser to use for imports.  The SAX parser is the default
+     * since it came out ahead when the two were compared on large
+     * exports (see {@code XMLImportEngineBenchmark}).
+     */
+    private static Engine engine = Engine.SAX;
+
+    /**
+     * Change which parser is used for imports.  Both engines apply the
+     * same validation and report errors at the same locations; this is
+     * meant for testing and comparing them.
+     *
+     * @param newEngine the parser to use
+     */
+    static void setEngine(@NonNull Engine newEngine) {
+        engine = newEngine;
+    }
+
+    /** @return the parser used for imports */
+    static Engine getEngine() {
+        return engine;
+    }
+
     /**
      * XML parsing states
      */
@@ -195,7 +227,11 @@ public class XMLImporter extends org.xml.sax.helpers.DefaultHandler
         /** Last notification time */
         NOTIFICATION(DUE_NOTIFICATION, DUE, false),
         /** Repeat */
-        REPEAT(DUE_REPEAT, DUE, false);
+        REPEAT(DUE_REPEAT, DUE, false),
+        /** Deleted items section (incremental exports only) */
+        TOMBSTONES(TOMBSTONES_TAG, DOCUMENT, false),
+        /** Deleted item */
+        TOMBSTONE(TOMBSTONE_ITEM, TOMBSTONES, false);
 
         /** The tag associated with a given state */
         private final String elementTag;
@@ -270,7 +306,7 @@ public class XMLImporter extends org.xml.sax.helpers.DefaultHandler
          * {@link #PREFERENCES}, otherwise throw an error.
          */
         public static ParseState fromTag(String tag) {
-            for (ParseState state : values()) {
+            for (ParseState state : STATES) {
                 if (state.elementTag == null)
                     continue;
                 if (state.elementTag.equals(tag))
@@ -281,6 +317,12 @@ public class XMLImporter extends org.xml.sax.helpers.DefaultHandler
 
     }
 
+    /**
+     * All parsing states, cached since {@link ParseState#values()}
+     * makes a new copy of the array on every call
+     */
+    private static final ParseState[] STATES = ParseState.values();
+
     /** Current parsing state when running as a SAX handler */
     private ParseState currentState = ParseState.NONE;
 
@@ -312,14 +354,15 @@ public class XMLImporter extends org.xml.sax.helpers.DefaultHandler
         modeText.put(mode, text);
     }
 
-    /** Per-entry database operations */
-    private enum Operation {
-        /** New item; add the record */
-        INSERT,
-        /** Existing item; replace the record */
-        UPDATE,
-        /** Existing item; do not modify it */
-        SKIP
+    /**
+     * Get the text associated with a mode of operation.
+     *
+     * @param mode the mode whose text to get
+     *
+     * @return the text to show for that mode
+     */
+    static String getModeText(OpMode mode) {
+        return modeText.get(mode);
     }
 
     /** Category entry from the XML file */
@@ -334,9 +377,6 @@ public class XMLImporter extends org.xml.sax.helpers.DefaultHandler
     /** Preferences passed to the {@link #importData} method */
     private final ToDoPreferences prefs;
 
-    /** Repository passed to the {@link #importData} method */
-    private final ToDoRepository repository;
-
     /** The name of the XML file being read, if known */
     private final String xmlFileName;
 
@@ -346,44 +386,14 @@ public class XMLImporter extends org.xml.sax.helpers.DefaultHandler
     /** The version of the XML export file */
     private int version = 1;
 
-    /** Import type passed to the {@link #importData} method */
-    private final ImportType importType;
-
-    /** Whether to import private records */
-    private final boolean importPrivate;
-
-    /** The encryption object used to decrypt records from the XML file */
-    private final StringEncryption decryptor;
-
-    /**
-     * The encryption object used to encrypt private records for the database
-     */
-    private final StringEncryption encryptor;
-
-    /** Progress updater passed to the {@link #importData} method */
-    private final ProgressBarUpdater progressUpdater;
-
-    /**
-     * The total number of records declared in the XML file,
-     * or -1 if its size is unknown.
-     */
-    private int totalRecords = -1;
-
-    /** The current number of records processed */
-    private int processedRecords = 0;
-
-    /** Categories from the XML file, mapped by the XML id */
-    protected final Map<Long,CategoryEntry> categoriesByID =
-        new HashMap<>();
-
-    /** Flag indicating we have read the categories section */
-    private boolean categoriesRead = false;
+    /** Merges the records we read into the database */
+    private final ImportMerger merger;
 
     /** Flag indicating we have read the ToDoList section */
     private boolean todoListRead = false;
 
-    /** Next free record ID (counting both the XML file and local database) */
-    private long nextFreeRecordID = 1;
+    /** Flag indicating we have read the Tombstones section */
+    private boolean tombstonesRead = false;
 
     /**
      * Create a new importer instance with the provided parameters.
@@ -418,14 +428,10 @@ public class XMLImporter extends org.xml.sax.helpers.DefaultHandler
                         StringEncryption encryptor,
                         ProgressBarUpdater progressUpdater) {
         this.prefs = prefs;
-        this.repository = repository;
         this.xmlFileName = xmlFileName;
         this.inStream = inStream;
-        this.importType = importType;
-        this.importPrivate = importPrivate;
-        this.decryptor = decryptor;
-        this.encryptor = encryptor;
-        this.progressUpdater = progressUpdater;
+        merger = new ImportMerger(prefs, repository, importType,
+                importPrivate, decryptor, encryptor, progressUpdater);
     }
 
     /**
@@ -465,16 +471,64 @@ public class XMLImporter extends org.xml.sax.helpers.DefaultHandler
                                   String currentPassword,
                                   ProgressBarUpdater progressUpdater)
             throws IOException {
-        StringEncryption decryptor = null;
         StringEncryption encryptor = null;
-        if (xmlPassword != null) {
-            decryptor = new StringEncryption();
-            decryptor.setPassword(xmlPassword.toCharArray());
-        }
         if (currentPassword != null) {
             encryptor = new StringEncryption();
             encryptor.setPassword(currentPassword.toCharArray());
         }
+        try {
+            importData(prefs, repository, fileName, inStream, importType,
+                    importPrivate, xmlPassword, encryptor, progressUpdater);
+        } finally {
+            if (encryptor != null)
+                encryptor.forgetPassword();
+        }
+    }
+
+    /**
+     * Import the preferences, metadata, categories, and To Do records
+     * from an XML file to the database, encrypting private records
+     * with a key that has already been set up; e.g. one borrowed
+     * from the global encryption object with
+     * {@link StringEncryption#borrowGlobalKey()}, which avoids
+     * deriving the key again.
+     *
+     * @param prefs the To Do preferences.
+     * @param repository The repository to which we should write records.
+     * It should have already been opened by the caller.
+     * @param fileName the name of the XML file being read, if known
+     * (may be {@code null}).
+     * @param inStream the stream from which we should read the XML data.
+     * @param importType how to merge items from the XML file
+     * with those in the database.
+     * @param importPrivate whether to include private records and the
+     * password hash in the import.
+     * @param xmlPassword the password with which the XML file was exported,
+     * or {@code null} if the XML file contains no encrypted records or
+     * we are not importing any private records.
+     * @param encryptor the encryption object with which to encrypt any
+     * private records imported, or {@code null} to leave them unencrypted
+     * or if we are not importing any private records.  Its password is
+     * checked against the database before any records are imported.
+     * The caller remains responsible for forgetting its password.
+     * @param progressUpdater a class to call back while we are processing
+     * the data to mark our progress.
+     */
+    public static void importData(ToDoPreferences prefs,
+                                  ToDoRepository repository,
+                                  String fileName,
+                                  InputStream inStream,
+                                  ImportType importType,
+                                  boolean importPrivate,
+                                  String xmlPassword,
+                                  StringEncryption encryptor,
+                                  ProgressBarUpdater progressUpdater)
+            throws IOException {
+        StringEncryption decryptor = null;
+        if (xmlPassword != null) {
+            decryptor = new StringEncryption();
+            decryptor.setPassword(xmlPassword.toCharArray());
+        }
         try {
             XMLImporter importer = new XMLImporter(prefs, repository,
                     fileName, inStream, importType, importPrivate,
@@ -482,7 +536,8 @@ public class XMLImporter extends org.xml.sax.helpers.DefaultHandler
             repository.runInTransaction(importer);
             // Final update of the progress meter (unthrottled)
             progressUpdater.updateProgress(modeText.get(OpMode.FINISH),
-                    importer.processedRecords, importer.totalRecords, false);
+                    importer.merger.processedRecords,
+                    importer.merger.totalRecords, false);
         } catch (UncaughtIOException ue) {
             Log.e(LOG_TAG, "I/O Error reading the XML file", ue);
             throw ue.getCause();
@@ -494,9 +549,13 @@ public class XMLImporter extends org.xml.sax.helpers.DefaultHandler
     @Override
     public void run() {
         try {
-            SAXParserFactory factory = SAXParserFactory.newInstance();
-            SAXParser parser = factory.newSAXParser();
-            parser.parse(inStream, this);
+            if (engine == Engine.PULL) {
+                new XMLPullReader().parse(inStream, this);
+            } else {
+                SAXParserFactory factory = SAXParserFactory.newInstance();
+                SAXParser parser = factory.newSAXParser();
+                parser.parse(inStream, this);
+            }
         } catch (IOException iox) {
             throw new UncaughtIOException(iox);
         } catch (ParserConfigurationException ce) {
@@ -506,6 +565,9 @@ public class XMLImporter extends org.xml.sax.helpers.DefaultHandler
                     px.getLineNumber(), px.getColumnNumber(), px);
         } catch (SAXException se) {
             throw new XMLParseException(se);
+        } catch (XmlPullParserException px) {
+            throw new XMLParseException(px.getMessage(), xmlFileName,
+                    px.getLineNumber(), px.getColumnNumber(), px);
         }
     }
 
@@ -524,10 +586,14 @@ public class XMLImporter extends org.xml.sax.helpers.DefaultHandler
     };
 
     /**
-     * The current text being read from the XML file, if expected;
-     * otherwise {@code null}.
+     * The text being read from the XML file for the current element,
+     * if expected.  This buffer is reused for every element so that
+     * Base64 data can be decoded from it without any copying.
      */
-    private StringBuffer currentText = null;
+    private char[] currentText = new char[256];
+
+    /** The number of characters in {@link #currentText} */
+    private int currentTextLength = 0;
 
     /**
      * A {@link Map} of preference items collected from the import file
@@ -580,8 +646,30 @@ public class XMLImporter extends org.xml.sax.helpers.DefaultHandler
      */
     @Override
     public void characters(char[] chars, int start, int length) {
-        if (currentState.hasText())
-            currentText.append(chars, start, length);
+        if (currentState.hasText()) {
+            if (currentTextLength + length > currentText.length)
+                currentText = Arrays.copyOf(currentText, Math.max(
+                        2 * currentText.length, currentTextLength + length));
+            System.arraycopy(chars, start,
+                    currentText, currentTextLength, length);
+            currentTextLength += length;
+        }
+    }
+
+    /** @return the text content of the current element as a string */
+    private String getCurrentText() {
+        return new String(currentText, 0, currentTextLength);
+    }
+
+    /**
+     * Decode the text content of the current element from Base64.
+     *
+     * @return the decoded data
+     *
+     * @throws IllegalArgumentException if the text is not valid Base64
+     */
+    private byte[] decodeCurrentText() throws IllegalArgumentException {
+        return Base64Codec.decode(currentText, 0, currentTextLength);
     }
 
     /**
@@ -767,7 +855,7 @@ public class XMLImporter extends org.xml.sax.helpers.DefaultHandler
             return null;
         }
         try {
-            return Instant.parse(attrValue);
+            return ISODateTimeCodec.parseTimestamp(attrValue);
         } catch (NumberFormatException x) {
             throw new XMLBadValueException(elementName, attrName,
                     attrValue, xmlFileName, xmlLocator.getLineNumber(),
@@ -813,7 +901,7 @@ public class XMLImporter extends org.xml.sax.helpers.DefaultHandler
         }
         try {
             if (version <= 1) {
-                Instant zuluTime = Instant.parse(attrValue);
+                Instant zuluTime = ISODateTimeCodec.parseTimestamp(attrValue);
                 ZonedDateTime localTime =
                         zuluTime.atZone(assumedZone);
                 LocalDate date = localTime.toLocalDate();
@@ -822,7 +910,7 @@ public class XMLImporter extends org.xml.sax.helpers.DefaultHandler
                         attrValue, date.toString()));
                 return date;
             }
-            return LocalDate.parse(attrValue);
+            return ISODateTimeCodec.parseDate(attrValue);
         } catch (DateTimeParseException e) {
             throw new XMLBadValueException(elementName, attrName,
                     attrValue, xmlFileName, xmlLocator.getLineNumber(),
@@ -876,7 +964,7 @@ public class XMLImporter extends org.xml.sax.helpers.DefaultHandler
                             xmlLocator.getColumnNumber());
                 return LocalTime.ofNanoOfDay(millis * 1000000L);
             }
-            return LocalTime.parse(attrValue);
+            return ISODateTimeCodec.parseTime(attrValue);
         } catch (DateTimeParseException e) {
             throw new XMLBadValueException(elementName, attrName,
                     attrValue, xmlFileName, xmlLocator.getLineNumber(),
@@ -1091,7 +1179,7 @@ public class XMLImporter extends org.xml.sax.helpers.DefaultHandler
     public void endDocument() {
         Log.d(LOG_TAG, ".endDocument");
         if (prefsMap != null)
-            setPreferences();
+            merger.setPreferences(prefsMap);
     }
 
     /**
@@ -1135,7 +1223,7 @@ public class XMLImporter extends org.xml.sax.helpers.DefaultHandler
         }
 
         if (currentState.hasText())
-            currentText = new StringBuffer();
+            currentTextLength = 0;
 
         String attrValue;
         switch (currentState) {
@@ -1143,7 +1231,7 @@ public class XMLImporter extends org.xml.sax.helpers.DefaultHandler
             case DOCUMENT:
                 version = parseIntAttribute(attributes, DOCUMENT_TAG,
                         ATTR_VERSION, 1, 1, 2);
-                totalRecords = parseIntAttribute(attributes, DOCUMENT_TAG,
+                merger.totalRecords = parseIntAttribute(attributes, DOCUMENT_TAG,
                         ATTR_TOTAL_RECORDS, -1, 0, null);
                 String dbVersion = attributes.getValue(ATTR_DB_VERSION);
                 if (dbVersion == null)
@@ -1151,12 +1239,20 @@ public class XMLImporter extends org.xml.sax.helpers.DefaultHandler
                 String exportTime = attributes.getValue(ATTR_EXPORTED);
                 if (exportTime == null)
                     exportTime = "(unknown)";
+                String since = attributes.getValue(ATTR_SINCE);
+                if (since != null) {
+                    Log.i(LOG_TAG, "Document is an incremental export"
+                            + " of changes since " + since);
+                    merger.startDelta(parseTimestampAttribute(attributes,
+                            DOCUMENT_TAG, ATTR_EXPORTED, false));
+                }
                 assumedZone = prefs.getTimeZone();
                 Log.i(LOG_TAG, String.format(Locale.US,
                         "Beginning XML document, export version %d,"
                                 + " DB version %s, exported at %s,"
                                 + " %d total records",
-                        version, dbVersion, exportTime, totalRecords));
+                        version, dbVersion, exportTime,
+                        merger.totalRecords));
                 break;
 
             case PREFERENCES:
@@ -1196,7 +1292,7 @@ public class XMLImporter extends org.xml.sax.helpers.DefaultHandler
                 break;
 
             case CATEGORIES:
-                if (categoriesRead)
+                if (merger.isCategoriesRead())
                     throw new XMLParseException(String.format(Locale.US,
                             "Multiple <%s> sections in document", qName),
                             xmlFileName, xmlLocator.getLineNumber(),
@@ -1229,7 +1325,33 @@ public class XMLImporter extends org.xml.sax.helpers.DefaultHandler
                 // bar was the total record count in the document root.
                 long maxItemId = parseLongAttribute(attributes,
                         ITEMS_TAG, ATTR_MAX_ID, -1L, 0L, null);
-                startToDoSection(maxItemId);
+                if (!merger.isCategoriesRead())
+                    throw new IllegalStateException(String.format(Locale.US,
+                            "<%s> section encountered before <%s>",
+                            ITEMS_TAG, CATEGORIES_TAG));
+                merger.startToDoSection(maxItemId);
+                break;
+
+            case TOMBSTONES:
+                if (tombstonesRead)
+                    throw new XMLParseException(String.format(Locale.US,
+                            "Multiple <%s> sections in document", qName),
+                            xmlFileName, xmlLocator.getLineNumber(),
+                            xmlLocator.getColumnNumber());
+                if (!merger.isDelta())
+                    throw new XMLParseException(String.format(Locale.US,
+                            "<%s> section in a document which is not"
+                                    + " an incremental export", qName),
+                            xmlFileName, xmlLocator.getLineNumber(),
+                            xmlLocator.getColumnNumber());
+                // As with the To Do list, the count is only informative.
+                parseIntAttribute(attributes,
+                        TOMBSTONES_TAG, ATTR_COUNT, -1, 0, null);
+                break;
+
+            case TOMBSTONE:
+                merger.deleteToDo(parseLongAttribute(attributes,
+                        TOMBSTONE_ITEM, ATTR_ID, null, 0L, null));
                 break;
 
             case TODO_HEAD:
@@ -1520,51 +1642,49 @@ public class XMLImporter extends org.xml.sax.helpers.DefaultHandler
                         xmlLocator.getColumnNumber());
         }
 
-        String textContent = currentState.hasText()
-                ? currentText.toString() : null;
-
         switch (currentState) {
 
             case PREFERENCE:
-                prefsMap.put(preferenceName, textContent);
+                prefsMap.put(preferenceName, getCurrentText());
                 preferenceName = null;
-                processedRecords++;
-                progressUpdater.updateProgress(modeText.get(OpMode.SETTINGS),
-                        processedRecords, totalRecords, true);
+                merger.countRecord(OpMode.SETTINGS);
                 break;
 
             case METADATA:
                 if (metadata != null)
-                    readMetadata();
+                    merger.checkMetadata(metadata);
                 break;
 
             case METADATUM:
-                metadatum.setValue(decodeBase64(textContent));
+                metadatum.setValue(decodeCurrentText());
                 metadata.put(metadatum.getName(), metadatum.getValue());
                 metadatum = null;
-                processedRecords++;
-                progressUpdater.updateProgress(modeText.get(OpMode.SETTINGS),
-                        processedRecords, totalRecords, true);
+                merger.countRecord(OpMode.SETTINGS);
                 break;
 
             case CATEGORIES:
                 if (categories != null)
-                    mergeCategories();
+                    merger.mergeCategories(categories);
                 categories = null;
                 break;
 
             case CATEGORY:
-                currentCategory.name = textContent;
+                currentCategory.name = getCurrentText();
                 categories.add(currentCategory);
                 currentCategory = null;
                 break;
 
             case TODOS:
+                merger.flushInserts();
                 todoListRead = true;
                 break;
 
+            case TOMBSTONES:
+                tombstonesRead = true;
+                break;
+
             case TODO_HEAD:
-                mergeToDo();
+                merger.mergeToDo(currentToDoItem);
                 currentToDoItem = null;
                 break;
 
@@ -1573,18 +1693,18 @@ public class XMLImporter extends org.xml.sax.helpers.DefaultHandler
                     // We don't do the decryption here;
                     // that's handled in mergeToDo().
                     currentToDoItem.setEncryptedDescription(
-                            decodeBase64(textContent));
+                            decodeCurrentText());
                 } else {
-                    currentToDoItem.setDescription(textContent);
+                    currentToDoItem.setDescription(getCurrentText());
                 }
                 break;
 
             case NOTE:
                 if (currentToDoItem.isEncrypted()) {
                     currentToDoItem.setEncryptedNote(
-                            decodeBase64(textContent));
+                            decodeCurrentText());
                 } else {
-                    currentToDoItem.setNote(textContent);
+                    currentToDoItem.setNote(getCurrentText());
                 }
                 break;
 
@@ -1592,66 +1712,13 @@ public class XMLImporter extends org.xml.sax.helpers.DefaultHandler
                 break;
         }
 
-        currentText = null;
+        currentTextLength = 0;
         currentState = currentState.getParent();
     }
 
-    /**
-     * RFC 3548 sec. 3 and 4 compatible,
-     * reversed ASCII value to Base64 value.
-     * Entries with -1 are not valid Base64 characters.
-     * Entries with -2 are skipped whitespace.
-     */
-    private static final byte[] BASE64_VALUES = {
-        -1, -1, -1, -1, -1, -1, -1, -1, -1, -2, -2, -1, -1, -2, -1, -1,
-        -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1,
-        -2, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, 62, -1, 62, -1, 63,
-        52, 53, 54, 55, 56, 57, 58, 59, 60, 61, -1, -1, -1, -2, -1, -1,
-        -1,  0,  1,  2,  3,  4,  5,  6,  7,  8,  9, 10, 11, 12, 13, 14,
-        15, 16, 17, 18, 19, 20, 21, 22, 23, 24, 25, -1, -1, -1, -1, 63,
-        -1, 26, 27, 28, 29, 30, 31, 32, 33, 34, 35, 36, 37, 38, 39, 40,
-        41, 42, 43, 44, 45, 46, 47, 48, 49, 50, 51, -1, -1, -1, -1, -1 };
-
     /** Convert a Base64 string to a stream of bytes */
     public static byte[] decodeBase64(String text) {
-        if (text == null)
-            return null;
-        ByteBuffer bb = ByteBuffer.allocate(text.length());
-        int temp = 0;
-        int bits = 0;
-        for (int i = 0; i < text.length(); i++) {
-            char c = text.charAt(i);
-            if ((c > BASE64_VALUES.length) ||
-                    (BASE64_VALUES[c] == -1))
-                throw new IllegalArgumentException(
-                        "Invalid Base64 character: " + c);
-            if (BASE64_VALUES[c] == -2)
-                continue;
-            temp = (temp << 6) + BASE64_VALUES[c];
-            bits += 6;
-            // Store bytes once we have three
-            if (bits >= 24) {
-                bb.put((byte) (temp >> 16));
-                bb.put((byte) (temp >> 8));
-                bb.put((byte) temp);
-                temp = 0;
-                bits = 0;
-            }
-        }
-        // Special handling for the last byte(s).  The encoder would
-        // have emitted characters to cover full bytes.
-        switch (bits) {
-        case 12:
-            bb.put((byte) (temp >> 4));
-            break;
-        case 18:
-            bb.put((byte) (temp >> 10));
-            bb.put((byte) (temp >> 2));
-            break;
-        }
-        byte[] result = new byte[bb.position()];
-        System.arraycopy(bb.array(), 0, result, 0, result.length);
-        return result;
+        return Base64Codec.decode(text);
     }
 
     /** Quick implementation of StringUtils.isEmpty(String) */
@@ -1659,459 +1726,5 @@ public class XMLImporter extends org.xml.sax.helpers.DefaultHandler
         return (s == null) || (s.length() == 0);
     }
 
-    /**
-     * Set the current preferences by the ones read from the XML file.
-     */
-    private void setPreferences() {
-        Log.d(LOG_TAG, ".setPreferences(" + prefsMap.keySet() + ")");
-        if (importType == ImportType.TEST)
-            // Don't set anything in test mode.
-            return;
-
-        ToDoPreferences.Editor prefsEditor =
-                prefs.edit();
-        if (prefsMap.containsKey(TPREF_SORT_ORDER)) {
-            try {
-                prefsEditor.setSortOrder(
-                        Integer.parseInt(prefsMap.get(TPREF_SORT_ORDER)));
-            } catch (NumberFormatException x) {
-                Log.e(LOG_TAG, "Invalid sort order index: "
-                        + prefsMap.get(TPREF_SORT_ORDER));
-                // Ignore this change
-            }
-        }
-        if (prefsMap.containsKey(TPREF_SHOW_CHECKED))
-            prefsEditor.setShowChecked(
-                    Boolean.parseBoolean(prefsMap.get(TPREF_SHOW_CHECKED)));
-        if (prefsMap.containsKey(TPREF_SHOW_DUE_DATE))
-            prefsEditor.setShowDueDate(
-                    Boolean.parseBoolean(prefsMap.get(TPREF_SHOW_DUE_DATE)));
-        if (prefsMap.containsKey(TPREF_SHOW_PRIORITY))
-            prefsEditor.setShowPriority(
-                    Boolean.parseBoolean(prefsMap.get(TPREF_SHOW_PRIORITY)));
-        if (prefsMap.containsKey(TPREF_SHOW_CATEGORY))
-            prefsEditor.setShowCategory(
-                    Boolean.parseBoolean(prefsMap.get(TPREF_SHOW_CATEGORY)));
-        if (prefsMap.containsKey(TPREF_NOTIFICATION_VIBRATE))
-            prefsEditor.setNotificationVibrate(
-                    Boolean.parseBoolean(prefsMap.get(
-                            TPREF_NOTIFICATION_VIBRATE)));
-        /*
-         * Note that we are not changing whether private/encrypted records
-         * are shown.  If the user wanted encrypted records, he should have
-         * set the password in the PreferencesActivity both when exporting
-         * and importing the file.
-         */
-        if (prefsMap.containsKey(TPREF_NOTIFICATION_SOUND)) {
-            try {
-                prefsEditor.setNotificationSound(
-                        Long.parseLong(prefsMap.get(TPREF_NOTIFICATION_SOUND)));
-            } catch (NumberFormatException x) {
-                Log.e(LOG_TAG, "Invalid notification sound index: "
-                        + prefsMap.get(TPREF_NOTIFICATION_SOUND), x);
-                // Ignore this change
-            }
-        }
-        if (prefsMap.containsKey(TPREF_SELECTED_CATEGORY)) {
-            try {
-                prefsEditor.setSelectedCategory(
-                        Long.parseLong(prefsMap.get(TPREF_SELECTED_CATEGORY)));
-            } catch (NumberFormatException x) {
-                Log.e(LOG_TAG, "Invalid category index: "
-                        + prefsMap.get(TPREF_SELECTED_CATEGORY), x);
-                // Ignore this change
-            }
-        }
-        Boolean useLocalZone = null;
-        if (prefsMap.containsKey(TPREF_LOCAL_TIME_ZONE)) {
-            useLocalZone = Boolean.parseBoolean(
-                    prefsMap.get(TPREF_LOCAL_TIME_ZONE));
-        }
-        ZoneId fixedZone = null;
-        if (prefsMap.containsKey(TPREF_FIXED_TIME_ZONE)) {
-            try {
-                fixedZone = ZoneId.of(prefsMap.get(TPREF_FIXED_TIME_ZONE));
-                // Set this regardless of the useLocalZone flag so it's
-                // available when the user toggles from local back to fixed.
-                prefsEditor.setTimeZone(fixedZone);
-            } catch (DateTimeException x) {
-                Log.e(LOG_TAG, "Invalid time zone ID: "
-                        + prefsMap.get(TPREF_FIXED_TIME_ZONE), x);
-                // Ignore this zone
-            }
-        }
-        if (useLocalZone == Boolean.TRUE)
-            prefsEditor.setTimeZoneLocal();
-
-        prefsEditor.finish();
-    }
-
-    /**
-     * Import metadata from the XML file.
-     * At this time we only support checking the password hash,
-     * but this <i>must</i> be done before attempting to import any
-     * encrypted records.
-     *
-     * @throws RuntimeException if {@code importPrivate} is true
-     * and the metadata includes {@value StringEncryption#METADATA_PASSWORD_HASH}
-     * but {@code xmlPassword} is {@code null} or does not match
-     * the password hash.
-     */
-    private void readMetadata() {
-        Log.d(LOG_TAG, ".readMetadata(" + metadata.keySet() + ")");
-        if (importPrivate && metadata.containsKey(
-                StringEncryption.METADATA_PASSWORD_HASH)) {
-            if (decryptor == null)
-                throw new PasswordRequiredException("Import file is password-"
-                        + "protected but no password was provided");
-            if (!decryptor.checkPassword(metadata.get(
-                    StringEncryption.METADATA_PASSWORD_HASH)))
-                throw new PasswordMismatchException("Password does not match"
-                        + " the one used to encrypt the import file");
-        }
-    }
-
-    /**
-     * Merge the category list from the XML file with the database.
-     */
-    private void mergeCategories() {
-        Log.d(LOG_TAG, ".mergeCategories(" + importType + ")");
-        String opText = modeText.get(OpMode.CATEGORIES);
-        long maxId = -1;
-        for (CategoryEntry category : categories) {
-            if (category.id > maxId)
-                maxId = category.id;
-        }
-        // Read in the current list of categories
-        Map<Long,String> categoryIDMap = new HashMap<>();
-        Map<String,Long> categoryNameMap = new HashMap<>();
-        if (importType == ImportType.CLEAN) {
-            Log.d(LOG_TAG,
-                    ".mergeCategories: removing all existing categories");
-            repository.deleteAllCategories();
-        } else {
-            for (ToDoCategory category : repository.getCategories()) {
-                categoryIDMap.put(category.getId(), category.getName());
-                categoryNameMap.put(category.getName(), category.getId());
-                if (category.getId() > maxId)
-                    maxId = category.getId();
-            }
-        }
-
-        switch (importType) {
-
-            case CLEAN:
-                // There are no pre-existing categories
-                for (CategoryEntry fileCategory : categories) {
-                    // Skip the Unfiled category
-                    if (fileCategory.id == ToDoCategory.UNFILED) {
-                        fileCategory.newID = fileCategory.id;
-                    } else {
-                        Log.d(LOG_TAG, String.format(
-                                ".mergeCategories: adding %d \"%s\"",
-                                fileCategory.id, fileCategory.name));
-                        ToDoCategory localCategory = new ToDoCategory();
-                        localCategory.setId(fileCategory.id);
-                        localCategory.setName(fileCategory.name);
-                        localCategory = repository.insertCategory(localCategory);
-                        fileCategory.newID = localCategory.getId();
-                    }
-                    categoriesByID.put(fileCategory.id, fileCategory);
-                    processedRecords++;
-                    progressUpdater.updateProgress(opText,
-                            processedRecords, totalRecords, true);
-                }
-                break;
-
-            case REVERT:
-                /*
-                 * First remove all conflicting names.
-                 * DO NOT add new categories in the same loop,
-                 * as that may lead to inconsistencies between
-                 * what's in the database and our maps.
-                 */
-                for (CategoryEntry fileCategory : categories) {
-                    if ((categoryNameMap.containsKey(fileCategory.name)) &&
-                            (categoryNameMap.get(fileCategory.name)
-                                    != fileCategory.id)) {
-                        long oldId = categoryNameMap.get(fileCategory.name);
-                        Log.d(LOG_TAG, String.format(Locale.US,
-                                ".mergeCategories: \"%s\" already exists"
-                                        + " with ID %d; deleting it.",
-                                fileCategory.name, oldId));
-                        repository.deleteCategory(oldId);
-                        categoryIDMap.remove(oldId);
-                        categoryNameMap.remove(fileCategory.name);
-                    }
-                }
-                for (CategoryEntry fileCategory : categories) {
-                    if (categoryIDMap.containsKey(fileCategory.id)) {
-                        if (!categoryIDMap.get(fileCategory.id)
-                                .equals(fileCategory.name)) {
-                            Log.d(LOG_TAG, String.format(Locale.US,
-                                    ".mergeCategories: replacing"
-                                            + " \"%s\" with \"%s\"",
-                                    categoryIDMap.get(fileCategory.id),
-                                    fileCategory.name));
-                            repository.updateCategory(fileCategory.id,
-                                    fileCategory.name);
-                        }
-                        fileCategory.newID = fileCategory.id;
-                    }
-                    else {
-                        Log.d(LOG_TAG, String.format(Locale.US,
-                                ".mergeCategories: adding %d \"%s\"",
-                                fileCategory.id, fileCategory.name));
-                        ToDoCategory localCategory = new ToDoCategory();
-                        localCategory.setId(fileCategory.id);
-                        localCategory.setName(fileCategory.name);
-                        localCategory = repository.insertCategory(localCategory);
-                        fileCategory.newID = localCategory.getId();
-                    }
-                    categoriesByID.put(fileCategory.id, fileCategory);
-                    processedRecords++;
-                    progressUpdater.updateProgress(opText,
-                            processedRecords, totalRecords, true);
-                }
-                break;
-
-            case UPDATE:
-                /*
-                 * Overwrite if newer.  But since categories
-                 * have no time stamp, this item acts like merge.
-                 */
-            case MERGE:
-            case ADD:
-                for (CategoryEntry fileCategory : categories) {
-                    if (categoryNameMap.containsKey(fileCategory.name)) {
-                        fileCategory.newID =
-                                categoryNameMap.get(fileCategory.name);
-                    } else {
-                        Log.d(LOG_TAG, String.format(Locale.US,
-                                ".mergeCategories: adding \"%s\"",
-                                fileCategory.name));
-                        ToDoCategory localCategory = new ToDoCategory();
-                        localCategory.setId(fileCategory.id);
-                        localCategory.setName(fileCategory.name);
-                        // Use a new ID if there is a conflict
-                        if (categoryIDMap.containsKey(fileCategory.id))
-                            localCategory.setId(++maxId);
-                        localCategory = repository.insertCategory(localCategory);
-                        fileCategory.newID = localCategory.getId();
-                    }
-                    categoriesByID.put(fileCategory.id, fileCategory);
-                    processedRecords++;
-                    progressUpdater.updateProgress(opText,
-                            processedRecords, totalRecords, true);
-                }
-                break;
-
-            case TEST:
-                // Do nothing.
-                for (CategoryEntry fileCategory : categories) {
-                    fileCategory.newID = fileCategory.id;
-                    categoriesByID.put(fileCategory.newID, fileCategory);
-                }
-                processedRecords += categories.size();
-                progressUpdater.updateProgress(opText,
-                        processedRecords, totalRecords, true);
-                break;
-            }
-
-        categoriesRead = true;
-    }
-
-    /**
-     * Prepare to import To Do records.
-     *
-     * @param maxId the maximum ID read from the XML section header, if any;
-     * otherwise this should be -1.
-     */
-    private void startToDoSection(long maxId) {
-        if (!categoriesRead)
-            throw new IllegalStateException(String.format(Locale.US,
-                    "<%s> section encountered before <%s>",
-                    ITEMS_TAG, CATEGORIES_TAG));
-        if ((encryptor != null) && !encryptor.checkPassword(repository))
-            throw new PasswordMismatchException(
-                    "Current password is incorrect");
-        if (importType == ImportType.CLEAN) {
-            Log.d(LOG_TAG, "Removing all existing To Do items");
-            repository.deleteAllItems();
-        }
-        nextFreeRecordID = Math.max(maxId, repository.getMaxItemId()) + 1;
-    }
-
-    /**
-     * Merge the current To Do item from the XML file into the database.
-     *
-     * @throws RuntimeException if we fail to encrypt a private item.
-     */
-    private void mergeToDo() {
-        if (currentToDoItem.isPrivate() && !importPrivate) {
-            // Skip private records
-            processedRecords++;
-            return;
-        }
-
-        if (categoriesByID.containsKey(currentToDoItem.getCategoryId())) {
-            currentToDoItem.setCategoryId(categoriesByID.get(
-                    currentToDoItem.getCategoryId()).newID);
-        } else {
-            Log.d(LOG_TAG, String.format(Locale.US,
-                    "To Do item #%d's category #%d was not imported",
-                    currentToDoItem.getId(),
-                    currentToDoItem.getCategoryId()));
-            currentToDoItem.setCategoryId(ToDoCategory.UNFILED);
-        }
-
-        if (currentToDoItem.isEncrypted()) {
-            if (decryptor == null)
-                throw new PasswordRequiredException(
-                        "No password provided for decrypting private records");
-            try {
-                currentToDoItem.setDescription(decryptor.decrypt(
-                        currentToDoItem.getEncryptedDescription()));
-                if (currentToDoItem.getEncryptedNote() != null)
-                    currentToDoItem.setNote(decryptor.decrypt(
-                            currentToDoItem.getEncryptedNote()));
-                // Temporarily mark unencrypted
-                currentToDoItem.setPrivate(StringEncryption.NO_ENCRYPTION);
-            } catch (EncryptionException e) {
-                throw new EncryptionException(String.format(Locale.US,
-                        "Failed to decrypt To Do item #%d",
-                        currentToDoItem.getId()), e);
-            }
-        }
-        if (currentToDoItem.isPrivate() && (encryptor != null)) {
-            // Re-encrypt if possible
-            try {
-                currentToDoItem.setEncryptedDescription(encryptor.encrypt(
-                        currentToDoItem.getDescription()));
-                currentToDoItem.setDescription(null);
-                if (currentToDoItem.getNote() != null) {
-                    currentToDoItem.setEncryptedNote(encryptor.encrypt(
-                            currentToDoItem.getNote()));
-                    currentToDoItem.setNote(null);
-                }
-                currentToDoItem.setPrivate(StringEncryption.encryptionType());
-            } catch (EncryptionException e) {
-                throw new EncryptionException(String.format(Locale.US,
-                        "Failed to encrypt To Do item #%d",
-                        currentToDoItem.getId()), e);
-            }
-        }
-
-        ToDoItem existingRecord = null;
-        if (importType != ImportType.CLEAN) {
-            existingRecord = repository.getItemById(currentToDoItem.getId());
-            if ((existingRecord != null) && existingRecord.isEncrypted()) {
-                if (encryptor == null) {
-                    /*
-                     * Since we don't know the description,
-                     * assume it's different from anything else.
-                     */
-                    existingRecord.setDescription(UUID
-                            .nameUUIDFromBytes(existingRecord
-                                    .getEncryptedDescription()).toString());
-                } else try {
-                    existingRecord.setDescription(encryptor.decrypt(
-                            existingRecord.getEncryptedDescription()));
-                } catch (EncryptionException e) {
-                    throw new RuntimeException(String.format(Locale.US,
-                            "Failed to decrypt existing To Do item #%d",
-                            existingRecord.getId()), e);
-                }
-            }
-        }
-
-        // Assume we're going to insert a new record by default
-        Operation op = Operation.INSERT;
-        switch (importType) {
-
-            case CLEAN:
-                // All items are new
-                break;
-
-            case REVERT:
-                // Overwrite if it's the same item (same ID and creation time)
-                if (existingRecord != null) {
-                    if (existingRecord.getCreateTime()
-                            .equals(currentToDoItem.getCreateTime()))
-                        op = Operation.UPDATE;
-                    else
-                        // Not the same item!  Assign a new ID.
-                        currentToDoItem.setId(nextFreeRecordID++);
-                }
-                break;
-
-            case UPDATE:
-                // Overwrite if it's the same item _and_ newer
-                if (existingRecord != null) {
-                    if (existingRecord.getCreateTime()
-                            .equals(currentToDoItem.getCreateTime())) {
-                        if (currentToDoItem.getModTime().isAfter(
-                                existingRecord.getModTime()))
-                            op = Operation.UPDATE;
-                        else
-                            op = Operation.SKIP;
-                    } else {
-                        // Not the same item!  Assign a new ID.
-                        currentToDoItem.setId(nextFreeRecordID++);
-                    }
-                }
-                break;
-
-            case MERGE:
-                // Overwrite if newer and the same category and description;
-                // make a new entry if the category or description differ.
-                if (existingRecord != null) {
-                    if (existingRecord.getCreateTime()
-                            .equals(currentToDoItem.getCreateTime()) &&
-                            (existingRecord.getCategoryId()
-                                    == currentToDoItem.getCategoryId()) &&
-                            (existingRecord.getDescription()
-                                    .equals(currentToDoItem.getDescription()))) {
-                        if (currentToDoItem.getModTime().isAfter(
-                                existingRecord.getModTime()))
-                            op = Operation.UPDATE;
-                        else
-                            op = Operation.SKIP;
-                    } else {
-                        // Conflict; change the ID
-                        currentToDoItem.setId(nextFreeRecordID++);
-                    }
-                }
-                break;
-
-            case ADD:
-                // All items are new, but may need a new ID
-                if (existingRecord != null)
-                    currentToDoItem.setId(nextFreeRecordID++);
-                break;
-
-            case TEST:
-                // Do nothing
-                op = Operation.SKIP;
-                break;
-
-        }
-
-        switch (op) {
-
-            case INSERT:
-                repository.insertItem(currentToDoItem);
-                break;
-
-            case UPDATE:
-                repository.updateItem(currentToDoItem);
-                break;
-
-        }
-
-        processedRecords++;
-        progressUpdater.updateProgress(modeText.get(OpMode.ITEMS),
-                processedRecords, totalRecords, true);
-    }
 
 }
@@ -0,0 +1,222 @@
+/*
+ * Copyright © 2026 Trevin Beattie
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.xmission.trevin.android.todo.service;
+
+import org.xml.sax.Attributes;
+import org.xml.sax.Locator;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.DefaultHandler;
+import org.xmlpull.v1.XmlPullParser;
+import org.xmlpull.v1.XmlPullParserException;
+import org.xmlpull.v1.XmlPullParserFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Drives a SAX {@link DefaultHandler} from an {@link XmlPullParser}
+ * rather than a {@link javax.xml.parsers.SAXParser}, so that the same
+ * handler (and therefore the same validation and error reporting)
+ * can be used with either parser.
+ * <p>
+ * The pull parser is pulled in a tight loop and its events passed
+ * to the handler as they come.  Text content is handed over straight
+ * from the parser&rsquo;s own buffer without making a {@link String}
+ * of it, and this object serves as both the handler&rsquo;s
+ * {@link Attributes} for every element and its {@link Locator},
+ * reading each directly from the parser; so apart from what the
+ * parser itself allocates, nothing is allocated per element.
+ * </p>
+ * <p>
+ * The parser is not namespace-aware, which matches how the
+ * {@link XMLImporter} configures its SAX parser: element and attribute
+ * names are reported as qualified names, and the namespace URI and
+ * local name are always empty.
+ * </p>
+ *
+ * @author Trevin Beattie
+ */
+class XMLPullReader implements Attributes, Locator {
+
+    /** The attribute type reported for every attribute */
+    private static final String ATTRIBUTE_TYPE = "CDATA";
+
+    /** The pull parser we are reading from */
+    private final XmlPullParser parser;
+
+    /** Holder for the start and length of each piece of text */
+    private final int[] textRange = new int[2];
+
+    /**
+     * Create a reader using the platform&rsquo;s default pull parser.
+     *
+     * @throws XmlPullParserException if no pull parser is available
+     */
+    XMLPullReader() throws XmlPullParserException {
+        this(XmlPullParserFactory.newInstance().newPullParser());
+    }
+
+    /**
+     * Create a reader using a given pull parser.
+     *
+     * @param parser the parser to read from
+     */
+    XMLPullReader(XmlPullParser parser) {
+        this.parser = parser;
+    }
+
+    /**
+     * Parse an XML document, passing its contents to a SAX handler.
+     *
+     * @param in the stream from which to read the document.
+     * Its encoding is determined from the XML declaration.
+     * @param handler the handler for the document&rsquo;s contents
+     *
+     * @throws IOException if there is an error reading the stream
+     * @throws XmlPullParserException if the document is not well-formed
+     * @throws SAXException if the handler throws it
+     */
+    void parse(InputStream in, DefaultHandler handler)
+            throws IOException, XmlPullParserException, SAXException {
+        parser.setInput(in, null);
+        handler.setDocumentLocator(this);
+        int eventType = parser.getEventType();
+        while (true) {
+            switch (eventType) {
+
+                case XmlPullParser.START_DOCUMENT:
+                    handler.startDocument();
+                    break;
+
+                case XmlPullParser.START_TAG:
+                    handler.startElement("", "", parser.getName(), this);
+                    break;
+
+                case XmlPullParser.TEXT:
+                    char[] text = parser.getTextCharacters(textRange);
+                    handler.characters(text, textRange[0], textRange[1]);
+                    break;
+
+                case XmlPullParser.END_TAG:
+                    handler.endElement("", "", parser.getName());
+                    break;
+
+                case XmlPullParser.END_DOCUMENT:
+                    handler.endDocument();
+                    return;
+
+            }
+            eventType = parser.next();
+        }
+    }
+
+    // Attributes of the current element
+
+    @Override
+    public int getLength() {
+        return parser.getAttributeCount();
+    }
+
+    @Override
+    public String getURI(int index) {
+        return "";
+    }
+
+    @Override
+    public String getLocalName(int index) {
+        return "";
+    }
+
+    @Override
+    public String getQName(int index) {
+        if ((index < 0) || (index >= parser.getAttributeCount()))
+            return null;
+        return parser.getAttributeName(index);
+    }
+
+    @Override
+    public String getType(int index) {
+        if ((index < 0) || (index >= parser.getAttributeCount()))
+            return null;
+        return ATTRIBUTE_TYPE;
+    }
+
+    @Override
+    public String getValue(int index) {
+        if ((index < 0) || (index >= parser.getAttributeCount()))
+            return null;
+        return parser.getAttributeValue(index);
+    }
+
+    @Override
+    public int getIndex(String uri, String localName) {
+        // Without namespaces there are no local names
+        return -1;
+    }
+
+    @Override
+    public int getIndex(String qName) {
+        for (int i = parser.getAttributeCount() - 1; i >= 0; i--) {
+            if (parser.getAttributeName(i).equals(qName))
+                return i;
+        }
+        return -1;
+    }
+
+    @Override
+    public String getType(String uri, String localName) {
+        return null;
+    }
+
+    @Override
+    public String getType(String qName) {
+        return (getIndex(qName) < 0) ? null : ATTRIBUTE_TYPE;
+    }
+
+    @Override
+    public String getValue(String uri, String localName) {
+        return null;
+    }
+
+    @Override
+    public String getValue(String qName) {
+        return parser.getAttributeValue(null, qName);
+    }
+
+    // Location of the current event
+
+    @Override
+    public String getPublicId() {
+        return null;
+    }
+
+    @Override
+    public String getSystemId() {
+        return null;
+    }
+
+    @Override
+    public int getLineNumber() {
+        return parser.getLineNumber();
+    }
+
+    @Override
+    public int getColumnNumber() {
+        return parser.getColumnNumber();
+    }
+
+}
@@ -53,6 +53,7 @@ import com.xmission.trevin.android.todo.data.ToDoPreferences;
 import com.xmission.trevin.android.todo.provider.ToDoRepository;
 import com.xmission.trevin.android.todo.provider.ToDoRepositoryImpl;
 import com.xmission.trevin.android.todo.service.ProgressBarUpdater;
+import com.xmission.trevin.android.todo.service.SnapshotExporter;
 import com.xmission.trevin.android.todo.service.XMLExportWorker;
 import com.xmission.trevin.android.todo.util.FileUtils;
 import com.xmission.trevin.android.todo.util.StringEncryption;
@@ -103,6 +104,15 @@ public class ExportActivity extends Activity {
     /** Checkbox for including private records */
     CheckBox exportPrivateCheckBox = null;
 
+    /** Checkbox for compressing the export file */
+    CheckBox exportCompressCheckBox = null;
+
+    /** Checkbox for exporting a binary snapshot instead of XML */
+    CheckBox exportSnapshotCheckBox = null;
+
+    /** Checkbox for exporting only the changes since the last export */
+    CheckBox exportIncrementalCheckBox = null;
+
     /**
      * Whether the database has a password set.  We check this
      * in a repository runner on a non-UI thread.
@@ -159,6 +169,10 @@ public class ExportActivity extends Activity {
         exportFileName = findViewById(R.id.ExportEditTextFile);
         exportPrivateCheckBox = findViewById(
                 R.id.ExportCheckBoxIncludePrivate);
+        exportCompressCheckBox = findViewById(R.id.ExportCheckBoxCompress);
+        exportSnapshotCheckBox = findViewById(R.id.ExportCheckBoxSnapshot);
+        exportIncrementalCheckBox = findViewById(
+                R.id.ExportCheckBoxIncremental);
         exportButton = findViewById(R.id.ExportButtonOK);
         cancelButton = findViewById(R.id.ExportButtonCancel);
         exportProgressBar = findViewById(R.id.ExportProgressBar);
@@ -230,6 +244,12 @@ public class ExportActivity extends Activity {
 
         boolean exportPrivate = prefs.exportPrivate();
         exportPrivateCheckBox.setChecked(exportPrivate);
+        exportCompressCheckBox.setChecked(prefs.exportCompressed());
+        exportSnapshotCheckBox.setChecked(prefs.exportSnapshot());
+        exportIncrementalCheckBox.setChecked(prefs.exportIncremental());
+        // Snapshots are never compressed or incremental
+        exportCompressCheckBox.setEnabled(!prefs.exportSnapshot());
+        exportIncrementalCheckBox.setEnabled(!prefs.exportSnapshot());
 
         // Check for a password in the database.  If there isn't one,
         // show a warning if the "Include Private" option is checked.
@@ -270,6 +290,15 @@ public class ExportActivity extends Activity {
         exportPrivateCheckBox.setOnCheckedChangeListener(
                 new IncludePrivateCheckedChangeListener());
 
+        exportCompressCheckBox.setOnCheckedChangeListener(
+                new CompressCheckedChangeListener());
+
+        exportSnapshotCheckBox.setOnCheckedChangeListener(
+                new SnapshotCheckedChangeListener());
+
+        exportIncrementalCheckBox.setOnCheckedChangeListener(
+                new IncrementalCheckedChangeListener());
+
         exportButton.setOnClickListener(new ExportButtonOnClickListener());
         cancelButton.setOnClickListener(new CancelClickListener());
     }
@@ -362,6 +391,11 @@ public class ExportActivity extends Activity {
             exportFileName.setEnabled(enable);
         }
         exportPrivateCheckBox.setEnabled(enable);
+        exportCompressCheckBox.setEnabled(enable
+                && !exportSnapshotCheckBox.isChecked());
+        exportSnapshotCheckBox.setEnabled(enable);
+        exportIncrementalCheckBox.setEnabled(enable
+                && !exportSnapshotCheckBox.isChecked());
         exportButton.setEnabled(enable);
         cancelButton.setEnabled(enable);
         exportProgressBar.setVisibility(enable ? View.GONE : View.VISIBLE);
@@ -392,11 +426,11 @@ public class ExportActivity extends Activity {
             String directoryName = FileUtils
                     .getDefaultStorageDirectory(ExportActivity.this);
             String fileName = exportFileName.getText().toString();
-            if (!fileName.endsWith(".xml")) {
+            if (stripExportSuffix(fileName) == null) {
                 // The Storage Access Framework may replace the
                 // actual file name with a temporary substitute;
                 // revert to the default file name.
-                fileName = "todo.xml";
+                fileName = "todo" + exportSuffix();
                 exportFileName.setText(fileName);
             }
             exportDirectoryName.setText(directoryName);
@@ -427,7 +461,10 @@ public class ExportActivity extends Activity {
                         Intent.CATEGORY_OPENABLE);
                 createFileActivity.setFlags(
                         Intent.FLAG_GRANT_WRITE_URI_PERMISSION);
-                createFileActivity.setType("text/xml");
+                createFileActivity.setType(exportSnapshotCheckBox.isChecked()
+                        ? "application/octet-stream"
+                        : exportCompressCheckBox.isChecked()
+                        ? "application/gzip" : "text/xml");
                 startActivityForResult(Intent.createChooser(
                                 createFileActivity,
                                 getString(R.string.ExportFileDialogTitle)),
@@ -475,6 +512,90 @@ public class ExportActivity extends Activity {
         }
     }
 
+    /**
+     * @return the file name suffix for the currently selected
+     * export format
+     */
+    private String exportSuffix() {
+        if (exportSnapshotCheckBox.isChecked())
+            return SnapshotExporter.FILE_SUFFIX;
+        return exportCompressCheckBox.isChecked() ? ".xml.gz" : ".xml";
+    }
+
+    /**
+     * Remove the suffix of any of the export formats from a file name.
+     *
+     * @param fileName the name of the file
+     *
+     * @return the file name without its suffix, or {@code null}
+     * if the name does not end with any of the export suffixes.
+     */
+    private static String stripExportSuffix(String fileName) {
+        for (String suffix : new String[] {
+                ".xml.gz", ".xml", SnapshotExporter.FILE_SUFFIX }) {
+            if (fileName.endsWith(suffix))
+                return fileName.substring(
+                        0, fileName.length() - suffix.length());
+        }
+        return null;
+    }
+
+    /**
+     * If the user can edit the file name, change its suffix
+     * to match the currently selected export format.
+     */
+    private void updateFileSuffix() {
+        if (exportDocUri != null)
+            return;
+        String baseName = stripExportSuffix(
+                exportFileName.getText().toString());
+        if (baseName != null)
+            exportFileName.setText(baseName + exportSuffix());
+    }
+
+    /**
+     * Called when the user toggles the &ldquo;Compress&rdquo; checkbox.
+     * If the user can edit the file name, this also adds or removes
+     * the &ldquo;.gz&rdquo; suffix to match.
+     */
+    private class CompressCheckedChangeListener
+            implements CompoundButton.OnCheckedChangeListener {
+        public void onCheckedChanged(
+                CompoundButton b, boolean checked) {
+            prefs.setExportCompressed(checked);
+            updateFileSuffix();
+        }
+    }
+
+    /**
+     * Called when the user toggles the &ldquo;Snapshot&rdquo; checkbox.
+     * Snapshots are never compressed or incremental, so this disables
+     * the &ldquo;Compress&rdquo; and &ldquo;Changes Only&rdquo;
+     * checkboxes while it is checked.  If the user can edit the file
+     * name, this also changes its suffix to match.
+     */
+    private class SnapshotCheckedChangeListener
+            implements CompoundButton.OnCheckedChangeListener {
+        public void onCheckedChanged(
+                CompoundButton b, boolean checked) {
+            prefs.setExportSnapshot(checked);
+            exportCompressCheckBox.setEnabled(!checked);
+            exportIncrementalCheckBox.setEnabled(!checked);
+            updateFileSuffix();
+        }
+    }
+
+    /**
+     * Called when the user toggles the &ldquo;Changes Only&rdquo; checkbox.
+     */
+    private class IncrementalCheckedChangeListener
+            implements CompoundButton.OnCheckedChangeListener {
+        public void onCheckedChanged(
+                CompoundButton b, boolean checked) {
+            prefs.setExportIncremental(checked);
+        }
+    }
+
     /** Called when the user clicks Export to start exporting the data */
     class ExportButtonOnClickListener implements View.OnClickListener {
         @Override
@@ -542,6 +663,12 @@ public class ExportActivity extends Activity {
                             .putString(XMLExportWorker.XML_DATA_FILENAME, fullName)
                             .putBoolean(XMLExportWorker.EXPORT_PRIVATE,
                                     exportPrivateCheckBox.isChecked())
+                            .putBoolean(XMLExportWorker.EXPORT_COMPRESSED,
+                                    exportCompressCheckBox.isChecked())
+                            .putBoolean(XMLExportWorker.EXPORT_SNAPSHOT,
+                                    exportSnapshotCheckBox.isChecked())
+                            .putBoolean(XMLExportWorker.EXPORT_INCREMENTAL,
+                                    exportIncrementalCheckBox.isChecked())
                             .build())
                     .build();
             workManager.enqueue(exportRequest);
@@ -50,6 +50,7 @@ import com.xmission.trevin.android.todo.data.ToDoPreferences;
 import com.xmission.trevin.android.todo.service.PalmImportWorker;
 import com.xmission.trevin.android.todo.service.PalmImporter;
 import com.xmission.trevin.android.todo.service.ProgressBarUpdater;
+import com.xmission.trevin.android.todo.service.SnapshotExporter;
 import com.xmission.trevin.android.todo.service.XMLImporter;
 import com.xmission.trevin.android.todo.service.XMLImportWorker;
 import com.xmission.trevin.android.todo.util.FileUtils;
@@ -445,7 +446,8 @@ public class ImportActivity extends Activity {
             String directoryName = FileUtils
                     .getDefaultStorageDirectory(ImportActivity.this);
             String fileName = importFileName.getText().toString();
-            if (!fileName.endsWith(".xml")) {
+            if (!fileName.endsWith(".xml") && !fileName.endsWith(".xml.gz")
+                    && !fileName.endsWith(SnapshotExporter.FILE_SUFFIX)) {
                 // The Storage Access Framework may replace the
                 // actual file name with a temporary substitute;
                 // revert to the default file name.
@@ -482,7 +484,9 @@ public class ImportActivity extends Activity {
                         Intent.FLAG_GRANT_READ_URI_PERMISSION);
                 openFileActivity.setType("*/*");
                 openFileActivity.putExtra(Intent.EXTRA_MIME_TYPES,
-                        new String[] { "application/xml", "text/xml" });
+                        new String[] { "application/xml", "text/xml",
+                                "application/gzip", "application/x-gzip",
+                                "application/octet-stream" });
                 startActivityForResult(Intent.createChooser(
                                 openFileActivity,
                                 getString(R.string.ImportFileDialogTitle)),
@@ -638,7 +642,9 @@ public class ImportActivity extends Activity {
             int importType = importTypeList.getSelectedItemPosition();
             if (importType == AdapterView.INVALID_POSITION)
                 importType = 5;        // test
-            // Make an educated guess about the file type, based on the extension.
+            // Make an educated guess about the file type, based on the
+            // extension.  The XML import worker recognizes compressed
+            // files itself, so we don't read the file here.
             if (realName.toLowerCase().endsWith(".dat")) {
                 // Assume Palm data
                 importRequest = new OneTimeWorkRequest
@@ -17,11 +17,16 @@
 package com.xmission.trevin.android.todo.ui;
 
 import java.text.NumberFormat;
+import java.time.Instant;
 import java.time.LocalDate;
 import java.time.format.DateTimeFormatter;
 import java.util.*;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import com.xmission.trevin.android.todo.R;
 import com.xmission.trevin.android.todo.data.ToDoItem;
@@ -30,6 +35,7 @@ import com.xmission.trevin.android.todo.data.repeat.RepeatNone;
 import com.xmission.trevin.android.todo.provider.ToDoCursor;
 import com.xmission.trevin.android.todo.provider.ToDoRepository;
 import com.xmission.trevin.android.todo.util.EncryptionException;
+import com.xmission.trevin.android.todo.util.LongIntHashMap;
 import com.xmission.trevin.android.todo.util.StringEncryption;
 
 import android.app.Activity;
@@ -76,6 +82,60 @@ public class ToDoCursorAdapter extends BaseAdapter {
     private final ExecutorService executor =
             Executors.newSingleThreadExecutor();
 
+    /**
+     * The number of threads used to decrypt item descriptions
+     * for display.  We leave one core free for the UI thread.
+     */
+    private static final int DECRYPT_THREADS = Math.max(1, Math.min(4,
+            Runtime.getRuntime().availableProcessors() - 1));
+
+    /**
+     * An executor for decrypting the descriptions of encrypted items
+     * being shown, so that binding a view doesn&rsquo;t have to wait
+     * for the cipher.  Shut down by {@link #close}.
+     */
+    private final ExecutorService decryptExecutor =
+            Executors.newFixedThreadPool(DECRYPT_THREADS);
+
+    /**
+     * The number of rows on either side of the visible part
+     * of the list whose descriptions we decrypt ahead of time.
+     */
+    static final int PREFETCH_ROWS = 10;
+
+    /**
+     * The visible range for which we last prefetched decrypted
+     * descriptions, so that we don't repeat the work on every scroll
+     * event.  Only accessed on the UI thread.
+     */
+    private int lastPrefetchFirst = -1;
+    private int lastPrefetchCount = -1;
+
+    /**
+     * A separate executor for search filtering, so that a long search
+     * does not hold up repository updates.  All of the search state
+     * below which is not marked as UI-only is confined to this thread.
+     */
+    private final ExecutorService searchExecutor =
+            Executors.newSingleThreadExecutor();
+
+    /**
+     * The minimum number of rows to check before we split the search
+     * across multiple threads; below this, the overhead of forking
+     * tasks outweighs any gain.
+     */
+    static final int PARALLEL_SEARCH_THRESHOLD = 1000;
+
+    /** The number of rows each parallel search task checks on its own */
+    static final int PARALLEL_SEARCH_CHUNK = 250;
+
+    /**
+     * Pool used to match the search text against large lists in parallel.
+     * Created on first use and shut down by {@link #close}.
+     * Only accessed by the search thread.
+     */
+    private ForkJoinPool searchPool = null;
+
     /**
      * The current search text, lower-cased, or {@code null} if no filter
      * is active.  Only accessed on the UI thread.
@@ -84,18 +144,79 @@ public class ToDoCursorAdapter extends BaseAdapter {
 
     /**
      * Positions within the cursor that match the current search filter,
-     * or {@code null} if no filter is active.  Only assigned on the UI
-     * thread (inside {@code runOnUiThread}), so reads in {@code getCount},
-     * {@code getItem}, etc. are also safe on the UI thread.
+     * in ascending order, or {@code null} if no filter is active.
+     * Only assigned on the UI thread (inside {@code runOnUiThread}),
+     * so reads in {@code getCount}, {@code getItem}, etc. are also safe
+     * on the UI thread.
+     */
+    private int[] filteredPositions = null;
+
+    /**
+     * Incremented on the UI thread each time a new filter build is
+     * started.  The background task checks this as it goes so that it
+     * can abandon work for a query which has been superseded, and the
+     * UI thread checks it to discard a stale result.
+     */
+    private final AtomicInteger filterGeneration = new AtomicInteger();
+
+    /**
+     * The most recently submitted filter task, which is cancelled
+     * if it has not started by the time the next one is submitted.
+     * Only accessed on the UI thread.
+     */
+    private Future<?> pendingFilter = null;
+
+    /**
+     * Set when the adapter has been {@link #close closed}, after which
+     * no more work is given to its executors.
+     * Only accessed on the UI thread.
+     */
+    private boolean closed = false;
+
+    /**
+     * The cursor from which {@link #searchSnapshot} was taken.
+     * Only accessed by the search thread.
+     */
+    private ToDoCursor snapshotSource = null;
+
+    /**
+     * A copy of the cursor rows used for matching the search text.
+     * This is filled in on the search thread and kept for as long as
+     * the cursor is in use, so that subsequent keystrokes do not need
+     * to read the cursor again.  If a snapshot is interrupted by a newer
+     * query, the next search picks up where it left off.
+     * Only modified by the search thread; the {@link #searchPool}
+     * threads read it while the search thread waits for them.
+     */
+    private final ArrayList<ToDoItem> searchSnapshot = new ArrayList<>();
+
+    /**
+     * The query for which {@link #lastMatches} were found,
+     * or {@code null} if there is no previous result which
+     * can be refined.  Only accessed by the search thread.
+     */
+    private String lastMatchQuery = null;
+
+    /**
+     * The snapshot positions which matched {@link #lastMatchQuery}.
+     * Only accessed by the search thread.
      */
-    private List<Integer> filteredPositions = null;
+    private int[] lastMatches = null;
 
     /**
-     * Incremented each time a new filter build is started so that a
-     * stale background result can be discarded.  Only accessed on the
-     * UI thread.
+     * The ID of the item at each position in the cursor, read when the
+     * cursor is swapped so that looking up an item&rsquo;s ID does not
+     * require decoding the whole item.  Only accessed on the UI thread.
      */
-    private int filterGeneration = 0;
+    private long[] cursorItemIds = new long[0];
+
+    /**
+     * Index from item ID to its position in this adapter (i.e. within
+     * {@link #filteredPositions} if a filter is active, otherwise within
+     * the cursor).  Rebuilt whenever the cursor is swapped or the filter
+     * changes.  Only accessed on the UI thread.
+     */
+    private final LongIntHashMap positionIndex = new LongIntHashMap();
 
     /** The item whose due date is currently selected */
     long selectedItemId = -1;
@@ -131,6 +252,8 @@ public class ToDoCursorAdapter extends BaseAdapter {
                 Context.LAYOUT_INFLATER_SERVICE);
         encryptor = encryption;
         this.notificationManager = notificationManager;
+        readCursorItemIds();
+        rebuildPositionIndex();
     }
 
     /**
@@ -141,14 +264,108 @@ public class ToDoCursorAdapter extends BaseAdapter {
      */
     public void swapCursor(@Nullable ToDoCursor newCursor) {
         Log.d(TAG, String.format(Locale.US, ".swapCursor(%s)", newCursor));
-        if (cursor != null)
-            cursor.close();
+        if (cursor != null) {
+            // The search thread may be in the middle of reading this cursor
+            synchronized (cursor) {
+                cursor.close();
+            }
+        }
         cursor = newCursor;
+        readCursorItemIds();
+        lastPrefetchFirst = -1;
+        lastPrefetchCount = -1;
         if (searchText != null) {
             // Re-evaluate the filter against the new cursor contents.
             rebuildFilter();
         } else {
+            rebuildPositionIndex();
             notifyDataSetChanged();
+            if (closed)
+                return;
+            // Don't hold on to a snapshot of the old cursor
+            searchExecutor.submit(new Runnable() {
+                @Override
+                public void run() {
+                    releaseSnapshot();
+                }
+            });
+        }
+    }
+
+    /**
+     * Shut down the threads used by this adapter.  This should be called
+     * when the activity is destroyed, since a new adapter is created
+     * along with the activity.  Any repository update which has already
+     * been submitted is allowed to finish; a search in progress is
+     * abandoned.  The cursor may still be swapped out afterward, but
+     * no other use of the adapter should be made.  Must be called on
+     * the UI thread.
+     */
+    public void close() {
+        Log.d(TAG, ".close");
+        if (closed)
+            return;
+        closed = true;
+        // Any search in progress will see the new generation and stop
+        filterGeneration.incrementAndGet();
+        if (pendingFilter != null) {
+            pendingFilter.cancel(false);
+            pendingFilter = null;
+        }
+        // The search pool belongs to the search thread, so shut it
+        // down there once the abandoned search has returned.
+        searchExecutor.submit(new Runnable() {
+            @Override
+            public void run() {
+                if (searchPool != null) {
+                    searchPool.shutdown();
+                    searchPool = null;
+                }
+            }
+        });
+        searchExecutor.shutdown();
+        // Nothing is left to show any pending decryptions
+        decryptExecutor.shutdownNow();
+        executor.shutdown();
+    }
+
+    /**
+     * Read the item ID from every row of the current cursor
+     * into {@link #cursorItemIds}.  The array is reused if
+     * it is large enough.
+     */
+    private void readCursorItemIds() {
+        if (cursor == null)
+            return;
+        synchronized (cursor) {
+            int count = cursor.getCount();
+            if (cursorItemIds.length < count)
+                cursorItemIds = new long[count];
+            for (int i = 0; i < count; i++) {
+                cursorItemIds[i] = cursor.moveToPosition(i)
+                        ? cursor.getItemId() : -1;
+            }
+        }
+    }
+
+    /**
+     * Rebuild the {@link #positionIndex} from the current cursor item IDs
+     * and filtered positions.  Must be called on the UI thread.
+     */
+    private void rebuildPositionIndex() {
+        positionIndex.clear();
+        int cursorCount = (cursor != null) ? cursor.getCount() : 0;
+        if (filteredPositions != null) {
+            positionIndex.ensureCapacity(filteredPositions.length);
+            for (int i = 0; i < filteredPositions.length; i++) {
+                int cursorPos = filteredPositions[i];
+                if (cursorPos < cursorCount)
+                    positionIndex.put(cursorItemIds[cursorPos], i);
+            }
+        } else {
+            positionIndex.ensureCapacity(cursorCount);
+            for (int i = 0; i < cursorCount; i++)
+                positionIndex.put(cursorItemIds[i], i);
         }
     }
 
@@ -165,7 +382,7 @@ public class ToDoCursorAdapter extends BaseAdapter {
         }
         Log.d(TAG, ".getCount()");
         if (filteredPositions != null)
-            return filteredPositions.size();
+            return filteredPositions.length;
         return cursor.getCount();
     }
 
@@ -191,9 +408,11 @@ public class ToDoCursorAdapter extends BaseAdapter {
         }
         Log.d(TAG, String.format(Locale.US, ".getItem(%d)", position));
         int cursorPos = (filteredPositions != null)
-                ? filteredPositions.get(position) : position;
-        cursor.moveToPosition(cursorPos);
-        return cursor.getItem();
+                ? filteredPositions[position] : position;
+        synchronized (cursor) {
+            cursor.moveToPosition(cursorPos);
+            return cursor.getItem();
+        }
     }
 
     /**
@@ -212,14 +431,20 @@ public class ToDoCursorAdapter extends BaseAdapter {
         }
         Log.d(TAG, String.format(Locale.US, ".getItemId(%d)", position));
         int cursorPos = (filteredPositions != null)
-                ? filteredPositions.get(position) : position;
-        cursor.moveToPosition(cursorPos);
-        return cursor.getItem().getId();
+                ? filteredPositions[position] : position;
+        if ((cursorPos >= 0) && (cursorPos < cursor.getCount()))
+            return cursorItemIds[cursorPos];
+        synchronized (cursor) {
+            cursor.moveToPosition(cursorPos);
+            return cursor.getItemId();
+        }
     }
 
     /**
      * Get the position of a To Do item from its ID.
      * If there is no such item, returns the first position.
+     * This uses an index which is rebuilt whenever the cursor
+     * or filter changes, so it does not need to scan the cursor.
      *
      * @param itemId the ID of the item to find
      *
@@ -230,17 +455,7 @@ public class ToDoCursorAdapter extends BaseAdapter {
             Log.w(TAG, ".getItemPosition: The cursor has not been set!");
             return 0;
         }
-        int count = (filteredPositions != null)
-                ? filteredPositions.size() : cursor.getCount();
-        for (int i = 0; i < count; i++) {
-            int cursorPos = (filteredPositions != null)
-                    ? filteredPositions.get(i) : i;
-            if (cursor.moveToPosition(cursorPos)) {
-                if (cursor.getItem().getId() == itemId)
-                    return i;
-            }
-        }
-        return 0;
+        return positionIndex.get(itemId, 0);
     }
 
     /**
@@ -305,17 +520,23 @@ public class ToDoCursorAdapter extends BaseAdapter {
                 ? View.VISIBLE : View.GONE);
         String description = activity.getString(R.string.PasswordProtected);
         if (todo.isEncrypted()) {
-            if (encryptor.hasKey()) try {
-                description = encryptor.decrypt(todo.getEncryptedDescription());
-            } catch (EncryptionException e) {
-                Log.e(TAG, String.format(Locale.US,
-                        "Unable to decrypt the description for item %d",
-                        todo.getId()), e);
+            if (encryptor.hasKey()) {
+                // Only show the description right away if we've
+                // already decrypted it; otherwise don't make the
+                // UI thread wait for the cipher.
+                description = encryptor.getCachedDescription(
+                        todo.getId(), todo.getModTime());
+                if (description == null) {
+                    description = activity.getString(
+                            R.string.DecryptingPlaceholder);
+                    decryptInBackground(editDescription, todo);
+                }
             }
         } else {
             description = todo.getDescription();
         }
         editDescription.setText(description);
+        editDescription.setTag(todo);
         noteImage.setVisibility(((todo.isEncrypted() ? todo.getEncryptedNote()
                 : todo.getNote()) == null) ? View.GONE : View.VISIBLE);
         alarmImage.setVisibility((todo.getAlarm() == null)
@@ -345,6 +566,115 @@ public class ToDoCursorAdapter extends BaseAdapter {
         return itemView;
     }
 
+    /**
+     * Decrypt the description of an item on the {@link #decryptExecutor}
+     * and show it in the given view when done, provided that the view
+     * is still bound to the same item by then.  The decrypted text is
+     * also left in the encryptor&rsquo;s cache so the next time the
+     * item is bound it will be shown immediately.
+     *
+     * @param view the view in which to show the description
+     * @param todo the item whose description to decrypt
+     */
+    private void decryptInBackground(final TextView view, ToDoItem todo) {
+        if (closed)
+            return;
+        final long itemId = todo.getId();
+        final Instant modTime = todo.getModTime();
+        final byte[] code = todo.getEncryptedDescription();
+        decryptExecutor.submit(new Runnable() {
+            @Override
+            public void run() {
+                String text;
+                try {
+                    text = encryptor.decryptDescription(itemId, modTime, code);
+                } catch (EncryptionException e) {
+                    Log.e(TAG, String.format(Locale.US,
+                            "Unable to decrypt the description for item %d",
+                            itemId), e);
+                    text = activity.getString(R.string.PasswordProtected);
+                } catch (IllegalStateException e) {
+                    // The password was forgotten while we were waiting
+                    text = activity.getString(R.string.PasswordProtected);
+                }
+                final String description = text;
+                activity.runOnUiThread(new Runnable() {
+                    @Override
+                    public void run() {
+                        Object bound = view.getTag();
+                        if (!(bound instanceof ToDoItem))
+                            return;
+                        ToDoItem boundItem = (ToDoItem) bound;
+                        if ((boundItem.getId() == itemId) &&
+                                modTime.equals(boundItem.getModTime()))
+                            view.setText(description);
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Decrypt the descriptions of items just outside the visible part
+     * of the list ahead of time, so that they can be shown immediately
+     * when they are scrolled into view.  This should be called from the
+     * list view&rsquo;s scroll listener.  Must be called on the UI thread.
+     *
+     * @param firstVisible the position of the first visible item
+     * @param visibleCount the number of visible items
+     */
+    public void prefetchDecryption(int firstVisible, int visibleCount) {
+        if (closed || (cursor == null) || !encryptor.hasKey())
+            return;
+        if ((firstVisible == lastPrefetchFirst) &&
+                (visibleCount == lastPrefetchCount))
+            return;
+        lastPrefetchFirst = firstVisible;
+        lastPrefetchCount = visibleCount;
+
+        int count = getCount();
+        int[] cursorPositions = new int[2 * PREFETCH_ROWS];
+        int n = 0;
+        for (int i = 1; i <= PREFETCH_ROWS; i++) {
+            int after = firstVisible + visibleCount - 1 + i;
+            if (after < count)
+                cursorPositions[n++] = (filteredPositions != null)
+                        ? filteredPositions[after] : after;
+            int before = firstVisible - i;
+            if (before >= 0)
+                cursorPositions[n++] = (filteredPositions != null)
+                        ? filteredPositions[before] : before;
+        }
+        if (n == 0)
+            return;
+
+        final ToDoCursor source = cursor;
+        final int[] positions = Arrays.copyOf(cursorPositions, n);
+        decryptExecutor.submit(new Runnable() {
+            @Override
+            public void run() {
+                for (int pos : positions) {
+                    ToDoItem item;
+                    synchronized (source) {
+                        if (source.isClosed() || !source.moveToPosition(pos))
+                            return;
+                        item = source.getItem();
+                    }
+                    if (!item.isEncrypted())
+                        continue;
+                    try {
+                        encryptor.decryptDescription(item.getId(),
+                                item.getModTime(),
+                                item.getEncryptedDescription());
+                    } catch (EncryptionException | IllegalStateException e) {
+                        // We'll report this if the item is actually shown
+                        return;
+                    }
+                }
+            }
+        });
+    }
+
     /**
      * Set or clear the text filter applied to the item list.
      * The match is case-insensitive and checks both the item description
@@ -365,49 +695,231 @@ public class ToDoCursorAdapter extends BaseAdapter {
      * Rebuild the filtered position list for the current cursor and
      * search text.  Must be called on the UI thread.  If no search text
      * is set, clears the filter and notifies immediately.  Otherwise,
-     * takes a snapshot of the cursor items on the UI thread, dispatches
-     * the decryption and matching work to the background executor, and
-     * notifies the list on the UI thread when done.
+     * cancels any filter task that has not yet finished and submits a new
+     * {@link FilterTask} to the search thread, which notifies the list
+     * on the UI thread when done.
      */
     private void rebuildFilter() {
+        final int generation = filterGeneration.incrementAndGet();
+        if (pendingFilter != null) {
+            // A task which has already started will see the new
+            // generation and stop on its own.
+            pendingFilter.cancel(false);
+            pendingFilter = null;
+        }
+
         if (searchText == null) {
             filteredPositions = null;
+            rebuildPositionIndex();
             notifyDataSetChanged();
             return;
         }
 
-        // Snapshot cursor items on the UI thread to avoid concurrent
-        // cursor navigation while the background thread is matching.
-        final int count = (cursor != null) ? cursor.getCount() : 0;
-        final List<ToDoItem> snapshot = new ArrayList<>(count);
-        for (int i = 0; i < count; i++) {
-            if (cursor.moveToPosition(i))
-                snapshot.add(cursor.getItem());
+        if (cursor == null) {
+            filteredPositions = new int[0];
+            rebuildPositionIndex();
+            notifyDataSetChanged();
+            return;
         }
 
-        final int generation = ++filterGeneration;
-        final String lowerSearch = searchText;
+        if (closed)
+            return;
+        pendingFilter = searchExecutor.submit(
+                new FilterTask(cursor, searchText, generation));
+    }
 
-        executor.submit(new Runnable() {
-            @Override
-            public void run() {
-                final List<Integer> positions = new ArrayList<>();
-                for (int i = 0; i < snapshot.size(); i++) {
-                    if (itemMatchesSearch(snapshot.get(i), lowerSearch))
-                        positions.add(i);
+    /**
+     * Task which matches the rows of a cursor against the search text
+     * on the search thread.  The first search on a cursor takes a
+     * snapshot of its rows; later searches reuse the snapshot, and if
+     * the new search text contains the previous search text, only the
+     * rows which matched the previous search are checked again.
+     */
+    class FilterTask implements Runnable {
+        private final ToDoCursor source;
+        private final String lowerSearch;
+        private final int generation;
+
+        /**
+         * @param source the cursor whose rows are to be matched
+         * @param lowerSearch the search text, already lower-cased
+         * @param generation the value of {@link #filterGeneration}
+         * when this task was submitted
+         */
+        FilterTask(ToDoCursor source, String lowerSearch, int generation) {
+            this.source = source;
+            this.lowerSearch = lowerSearch;
+            this.generation = generation;
+        }
+
+        /** @return whether a newer filter has been requested */
+        private boolean isSuperseded() {
+            return filterGeneration.get() != generation;
+        }
+
+        @Override
+        public void run() {
+            if (isSuperseded())
+                return;
+            if (!extendSnapshot())
+                return;
+
+            int[] candidates = null;
+            if ((lastMatchQuery != null) && lowerSearch.contains(lastMatchQuery))
+                candidates = lastMatches;
+            final int[] positions = matchPositions(candidates);
+            if (positions == null)
+                return;
+            lastMatchQuery = lowerSearch;
+            lastMatches = positions;
+
+            activity.runOnUiThread(new Runnable() {
+                @Override
+                public void run() {
+                    // Discard if a newer build has been started
+                    // or the cursor has changed
+                    if (isSuperseded() || (cursor != source))
+                        return;
+                    filteredPositions = positions;
+                    rebuildPositionIndex();
+                    notifyDataSetChanged();
                 }
-                activity.runOnUiThread(new Runnable() {
-                    @Override
-                    public void run() {
-                        // Discard if a newer build has been started
-                        if (filterGeneration != generation)
-                            return;
-                        filteredPositions = positions;
-                        notifyDataSetChanged();
-                    }
-                });
+            });
+        }
+
+        /**
+         * Make sure {@link #searchSnapshot} holds every row of the
+         * source cursor, reading any rows which are not yet in it.
+         *
+         * @return {@code true} if the snapshot is complete,
+         * {@code false} if this task was superseded or the cursor
+         * was closed before it could be finished.
+         */
+        private boolean extendSnapshot() {
+            if (snapshotSource != source) {
+                releaseSnapshot();
+                snapshotSource = source;
             }
-        });
+            int count;
+            synchronized (source) {
+                if (source.isClosed())
+                    return false;
+                count = source.getCount();
+            }
+            if (searchSnapshot.size() == count)
+                return true;
+            Log.d(TAG, String.format(Locale.US,
+                    "Reading search snapshot rows %d to %d",
+                    searchSnapshot.size(), count));
+            searchSnapshot.ensureCapacity(count);
+            for (int i = searchSnapshot.size(); i < count; i++) {
+                if (isSuperseded())
+                    return false;
+                // Only hold the lock for one row at a time
+                // so that we don't hold up the UI thread.
+                synchronized (source) {
+                    if (source.isClosed())
+                        return false;
+                    searchSnapshot.add(source.moveToPosition(i)
+                            ? source.getItem() : null);
+                }
+            }
+            return true;
+        }
+
+        /**
+         * Find which rows of the snapshot match the search text.
+         *
+         * @param candidates the snapshot positions to check, or
+         * {@code null} to check every row
+         *
+         * @return the matching positions in ascending order, or
+         * {@code null} if this task was superseded before it finished.
+         */
+        private int[] matchPositions(int[] candidates) {
+            int n = (candidates != null)
+                    ? candidates.length : searchSnapshot.size();
+            int cores = Runtime.getRuntime().availableProcessors();
+            if ((n < PARALLEL_SEARCH_THRESHOLD) || (cores < 2))
+                return matchRange(candidates, 0, n);
+            if (searchPool == null)
+                searchPool = new ForkJoinPool(cores);
+            return searchPool.invoke(new MatchTask(candidates, 0, n));
+        }
+
+        /**
+         * Check a range of rows of the snapshot against the search text
+         * on the current thread.
+         *
+         * @param candidates the snapshot positions to check, or
+         * {@code null} to check every row
+         * @param start the first index into {@code candidates}
+         * (or the snapshot) to check
+         * @param end the index after the last one to check
+         *
+         * @return the matching positions in ascending order, or
+         * {@code null} if this task was superseded before it finished.
+         */
+        int[] matchRange(int[] candidates, int start, int end) {
+            int[] matches = new int[end - start];
+            int count = 0;
+            for (int i = start; i < end; i++) {
+                if (isSuperseded())
+                    return null;
+                int pos = (candidates != null) ? candidates[i] : i;
+                ToDoItem item = searchSnapshot.get(pos);
+                if ((item != null) && itemMatchesSearch(item, lowerSearch))
+                    matches[count++] = pos;
+            }
+            return Arrays.copyOf(matches, count);
+        }
+
+        /**
+         * Fork/join task which splits a range of rows in half until
+         * it is small enough to check directly, then concatenates the
+         * results so that the positions stay in ascending order.
+         */
+        class MatchTask extends RecursiveTask<int[]> {
+            private final int[] candidates;
+            private final int start;
+            private final int end;
+
+            MatchTask(int[] candidates, int start, int end) {
+                this.candidates = candidates;
+                this.start = start;
+                this.end = end;
+            }
+
+            @Override
+            protected int[] compute() {
+                if (end - start <= PARALLEL_SEARCH_CHUNK)
+                    return matchRange(candidates, start, end);
+                int mid = (start + end) >>> 1;
+                MatchTask left = new MatchTask(candidates, start, mid);
+                left.fork();
+                int[] rightMatches =
+                        new MatchTask(candidates, mid, end).compute();
+                int[] leftMatches = left.join();
+                if ((leftMatches == null) || (rightMatches == null))
+                    return null;
+                int[] matches = Arrays.copyOf(leftMatches,
+                        leftMatches.length + rightMatches.length);
+                System.arraycopy(rightMatches, 0, matches,
+                        leftMatches.length, rightMatches.length);
+                return matches;
+            }
+        }
+    }
+
+    /**
+     * Discard the search snapshot and any previous search results.
+     * Must be called on the search thread.
+     */
+    private void releaseSnapshot() {
+        snapshotSource = null;
+        searchSnapshot.clear();
+        lastMatchQuery = null;
+        lastMatches = null;
     }
 
     /**
@@ -429,7 +941,8 @@ public class ToDoCursorAdapter extends BaseAdapter {
             if (!encryptor.hasKey())
                 return false; // locked; skip entirely
             try {
-                desc = encryptor.decrypt(item.getEncryptedDescription());
+                desc = encryptor.decryptDescription(item.getId(),
+                        item.getModTime(), item.getEncryptedDescription());
             } catch (EncryptionException e) {
                 Log.w(TAG, String.format(Locale.US,
                         "itemMatchesSearch: could not decrypt description"
@@ -454,7 +967,8 @@ public class ToDoCursorAdapter extends BaseAdapter {
         if (item.isEncrypted()) {
             // encryptor.hasKey() already confirmed above
             try {
-                note = encryptor.decrypt(item.getEncryptedNote());
+                note = encryptor.decryptNote(item.getId(),
+                        item.getModTime(), item.getEncryptedNote());
             } catch (EncryptionException e) {
                 Log.w(TAG, String.format(Locale.US,
                         "itemMatchesSearch: could not decrypt note"
@@ -39,6 +39,7 @@ import com.xmission.trevin.android.todo.provider.ItemLoaderCallbacks;
 import com.xmission.trevin.android.todo.provider.ToDoRepository;
 import com.xmission.trevin.android.todo.provider.ToDoSchema.*;
 import com.xmission.trevin.android.todo.service.PasswordChangeWorker;
+import com.xmission.trevin.android.todo.service.PasswordChanger;
 
 import android.annotation.SuppressLint;
 import android.app.*;
@@ -281,6 +282,16 @@ public class ToDoListActivity extends AppCompatActivity {
                 Log.d(TAG, ".onNothingSelected(parent)");
             }
         });
+        listView.setOnScrollListener(new AbsListView.OnScrollListener() {
+            @Override
+            public void onScrollStateChanged(AbsListView view, int state) {}
+            @Override
+            public void onScroll(AbsListView view, int firstVisible,
+                                 int visibleCount, int totalCount) {
+                // Decrypt items just off screen before they're needed
+                itemAdapter.prefetchDecryption(firstVisible, visibleCount);
+            }
+        });
 
         // Set a callback for the New button
         Button newButton = findViewById(R.id.ListButtonNew);
@@ -517,6 +528,7 @@ public class ToDoListActivity extends AppCompatActivity {
     /** Called when the activity is about to be destroyed */
     @Override
     public void onDestroy() {
+        itemAdapter.close();
         repository.unregisterDataSetObserver(registeredObserver);
         repository.release(this);
         StringEncryption.releaseGlobalEncryption(this);
@@ -1036,6 +1048,37 @@ public class ToDoListActivity extends AppCompatActivity {
             hasPassword = encryptor.hasPassword(repository);
             if (hasPassword != oldHasPassword)
                 runOnUiThread(updatePasswordVisibility);
+            // Private records can't be read until a password change finishes
+            if (encryptor.hasKey() && PasswordChanger.hasCheckpoint(repository)) {
+                encryptor.forgetPassword();
+                prefs.setShowEncrypted(false);
+            }
+        }
+    };
+
+    /**
+     * Tell the user that private records can&rsquo;t be unlocked
+     * because a password change has not finished, and offer to
+     * resume it.  This must be run on the UI thread.
+     */
+    private final Runnable showUnfinishedPasswordChange = new Runnable() {
+        @Override
+        public void run() {
+            new AlertDialog.Builder(ToDoListActivity.this)
+                    .setIcon(android.R.drawable.ic_dialog_alert)
+                    .setMessage(R.string.ErrorPasswordChangeUnfinished)
+                    .setPositiveButton(R.string.MenuPasswordChange,
+                            new DialogInterface.OnClickListener() {
+                                @Override
+                                public void onClick(DialogInterface dialog,
+                                                    int which) {
+                                    dialog.dismiss();
+                                    showDialog(PASSWORD_DIALOG_ID);
+                                }
+                            })
+                    .setNegativeButton(R.string.ConfirmationButtonCancel,
+                            DISMISS_LISTENER)
+                    .show();
         }
     };
 
@@ -1182,6 +1225,17 @@ public class ToDoListActivity extends AppCompatActivity {
     private final Runnable checkPasswordForUnlock = new Runnable() {
         @Override
         public void run() {
+            /*
+             * The old password still matches the database while a
+             * password change is unfinished, but some items are
+             * already encrypted with the new one.
+             */
+            if (PasswordChanger.hasCheckpoint(repository)) {
+                encryptor.forgetPassword();
+                unlockDialog.dismiss();
+                runOnUiThread(showUnfinishedPasswordChange);
+                return;
+            }
             try {
                 if (encryptor.checkPassword(repository)) {
                     prefs.setShowEncrypted(true);
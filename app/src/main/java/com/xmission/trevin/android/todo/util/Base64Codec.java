@@ -0,0 +1,257 @@
+/*
+ * Copyright © 2026 Trevin Beattie
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.xmission.trevin.android.todo.util;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Encoder and decoder for the Base64 format used by the XML export
+ * file: the URL- and filename-safe alphabet of RFC 3548 section 4,
+ * without padding, with a line separator after every 64 characters.
+ * The decoder also accepts the standard alphabet of section 3 and
+ * ignores whitespace and padding.
+ * <p>
+ * The encoder writes ASCII bytes directly into a caller&rsquo;s
+ * buffer, and the decoder reads directly from a character array
+ * (such as the one passed to a SAX {@code characters()} callback)
+ * into a byte array of exactly the decoded size, so neither needs
+ * any intermediate buffers.
+ * </p>
+ *
+ * @author Trevin Beattie
+ */
+public final class Base64Codec {
+
+    /** The number of data bytes encoded on each line of output */
+    public static final int LINE_BYTES = 48;
+
+    /** The number of characters on each full line of output */
+    public static final int LINE_CHARACTERS = LINE_BYTES / 3 * 4;
+
+    /** RFC 3548 sec. 4 */
+    private static final byte[] ALPHABET =
+            ("ABCDEFGHIJKLMNOPQRSTUVWXYZ"
+                    + "abcdefghijklmnopqrstuvwxyz0123456789-_")
+                    .getBytes(StandardCharsets.US_ASCII);
+
+    /** Marks characters in {@link #VALUES} which are not Base64 */
+    private static final byte INVALID = -1;
+
+    /** Marks characters in {@link #VALUES} which are skipped */
+    private static final byte SKIP = -2;
+
+    /**
+     * RFC 3548 sec. 3 and 4 compatible,
+     * reversed ASCII value to Base64 value.
+     * Entries with -1 are not valid Base64 characters.
+     * Entries with -2 are skipped whitespace.
+     */
+    private static final byte[] VALUES = {
+        -1, -1, -1, -1, -1, -1, -1, -1, -1, -2, -2, -1, -1, -2, -1, -1,
+        -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1,
+        -2, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, 62, -1, 62, -1, 63,
+        52, 53, 54, 55, 56, 57, 58, 59, 60, 61, -1, -1, -1, -2, -1, -1,
+        -1,  0,  1,  2,  3,  4,  5,  6,  7,  8,  9, 10, 11, 12, 13, 14,
+        15, 16, 17, 18, 19, 20, 21, 22, 23, 24, 25, -1, -1, -1, -1, 63,
+        -1, 26, 27, 28, 29, 30, 31, 32, 33, 34, 35, 36, 37, 38, 39, 40,
+        41, 42, 43, 44, 45, 46, 47, 48, 49, 50, 51, -1, -1, -1, -1, -1 };
+
+    /** This class only has static methods */
+    private Base64Codec() {}
+
+    /**
+     * Compute the number of bytes {@link #encode(byte[], int, int,
+     * byte[], int, byte[])} will write for an entire array.
+     *
+     * @param dataLength the number of bytes to encode
+     * @param separatorLength the length of the line separator
+     *
+     * @return the length of the encoded data
+     */
+    public static int encodedLength(int dataLength, int separatorLength) {
+        int length = dataLength / 3 * 4;
+        switch (dataLength % 3) {
+            case 1: length += 2; break;
+            case 2: length += 3; break;
+        }
+        // Line breaks only come before a full group of three bytes
+        if (dataLength >= 3)
+            length += (dataLength - 3) / LINE_BYTES * separatorLength;
+        return length;
+    }
+
+    /**
+     * Encode part of a byte array into a destination buffer.
+     * Line breaks are placed according to each byte&rsquo;s position
+     * in the whole array, so an array may be encoded in several pieces
+     * as long as each piece starts at a multiple of three bytes.
+     * The caller must ensure there is enough room in the destination;
+     * a piece of <i>n</i> full lines needs no more than
+     * <i>n</i> &times; ({@link #LINE_CHARACTERS} + the length of
+     * the line separator) bytes.
+     *
+     * @param data the data to encode
+     * @param from the index of the first byte to encode;
+     * this must be a multiple of 3
+     * @param to the index after the last byte to encode; this must be
+     * a multiple of 3 unless it is the end of the data
+     * @param dest the buffer to which to write the ASCII characters
+     * @param destPos the position in {@code dest} at which to start
+     * @param lineSeparator the encoded line separator
+     *
+     * @return the position in {@code dest} after the last byte written
+     *
+     * @throws IllegalArgumentException if {@code from} is not a
+     * multiple of 3
+     */
+    public static int encode(byte[] data, int from, int to,
+                             byte[] dest, int destPos, byte[] lineSeparator)
+            throws IllegalArgumentException {
+        if (from % 3 != 0)
+            throw new IllegalArgumentException(
+                    "Base64 encoding must start on a 3-byte boundary");
+        final byte[] b64 = ALPHABET;
+        int p = destPos;
+        // Process bytes in groups of three
+        int i;
+        for (i = from; i + 3 <= to; i += 3) {
+            // Insert line breaks every 64 characters
+            if ((i > 0) && (i % LINE_BYTES == 0)) {
+                for (byte b : lineSeparator)
+                    dest[p++] = b;
+            }
+            int group = ((data[i] & 0xff) << 16)
+                    | ((data[i+1] & 0xff) << 8) | (data[i+2] & 0xff);
+            dest[p++] = b64[group >>> 18];
+            dest[p++] = b64[(group >>> 12) & 0x3f];
+            dest[p++] = b64[(group >>> 6) & 0x3f];
+            dest[p++] = b64[group & 0x3f];
+        }
+        // Special handling for the last one or two bytes -- no padding
+        if (i < to) {
+            dest[p++] = b64[(data[i] >> 2) & 0x3f];
+            if (i + 1 < to) {
+                dest[p++] = b64[((data[i] & 3) << 4) + ((data[i+1] >> 4) & 0x0f)];
+                dest[p++] = b64[(data[i+1] & 0xf) << 2];
+            } else {
+                dest[p++] = b64[(data[i] & 3) << 4];
+            }
+        }
+        return p;
+    }
+
+    /**
+     * Encode a byte array as a Base64 string.
+     *
+     * @param data the data to encode
+     * @param lineSeparator the line separator to insert
+     * after every 64 characters
+     *
+     * @return the encoded string
+     */
+    public static String encode(byte[] data, String lineSeparator) {
+        byte[] separator = lineSeparator.getBytes(StandardCharsets.US_ASCII);
+        byte[] encoded = new byte[encodedLength(
+                data.length, separator.length)];
+        encode(data, 0, data.length, encoded, 0, separator);
+        return new String(encoded, StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * Decode Base64 text from part of a character array.
+     * The text is scanned twice: once to validate it and count the
+     * significant characters, and once to fill in a result array of
+     * exactly the decoded size.
+     *
+     * @param text the array holding the Base64 text
+     * @param offset the index of the first character to decode
+     * @param length the number of characters to decode
+     *
+     * @return the decoded data
+     *
+     * @throws IllegalArgumentException if the text contains any
+     * characters which are not part of the Base64 alphabet,
+     * whitespace, or padding
+     */
+    public static byte[] decode(char[] text, int offset, int length)
+            throws IllegalArgumentException {
+        final byte[] values = VALUES;
+        final int end = offset + length;
+        int significant = 0;
+        for (int i = offset; i < end; i++) {
+            char c = text[i];
+            int value = (c < values.length) ? values[c] : INVALID;
+            if (value >= 0)
+                significant++;
+            else if (value == INVALID)
+                throw new IllegalArgumentException(
+                        "Invalid Base64 character: " + c);
+        }
+        // Each character holds 6 bits; any bits left over
+        // after the last full byte are discarded.
+        byte[] result = new byte[(int) (significant * 6L / 8)];
+        int temp = 0;
+        int bits = 0;
+        int p = 0;
+        for (int i = offset; i < end; i++) {
+            int value = values[text[i]];
+            if (value == SKIP)
+                continue;
+            temp = (temp << 6) | value;
+            bits += 6;
+            // Store bytes once we have three
+            if (bits == 24) {
+                result[p++] = (byte) (temp >> 16);
+                result[p++] = (byte) (temp >> 8);
+                result[p++] = (byte) temp;
+                temp = 0;
+                bits = 0;
+            }
+        }
+        // Special handling for the last byte(s).  The encoder would
+        // have emitted characters to cover full bytes.
+        switch (bits) {
+        case 12:
+            result[p] = (byte) (temp >> 4);
+            break;
+        case 18:
+            result[p++] = (byte) (temp >> 10);
+            result[p] = (byte) (temp >> 2);
+            break;
+        }
+        return result;
+    }
+
+    /**
+     * Decode a Base64 string.
+     *
+     * @param text the Base64 text
+     *
+     * @return the decoded data, or {@code null} if {@code text}
+     * is {@code null}
+     *
+     * @throws IllegalArgumentException if the text contains any
+     * characters which are not part of the Base64 alphabet,
+     * whitespace, or padding
+     */
+    public static byte[] decode(String text) throws IllegalArgumentException {
+        if (text == null)
+            return null;
+        return decode(text.toCharArray(), 0, text.length());
+    }
+
+}
@@ -0,0 +1,465 @@
+/*
+ * Copyright © 2026 Trevin Beattie
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.xmission.trevin.android.todo.util;
+
+import com.xmission.trevin.android.crypto.*;
+
+import java.security.GeneralSecurityException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Set;
+import java.util.WeakHashMap;
+
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+
+/**
+ * An encryption key prepared for use by the cipher, along with a pair
+ * of ciphers for each thread which uses it.  A new context is created
+ * each time a {@link StringEncryption} key is generated and is not
+ * modified afterward (other than being wiped when the key is forgotten),
+ * so any number of threads may encrypt and decrypt with it at the same
+ * time without preparing the key again.
+ * <p>
+ * There are two implementations: one using the platform&rsquo;s own
+ * AES cipher, which on most devices runs on the processor&rsquo;s AES
+ * instructions, and one using our bundled engine.  The platform cipher
+ * is only used if {@link PlatformCipher} has verified that it produces
+ * exactly the same output as the bundled engine.
+ * </p>
+ *
+ * @author Trevin Beattie
+ */
+abstract class CipherContext {
+
+    /**
+     * Create a context for a key, using the platform cipher
+     * if it is enabled and has passed its self-test.
+     *
+     * @param key the raw encryption key
+     *
+     * @return the new context
+     */
+    static CipherContext create(byte[] key) {
+        String transformation = PlatformCipher.getTransformation();
+        if (transformation != null)
+            return new Platform(key, transformation);
+        return new Bundled(key);
+    }
+
+    /**
+     * Encrypt a range of bytes with this thread&rsquo;s cipher
+     * into a caller-provided buffer.
+     *
+     * @param in the array holding the bytes to encrypt
+     * @param inOff the offset of the first byte to encrypt
+     * @param len the number of bytes to encrypt
+     * @param out the array to write the cipher text to
+     * @param outOff the offset at which to start writing
+     *
+     * @return the number of bytes written to {@code out}
+     *
+     * @throws InvalidCipherTextException if the cipher fails
+     * @throws DataLengthException if the output buffer is too short
+     */
+    abstract int encrypt(byte[] in, int inOff, int len,
+                         byte[] out, int outOff)
+            throws InvalidCipherTextException, DataLengthException;
+
+    /**
+     * Decrypt a range of bytes with this thread&rsquo;s cipher
+     * into a caller-provided buffer.  The output buffer must have
+     * room for {@code len} bytes, although the plain text will
+     * be shorter.
+     *
+     * @param in the array holding the bytes to decrypt
+     * @param inOff the offset of the first byte to decrypt
+     * @param len the number of bytes to decrypt
+     * @param out the array to write the plain text to
+     * @param outOff the offset at which to start writing
+     *
+     * @return the number of bytes of plain text written to {@code out}
+     *
+     * @throws InvalidCipherTextException if the padding is invalid
+     * @throws DataLengthException if the input is not a whole
+     * number of blocks, or the output buffer is too short
+     */
+    abstract int decrypt(byte[] in, int inOff, int len,
+                         byte[] out, int outOff)
+            throws InvalidCipherTextException, DataLengthException;
+
+    /** Overwrite whatever copy of the key this context holds */
+    abstract void wipe();
+
+    /**
+     * Encrypt a byte array with this thread&rsquo;s cipher.
+     *
+     * @param orig the unencrypted bytes
+     *
+     * @return the encrypted bytes
+     *
+     * @throws InvalidCipherTextException should not happen
+     * when encrypting
+     */
+    byte[] encrypt(byte[] orig) throws InvalidCipherTextException {
+        byte[] code = new byte[StringEncryption.getEncryptedLength(orig.length)];
+        encrypt(orig, 0, orig.length, code, 0);
+        return code;
+    }
+
+    /**
+     * Decrypt a byte array with this thread&rsquo;s cipher.
+     *
+     * @param code the encrypted bytes
+     *
+     * @return the decrypted bytes
+     *
+     * @throws InvalidCipherTextException if the padding is invalid
+     * @throws DataLengthException if the input is not a whole
+     * number of blocks
+     */
+    byte[] decrypt(byte[] code)
+            throws InvalidCipherTextException, DataLengthException {
+        byte[] plain = new byte[code.length];
+        int len = decrypt(code, 0, code.length, plain, 0);
+        return (len == plain.length) ? plain : Arrays.copyOf(plain, len);
+    }
+
+    /**
+     * A context using our bundled AES engine, with the key expanded
+     * once and shared by all of the threads&rsquo; ciphers.
+     */
+    static class Bundled extends CipherContext {
+
+        /** The expanded key, shared by all of the ciphers */
+        private final AESKeySchedule schedule;
+
+        /** Each thread&rsquo;s encryption cipher */
+        private final ThreadLocal<PaddedBufferedBlockCipher> encryptors =
+                new ThreadLocal<PaddedBufferedBlockCipher>() {
+                    @Override
+                    protected PaddedBufferedBlockCipher initialValue() {
+                        return newCipher(true);
+                    }
+                };
+
+        /** Each thread&rsquo;s decryption cipher */
+        private final ThreadLocal<PaddedBufferedBlockCipher> decryptors =
+                new ThreadLocal<PaddedBufferedBlockCipher>() {
+                    @Override
+                    protected PaddedBufferedBlockCipher initialValue() {
+                        return newCipher(false);
+                    }
+                };
+
+        /**
+         * Expand a key.
+         *
+         * @param key the raw encryption key
+         */
+        Bundled(byte[] key) {
+            schedule = new AESKeySchedule(key);
+        }
+
+        /**
+         * Create a cipher using this context&rsquo;s key schedule.
+         *
+         * @param forEncryption {@code true} to create an encryption
+         * cipher, {@code false} for a decryption cipher
+         *
+         * @return the new cipher
+         */
+        private PaddedBufferedBlockCipher newCipher(boolean forEncryption) {
+            PaddedBufferedBlockCipher cipher =
+                    new PaddedBufferedBlockCipher(AESCipher.createEngine());
+            cipher.init(forEncryption, schedule);
+            return cipher;
+        }
+
+        /**
+         * Run a range of bytes through a cipher into a caller-provided
+         * buffer.  The cipher is always left ready for its next use.
+         */
+        private static int process(PaddedBufferedBlockCipher cipher,
+                                   byte[] in, int inOff, int len,
+                                   byte[] out, int outOff)
+                throws InvalidCipherTextException, DataLengthException {
+            try {
+                int outLen = cipher.processBytes(in, inOff, len, out, outOff);
+                return outLen + cipher.doFinal(out, outOff + outLen);
+            } catch (RuntimeException rx) {
+                cipher.reset();
+                throw rx;
+            }
+        }
+
+        @Override
+        int encrypt(byte[] in, int inOff, int len, byte[] out, int outOff)
+                throws InvalidCipherTextException, DataLengthException {
+            return process(encryptors.get(), in, inOff, len, out, outOff);
+        }
+
+        @Override
+        int decrypt(byte[] in, int inOff, int len, byte[] out, int outOff)
+                throws InvalidCipherTextException, DataLengthException {
+            return process(decryptors.get(), in, inOff, len, out, outOff);
+        }
+
+        @Override
+        void wipe() {
+            schedule.wipe();
+        }
+
+    }
+
+    /**
+     * A context using the platform&rsquo;s AES cipher.
+     * <p>
+     * The key is held in a {@link WipeableKey} which we own, and every
+     * cipher created from it is recorded so that {@link #wipe()} can
+     * reach the ciphers of all threads, not just the calling one.
+     * The platform ciphers make their own copies of the key which we
+     * can&rsquo;t overwrite directly, so {@link #wipe()} re-initializes
+     * each of them with an all-zero key to replace the real one, then
+     * zeroes our key.  A context which has been wiped refuses to
+     * encrypt or decrypt anything further.
+     * </p>
+     */
+    static class Platform extends CipherContext {
+
+        /** The key, which the ciphers copy when they are initialized */
+        private final WipeableKey secretKey;
+
+        /** The transformation which passed the self-test */
+        private final String transformation;
+
+        /**
+         * Every cipher created for this context.  This is a weak set so
+         * that the ciphers of threads which have since ended can still
+         * be garbage collected.  Synchronize on the set to use it.
+         */
+        private final Set<Cipher> allCiphers =
+                Collections.newSetFromMap(new WeakHashMap<Cipher,Boolean>());
+
+        /** Set once the key has been wiped */
+        private volatile boolean wiped = false;
+
+        /** Each thread&rsquo;s encryption cipher */
+        private final ThreadLocal<Cipher> encryptors =
+                new ThreadLocal<Cipher>() {
+                    @Override
+                    protected Cipher initialValue() {
+                        return newCipher(Cipher.ENCRYPT_MODE);
+                    }
+                };
+
+        /** Each thread&rsquo;s decryption cipher */
+        private final ThreadLocal<Cipher> decryptors =
+                new ThreadLocal<Cipher>() {
+                    @Override
+                    protected Cipher initialValue() {
+                        return newCipher(Cipher.DECRYPT_MODE);
+                    }
+                };
+
+        /**
+         * @param key the raw encryption key
+         * @param transformation the platform cipher transformation to use
+         */
+        Platform(byte[] key, String transformation) {
+            secretKey = new WipeableKey(key);
+            this.transformation = transformation;
+        }
+
+        /**
+         * Create a platform cipher using this context&rsquo;s key,
+         * and record it so it can be wiped later.
+         *
+         * @param mode {@link Cipher#ENCRYPT_MODE} or
+         * {@link Cipher#DECRYPT_MODE}
+         *
+         * @return the new cipher
+         *
+         * @throws IllegalStateException if the key has been wiped,
+         * or if the cipher cannot be created, which should not happen
+         * once it has passed the self-test.
+         */
+        private Cipher newCipher(int mode) {
+            synchronized (allCiphers) {
+                if (wiped)
+                    throw new IllegalStateException(
+                            "The encryption key has been wiped");
+                try {
+                    Cipher cipher = Cipher.getInstance(transformation);
+                    cipher.init(mode, secretKey);
+                    allCiphers.add(cipher);
+                    return cipher;
+                } catch (GeneralSecurityException gsx) {
+                    throw new IllegalStateException(
+                            "Platform cipher " + transformation
+                            + " is no longer available", gsx);
+                }
+            }
+        }
+
+        /**
+         * Run a range of bytes through one of the threads&rsquo;
+         * ciphers.  A completed {@link Cipher#doFinal} leaves the
+         * cipher ready for its next use; if it fails, the cipher is
+         * discarded and this thread will get a new one next time.
+         * <p>
+         * The cipher is locked while it is in use so that
+         * {@link #wipe()} can&rsquo;t re-initialize it mid-operation;
+         * only this thread otherwise uses it, so the lock is never
+         * contended.
+         * </p>
+         *
+         * @throws IllegalStateException if the key has been wiped
+         */
+        private int process(ThreadLocal<Cipher> ciphers,
+                            byte[] in, int inOff, int len,
+                            byte[] out, int outOff)
+                throws InvalidCipherTextException {
+            Cipher cipher = ciphers.get();
+            synchronized (cipher) {
+                if (wiped)
+                    throw new IllegalStateException(
+                            "The encryption key has been wiped");
+                try {
+                    return cipher.doFinal(in, inOff, len, out, outOff);
+                } catch (GeneralSecurityException gsx) {
+                    ciphers.remove();
+                    throw new InvalidCipherTextException(
+                            gsx.getMessage(), gsx);
+                }
+            }
+        }
+
+        @Override
+        int encrypt(byte[] in, int inOff, int len, byte[] out, int outOff)
+                throws InvalidCipherTextException {
+            return process(encryptors, in, inOff, len, out, outOff);
+        }
+
+        @Override
+        int decrypt(byte[] in, int inOff, int len, byte[] out, int outOff)
+                throws InvalidCipherTextException {
+            return process(decryptors, in, inOff, len, out, outOff);
+        }
+
+        @Override
+        void wipe() {
+            synchronized (allCiphers) {
+                wiped = true;
+                WipeableKey blank =
+                        new WipeableKey(new byte[secretKey.length()]);
+                for (Cipher cipher : allCiphers) {
+                    synchronized (cipher) {
+                        try {
+                            cipher.init(Cipher.ENCRYPT_MODE, blank);
+                        } catch (GeneralSecurityException gsx) {
+                            // The cipher is unusable now anyway
+                        }
+                    }
+                }
+                allCiphers.clear();
+                secretKey.destroy();
+            }
+            encryptors.remove();
+            decryptors.remove();
+        }
+
+        /** @return whether this context&rsquo;s key has been wiped */
+        boolean isWiped() {
+            return wiped;
+        }
+
+        /** @return the number of ciphers which would be wiped */
+        int getCipherCount() {
+            synchronized (allCiphers) {
+                return allCiphers.size();
+            }
+        }
+
+    }
+
+    /**
+     * A raw AES key whose bytes we own and can overwrite.
+     * Unlike {@link javax.crypto.spec.SecretKeySpec}, which keeps
+     * a private copy of the key that can&rsquo;t be cleared,
+     * {@link #destroy()} zeroes this key in place.
+     */
+    static class WipeableKey implements SecretKey {
+
+        private static final long serialVersionUID = 1L;
+
+        /** The raw key */
+        private final byte[] key;
+
+        /** Set once the key has been zeroed */
+        private volatile boolean destroyed = false;
+
+        /**
+         * @param key the raw key.  This is copied, so the caller
+         * remains responsible for clearing its own array.
+         */
+        WipeableKey(byte[] key) {
+            this.key = key.clone();
+        }
+
+        /** @return the length of the key in bytes */
+        int length() {
+            return key.length;
+        }
+
+        @Override
+        public String getAlgorithm() {
+            return "AES";
+        }
+
+        @Override
+        public String getFormat() {
+            return "RAW";
+        }
+
+        /**
+         * @return a copy of the raw key
+         *
+         * @throws IllegalStateException if the key has been destroyed
+         */
+        @Override
+        public byte[] getEncoded() {
+            if (destroyed)
+                throw new IllegalStateException("The key has been destroyed");
+            return key.clone();
+        }
+
+        /** Overwrite the key with zeroes */
+        @Override
+        public void destroy() {
+            destroyed = true;
+            Arrays.fill(key, (byte) 0);
+        }
+
+        @Override
+        public boolean isDestroyed() {
+            return destroyed;
+        }
+
+    }
+
+}
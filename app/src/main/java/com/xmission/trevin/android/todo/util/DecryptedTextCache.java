@@ -0,0 +1,157 @@
+/*
+ * Copyright © 2026 Trevin Beattie
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.xmission.trevin.android.todo.util;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A bounded, least-recently-used cache of decrypted text belonging to
+ * To Do items.  Each entry is keyed by the item ID and which field
+ * (description or note) it came from, and remembers the item&rsquo;s
+ * modification time; a lookup with a different modification time is
+ * treated as a miss, so edits to an item are never masked by stale text.
+ * <p>
+ * This is owned by a {@link StringEncryption} object and must be
+ * {@link #clear() cleared} whenever that object forgets its key.
+ * All methods are synchronized since the cache is used from the UI
+ * thread as well as search and worker threads.
+ * </p><p>
+ * Since a decryption may still be running on another thread when the
+ * cache is cleared, callers should read the {@link #getGeneration()
+ * generation} before decrypting and pass it to {@link #put}; text
+ * decrypted before the most recent {@link #clear()} is then dropped.
+ * </p>
+ *
+ * @author Trevin Beattie
+ */
+class DecryptedTextCache {
+
+    /** Field index for an item&rsquo;s description */
+    static final int DESCRIPTION = 0;
+
+    /** Field index for an item&rsquo;s note */
+    static final int NOTE = 1;
+
+    /** The plain text of one field along with the item&rsquo;s mod time */
+    private static class Entry {
+        final long modTime;
+        final String text;
+        Entry(long modTime, String text) {
+            this.modTime = modTime;
+            this.text = text;
+        }
+    }
+
+    /** The maximum number of entries to keep */
+    private final int maxEntries;
+
+    /** The cache entries, in order from least to most recently used */
+    private final LinkedHashMap<Long,Entry> entries;
+
+    /** Incremented every time the cache is cleared */
+    private long generation = 0;
+
+    /**
+     * Create a new cache.
+     *
+     * @param maxEntries the maximum number of decrypted fields to hold
+     */
+    DecryptedTextCache(final int maxEntries) {
+        this.maxEntries = maxEntries;
+        entries = new LinkedHashMap<Long,Entry>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long,Entry> eldest) {
+                return size() > DecryptedTextCache.this.maxEntries;
+            }
+        };
+    }
+
+    /**
+     * Combine an item ID and field into a single cache key.
+     *
+     * @param itemId the ID of the item
+     * @param field {@link #DESCRIPTION} or {@link #NOTE}
+     *
+     * @return the cache key
+     */
+    private static Long keyFor(long itemId, int field) {
+        return (itemId << 1) | field;
+    }
+
+    /**
+     * Look up decrypted text.
+     *
+     * @param itemId the ID of the item
+     * @param modTime the item&rsquo;s modification time
+     * (in milliseconds since the epoch)
+     * @param field {@link #DESCRIPTION} or {@link #NOTE}
+     *
+     * @return the cached text, or {@code null} if it is not in the cache
+     * or was cached for a different modification time
+     */
+    synchronized String get(long itemId, long modTime, int field) {
+        Entry entry = entries.get(keyFor(itemId, field));
+        if ((entry == null) || (entry.modTime != modTime))
+            return null;
+        return entry.text;
+    }
+
+    /**
+     * @return the current generation of the cache, which changes
+     * whenever the cache is {@link #clear() cleared}
+     */
+    synchronized long getGeneration() {
+        return generation;
+    }
+
+    /**
+     * Add decrypted text to the cache, evicting the least recently
+     * used entry if the cache is full.  If the cache has been cleared
+     * since {@code expectedGeneration} was read, the text is discarded.
+     *
+     * @param expectedGeneration the {@link #getGeneration() generation}
+     * read before the text was decrypted
+     * @param itemId the ID of the item
+     * @param modTime the item&rsquo;s modification time
+     * (in milliseconds since the epoch)
+     * @param field {@link #DESCRIPTION} or {@link #NOTE}
+     * @param text the decrypted text
+     */
+    synchronized void put(long expectedGeneration,
+                          long itemId, long modTime, int field, String text) {
+        if (expectedGeneration != generation)
+            return;
+        entries.put(keyFor(itemId, field), new Entry(modTime, text));
+    }
+
+    /** @return the number of entries in the cache */
+    synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * Discard all cached text.  Since {@link String}s are immutable
+     * the text itself can&rsquo;t be overwritten, but this drops
+     * our references to it.
+     */
+    synchronized void clear() {
+        entries.clear();
+        generation++;
+    }
+
+}
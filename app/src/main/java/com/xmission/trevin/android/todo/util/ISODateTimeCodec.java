@@ -0,0 +1,464 @@
+/*
+ * Copyright © 2026 Trevin Beattie
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.xmission.trevin.android.todo.util;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+
+/**
+ * Formats and parses the ISO-8601 layouts used in the XML export file
+ * without going through {@link DateTimeFormatter}:
+ * <ul>
+ * <li>timestamps as <tt>yyyy-MM-dd'T'HH:mm:ss[.SSS]'Z'</tt>,
+ * as written by {@link DateTimeFormatter#ISO_INSTANT} for whole
+ * milliseconds;</li>
+ * <li>dates as <tt>yyyy-MM-dd</tt>, as written by
+ * {@link DateTimeFormatter#ISO_LOCAL_DATE};</li>
+ * <li>times as <tt>HH:mm:ss</tt>, as written by
+ * {@link DateTimeFormatter#ISO_LOCAL_TIME} for whole seconds.</li>
+ * </ul>
+ * Conversions go directly between the text and epoch milliseconds
+ * or epoch days using integer arithmetic.  Values outside of years
+ * 0000&ndash;9999 or with finer precision, and any text which does not
+ * match these layouts exactly, are handed to the standard
+ * {@code java.time} formatter or parser so the results are always the
+ * same as theirs.
+ *
+ * @author Trevin Beattie
+ */
+public final class ISODateTimeCodec {
+
+    /** The longest timestamp written by the fixed-layout formatter */
+    public static final int TIMESTAMP_MAX_LENGTH = 24;
+
+    /** The length of a fixed-layout date */
+    public static final int DATE_LENGTH = 10;
+
+    /** The length of a fixed-layout time */
+    public static final int TIME_LENGTH = 8;
+
+    private static final long MILLIS_PER_DAY = 86400000L;
+
+    /** The number of days from 0000-03-01 to 1970-01-01 */
+    private static final long DAYS_0000_TO_1970 = 719468L;
+
+    /** The number of days in a 400-year cycle */
+    private static final long DAYS_PER_CYCLE = 146097L;
+
+    /** Epoch milliseconds of 0000-01-01T00:00:00Z */
+    static final long MIN_FIXED_MILLIS = -62167219200000L;
+
+    /** Epoch milliseconds of 9999-12-31T23:59:59.999Z */
+    static final long MAX_FIXED_MILLIS = 253402300799999L;
+
+    /** Returned by the fixed-layout parsers when the text doesn&rsquo;t fit */
+    private static final long NOT_FIXED = Long.MIN_VALUE;
+
+    /** This class only has static methods */
+    private ISODateTimeCodec() {}
+
+    /**
+     * @param year the proleptic year
+     *
+     * @return whether the year is a leap year
+     */
+    private static boolean isLeapYear(long year) {
+        return ((year & 3) == 0) && ((year % 100 != 0) || (year % 400 == 0));
+    }
+
+    /**
+     * @param year the proleptic year
+     * @param month the month, 1&ndash;12
+     *
+     * @return the number of days in the month
+     */
+    private static int daysInMonth(long year, int month) {
+        if (month == 2)
+            return isLeapYear(year) ? 29 : 28;
+        return 30 + ((month + (month >> 3)) & 1);
+    }
+
+    /**
+     * Convert a calendar date to a day count.
+     *
+     * @param year the proleptic year
+     * @param month the month, 1&ndash;12
+     * @param day the day of the month
+     *
+     * @return the number of days since 1970-01-01
+     */
+    public static long toEpochDay(long year, int month, int day) {
+        // Count years from March so the leap day comes last
+        if (month <= 2)
+            year--;
+        long era = Math.floorDiv(year, 400);
+        long yearOfEra = year - era * 400;
+        long dayOfYear = (153 * (month + ((month > 2) ? -3 : 9)) + 2) / 5
+                + day - 1;
+        long dayOfEra = yearOfEra * 365 + yearOfEra / 4
+                - yearOfEra / 100 + dayOfYear;
+        return era * DAYS_PER_CYCLE + dayOfEra - DAYS_0000_TO_1970;
+    }
+
+    /**
+     * Write a date as <tt>yyyy-MM-dd</tt>.
+     *
+     * @param year the year, 0&ndash;9999
+     * @param month the month, 1&ndash;12
+     * @param day the day of the month
+     * @param dest the buffer to which to write the ASCII characters
+     * @param pos the position in {@code dest} at which to start
+     *
+     * @return the position in {@code dest} after the date
+     */
+    public static int formatDate(int year, int month, int day,
+                                 byte[] dest, int pos) {
+        dest[pos++] = (byte) ('0' + year / 1000);
+        dest[pos++] = (byte) ('0' + year / 100 % 10);
+        dest[pos++] = (byte) ('0' + year / 10 % 10);
+        dest[pos++] = (byte) ('0' + year % 10);
+        dest[pos++] = '-';
+        pos = twoDigits(month, dest, pos);
+        dest[pos++] = '-';
+        return twoDigits(day, dest, pos);
+    }
+
+    /**
+     * Write a date given as a day count as <tt>yyyy-MM-dd</tt>.
+     *
+     * @param epochDay the number of days since 1970-01-01; this must
+     * fall in the years 0000&ndash;9999
+     * @param dest the buffer to which to write the ASCII characters
+     * @param pos the position in {@code dest} at which to start
+     *
+     * @return the position in {@code dest} after the date
+     */
+    public static int formatDate(long epochDay, byte[] dest, int pos) {
+        long z = epochDay + DAYS_0000_TO_1970;
+        long era = Math.floorDiv(z, DAYS_PER_CYCLE);
+        long dayOfEra = z - era * DAYS_PER_CYCLE;
+        long yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36524
+                - dayOfEra / 146096) / 365;
+        long dayOfYear = dayOfEra
+                - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+        int mp = (int) ((5 * dayOfYear + 2) / 153);
+        int day = (int) (dayOfYear - (153 * mp + 2) / 5 + 1);
+        int month = (mp < 10) ? mp + 3 : mp - 9;
+        long year = yearOfEra + era * 400 + ((month <= 2) ? 1 : 0);
+        return formatDate((int) year, month, day, dest, pos);
+    }
+
+    /**
+     * Write a time of day as <tt>HH:mm:ss</tt>.
+     *
+     * @param secondOfDay the number of seconds after midnight
+     * @param dest the buffer to which to write the ASCII characters
+     * @param pos the position in {@code dest} at which to start
+     *
+     * @return the position in {@code dest} after the time
+     */
+    public static int formatTime(int secondOfDay, byte[] dest, int pos) {
+        pos = twoDigits(secondOfDay / 3600, dest, pos);
+        dest[pos++] = ':';
+        pos = twoDigits(secondOfDay / 60 % 60, dest, pos);
+        dest[pos++] = ':';
+        return twoDigits(secondOfDay % 60, dest, pos);
+    }
+
+    /**
+     * Write a timestamp as <tt>yyyy-MM-dd'T'HH:mm:ss[.SSS]'Z'</tt>.
+     * The milliseconds are omitted if they are zero.
+     *
+     * @param epochMilli the number of milliseconds since
+     * 1970-01-01T00:00:00Z; this must fall in the years 0000&ndash;9999
+     * @param dest the buffer to which to write the ASCII characters
+     * @param pos the position in {@code dest} at which to start
+     *
+     * @return the position in {@code dest} after the timestamp
+     */
+    public static int formatTimestamp(long epochMilli, byte[] dest, int pos) {
+        long epochDay = Math.floorDiv(epochMilli, MILLIS_PER_DAY);
+        int milliOfDay = (int) (epochMilli - epochDay * MILLIS_PER_DAY);
+        pos = formatDate(epochDay, dest, pos);
+        dest[pos++] = 'T';
+        pos = formatTime(milliOfDay / 1000, dest, pos);
+        int millis = milliOfDay % 1000;
+        if (millis != 0) {
+            dest[pos++] = '.';
+            dest[pos++] = (byte) ('0' + millis / 100);
+            pos = twoDigits(millis % 100, dest, pos);
+        }
+        dest[pos++] = 'Z';
+        return pos;
+    }
+
+    /** Write a number from 0 to 99 as two digits */
+    private static int twoDigits(int n, byte[] dest, int pos) {
+        dest[pos++] = (byte) ('0' + n / 10);
+        dest[pos++] = (byte) ('0' + n % 10);
+        return pos;
+    }
+
+    /**
+     * @param timestamp the timestamp to check
+     *
+     * @return whether the timestamp can be written by
+     * {@link #formatTimestamp(long, byte[], int)}
+     */
+    public static boolean isFixedLayout(Instant timestamp) {
+        if (timestamp.getNano() % 1000000 != 0)
+            return false;
+        long seconds = timestamp.getEpochSecond();
+        return (seconds >= MIN_FIXED_MILLIS / 1000)
+                && (seconds <= MAX_FIXED_MILLIS / 1000);
+    }
+
+    /**
+     * @param date the date to check
+     *
+     * @return whether the date can be written by
+     * {@link #formatDate(int, int, int, byte[], int)}
+     */
+    public static boolean isFixedLayout(LocalDate date) {
+        return (date.getYear() >= 0) && (date.getYear() <= 9999);
+    }
+
+    /**
+     * @param time the time to check
+     *
+     * @return whether the time can be written by
+     * {@link #formatTime(int, byte[], int)}
+     */
+    public static boolean isFixedLayout(LocalTime time) {
+        return time.getNano() == 0;
+    }
+
+    /**
+     * Format a timestamp the way {@link DateTimeFormatter#ISO_INSTANT}
+     * does.
+     *
+     * @param timestamp the timestamp to format
+     *
+     * @return the formatted timestamp
+     */
+    public static String formatTimestamp(Instant timestamp) {
+        if (!isFixedLayout(timestamp))
+            return DateTimeFormatter.ISO_INSTANT.format(timestamp);
+        byte[] text = new byte[TIMESTAMP_MAX_LENGTH];
+        int len = formatTimestamp(timestamp.toEpochMilli(), text, 0);
+        return new String(text, 0, len, StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * Format a date the way {@link DateTimeFormatter#ISO_LOCAL_DATE}
+     * does.
+     *
+     * @param date the date to format
+     *
+     * @return the formatted date
+     */
+    public static String formatDate(LocalDate date) {
+        if (!isFixedLayout(date))
+            return date.format(DateTimeFormatter.ISO_LOCAL_DATE);
+        byte[] text = new byte[DATE_LENGTH];
+        formatDate(date.getYear(), date.getMonthValue(),
+                date.getDayOfMonth(), text, 0);
+        return new String(text, StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * Format a time the way {@link DateTimeFormatter#ISO_LOCAL_TIME}
+     * does.
+     *
+     * @param time the time to format
+     *
+     * @return the formatted time
+     */
+    public static String formatTime(LocalTime time) {
+        if (!isFixedLayout(time))
+            return time.format(DateTimeFormatter.ISO_LOCAL_TIME);
+        byte[] text = new byte[TIME_LENGTH];
+        formatTime(time.toSecondOfDay(), text, 0);
+        return new String(text, StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * Read a run of decimal digits.
+     *
+     * @param text the text to read
+     * @param start the index of the first digit
+     * @param count the number of digits
+     *
+     * @return the value of the digits, or -1 if any
+     * of the characters is not a digit
+     */
+    private static int digits(String text, int start, int count) {
+        int value = 0;
+        for (int i = start; i < start + count; i++) {
+            int d = text.charAt(i) - '0';
+            if ((d < 0) || (d > 9))
+                return -1;
+            value = value * 10 + d;
+        }
+        return value;
+    }
+
+    /**
+     * Parse a date in the fixed layout <tt>yyyy-MM-dd</tt>
+     * at the start of a string.
+     *
+     * @param text the text to parse
+     *
+     * @return the number of days since 1970-01-01, or
+     * {@link #NOT_FIXED} if the text does not start with
+     * a valid date in this layout
+     */
+    private static long parseFixedDate(String text) {
+        if ((text.length() < DATE_LENGTH)
+                || (text.charAt(4) != '-') || (text.charAt(7) != '-'))
+            return NOT_FIXED;
+        int year = digits(text, 0, 4);
+        int month = digits(text, 5, 2);
+        int day = digits(text, 8, 2);
+        if ((year < 0) || (month < 1) || (month > 12) || (day < 1)
+                || (day > daysInMonth(year, month)))
+            return NOT_FIXED;
+        return toEpochDay(year, month, day);
+    }
+
+    /**
+     * Parse a time in the fixed layout <tt>HH:mm[:ss]</tt>
+     * from part of a string.
+     *
+     * @param text the text to parse
+     * @param start the index of the hour
+     * @param withSeconds whether the seconds are present
+     *
+     * @return the number of seconds after midnight, or -1 if the
+     * text does not contain a valid time in this layout
+     */
+    private static int parseFixedTime(
+            String text, int start, boolean withSeconds) {
+        if (text.charAt(start + 2) != ':')
+            return -1;
+        int hour = digits(text, start, 2);
+        int minute = digits(text, start + 3, 2);
+        int second = 0;
+        if (withSeconds) {
+            if (text.charAt(start + 5) != ':')
+                return -1;
+            second = digits(text, start + 6, 2);
+        }
+        if ((hour < 0) || (hour > 23) || (minute < 0) || (minute > 59)
+                || (second < 0) || (second > 59))
+            return -1;
+        return (hour * 60 + minute) * 60 + second;
+    }
+
+    /**
+     * Parse a timestamp in the fixed layout
+     * <tt>yyyy-MM-dd'T'HH:mm:ss[.SSS]'Z'</tt>.
+     *
+     * @param text the text to parse
+     *
+     * @return the number of milliseconds since 1970-01-01T00:00:00Z,
+     * or {@link #NOT_FIXED} if the text is not a valid timestamp
+     * in this layout
+     */
+    private static long parseFixedTimestamp(String text) {
+        int len = text.length();
+        if (((len != 20) && (len != 24))
+                || (text.charAt(10) != 'T') || (text.charAt(len - 1) != 'Z'))
+            return NOT_FIXED;
+        long epochDay = parseFixedDate(text);
+        if (epochDay == NOT_FIXED)
+            return NOT_FIXED;
+        int secondOfDay = parseFixedTime(text, 11, true);
+        if (secondOfDay < 0)
+            return NOT_FIXED;
+        int millis = 0;
+        if (len == 24) {
+            if (text.charAt(19) != '.')
+                return NOT_FIXED;
+            millis = digits(text, 20, 3);
+            if (millis < 0)
+                return NOT_FIXED;
+        }
+        return epochDay * MILLIS_PER_DAY + secondOfDay * 1000L + millis;
+    }
+
+    /**
+     * Parse a timestamp written by {@link DateTimeFormatter#ISO_INSTANT}.
+     *
+     * @param text the text to parse
+     *
+     * @return the timestamp
+     *
+     * @throws DateTimeParseException if the text is not a valid timestamp
+     */
+    public static Instant parseTimestamp(String text)
+            throws DateTimeParseException {
+        long millis = parseFixedTimestamp(text);
+        if (millis == NOT_FIXED)
+            return Instant.parse(text);
+        return Instant.ofEpochMilli(millis);
+    }
+
+    /**
+     * Parse a date written by {@link DateTimeFormatter#ISO_LOCAL_DATE}.
+     *
+     * @param text the text to parse
+     *
+     * @return the date
+     *
+     * @throws DateTimeParseException if the text is not a valid date
+     */
+    public static LocalDate parseDate(String text)
+            throws DateTimeParseException {
+        long epochDay = (text.length() == DATE_LENGTH)
+                ? parseFixedDate(text) : NOT_FIXED;
+        if (epochDay == NOT_FIXED)
+            return LocalDate.parse(text);
+        return LocalDate.ofEpochDay(epochDay);
+    }
+
+    /**
+     * Parse a time written by {@link DateTimeFormatter#ISO_LOCAL_TIME}.
+     *
+     * @param text the text to parse
+     *
+     * @return the time
+     *
+     * @throws DateTimeParseException if the text is not a valid time
+     */
+    public static LocalTime parseTime(String text)
+            throws DateTimeParseException {
+        int secondOfDay = -1;
+        if (text.length() == TIME_LENGTH)
+            secondOfDay = parseFixedTime(text, 0, true);
+        else if (text.length() == 5)
+            secondOfDay = parseFixedTime(text, 0, false);
+        if (secondOfDay < 0)
+            return LocalTime.parse(text);
+        return LocalTime.ofSecondOfDay(secondOfDay);
+    }
+
+}
@@ -0,0 +1,251 @@
+/*
+ * Copyright © 2026 Trevin Beattie
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.xmission.trevin.android.todo.util;
+
+import java.util.Arrays;
+
+/**
+ * A map from primitive {@code long} keys to primitive {@code int} values
+ * using open addressing with linear probing.  Unlike a
+ * {@link java.util.HashMap HashMap&lt;Long,Integer&gt;} this does not
+ * box either the keys or the values, so lookups never allocate memory;
+ * and once the map has grown to hold a given number of entries it may be
+ * {@link #clear() cleared} and refilled without allocating any more.
+ * <p>
+ * Entries cannot be removed individually; this is meant for indices
+ * which are built all at once and then queried many times.
+ * This class is not thread-safe.
+ * </p>
+ *
+ * @author Trevin Beattie
+ */
+public class LongIntHashMap {
+
+    /**
+     * The key value used to mark empty slots in the table.
+     * If this key is actually stored in the map, its value is kept
+     * separately in {@link #freeKeyValue}.
+     */
+    private static final long FREE_KEY = 0L;
+
+    /** The maximum fraction of the table which may be occupied */
+    private static final float LOAD_FACTOR = 0.5f;
+
+    /** The minimum table size */
+    private static final int MIN_CAPACITY = 8;
+
+    /** The keys in the table */
+    private long[] keys;
+
+    /** The values corresponding to each key */
+    private int[] values;
+
+    /** Bit mask for converting a hash to a table index */
+    private int mask;
+
+    /** The number of entries at which the table must be expanded */
+    private int threshold;
+
+    /** The number of entries in the table (not including the free key) */
+    private int size = 0;
+
+    /** Whether the map contains an entry for {@link #FREE_KEY} */
+    private boolean hasFreeKey = false;
+
+    /** The value mapped to {@link #FREE_KEY}, if any */
+    private int freeKeyValue;
+
+    /** Create a map with a default initial capacity */
+    public LongIntHashMap() {
+        this(MIN_CAPACITY);
+    }
+
+    /**
+     * Create a map which can hold at least the given number of entries
+     * before it needs to expand.
+     *
+     * @param expectedSize the number of entries expected
+     */
+    public LongIntHashMap(int expectedSize) {
+        allocate(tableSizeFor(expectedSize));
+    }
+
+    /**
+     * Compute the table size needed to hold a given number of entries.
+     *
+     * @param expectedSize the number of entries to hold
+     *
+     * @return a power of two large enough to hold
+     * {@code expectedSize} entries within the load factor
+     */
+    private static int tableSizeFor(int expectedSize) {
+        long needed = (long) Math.ceil(Math.max(expectedSize, 1) / LOAD_FACTOR);
+        if (needed > (1 << 30))
+            throw new IllegalArgumentException(
+                    "Too many entries: " + expectedSize);
+        int capacity = MIN_CAPACITY;
+        while (capacity < needed)
+            capacity <<= 1;
+        return capacity;
+    }
+
+    /**
+     * Allocate new (empty) key and value arrays.
+     *
+     * @param capacity the table size, which must be a power of two
+     */
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        values = new int[capacity];
+        mask = capacity - 1;
+        threshold = (int) (capacity * LOAD_FACTOR);
+    }
+
+    /**
+     * Scramble the bits of a key so that sequential IDs
+     * are spread throughout the table.
+     *
+     * @param key the key to hash
+     *
+     * @return the starting index in the table for the key
+     */
+    private int indexFor(long key) {
+        long h = key * 0x9e3779b97f4a7c15L;
+        return (int) (h ^ (h >>> 32)) & mask;
+    }
+
+    /** @return the number of entries in this map */
+    public int size() {
+        return hasFreeKey ? size + 1 : size;
+    }
+
+    /** @return {@code true} if this map contains no entries */
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    /**
+     * Remove all entries from the map.  The table is not shrunk,
+     * so refilling it with no more entries than it held before
+     * will not allocate memory.
+     */
+    public void clear() {
+        Arrays.fill(keys, FREE_KEY);
+        size = 0;
+        hasFreeKey = false;
+    }
+
+    /**
+     * Make sure the map can hold a given number of entries
+     * without needing to expand the table again.
+     *
+     * @param expectedSize the number of entries expected
+     */
+    public void ensureCapacity(int expectedSize) {
+        if (expectedSize > threshold)
+            rehash(tableSizeFor(expectedSize));
+    }
+
+    /**
+     * Look up the value for a key.
+     *
+     * @param key the key to look for
+     * @param defaultValue the value to return if the key is not in the map
+     *
+     * @return the value mapped to {@code key},
+     * or {@code defaultValue} if there is no mapping
+     */
+    public int get(long key, int defaultValue) {
+        if (key == FREE_KEY)
+            return hasFreeKey ? freeKeyValue : defaultValue;
+        int i = indexFor(key);
+        long k;
+        while ((k = keys[i]) != FREE_KEY) {
+            if (k == key)
+                return values[i];
+            i = (i + 1) & mask;
+        }
+        return defaultValue;
+    }
+
+    /**
+     * @param key the key to look for
+     *
+     * @return {@code true} if the map contains the given key
+     */
+    public boolean containsKey(long key) {
+        if (key == FREE_KEY)
+            return hasFreeKey;
+        int i = indexFor(key);
+        long k;
+        while ((k = keys[i]) != FREE_KEY) {
+            if (k == key)
+                return true;
+            i = (i + 1) & mask;
+        }
+        return false;
+    }
+
+    /**
+     * Map a key to a value, replacing any previous value for that key.
+     *
+     * @param key the key to set
+     * @param value the value to map to the key
+     */
+    public void put(long key, int value) {
+        if (key == FREE_KEY) {
+            hasFreeKey = true;
+            freeKeyValue = value;
+            return;
+        }
+        int i = indexFor(key);
+        long k;
+        while ((k = keys[i]) != FREE_KEY) {
+            if (k == key) {
+                values[i] = value;
+                return;
+            }
+            i = (i + 1) & mask;
+        }
+        keys[i] = key;
+        values[i] = value;
+        if (++size > threshold)
+            rehash(keys.length << 1);
+    }
+
+    /**
+     * Move all entries into a table of a different size.
+     *
+     * @param newCapacity the new table size, which must be a power of two
+     */
+    private void rehash(int newCapacity) {
+        long[] oldKeys = keys;
+        int[] oldValues = values;
+        allocate(newCapacity);
+        for (int j = 0; j < oldKeys.length; j++) {
+            long key = oldKeys[j];
+            if (key == FREE_KEY)
+                continue;
+            int i = indexFor(key);
+            while (keys[i] != FREE_KEY)
+                i = (i + 1) & mask;
+            keys[i] = key;
+            values[i] = oldValues[j];
+        }
+    }
+
+}
@@ -0,0 +1,230 @@
+/*
+ * Copyright © 2026 Trevin Beattie
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.xmission.trevin.android.todo.util;
+
+import android.util.Log;
+
+import com.xmission.trevin.android.crypto.*;
+
+import java.security.GeneralSecurityException;
+import java.util.Arrays;
+import java.util.Locale;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * Decides whether the platform&rsquo;s own AES cipher can be used in
+ * place of our bundled engine.  The app bundles its own AES so that
+ * encrypted data is the same on every device, so the platform cipher
+ * is only trusted after a known-answer self-test shows that it produces
+ * byte-for-byte the same output as the bundled engine, with the same
+ * ECB mode and PKCS #7 padding.  If it fails the test (or isn&rsquo;t
+ * available at all) the bundled engine is used instead.
+ *
+ * @author Trevin Beattie
+ */
+final class PlatformCipher {
+
+    private static final String TAG = "PlatformCipher";
+
+    /**
+     * The transformations to try, in order of preference.  For AES&rsquo;s
+     * 16-byte blocks, Java&rsquo;s &ldquo;PKCS5Padding&rdquo; is the same
+     * as PKCS #7 padding; it&rsquo;s the name every JCE provider accepts.
+     */
+    static final String[] TRANSFORMATIONS = {
+            "AES/ECB/PKCS7Padding", "AES/ECB/PKCS5Padding"
+    };
+
+    /** Plain text of the FIPS-197 appendix C examples */
+    private static final byte[] FIPS_PLAINTEXT = {
+            (byte) 0x00, (byte) 0x11, (byte) 0x22, (byte) 0x33,
+            (byte) 0x44, (byte) 0x55, (byte) 0x66, (byte) 0x77,
+            (byte) 0x88, (byte) 0x99, (byte) 0xaa, (byte) 0xbb,
+            (byte) 0xcc, (byte) 0xdd, (byte) 0xee, (byte) 0xff
+    };
+
+    /** The first block of FIPS-197 appendix C.3 cipher text (AES-256) */
+    private static final byte[] FIPS_256_CIPHERTEXT = {
+            (byte) 0x8e, (byte) 0xa2, (byte) 0xb7, (byte) 0xca,
+            (byte) 0x51, (byte) 0x67, (byte) 0x45, (byte) 0xbf,
+            (byte) 0xea, (byte) 0xfc, (byte) 0x49, (byte) 0x90,
+            (byte) 0x4b, (byte) 0x49, (byte) 0x60, (byte) 0x89
+    };
+
+    /** Key sizes (in bytes) to test; AES allows 128, 192, and 256 bits */
+    private static final int[] TEST_KEY_SIZES = { 16, 24, 32 };
+
+    /** Message lengths to test, covering every padding boundary case */
+    private static final int[] TEST_LENGTHS = { 0, 1, 15, 16, 17, 31, 32, 100 };
+
+    /** Whether the platform cipher may be used at all */
+    private static volatile boolean enabled = true;
+
+    /** Whether the self-test has been run */
+    private static boolean tested = false;
+
+    /**
+     * The transformation which passed the self-test,
+     * or {@code null} if none did.
+     */
+    private static String verifiedTransformation = null;
+
+    /** This class is not meant to be instantiated */
+    private PlatformCipher() {}
+
+    /**
+     * Allow or disallow using the platform cipher for new keys.
+     * This does not affect keys which have already been prepared.
+     *
+     * @param enable whether to use the platform cipher when it is
+     * available
+     */
+    static void setEnabled(boolean enable) {
+        enabled = enable;
+    }
+
+    /** @return whether the platform cipher may be used */
+    static boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Get the platform cipher transformation to use, running
+     * the self-test first if it has not been run yet.
+     *
+     * @return the transformation name, or {@code null} if the
+     * platform cipher is disabled or did not pass the self-test.
+     */
+    static String getTransformation() {
+        if (!enabled)
+            return null;
+        return selfTest();
+    }
+
+    /**
+     * Run the self-test if it has not been run yet.
+     *
+     * @return the transformation which passed the self-test,
+     * or {@code null} if none did.
+     */
+    static synchronized String selfTest() {
+        if (!tested) {
+            long startTime = System.nanoTime();
+            for (String transformation : TRANSFORMATIONS) {
+                if (verify(transformation)) {
+                    verifiedTransformation = transformation;
+                    break;
+                }
+            }
+            tested = true;
+            Log.i(TAG, String.format(Locale.US,
+                    "Platform cipher self-test %s in %.3fs",
+                    (verifiedTransformation == null) ? "failed; using"
+                            + " the bundled AES engine"
+                            : ("passed for " + verifiedTransformation),
+                    (System.nanoTime() - startTime) / 1.0e+9));
+        }
+        return verifiedTransformation;
+    }
+
+    /**
+     * Check that a platform transformation gives the FIPS-197 known
+     * answer, and that it encrypts and decrypts messages of various
+     * lengths exactly the same as the bundled engine.
+     *
+     * @param transformation the name of the transformation to check
+     *
+     * @return {@code true} if the transformation passed every test
+     */
+    static boolean verify(String transformation) {
+        try {
+            Cipher encryptor = Cipher.getInstance(transformation);
+            Cipher decryptor = Cipher.getInstance(transformation);
+
+            // Known answer
+            byte[] key = new byte[32];
+            for (int i = 0; i < key.length; i++)
+                key[i] = (byte) i;
+            encryptor.init(Cipher.ENCRYPT_MODE, new SecretKeySpec(key, "AES"));
+            byte[] code = encryptor.doFinal(FIPS_PLAINTEXT);
+            if ((code.length != 2 * FIPS_256_CIPHERTEXT.length) ||
+                    !Arrays.equals(FIPS_256_CIPHERTEXT, Arrays.copyOf(
+                            code, FIPS_256_CIPHERTEXT.length))) {
+                Log.w(TAG, transformation + " failed the known-answer test");
+                return false;
+            }
+
+            // Comparison with the bundled engine
+            for (int keySize : TEST_KEY_SIZES) {
+                key = new byte[keySize];
+                for (int i = 0; i < keySize; i++)
+                    key[i] = (byte) (0x5a ^ (i * 37));
+                SecretKeySpec spec = new SecretKeySpec(key, "AES");
+                encryptor.init(Cipher.ENCRYPT_MODE, spec);
+                decryptor.init(Cipher.DECRYPT_MODE, spec);
+                for (int length : TEST_LENGTHS) {
+                    byte[] plain = new byte[length];
+                    for (int i = 0; i < length; i++)
+                        plain[i] = (byte) (i * 131 + keySize);
+                    byte[] expected = bundledEncrypt(key, plain);
+                    code = encryptor.doFinal(plain);
+                    if (!Arrays.equals(expected, code)) {
+                        Log.w(TAG, String.format(Locale.US,
+                                "%s encrypted %d bytes with a %d-bit key"
+                                + " differently than the bundled engine",
+                                transformation, length, keySize * 8));
+                        return false;
+                    }
+                    if (!Arrays.equals(plain, decryptor.doFinal(expected))) {
+                        Log.w(TAG, String.format(Locale.US,
+                                "%s failed to decrypt %d bytes"
+                                + " with a %d-bit key",
+                                transformation, length, keySize * 8));
+                        return false;
+                    }
+                }
+            }
+            return true;
+        } catch (GeneralSecurityException | InvalidCipherTextException
+                | RuntimeException e) {
+            Log.i(TAG, transformation + " is not usable: " + e);
+            return false;
+        }
+    }
+
+    /**
+     * Encrypt a message with the bundled engine.
+     *
+     * @param key the raw encryption key
+     * @param plain the bytes to encrypt
+     *
+     * @return the encrypted bytes
+     */
+    private static byte[] bundledEncrypt(byte[] key, byte[] plain)
+            throws InvalidCipherTextException {
+        PaddedBufferedBlockCipher cipher =
+                new PaddedBufferedBlockCipher(AESCipher.createEngine());
+        cipher.init(true, new KeyParameter(key));
+        byte[] code = new byte[cipher.getOutputSize(plain.length)];
+        int len = cipher.processBytes(plain, 0, plain.length, code, 0);
+        cipher.doFinal(code, len);
+        return code;
+    }
+
+}
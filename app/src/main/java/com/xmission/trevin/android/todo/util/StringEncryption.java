@@ -20,11 +20,14 @@ import java.io.UnsupportedEncodingException;
 import java.nio.BufferUnderflowException;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
 import java.security.*;
+import java.time.Instant;
 import java.util.Arrays;
-
-import javax.crypto.*;
-import javax.crypto.spec.SecretKeySpec;
+import java.util.Locale;
 
 import com.xmission.trevin.android.crypto.*;
 import com.xmission.trevin.android.todo.data.ToDoMetadata;
@@ -36,6 +39,13 @@ import android.util.Log;
 
 /**
  * Utilities for encrypting and decrypting private strings.
+ * <p>
+ * Once the key has been generated, any number of threads may encrypt
+ * and decrypt with the same object at once; each thread gets its own
+ * cipher, all sharing a single expanded copy of the key.  Changing the
+ * password or salt is synchronized, but callers are responsible for not
+ * changing them while other threads still need the old key.
+ * </p>
  *
  * @author Trevin Beattie
  */
@@ -55,8 +65,19 @@ public class StringEncryption {
      */
     public static final int BUNDLED_ENCRYPTION = 2;
 
+    /**
+     * Privacy level indicating the same key derivation and cipher as
+     * {@link #BUNDLED_ENCRYPTION}, but whose password hash stores the
+     * key iteration count in 32 bits so that it can be calibrated to
+     * the speed of the device when the password is set.  Text encrypted
+     * under either level is identical, so items are still marked with
+     * {@link #encryptionType()}; this level only appears in the password
+     * hash, which older versions of the app will not accept.
+     */
+    public static final int CALIBRATED_ENCRYPTION = 3;
+
     /** Maximum encryption type currently supported by the app */
-    public static final int MAX_SUPPORTED_ENCRYPTION = BUNDLED_ENCRYPTION;
+    public static final int MAX_SUPPORTED_ENCRYPTION = CALIBRATED_ENCRYPTION;
 
     /** Global encryption object */
     private static StringEncryption globalEncryption = null;
@@ -64,6 +85,12 @@ public class StringEncryption {
     /** The number of active references using the global encryption object */
     private static int globalReferences = 0;
 
+    /**
+     * The handle most recently lent out to background workers
+     * by {@link #borrowGlobalKey()}, if it is still in use
+     */
+    private static KeyHandle sharedKeyHandle = null;
+
     private static final SecureRandom RAND = new SecureRandom();
 
     /**
@@ -81,13 +108,126 @@ public class StringEncryption {
      */
     public StringEncryption() {}
 
+    /**
+     * Make a copy of another encryption object&rsquo;s password, salt,
+     * and key.  The key is copied rather than derived again, and the
+     * copy has its own cipher context so that either object may forget
+     * its key without affecting the other.  The caller must hold the
+     * original&rsquo;s lock.
+     *
+     * @param original the encryption object to copy
+     */
+    private StringEncryption(StringEncryption original) {
+        if (original.userPassword != null)
+            userPassword = Arrays.copyOf(original.userPassword,
+                    original.userPassword.length);
+        if (original.salt != null)
+            salt = Arrays.copyOf(original.salt, original.salt.length);
+        keyLength = original.keyLength;
+        keyIterationCount = original.keyIterationCount;
+        if (original.key != null) {
+            key = Arrays.copyOf(original.key, original.key.length);
+            context = CipherContext.create(key);
+        }
+    }
+
+    /**
+     * Run the self-test of the platform&rsquo;s AES cipher, if it has
+     * not been run already.  This is called in the background when the
+     * application starts so that the answer is ready by the time a
+     * password is entered; if it hasn&rsquo;t finished by then,
+     * generating the key will wait for it.
+     *
+     * @return {@code true} if new keys will use the platform cipher,
+     * {@code false} if they will use the bundled AES engine.
+     */
+    public static boolean verifyPlatformCipher() {
+        return PlatformCipher.getTransformation() != null;
+    }
+
+    /**
+     * Choose whether new keys may use the platform&rsquo;s AES cipher
+     * (after it passes its self-test) or must always use the bundled
+     * AES engine.  Both produce identical cipher text; the platform
+     * cipher is usually much faster.
+     *
+     * @param usePlatform {@code true} to use the platform cipher
+     * when it is available
+     */
+    public static void setUsePlatformCipher(boolean usePlatform) {
+        PlatformCipher.setEnabled(usePlatform);
+    }
+
+    /**
+     * Get the number of key iterations to use for new passwords,
+     * measuring the speed of the key derivation function on this device
+     * the first time it&rsquo;s needed.
+     *
+     * @return the key iteration count
+     */
+    static int getCalibratedIterationCount() {
+        synchronized (CALIBRATION_LOCK) {
+            if (calibratedIterationCount == 0)
+                calibratedIterationCount =
+                        calibrateIterationCount(KEY_DERIVATION_MILLIS);
+            return calibratedIterationCount;
+        }
+    }
+
+    /**
+     * Measure how many key iterations this device can run in a given
+     * amount of time.  This times derivations of a random password,
+     * doubling the iteration count until one takes long enough to
+     * measure reliably (which also gives the JIT a chance to compile
+     * the derivation function), times that count once more,
+     * then scales it to the target.
+     *
+     * @param targetMillis the target key derivation time in milliseconds
+     *
+     * @return the number of iterations, between
+     * {@value #KEY_ITERATION_COUNT} and {@value #MAX_KEY_ITERATION_COUNT}
+     */
+    static int calibrateIterationCount(int targetMillis) {
+        byte[] passwordKey = new byte[16];
+        byte[] sampleSalt = new byte[SALT_LENGTH];
+        RAND.nextBytes(passwordKey);
+        RAND.nextBytes(sampleSalt);
+        PKCS5S2ParametersGenerator generator = new PKCS5S2ParametersGenerator();
+        int count = KEY_ITERATION_COUNT;
+        long elapsed;
+        while (true) {
+            long start = System.nanoTime();
+            generator.init(passwordKey, sampleSalt, count);
+            generator.generateDerivedMacParameters(KEY_LENGTH);
+            elapsed = Math.max(System.nanoTime() - start, 1);
+            if ((elapsed >= CALIBRATION_MIN_NANOS) ||
+                    (count >= MAX_KEY_ITERATION_COUNT / 2))
+                break;
+            count *= 2;
+        }
+        // Time the final count once more; the first run of a count
+        // may have been partly interpreted, so use the faster of the two.
+        long start = System.nanoTime();
+        generator.init(passwordKey, sampleSalt, count);
+        generator.generateDerivedMacParameters(KEY_LENGTH);
+        elapsed = Math.max(Math.min(elapsed, System.nanoTime() - start), 1);
+        long scaled = count * (targetMillis * 1000000L) / elapsed;
+        int result = (int) Math.max(KEY_ITERATION_COUNT,
+                Math.min(MAX_KEY_ITERATION_COUNT, scaled));
+        Log.i(LOG_TAG, String.format(Locale.US,
+                "%d key iterations took %.1f ms; using %d iterations"
+                + " for a %d ms target", count, elapsed / 1.0e6,
+                result, targetMillis));
+        return result;
+    }
+
     /**
      * Let the encryption class know that an activity or service is using
      * encryption.  All activities requesting encryption will use the same
      * object, which is expected to have the password set by the preferences
      * activity.
      */
-    public static StringEncryption holdGlobalEncryption() {
+    public static synchronized StringEncryption holdGlobalEncryption() {
         Log.d(LOG_TAG, ".holdGlobalEncryption(" + globalReferences + ","
                 + globalEncryption + ")");
         if (globalEncryption == null) {
@@ -104,7 +244,7 @@ public class StringEncryption {
      * the password and key will be forgotten.  This will be reflected
      * in the "show encrypted" (hidden) preferences item.
      */
-    public static void releaseGlobalEncryption(Context context) {
+    public static synchronized void releaseGlobalEncryption(Context context) {
         Log.d(LOG_TAG, ".releaseGlobalEncryption(" + globalReferences + ","
                 + globalEncryption + ")");
         if (--globalReferences <= 0) {
@@ -119,17 +259,108 @@ public class StringEncryption {
         }
     }
 
+    /**
+     * A reference-counted copy of the global encryption key for
+     * background workers.  The copy is made from the already-derived
+     * key, so borrowing it does not run the key derivation again;
+     * and since the worker has its own copy, hiding private records
+     * in the UI while the worker runs does not pull the key out from
+     * under it.  The copy is wiped when the last borrower releases it.
+     */
+    public static final class KeyHandle {
+
+        /** The private copy of the key */
+        private final StringEncryption encryption;
+
+        /** The cipher context of the global key this was copied from */
+        private final CipherContext source;
+
+        /** The number of borrowers which have not released this handle */
+        private int references = 1;
+
+        private KeyHandle(StringEncryption original) {
+            synchronized (original) {
+                encryption = new StringEncryption(original);
+                source = original.context;
+            }
+        }
+
+        /**
+         * @return an encryption object with the borrowed key.
+         * Callers must not change its password or salt.
+         *
+         * @throws IllegalStateException if the handle has been released
+         */
+        public StringEncryption getEncryption() {
+            synchronized (StringEncryption.class) {
+                if (references <= 0)
+                    throw new IllegalStateException(
+                            "Key handle has been released");
+            }
+            return encryption;
+        }
+
+        /**
+         * Give back the borrowed key.  When every borrower has
+         * released the handle, its copy of the key is wiped.
+         */
+        public void release() {
+            synchronized (StringEncryption.class) {
+                if (references <= 0) {
+                    Log.e(LOG_TAG, "Key handle released too many times!");
+                    return;
+                }
+                if (--references > 0)
+                    return;
+                if (sharedKeyHandle == this)
+                    sharedKeyHandle = null;
+            }
+            encryption.forgetPassword();
+        }
+
+    }
+
+    /**
+     * Borrow the key from the global encryption object for use by a
+     * background worker, if the user has unlocked private records.
+     * Workers which start while the same key is already lent out share
+     * the same copy.  Every handle returned must be given back with
+     * {@link KeyHandle#release()}.
+     *
+     * @return a handle to the key, or {@code null} if the global
+     * encryption object does not have a key
+     */
+    public static synchronized KeyHandle borrowGlobalKey() {
+        if ((globalEncryption == null) || !globalEncryption.hasKey())
+            return null;
+        if ((sharedKeyHandle != null) &&
+                (sharedKeyHandle.source == globalEncryption.context)) {
+            sharedKeyHandle.references++;
+            return sharedKeyHandle;
+        }
+        KeyHandle handle = new KeyHandle(globalEncryption);
+        if (!handle.encryption.hasKey()) {
+            // The global key was forgotten while we were copying it
+            handle.encryption.forgetPassword();
+            return null;
+        }
+        sharedKeyHandle = handle;
+        Log.d(LOG_TAG, ".borrowGlobalKey: new handle " + handle);
+        return handle;
+    }
+
     /**
      * Let the encryption class know that a service is finished using
      * encryption.
      */
-    public static void releaseGlobalEncryption() {
+    public static synchronized void releaseGlobalEncryption() {
         Log.d(LOG_TAG, ".releaseGlobalEncryption(" + globalReferences + ","
                 + globalEncryption + ")");
         if (globalReferences <= 0)
             Log.e(LOG_TAG, "An unknown caller released encryption without holding it!");
-        else
-            --globalReferences;
+        else if ((--globalReferences == 0) && (globalEncryption != null))
+            // Nobody is viewing decrypted items any more
+            globalEncryption.textCache.clear();
     }
 
     /**
@@ -144,8 +375,41 @@ public class StringEncryption {
     private static final int SALT_LENGTH = 32;
     /** Key length in bits */
     private static final int KEY_LENGTH = 256;
-    /** Default number of times to iterate the salted password to get the key */
+    /** The AES cipher block size in bytes */
+    private static final int CIPHER_BLOCK_SIZE = 16;
+    /**
+     * Default number of times to iterate the salted password to get the key.
+     * This is also the minimum used when calibrating the count for new
+     * passwords.
+     */
     private static final int KEY_ITERATION_COUNT = 1000;
+    /**
+     * Maximum number of key iterations to calibrate for new passwords,
+     * in case a measurement is thrown off by (for example) the device
+     * pausing the process.
+     */
+    private static final int MAX_KEY_ITERATION_COUNT = 10000000;
+    /**
+     * Minimum time a key derivation must take while calibrating
+     * to be considered an accurate measurement, in nanoseconds
+     */
+    private static final long CALIBRATION_MIN_NANOS = 25000000L;
+    /** Time to spend deriving the key for new passwords */
+    private static final int KEY_DERIVATION_MILLIS = 250;
+
+    /**
+     * Lock for the calibrated iteration count.  This is separate from the
+     * class lock because calibration is done while holding an
+     * instance&rsquo;s lock, whereas the global encryption methods
+     * lock the class first and then the instance.
+     */
+    private static final Object CALIBRATION_LOCK = new Object();
+    /**
+     * Number of key iterations which take about
+     * {@value #KEY_DERIVATION_MILLIS} ms on this device,
+     * or 0 if it has not been measured yet
+     */
+    private static int calibratedIterationCount = 0;
 
     /** Key length in bits in this instance */
     private int keyLength = KEY_LENGTH;
@@ -159,22 +423,54 @@ public class StringEncryption {
     /** The encryption key */
     private byte[] key = null;
 
+    /**
+     * The expanded key and per-thread ciphers for encrypting and
+     * decrypting with {@link #key}.  This is set whenever the key is
+     * generated and cleared whenever it is forgotten; reading it
+     * does not require holding this object&rsquo;s lock.
+     */
+    private volatile CipherContext context = null;
+
+    /** Maximum number of decrypted item fields to cache */
+    private static final int TEXT_CACHE_SIZE = 500;
+
+    /**
+     * Cache of decrypted item descriptions and notes, so that
+     * redisplaying or searching the same items doesn&rsquo;t
+     * have to decrypt them again.
+     */
+    private final DecryptedTextCache textCache =
+            new DecryptedTextCache(TEXT_CACHE_SIZE);
+
     /** Name of the metadata used to store the hash of the user's password */
     public final static String METADATA_PASSWORD_HASH =
             "StringEncryption.HashedPassword";
 
     /** @return whether the encryption key has been set */
-    public boolean hasKey() { return key != null; }
+    public boolean hasKey() { return context != null; }
 
     /**
-     * Clear the password and key.  This should be called
-     * when the user chooses to hide private records.
+     * Erase the encryption key and its expanded form.
+     * The caller must hold this object&rsquo;s lock.
      */
-    public void forgetPassword() {
+    private void clearKey() {
+        CipherContext oldContext = context;
+        context = null;
+        if (oldContext != null)
+            oldContext.wipe();
         if (key != null) {
             Arrays.fill(key, (byte) 0);
             key = null;
         }
+    }
+
+    /**
+     * Clear the password and key.  This should be called
+     * when the user chooses to hide private records.
+     */
+    public synchronized void forgetPassword() {
+        clearKey();
+        textCache.clear();
         salt = null;
         if (userPassword != null)
             Arrays.fill(userPassword, (char) 0);
@@ -186,7 +482,7 @@ public class StringEncryption {
      * @return the password (in clear text), or <code>null</code>
      * if no password is set.
      */
-    public char[] getPassword() {
+    public synchronized char[] getPassword() {
         if (userPassword == null)
             return null;
         char[] copy = new char[userPassword.length];
@@ -201,38 +497,91 @@ public class StringEncryption {
      * possible to set up two different encryption objects in case
      * the user is changing his/her password.
      */
-    public void setPassword(char[] password) {
+    public synchronized void setPassword(char[] password) {
         userPassword = new char[password.length];
         System.arraycopy(password, 0, userPassword, 0, password.length);
-        if (key != null) {
-            Arrays.fill(key, (byte) 0);
-            key = null;
+        clearKey();
+        textCache.clear();
+    }
+
+    /**
+     * Take over the password, salt, and key of another encryption
+     * object, without deriving the key again.  This is used to
+     * update the global encryption object after changing the password.
+     *
+     * @param other the encryption object whose key to copy.
+     * It must not be locked by the caller.
+     */
+    public void adoptKey(StringEncryption other) {
+        StringEncryption copy;
+        synchronized (other) {
+            copy = new StringEncryption(other);
+        }
+        synchronized (this) {
+            clearKey();
+            textCache.clear();
+            if (userPassword != null)
+                Arrays.fill(userPassword, (char) 0);
+            userPassword = copy.userPassword;
+            salt = copy.salt;
+            keyLength = copy.keyLength;
+            keyIterationCount = copy.keyIterationCount;
+            key = copy.key;
+            context = copy.context;
         }
     }
 
     /**
-     * Add some salt
+     * Add some salt.  This is used when setting up a new password,
+     * so it also sets the key iteration count to one
+     * {@link #getCalibratedIterationCount calibrated} for this device.
      */
-    public void addSalt() {
+    public synchronized void addSalt() {
         salt = new byte[SALT_LENGTH];
         RAND.nextBytes(salt);
-        if (key != null) {
-            Arrays.fill(key, (byte) 0);
-            key = null;
-        }
+        keyLength = KEY_LENGTH;
+        keyIterationCount = getCalibratedIterationCount();
+        clearKey();
+    }
+
+    /**
+     * Set the salt to a specific value, with the default key length
+     * and iteration count.  This is <i>only</i> intended for unit testing.
+     *
+     * @param salt the salt to set.  Should be {@value #SALT_LENGTH}
+     *             bytes long, though this is not strictly required.
+     */
+    synchronized void setSalt(byte[] salt) {
+        setSalt(salt, KEY_ITERATION_COUNT);
     }
 
     /**
-     * Set the salt to a specific value.  This is <i>only</i>
-     * intended for unit testing.
+     * Set the salt and key iteration count to specific values.
+     * This is <i>only</i> intended for unit testing.
      *
      * @param salt the salt to set.  Should be {@value #SALT_LENGTH}
      *             bytes long, though this is not strictly required.
+     * @param iterations the number of times to iterate the salted
+     *             password to get the key
      */
-    void setSalt(byte[] salt) {
+    synchronized void setSalt(byte[] salt, int iterations) {
         if ((salt == null) || (salt.length == 0))
             throw new IllegalArgumentException("Some salt is required");
+        if (iterations <= 0)
+            throw new IllegalArgumentException(
+                    "Iteration count must be positive");
         this.salt = Arrays.copyOf(salt, salt.length);
+        keyLength = KEY_LENGTH;
+        keyIterationCount = iterations;
+        clearKey();
+    }
+
+    /**
+     * @return the number of times the salted password is iterated
+     * to get the key.  This is intended for unit testing.
+     */
+    synchronized int getKeyIterationCount() {
+        return keyIterationCount;
     }
 
     /**
@@ -283,12 +632,15 @@ public class StringEncryption {
      * @throws InvalidPasswordHashException if the given password
      * hash is invalid.
      */
-    public boolean checkPassword(byte[] hashedPassword)
+    public synchronized boolean checkPassword(byte[] hashedPassword)
             throws AuthenticationException {
         if (hashedPassword == null)
             return false;
         ByteBuffer bb = ByteBuffer.wrap(hashedPassword)
                 .order(ByteOrder.BIG_ENDIAN);
+        byte[] storedSalt;
+        int storedKeyLength;
+        int storedIterationCount;
         byte[] storedHash;
         int hLen;
         try {
@@ -297,10 +649,26 @@ public class StringEncryption {
                     (crypType > MAX_SUPPORTED_ENCRYPTION))
                 throw new InvalidPasswordHashException(
                         "Unsupported encryption method");
-            salt = new byte[(bb.get() & 0xff) + 2];
-            keyLength = ((bb.getShort() & 0xffff) + 2) * 8;
-            keyIterationCount = (bb.getShort() & 0xffff) + 1;
-            bb.get(salt);
+            storedSalt = new byte[(bb.get() & 0xff) + 2];
+            storedKeyLength = ((bb.getShort() & 0xffff) + 2) * 8;
+            if (crypType == BUNDLED_ENCRYPTION) {
+                storedIterationCount = (bb.getShort() & 0xffff) + 1;
+            } else {
+                long count = (bb.getInt() & 0xffffffffL) + 1;
+                if (count > MAX_KEY_ITERATION_COUNT)
+                    throw new InvalidPasswordHashException(
+                            "Unsupported key iteration count " + count);
+                storedIterationCount = (int) count;
+            }
+            /*
+             * The hash may have come from an import file, so don't let
+             * it make us spend an unreasonable time deriving the key.
+             */
+            if (storedIterationCount < KEY_ITERATION_COUNT)
+                throw new InvalidPasswordHashException(
+                        "Unsupported key iteration count "
+                        + storedIterationCount);
+            bb.get(storedSalt);
             hLen = bb.position();
             storedHash = new byte[bb.limit() - bb.position()];
             bb.get(storedHash);
@@ -308,8 +676,20 @@ public class StringEncryption {
             throw new InvalidPasswordHashException("Invalid password hash");
         }
 
-        // Tentatively generate a key from the assumed password
-        generateKey();
+        /*
+         * If we already have a key derived with the same parameters
+         * (e.g. one borrowed from the global encryption object),
+         * we only need to check its hash.  Otherwise tentatively
+         * generate a key from the assumed password.
+         */
+        if ((key == null) || (keyLength != storedKeyLength) ||
+                (keyIterationCount != storedIterationCount) ||
+                !Arrays.equals(salt, storedSalt)) {
+            salt = storedSalt;
+            keyLength = storedKeyLength;
+            keyIterationCount = storedIterationCount;
+            generateKey();
+        }
 
         // Hash it and see if it matches the stored hash
         MessageDigest md = new SHA256.Digest();
@@ -320,8 +700,7 @@ public class StringEncryption {
             return true;
 
         // If it does not match, discard the key and salt we got from the input.
-        Arrays.fill(key, (byte) 0);
-        key = null;
+        clearKey();
         Arrays.fill(salt, (byte) 0);
         salt = null;
         return false;
@@ -332,12 +711,14 @@ public class StringEncryption {
      * The stored bytes consists of:
      * <table>
      *   <tr><th>Size</th><th>Content</th></tr>
-     *   <tr><td>1</td><td>Encryption scheme <i>(only "2" in this version,
-     *   representing a PKCS5S2 key hashed by SHA256, and AES cipher.)</i></td></tr>
+     *   <tr><td>1</td><td>Encryption scheme <i>("3" in this version,
+     *   representing a PKCS5S2 key hashed by SHA256, and AES cipher,
+     *   with a 32-bit iteration count.  Hashes stored by earlier versions
+     *   have "2" here and a 16-bit iteration count.)</i></td></tr>
      *   <tr><td>1</td><td>Number of bytes of salt (unsigned, bias 2)</td></tr>
      *   <tr><td>2</td><td>Number of bytes in the encryption key
      *   (unsigned, bias 2, in MSB order)</td></tr>
-     *   <tr><td>2</td><td>Iteration count for key derivation
+     *   <tr><td>4</td><td>Iteration count for key derivation
      *   (unsigned, bias 1, in MSB order)</td></tr>
      *   <tr><td>?</td><td>Salt bytes</td></tr>
      *   <tr><td>?</td><td>The result of hashing the above header, salt,
@@ -355,6 +736,21 @@ public class StringEncryption {
      * @throws PasswordRequiredException if the password has not been set.
      */
     public void storePassword(ToDoRepository repository)
+        throws AuthenticationException {
+        repository.upsertMetadata(METADATA_PASSWORD_HASH, getPasswordHash());
+    }
+
+    /**
+     * Compute the salted password hash in the form stored by
+     * {@link #storePassword(ToDoRepository)}, without storing it.
+     * This can be passed to {@link #checkPassword(byte[])} later
+     * to get back the same salt and key.
+     *
+     * @return the header, salt, and hash of the key
+     *
+     * @throws PasswordRequiredException if the password has not been set.
+     */
+    public synchronized byte[] getPasswordHash()
         throws AuthenticationException {
         if (key == null) {
             if (salt == null)
@@ -362,12 +758,12 @@ public class StringEncryption {
             generateKey();
         }
 
-        byte[] header = new byte[6];
+        byte[] header = new byte[8];
         ByteBuffer bb = ByteBuffer.wrap(header).order(ByteOrder.BIG_ENDIAN);
-        bb.put((byte) BUNDLED_ENCRYPTION);
+        bb.put((byte) CALIBRATED_ENCRYPTION);
         bb.put((byte) (salt.length - 2));
         bb.putShort((short) (keyLength / 8 - 2));
-        bb.putShort((short) (keyIterationCount - 1));
+        bb.putInt(keyIterationCount - 1);
         MessageDigest md = new SHA256.Digest();
         md.update(header);
         md.update(salt);
@@ -379,8 +775,7 @@ public class StringEncryption {
         System.arraycopy(header, 0, hash2, 0, header.length);
         System.arraycopy(salt, 0, hash2, header.length, salt.length);
         System.arraycopy(hash, 0, hash2, header.length + salt.length, hash.length);
-
-        repository.upsertMetadata(METADATA_PASSWORD_HASH, hash2);
+        return hash2;
     }
 
     /**
@@ -405,14 +800,18 @@ public class StringEncryption {
 
     /**
      * Return the encryption type used to generate the encryption key
-     * and encrypt text.
+     * and encrypt text.  Since the text is encrypted the same way
+     * regardless of how the key iteration count was chosen, this is
+     * still {@link #BUNDLED_ENCRYPTION} even though new password
+     * hashes are stored as {@link #CALIBRATED_ENCRYPTION}.
      */
     public static int encryptionType() {
         return BUNDLED_ENCRYPTION;
     }
 
     /**
-     * Generate the key from the password and salt.
+     * Generate the key from the password and salt, and expand it
+     * for the cipher.  The caller must hold this object&rsquo;s lock.
      *
      * @throws IllegalStateException if the salt has not been set.
      * @throws PasswordRequiredException if the password has not been set.
@@ -437,7 +836,30 @@ public class StringEncryption {
         generator.init(passwordKey, salt, keyIterationCount);
         KeyParameter param = generator.generateDerivedMacParameters(keyLength);
         Arrays.fill(passwordKey, (byte) 0);
+        clearKey();
         key = param.getKey();
+        context = CipherContext.create(key);
+    }
+
+    /**
+     * Get the cipher context for the current key, generating the key
+     * first if necessary.  Once the key exists this does not lock.
+     *
+     * @return the cipher context
+     *
+     * @throws IllegalStateException if the salt has not been set.
+     * @throws PasswordRequiredException if the password has not been set.
+     */
+    private CipherContext getContext()
+            throws IllegalStateException, PasswordRequiredException {
+        CipherContext ctx = context;
+        if (ctx != null)
+            return ctx;
+        synchronized (this) {
+            if (context == null)
+                generateKey();
+            return context;
+        }
     }
 
     /**
@@ -448,7 +870,7 @@ public class StringEncryption {
      *
      * @throws IllegalStateException if the password and salt have not been set.
      */
-    byte[] getKey() throws IllegalStateException {
+    synchronized byte[] getKey() throws IllegalStateException {
         if (key == null)
             generateKey();
         return key;
@@ -467,16 +889,11 @@ public class StringEncryption {
             throws EncryptionException, IllegalStateException {
         if (orig == null)
             return null;
-        if (key == null)
-            generateKey();
         try {
-            SecretKeySpec spec = new SecretKeySpec(key, "AES");
-            AESCipher cipher = new AESCipher();
-            cipher.init(Cipher.ENCRYPT_MODE, spec);
-            return cipher.doFinal(orig);
-        } catch (GeneralSecurityException gsx) {
+            return getContext().encrypt(orig);
+        } catch (CryptoException cx) {
             forgetPassword();
-            throw new EncryptionException(gsx);
+            throw new EncryptionException(cx);
         }
     }
 
@@ -515,16 +932,26 @@ public class StringEncryption {
             throws EncryptionException, IllegalStateException {
         if (code == null)
             return null;
-        if (key == null)
-            generateKey();
+        return decryptBytes(getContext(), code);
+    }
+
+    /**
+     * Decrypt a byte array using a specific cipher context.
+     *
+     * @param ctx the cipher context to use
+     * @param code the encrypted bytes
+     *
+     * @return the decrypted bytes
+     *
+     * @throws EncryptionException if the data could not be decrypted
+     */
+    private static byte[] decryptBytes(CipherContext ctx, byte[] code)
+            throws EncryptionException {
         try {
-            SecretKeySpec spec = new SecretKeySpec(key, "AES");
-            AESCipher cipher = new AESCipher();
-            cipher.init(Cipher.DECRYPT_MODE, spec);
-            return cipher.doFinal(code);
-        } catch (GeneralSecurityException gsx) {
+            return ctx.decrypt(code);
+        } catch (CryptoException | DataLengthException cx) {
             throw new EncryptionException(
-                    "Could not decode data using the given password", gsx);
+                    "Could not decode data using the given password", cx);
         }
     }
 
@@ -550,4 +977,361 @@ public class StringEncryption {
             throw new IllegalStateException("UTF-8 is not supported!", uex);
         }
     }
+
+    /**
+     * Compute the size of the cipher text for a given amount of plain
+     * text.  The cipher always adds between 1 and 16 bytes of padding.
+     *
+     * @param plainLength the number of bytes of plain text
+     *
+     * @return the number of bytes of cipher text
+     */
+    public static int getEncryptedLength(int plainLength) {
+        return (plainLength / CIPHER_BLOCK_SIZE + 1) * CIPHER_BLOCK_SIZE;
+    }
+
+    /**
+     * Encrypt a range of bytes into a caller-provided buffer.
+     *
+     * @param in the array holding the unencrypted bytes
+     * @param inOff the offset of the first byte to encrypt
+     * @param len the number of bytes to encrypt
+     * @param out the array to write the encrypted bytes to, which must
+     * have room for {@link #getEncryptedLength getEncryptedLength(len)}
+     * bytes starting at {@code outOff}
+     * @param outOff the offset at which to start writing
+     *
+     * @return the number of bytes written to {@code out}
+     *
+     * @throws IllegalStateException if the password has not been provided
+     * @throws EncryptionException if the output buffer is too short
+     */
+    public int encrypt(byte[] in, int inOff, int len, byte[] out, int outOff)
+            throws EncryptionException, IllegalStateException {
+        try {
+            return getContext().encrypt(in, inOff, len, out, outOff);
+        } catch (CryptoException | DataLengthException cx) {
+            throw new EncryptionException(cx);
+        }
+    }
+
+    /**
+     * Decrypt a range of bytes into a caller-provided buffer.
+     *
+     * @param in the array holding the encrypted bytes
+     * @param inOff the offset of the first byte to decrypt
+     * @param len the number of bytes to decrypt
+     * @param out the array to write the decrypted bytes to, which must
+     * have room for {@code len} bytes starting at {@code outOff}
+     * (the plain text will be shorter, but the padding is decrypted
+     * into the buffer as well)
+     * @param outOff the offset at which to start writing
+     *
+     * @return the number of bytes of plain text written to {@code out}
+     *
+     * @throws IllegalStateException if the password has not been provided
+     * @throws EncryptionException if the data could not be decrypted
+     */
+    public int decryptBytes(byte[] in, int inOff, int len,
+                            byte[] out, int outOff)
+            throws EncryptionException, IllegalStateException {
+        try {
+            return getContext().decrypt(in, inOff, len, out, outOff);
+        } catch (CryptoException | DataLengthException cx) {
+            throw new EncryptionException(
+                    "Could not decode data using the given password", cx);
+        }
+    }
+
+    /**
+     * Encrypt a batch of strings.  Each string is converted to UTF-8
+     * in a per-thread scratch buffer and encrypted directly into an
+     * array of the final size, so the only memory allocated is for the
+     * results themselves.
+     *
+     * @param plain the strings to encrypt.  Any {@code null} elements
+     * result in {@code null} cipher text.
+     * @param results an array to receive the encrypted bytes, which
+     * must be at least as long as {@code plain}.  This may be reused
+     * from one batch to the next.
+     *
+     * @throws IllegalStateException if the password has not been provided
+     */
+    public void encryptAll(String[] plain, byte[][] results)
+            throws EncryptionException, IllegalStateException {
+        CipherContext ctx = getContext();
+        TextBuffer buffer = TEXT_BUFFERS.get();
+        int maxUsed = 0;
+        try {
+            for (int i = 0; i < plain.length; i++) {
+                if (plain[i] == null) {
+                    results[i] = null;
+                    continue;
+                }
+                int len = buffer.encode(plain[i]);
+                maxUsed = Math.max(maxUsed, len);
+                results[i] = new byte[getEncryptedLength(len)];
+                ctx.encrypt(buffer.bytes, 0, len, results[i], 0);
+            }
+        } catch (CryptoException | DataLengthException cx) {
+            forgetPassword();
+            throw new EncryptionException(cx);
+        } finally {
+            // Don't leave plain text lying around in the buffer
+            Arrays.fill(buffer.bytes, 0, maxUsed, (byte) 0);
+        }
+    }
+
+    /**
+     * Encrypt several strings.  This is a convenience form of
+     * {@link #encryptAll(String[], byte[][])} for a few related
+     * strings, such as an item&rsquo;s description and note.
+     *
+     * @param plain the strings to encrypt; any may be {@code null}
+     *
+     * @return the encrypted bytes, in the same order as the strings
+     *
+     * @throws IllegalStateException if the password has not been provided
+     */
+    public byte[][] encryptAll(String... plain)
+            throws EncryptionException, IllegalStateException {
+        byte[][] results = new byte[plain.length][];
+        encryptAll(plain, results);
+        return results;
+    }
+
+    /**
+     * Decrypt a batch of strings.  Each one is decrypted into a
+     * per-thread scratch buffer and converted directly to a string,
+     * so the only memory allocated is for the results themselves.
+     *
+     * @param codes the encrypted strings.  Any {@code null} elements
+     * result in {@code null} plain text.
+     * @param results an array to receive the decrypted strings, which
+     * must be at least as long as {@code codes}.  This may be reused
+     * from one batch to the next.
+     *
+     * @throws IllegalStateException if the password has not been provided
+     * @throws EncryptionException if any of the strings could not
+     * be decrypted.
+     */
+    public void decryptAll(byte[][] codes, String[] results)
+            throws EncryptionException, IllegalStateException {
+        CipherContext ctx = getContext();
+        TextBuffer buffer = TEXT_BUFFERS.get();
+        int maxUsed = 0;
+        try {
+            for (int i = 0; i < codes.length; i++) {
+                if (codes[i] == null) {
+                    results[i] = null;
+                    continue;
+                }
+                byte[] bytes = buffer.ensureCapacity(codes[i].length);
+                maxUsed = Math.max(maxUsed, codes[i].length);
+                int len = ctx.decrypt(codes[i], 0, codes[i].length, bytes, 0);
+                results[i] = new String(bytes, 0, len, StandardCharsets.UTF_8);
+            }
+        } catch (CryptoException | DataLengthException cx) {
+            throw new EncryptionException(
+                    "Could not decode data using the given password", cx);
+        } finally {
+            // Don't leave plain text lying around in the buffer
+            Arrays.fill(buffer.bytes, 0, maxUsed, (byte) 0);
+        }
+    }
+
+    /**
+     * Decrypt several strings.  This is a convenience form of
+     * {@link #decryptAll(byte[][], String[])} for a few related
+     * strings, such as an item&rsquo;s description and note.
+     *
+     * @param codes the encrypted strings; any may be {@code null}
+     *
+     * @return the decrypted strings, in the same order
+     *
+     * @throws IllegalStateException if the password has not been provided
+     * @throws EncryptionException if any of the strings could not
+     * be decrypted.
+     */
+    public String[] decryptAll(byte[]... codes)
+            throws EncryptionException, IllegalStateException {
+        String[] results = new String[codes.length];
+        decryptAll(codes, results);
+        return results;
+    }
+
+    /**
+     * Decrypt the description of a To Do item.  If the same item&rsquo;s
+     * description has been decrypted recently and the item has not been
+     * modified since, this returns the cached plain text instead of
+     * running the cipher again.
+     *
+     * @param itemId the ID of the item
+     * @param modTime the item&rsquo;s modification time.  If {@code null},
+     * the description is decrypted without using the cache.
+     * @param code the encrypted description
+     *
+     * @return the decrypted description
+     *
+     * @throws IllegalStateException if the password has not been provided
+     * @throws EncryptionException if the decryption does not result
+     * in a valid string.
+     */
+    public String decryptDescription(long itemId, Instant modTime, byte[] code)
+            throws EncryptionException, IllegalStateException {
+        return decryptCached(itemId, modTime,
+                DecryptedTextCache.DESCRIPTION, code);
+    }
+
+    /**
+     * Decrypt the note of a To Do item.  If the same item&rsquo;s note
+     * has been decrypted recently and the item has not been modified
+     * since, this returns the cached plain text instead of running
+     * the cipher again.
+     *
+     * @param itemId the ID of the item
+     * @param modTime the item&rsquo;s modification time.  If {@code null},
+     * the note is decrypted without using the cache.
+     * @param code the encrypted note
+     *
+     * @return the decrypted note
+     *
+     * @throws IllegalStateException if the password has not been provided
+     * @throws EncryptionException if the decryption does not result
+     * in a valid string.
+     */
+    public String decryptNote(long itemId, Instant modTime, byte[] code)
+            throws EncryptionException, IllegalStateException {
+        return decryptCached(itemId, modTime, DecryptedTextCache.NOTE, code);
+    }
+
+    /**
+     * Get the decrypted description of a To Do item only if it is
+     * already in the text cache.  This never runs the cipher, so it is
+     * safe to call on the UI thread.
+     *
+     * @param itemId the ID of the item
+     * @param modTime the item&rsquo;s modification time
+     *
+     * @return the cached description, or {@code null} if it has not
+     * been decrypted since the item was last modified (or the key
+     * has not been set).
+     */
+    public String getCachedDescription(long itemId, Instant modTime) {
+        if ((modTime == null) || (context == null))
+            return null;
+        return textCache.get(itemId, modTime.toEpochMilli(),
+                DecryptedTextCache.DESCRIPTION);
+    }
+
+    /**
+     * Decrypt a field of a To Do item, going through the text cache.
+     *
+     * @param itemId the ID of the item
+     * @param modTime the item&rsquo;s modification time, or {@code null}
+     * to bypass the cache
+     * @param field the field of the item being decrypted
+     * @param code the encrypted text
+     *
+     * @return the decrypted text
+     *
+     * @throws IllegalStateException if the password has not been provided
+     * @throws EncryptionException if the decryption does not result
+     * in a valid string.
+     */
+    private String decryptCached(long itemId, Instant modTime,
+                                 int field, byte[] code)
+            throws EncryptionException, IllegalStateException {
+        if (code == null)
+            return null;
+        // Read the cache generation before the key, so that if the
+        // cache is cleared while we decrypt we won't put stale text back.
+        long generation = textCache.getGeneration();
+        // Only use the cache while we hold a key, so that cached text
+        // is never returned after a failed password check.
+        CipherContext ctx = context;
+        if ((modTime == null) || (ctx == null))
+            return decrypt(code);
+        long modMillis = modTime.toEpochMilli();
+        String text = textCache.get(itemId, modMillis, field);
+        if (text == null) {
+            try {
+                text = new String(decryptBytes(ctx, code), "UTF-8");
+            } catch (UnsupportedEncodingException uex) {
+                throw new IllegalStateException("UTF-8 is not supported!", uex);
+            }
+            // Don't cache text from a key that was forgotten meanwhile
+            if (context == ctx)
+                textCache.put(generation, itemId, modMillis, field, text);
+        }
+        return text;
+    }
+
+    /**
+     * @return the number of decrypted fields currently cached.
+     * This accessor is meant for unit testing <i>only!</i>
+     */
+    int getCachedTextCount() {
+        return textCache.size();
+    }
+
+    /**
+     * Scratch space used by the batch methods to hold the UTF-8 form
+     * of each string while it is encrypted or decrypted, so that only
+     * the final results need to be allocated.  Each thread has its own.
+     */
+    private static class TextBuffer {
+
+        /** Encoder used to convert strings to UTF-8 */
+        final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+
+        /** The buffer, which grows as needed but never shrinks */
+        byte[] bytes = new byte[1024];
+
+        /**
+         * Make sure the buffer can hold a given number of bytes.
+         *
+         * @param size the number of bytes needed
+         *
+         * @return the buffer
+         */
+        byte[] ensureCapacity(int size) {
+            if (bytes.length < size) {
+                Arrays.fill(bytes, (byte) 0);
+                bytes = new byte[Math.max(size, bytes.length * 2)];
+            }
+            return bytes;
+        }
+
+        /**
+         * Encode a string into the buffer as UTF-8.  Any unpaired
+         * surrogates are replaced the same way as by
+         * {@link String#getBytes(java.nio.charset.Charset)}.
+         *
+         * @param text the string to encode
+         *
+         * @return the number of bytes written to {@link #bytes}
+         */
+        int encode(String text) {
+            ByteBuffer out = ByteBuffer.wrap(ensureCapacity(
+                    text.length() * (int) encoder.maxBytesPerChar()));
+            encoder.reset();
+            encoder.encode(CharBuffer.wrap(text), out, true);
+            encoder.flush(out);
+            return out.position();
+        }
+
+    }
+
+    /** Each thread&rsquo;s scratch buffer for the batch methods */
+    private static final ThreadLocal<TextBuffer> TEXT_BUFFERS =
+            new ThreadLocal<TextBuffer>() {
+                @Override
+                protected TextBuffer initialValue() {
+                    return new TextBuffer();
+                }
+            };
+
 }
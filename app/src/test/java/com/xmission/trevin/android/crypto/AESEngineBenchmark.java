@@ -0,0 +1,109 @@
+/*
+ * Copyright © 2026 Trevin Beattie
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.xmission.trevin.android.crypto;
+
+import static org.junit.Assert.*;
+
+import org.junit.Ignore;
+import org.junit.Test;
+
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Timing of the {@link AESLightEngine} against the table-driven
+ * {@link AESFastEngine}.  This depends too much on the machine to
+ * run with the unit tests; remove the {@link Ignore} annotation to
+ * run it by hand.  The engines&rsquo; output is checked by
+ * {@link AESEngineTests}.
+ *
+ * @author Trevin Beattie
+ */
+@Ignore("Benchmark; run by hand")
+public class AESEngineBenchmark {
+
+    /** Random number generator for the test data */
+    final Random RAND = new Random();
+
+    /**
+     * Encrypt or decrypt a whole message with padding
+     * using a given engine.
+     */
+    private static byte[] process(BlockCipher engine, boolean forEncryption,
+                                  byte[] key, byte[] input)
+        throws InvalidCipherTextException {
+        PaddedBufferedBlockCipher cipher =
+                new PaddedBufferedBlockCipher(engine);
+        cipher.init(forEncryption, new KeyParameter(key));
+        byte[] output = new byte[cipher.getOutputSize(input.length)];
+        int len = cipher.processBytes(input, 0, input.length, output, 0);
+        len += cipher.doFinal(output, len);
+        if (len == output.length)
+            return output;
+        byte[] trimmed = new byte[len];
+        System.arraycopy(output, 0, trimmed, 0, len);
+        return trimmed;
+    }
+
+    /**
+     * Time how long each engine takes to encrypt and decrypt a
+     * batch of messages the size of typical To Do descriptions
+     * (about 40 bytes) and notes (about 2 KB), and print the
+     * throughput.
+     */
+    @Test
+    public void testThroughput() throws InvalidCipherTextException {
+        byte[] key = new byte[32];
+        RAND.nextBytes(key);
+        int[] sizes = { 40, 2048 };
+        int[] counts = { 5000, 200 };
+        for (int s = 0; s < sizes.length; s++) {
+            byte[][] messages = new byte[counts[s]][];
+            long totalBytes = 0;
+            for (int i = 0; i < messages.length; i++) {
+                messages[i] = new byte[sizes[s] / 2 + RAND.nextInt(sizes[s])];
+                RAND.nextBytes(messages[i]);
+                totalBytes += messages[i].length;
+            }
+            long[] elapsed = new long[2];
+            byte[][][] results = new byte[2][messages.length][];
+            // Run each engine twice so the second pass is warmed up
+            for (int pass = 0; pass < 2; pass++) {
+                for (int e = 0; e < 2; e++) {
+                    long start = System.nanoTime();
+                    for (int i = 0; i < messages.length; i++) {
+                        BlockCipher engine = (e == 0)
+                                ? new AESLightEngine() : new AESFastEngine();
+                        results[e][i] = process(engine, true, key, messages[i]);
+                        process(engine, false, key, results[e][i]);
+                    }
+                    elapsed[e] = System.nanoTime() - start;
+                }
+            }
+            for (int i = 0; i < messages.length; i++)
+                assertArrayEquals("Cipher text of message " + i,
+                        results[0][i], results[1][i]);
+            System.out.println(String.format(Locale.US,
+                    "%d messages of ~%d bytes: light engine %.1f MB/s,"
+                    + " fast engine %.1f MB/s",
+                    messages.length, sizes[s],
+                    totalBytes * 2 * 1000.0 / elapsed[0],
+                    totalBytes * 2 * 1000.0 / elapsed[1]));
+        }
+    }
+
+}
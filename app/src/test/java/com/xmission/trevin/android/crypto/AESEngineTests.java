@@ -0,0 +1,182 @@
+/*
+ * Copyright © 2026 Trevin Beattie
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.xmission.trevin.android.crypto;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import java.security.GeneralSecurityException;
+import java.util.Locale;
+import java.util.Random;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * Tests for the AES engines.  Every test runs against both the
+ * {@link AESLightEngine} and the table-driven {@link AESFastEngine},
+ * which must produce identical results.
+ *
+ * @author Trevin Beattie
+ */
+public class AESEngineTests {
+
+    /** Random number generator for some tests */
+    final Random RAND = new Random();
+
+    /** Plain text of the FIPS-197 appendix C examples */
+    private static final String FIPS_PLAINTEXT =
+            "00112233445566778899aabbccddeeff";
+
+    /** Keys of the FIPS-197 appendix C examples */
+    private static final String[] FIPS_KEYS = {
+            "000102030405060708090a0b0c0d0e0f",
+            "000102030405060708090a0b0c0d0e0f1011121314151617",
+            "000102030405060708090a0b0c0d0e0f101112131415161718191a1b1c1d1e1f"
+    };
+
+    /** Cipher text of the FIPS-197 appendix C examples */
+    private static final String[] FIPS_CIPHERTEXT = {
+            "69c4e0d86a7b0430d8cdb78070b4c55a",
+            "dda97ca4864cdfe06eaf70a0ec0d7191",
+            "8ea2b7ca516745bfeafc49904b496089"
+    };
+
+    /** Convert a string of hex digits to a byte array */
+    private static byte[] fromHex(String hex) {
+        byte[] bytes = new byte[hex.length() / 2];
+        for (int i = 0; i < bytes.length; i++)
+            bytes[i] = (byte) Integer.parseInt(
+                    hex.substring(2 * i, 2 * i + 2), 16);
+        return bytes;
+    }
+
+    /** @return one instance of each engine to test */
+    private static BlockCipher[] allEngines() {
+        return new BlockCipher[] {
+                new AESLightEngine(), new AESFastEngine() };
+    }
+
+    /**
+     * Encrypt or decrypt a whole message with padding
+     * using a given engine.
+     */
+    private static byte[] process(BlockCipher engine, boolean forEncryption,
+                                  byte[] key, byte[] input)
+        throws InvalidCipherTextException {
+        PaddedBufferedBlockCipher cipher =
+                new PaddedBufferedBlockCipher(engine);
+        cipher.init(forEncryption, new KeyParameter(key));
+        byte[] output = new byte[cipher.getOutputSize(input.length)];
+        int len = cipher.processBytes(input, 0, input.length, output, 0);
+        len += cipher.doFinal(output, len);
+        if (len == output.length)
+            return output;
+        byte[] trimmed = new byte[len];
+        System.arraycopy(output, 0, trimmed, 0, len);
+        return trimmed;
+    }
+
+    /** Check both engines against the FIPS-197 known answers */
+    @Test
+    public void testKnownAnswers() {
+        byte[] plain = fromHex(FIPS_PLAINTEXT);
+        for (BlockCipher engine : allEngines()) {
+            for (int i = 0; i < FIPS_KEYS.length; i++) {
+                byte[] key = fromHex(FIPS_KEYS[i]);
+                byte[] expected = fromHex(FIPS_CIPHERTEXT[i]);
+                byte[] out = new byte[16];
+                engine.init(true, new KeyParameter(key));
+                assertEquals("Block size", 16,
+                        engine.processBlock(plain, 0, out, 0));
+                assertArrayEquals(String.format(Locale.US,
+                        "%s encryption with %d-bit key",
+                        engine.getClass().getSimpleName(), key.length * 8),
+                        expected, out);
+                engine.init(false, new KeyParameter(key));
+                engine.processBlock(expected, 0, out, 0);
+                assertArrayEquals(String.format(Locale.US,
+                        "%s decryption with %d-bit key",
+                        engine.getClass().getSimpleName(), key.length * 8),
+                        plain, out);
+            }
+        }
+    }
+
+    /**
+     * Encrypt random messages of varying length with random keys
+     * and verify that both engines produce the same cipher text
+     * and decrypt it back to the original.  Every tenth message is
+     * up to 4 KB long, like a To Do note.
+     */
+    @Test
+    public void testEnginesMatch() throws InvalidCipherTextException {
+        for (int i = 0; i < 200; i++) {
+            byte[] key = new byte[(i % 3) * 8 + 16];
+            RAND.nextBytes(key);
+            byte[] plain = new byte[RAND.nextInt((i % 10 == 0) ? 4096 : 200)];
+            RAND.nextBytes(plain);
+            byte[] light = process(new AESLightEngine(), true, key, plain);
+            byte[] fast = process(new AESFastEngine(), true, key, plain);
+            assertArrayEquals("Cipher text of message " + i, light, fast);
+            assertArrayEquals("Light engine decryption of message " + i,
+                    plain, process(new AESLightEngine(), false, key, fast));
+            assertArrayEquals("Fast engine decryption of message " + i,
+                    plain, process(new AESFastEngine(), false, key, light));
+        }
+    }
+
+    /**
+     * Verify that {@link AESCipher} gives the same known answer
+     * whichever engine it has been told to use.
+     */
+    @Test
+    public void testCipherEngineSetting() throws GeneralSecurityException {
+        boolean wasFast = AESCipher.isUsingFastEngine();
+        byte[] plain = fromHex(FIPS_PLAINTEXT);
+        try {
+            for (boolean fast : new boolean[] { false, true }) {
+                AESCipher.setUseFastEngine(fast);
+                assertEquals("Engine setting", fast,
+                        AESCipher.isUsingFastEngine());
+                for (int i = 0; i < FIPS_KEYS.length; i++) {
+                    SecretKeySpec spec =
+                            new SecretKeySpec(fromHex(FIPS_KEYS[i]), "AES");
+                    AESCipher cipher = new AESCipher();
+                    cipher.init(Cipher.ENCRYPT_MODE, spec);
+                    byte[] code = cipher.doFinal(plain);
+                    // The padding adds a full block after the known answer
+                    assertEquals("Padded length", 32, code.length);
+                    byte[] firstBlock = new byte[16];
+                    System.arraycopy(code, 0, firstBlock, 0, 16);
+                    assertArrayEquals(String.format(Locale.US,
+                            "Cipher text with fast engine %s, key %d",
+                            fast, i), fromHex(FIPS_CIPHERTEXT[i]),
+                            firstBlock);
+                    cipher = new AESCipher();
+                    cipher.init(Cipher.DECRYPT_MODE, spec);
+                    assertArrayEquals("Decrypted text", plain,
+                            cipher.doFinal(code));
+                }
+            }
+        } finally {
+            AESCipher.setUseFastEngine(wasFast);
+        }
+    }
+
+}
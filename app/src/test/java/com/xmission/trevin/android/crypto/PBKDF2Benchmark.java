@@ -0,0 +1,82 @@
+/*
+ * Copyright © 2026 Trevin Beattie
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.xmission.trevin.android.crypto;
+
+import static org.junit.Assert.*;
+
+import org.junit.Ignore;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Timing of the PBKDF2 key generator with the parameters the
+ * application uses for its password hash.  This depends too much on
+ * the machine to run with the unit tests; remove the {@link Ignore}
+ * annotation to run it by hand.  The derived keys are checked by
+ * {@link PBKDF2Tests}.
+ *
+ * @author Trevin Beattie
+ */
+@Ignore("Benchmark; run by hand")
+public class PBKDF2Benchmark {
+
+    /** Random number generator for the salt */
+    final Random RAND = new Random();
+
+    /** Derive a key with our PBKDF2 implementation */
+    private static byte[] derive(byte[] password, byte[] salt,
+            int iterations, int keyBytes) {
+        PKCS5S2ParametersGenerator gen = new PKCS5S2ParametersGenerator();
+        gen.init(password, salt, iterations);
+        return ((KeyParameter) gen.generateDerivedParameters(keyBytes * 8))
+                .getKey();
+    }
+
+    /**
+     * Time a key derivation with the same parameters the application
+     * uses for the password hash and print the rate.  This only checks
+     * that repeated derivations agree; the timing is informational.
+     */
+    @Test
+    public void testThroughput() {
+        byte[] password = "correct horse battery staple"
+                .getBytes(StandardCharsets.US_ASCII);
+        byte[] salt = new byte[32];
+        RAND.nextBytes(salt);
+        final int iterations = 100000;
+        byte[] first = null;
+        long elapsed = 0;
+        // Run twice so the second pass is warmed up
+        for (int pass = 0; pass < 2; pass++) {
+            long start = System.nanoTime();
+            byte[] key = derive(password, salt, iterations, 32);
+            elapsed = System.nanoTime() - start;
+            if (first == null)
+                first = key;
+            else
+                assertArrayEquals("Repeated derivation", first, key);
+        }
+        System.out.println(String.format(Locale.US,
+                "PBKDF2-HMAC-SHA256: %d iterations in %.1f ms"
+                + " (%.0f iterations/s)", iterations, elapsed / 1.0e6,
+                iterations * 1.0e9 / elapsed));
+    }
+
+}
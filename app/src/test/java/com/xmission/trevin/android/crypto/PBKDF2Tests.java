@@ -0,0 +1,135 @@
+/*
+ * Copyright © 2026 Trevin Beattie
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.xmission.trevin.android.crypto;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.util.Locale;
+import java.util.Random;
+
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.PBEKeySpec;
+
+/**
+ * Tests for the SHA-256 digest and the PBKDF2 key generator built on it,
+ * checked against published test vectors and the Java runtime&rsquo;s
+ * own implementations.
+ *
+ * @author Trevin Beattie
+ */
+public class PBKDF2Tests {
+
+    /** Random number generator for some tests */
+    final Random RAND = new Random();
+
+    /** Convert a string of hex digits to a byte array */
+    private static byte[] fromHex(String hex) {
+        byte[] bytes = new byte[hex.length() / 2];
+        for (int i = 0; i < bytes.length; i++)
+            bytes[i] = (byte) Integer.parseInt(
+                    hex.substring(2 * i, 2 * i + 2), 16);
+        return bytes;
+    }
+
+    /** Derive a key with our PBKDF2 implementation */
+    private static byte[] derive(byte[] password, byte[] salt,
+            int iterations, int keyBytes) {
+        PKCS5S2ParametersGenerator gen = new PKCS5S2ParametersGenerator();
+        gen.init(password, salt, iterations);
+        return ((KeyParameter) gen.generateDerivedParameters(keyBytes * 8))
+                .getKey();
+    }
+
+    /** Compute a SHA-256 hash with our digest */
+    private static byte[] sha256(byte[] data, int chunkSize) {
+        SHA256Digest digest = new SHA256Digest();
+        for (int off = 0; off < data.length; off += chunkSize)
+            digest.update(data, off, Math.min(chunkSize, data.length - off));
+        byte[] out = new byte[digest.getDigestSize()];
+        digest.doFinal(out, 0);
+        return out;
+    }
+
+    /** Test the PBKDF2-HMAC-SHA256 vectors from RFC 7914 section 11 */
+    @Test
+    public void testKnownAnswers() {
+        assertArrayEquals("PBKDF2(\"passwd\", \"salt\", 1)", fromHex(
+                "55ac046e56e3089fec1691c22544b605f94185216dde0465e68b9d57c20dacbc"
+                + "49ca9cccf179b645991664b39d77ef317c71b845b1e30bd509112041d3a19783"),
+                derive("passwd".getBytes(StandardCharsets.US_ASCII),
+                        "salt".getBytes(StandardCharsets.US_ASCII), 1, 64));
+        assertArrayEquals("PBKDF2(\"Password\", \"NaCl\", 80000)", fromHex(
+                "4ddcd8f60b98be21830cee5ef22701f9641a4418d04c0414aeff08876b34ab56"
+                + "a1d425a1225833549adb841b51c9b3176a272bdebba1d078478f62b397f33c8d"),
+                derive("Password".getBytes(StandardCharsets.US_ASCII),
+                        "NaCl".getBytes(StandardCharsets.US_ASCII), 80000, 64));
+    }
+
+    /**
+     * Compare our SHA-256 digest against the runtime&rsquo;s for
+     * messages of random lengths around the block and padding
+     * boundaries, fed to the digest in random sized pieces.
+     */
+    @Test
+    public void testDigestMatchesRuntime() throws GeneralSecurityException {
+        MessageDigest expected = MessageDigest.getInstance("SHA-256");
+        for (int i = 0; i < 500; i++) {
+            byte[] data = new byte[(i < 200) ? i : RAND.nextInt(4096)];
+            RAND.nextBytes(data);
+            assertArrayEquals("SHA-256 of " + data.length + " bytes",
+                    expected.digest(data),
+                    sha256(data, 1 + RAND.nextInt(100)));
+        }
+    }
+
+    /**
+     * Compare our PBKDF2 against the runtime&rsquo;s for random
+     * passwords, salts, iteration counts and key lengths
+     * (including ones that are not a multiple of the digest size).
+     */
+    @Test
+    public void testDerivationMatchesRuntime()
+        throws GeneralSecurityException {
+        SecretKeyFactory factory =
+                SecretKeyFactory.getInstance("PBKDF2WithHmacSHA256");
+        for (int i = 0; i < 50; i++) {
+            // The runtime takes the password as chars and encodes them
+            // as UTF-8, so stick to printable ASCII for a fair comparison
+            char[] password = new char[1 + RAND.nextInt(80)];
+            for (int j = 0; j < password.length; j++)
+                password[j] = (char) (' ' + RAND.nextInt(95));
+            byte[] salt = new byte[1 + RAND.nextInt(64)];
+            RAND.nextBytes(salt);
+            int iterations = 1 + RAND.nextInt(2000);
+            int keyBytes = 1 + RAND.nextInt(100);
+            byte[] expected = factory.generateSecret(new PBEKeySpec(
+                    password, salt, iterations, keyBytes * 8)).getEncoded();
+            assertArrayEquals(String.format(Locale.US,
+                    "Key from %d-character password, %d-byte salt,"
+                    + " %d iterations", password.length, salt.length,
+                    iterations), expected, derive(new String(password)
+                            .getBytes(StandardCharsets.US_ASCII),
+                            salt, iterations, keyBytes));
+        }
+    }
+
+}
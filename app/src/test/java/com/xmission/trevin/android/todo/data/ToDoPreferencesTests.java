@@ -555,6 +555,69 @@ public class ToDoPreferencesTests
                 false, (b) -> toDoPrefs.setExportPrivate(b));
     }
 
+    @Test
+    public void testExportCompressedTrue() {
+        runGetBooleanPreferenceTest("Export Compressed",
+                TPREF_EXPORT_COMPRESSED, false, true,
+                () -> toDoPrefs.exportCompressed());
+    }
+
+    @Test
+    public void testExportCompressedDefault() {
+        runGetBooleanPreferenceTest("Export Compressed",
+                TPREF_EXPORT_COMPRESSED, true, false,
+                () -> toDoPrefs.exportCompressed());
+    }
+
+    @Test
+    public void testSetExportCompressedTrue() {
+        runSetBooleanPreferenceTest("Export Compressed",
+                TPREF_EXPORT_COMPRESSED, "setExportCompressed",
+                true, (b) -> toDoPrefs.setExportCompressed(b));
+    }
+
+    @Test
+    public void testExportSnapshotTrue() {
+        runGetBooleanPreferenceTest("Export Snapshot",
+                TPREF_EXPORT_SNAPSHOT, false, true,
+                () -> toDoPrefs.exportSnapshot());
+    }
+
+    @Test
+    public void testExportSnapshotDefault() {
+        runGetBooleanPreferenceTest("Export Snapshot",
+                TPREF_EXPORT_SNAPSHOT, true, false,
+                () -> toDoPrefs.exportSnapshot());
+    }
+
+    @Test
+    public void testSetExportSnapshotTrue() {
+        runSetBooleanPreferenceTest("Export Snapshot",
+                TPREF_EXPORT_SNAPSHOT, "setExportSnapshot",
+                true, (b) -> toDoPrefs.setExportSnapshot(b));
+    }
+
+    @Test
+    public void testExportIncrementalTrue() {
+        runGetBooleanPreferenceTest("Export Incremental",
+                TPREF_EXPORT_INCREMENTAL, false, true,
+                () -> toDoPrefs.exportIncremental());
+    }
+
+    @Test
+    public void testExportIncrementalDefault() {
+        runGetBooleanPreferenceTest("Export Incremental",
+                TPREF_EXPORT_INCREMENTAL, true, false,
+                () -> toDoPrefs.exportIncremental());
+    }
+
+    @Test
+    public void testSetExportIncrementalTrue() {
+        runSetBooleanPreferenceTest("Export Incremental",
+                TPREF_EXPORT_INCREMENTAL, "setExportIncremental",
+                true, (b) -> toDoPrefs.setExportIncremental(b));
+    }
+
     /** Test getting the import file name */
     @Test
     public void testGetImportFile() {
@@ -658,7 +721,7 @@ public class ToDoPreferencesTests
 
     /** The set of preference keys managed by ToDoPreferences */
     private static final String[] TPREF_KEYS = {
-            TPREF_EXPORT_FILE, TPREF_EXPORT_PRIVATE,
+            TPREF_EXPORT_FILE, TPREF_EXPORT_PRIVATE, TPREF_EXPORT_COMPRESSED,
             TPREF_IMPORT_FILE, TPREF_IMPORT_PRIVATE, TPREF_IMPORT_TYPE,
             TPREF_NOTIFICATION_SOUND, TPREF_NOTIFICATION_VIBRATE,
             TPREF_SCROLL_THRESHOLD, TPREF_SELECTED_CATEGORY,
@@ -922,6 +985,43 @@ public class ToDoPreferencesTests
                 () -> toDoPrefs.setExportPrivate(RAND.nextBoolean()));
     }
 
+    @Test
+    public void testExportCompressedListener() {
+        runListenerCalledTest(TPREF_EXPORT_COMPRESSED, "setExportCompressed",
+                () -> toDoPrefs.setExportCompressed(RAND.nextBoolean()));
+    }
+
+    @Test
+    public void testExportCompressedIgnored() {
+        runListenerNotCalledTest(TPREF_EXPORT_COMPRESSED, "setExportCompressed",
+                () -> toDoPrefs.setExportCompressed(RAND.nextBoolean()));
+    }
+
+    @Test
+    public void testExportSnapshotListener() {
+        runListenerCalledTest(TPREF_EXPORT_SNAPSHOT, "setExportSnapshot",
+                () -> toDoPrefs.setExportSnapshot(RAND.nextBoolean()));
+    }
+
+    @Test
+    public void testExportSnapshotIgnored() {
+        runListenerNotCalledTest(TPREF_EXPORT_SNAPSHOT, "setExportSnapshot",
+                () -> toDoPrefs.setExportSnapshot(RAND.nextBoolean()));
+    }
+
+    @Test
+    public void testExportIncrementalListener() {
+        runListenerCalledTest(TPREF_EXPORT_INCREMENTAL, "setExportIncremental",
+                () -> toDoPrefs.setExportIncremental(RAND.nextBoolean()));
+    }
+
+    @Test
+    public void testExportIncrementalIgnored() {
+        runListenerNotCalledTest(TPREF_EXPORT_INCREMENTAL,
+                "setExportIncremental",
+                () -> toDoPrefs.setExportIncremental(RAND.nextBoolean()));
+    }
+
     @Test
     public void testImportFileListener() {
         runListenerCalledTest(TPREF_IMPORT_FILE, "setImportFile",
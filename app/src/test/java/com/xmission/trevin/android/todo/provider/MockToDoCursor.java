@@ -72,6 +72,12 @@ public class MockToDoCursor implements ToDoCursor {
         return queryRows.get(currentPosition).clone();
     }
 
+    @Override
+    public long getItemId() {
+        checkAccess();
+        return queryRows.get(currentPosition).getId();
+    }
+
     @Override
     public int getCount() {
         return queryRows.size();
@@ -0,0 +1,328 @@
+/*
+ * Copyright © 2026 Trevin Beattie
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.xmission.trevin.android.todo.service;
+
+import static com.xmission.trevin.android.todo.util.RandomToDoUtils.*;
+
+import static org.junit.Assert.*;
+
+import com.xmission.trevin.android.todo.data.MockSharedPreferences;
+import com.xmission.trevin.android.todo.data.ToDoCategory;
+import com.xmission.trevin.android.todo.data.ToDoItem;
+import com.xmission.trevin.android.todo.data.ToDoPreferences;
+import com.xmission.trevin.android.todo.provider.MockToDoRepository;
+import com.xmission.trevin.android.todo.service.XMLImporter.ImportType;
+import com.xmission.trevin.android.todo.util.StringEncryption;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Tests for the index of existing To Do items
+ * used when merging an import with the database.
+ *
+ * @author Trevin Beattie
+ */
+public class ExistingItemIndexTests {
+
+    private static MockSharedPreferences underlyingPrefs = null;
+    private static ToDoPreferences mockPrefs = null;
+    private static MockToDoRepository mockRepo = null;
+
+    @Before
+    public void initializeRepository() {
+        if (mockPrefs == null) {
+            underlyingPrefs = MockSharedPreferences.getInstance();
+            ToDoPreferences.setSharedPreferences(underlyingPrefs);
+            mockPrefs = ToDoPreferences.getInstance(null);
+        }
+        if (mockRepo == null) {
+            mockRepo = MockToDoRepository.getInstance();
+        }
+        underlyingPrefs.resetMock();
+        mockPrefs.setTimeZone(ZoneOffset.UTC);
+        mockRepo.clear();
+    }
+
+    /**
+     * Add random (unencrypted) To Do items to the mock repository.
+     *
+     * @param count the number of items to add
+     *
+     * @return the items that were added
+     */
+    private static List<ToDoItem> addItems(int count) {
+        String unfiled = mockRepo.getCategoryById(
+                ToDoCategory.UNFILED).getName();
+        List<ToDoItem> items = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            ToDoItem item = randomToDo();
+            item.setCreateTime(item.getCreateTime()
+                    .truncatedTo(ChronoUnit.MILLIS));
+            item.setModTime(item.getModTime().truncatedTo(ChronoUnit.MILLIS));
+            if (item.getCompleted() != null)
+                item.setCompleted(item.getCompleted()
+                        .truncatedTo(ChronoUnit.MILLIS));
+            item.setCategoryName(unfiled);
+            items.add(mockRepo.insertItem(item));
+        }
+        return items;
+    }
+
+    /** Export the mock repository including private items */
+    private static byte[] export() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        XMLExporter.export(mockPrefs, mockRepo, out, true,
+                new MockProgressBar());
+        return out.toByteArray();
+    }
+
+    /** Import an export into the mock repository */
+    private static void importXML(byte[] xml, ImportType importType)
+            throws IOException {
+        XMLImporter.importData(mockPrefs, mockRepo, "test.xml",
+                new ByteArrayInputStream(xml),
+                importType, true, null, (String) null,
+                new MockProgressBar());
+    }
+
+    /**
+     * Loading the index must read every item across
+     * several pages and record the fields we compare.
+     */
+    @Test
+    public void testLoadAcrossPages() {
+        List<ToDoItem> items = addItems(
+                ExistingItemIndex.PAGE_SIZE * 2 + 17);
+        ExistingItemIndex index = ExistingItemIndex.load(mockRepo, null);
+        assertEquals("Number of items indexed",
+                items.size(), index.size());
+        for (ToDoItem item : items) {
+            int slot = index.find(item.getId());
+            assertTrue("Item #" + item.getId() + " not found", slot >= 0);
+            assertEquals("Item ID", (long) item.getId(), index.getItemId(slot));
+            assertEquals("Create time",
+                    item.getCreateTime().toEpochMilli(),
+                    index.getCreateTime(slot));
+            assertEquals("Modification time",
+                    item.getModTime().toEpochMilli(),
+                    index.getModTime(slot));
+            assertEquals("Category", item.getCategoryId(),
+                    index.getCategoryId(slot));
+            assertEquals("Private", item.isPrivate(), index.isPrivate(slot));
+            assertTrue("Fingerprint should be known",
+                    index.hasFingerprint(slot));
+            assertTrue("Description should match",
+                    index.descriptionMatches(slot, item.getDescription()));
+        }
+    }
+
+    /** Missing and removed items must not be found */
+    @Test
+    public void testFindAndRemove() {
+        List<ToDoItem> items = addItems(10);
+        ExistingItemIndex index = ExistingItemIndex.load(mockRepo, null);
+        assertEquals("Unknown ID", -1,
+                index.find(mockRepo.getMaxItemId() + 1));
+        long removedId = items.get(3).getId();
+        index.remove(removedId);
+        assertEquals("Removed item", -1, index.find(removedId));
+        assertTrue("Remaining item should be found",
+                index.find(items.get(4).getId()) >= 0);
+        // Putting the item back makes it visible again
+        index.put(items.get(3), "Restored");
+        int slot = index.find(removedId);
+        assertTrue("Restored item should be found", slot >= 0);
+        assertTrue("Restored description",
+                index.descriptionMatches(slot, "Restored"));
+    }
+
+    /** The index must grow past its initial capacity */
+    @Test
+    public void testGrow() {
+        ExistingItemIndex index = new ExistingItemIndex(1);
+        List<ToDoItem> items = new ArrayList<>();
+        for (int i = 1; i <= 100; i++) {
+            ToDoItem item = randomToDo();
+            item.setId(i * 7L);
+            items.add(item);
+            index.put(item, item.getDescription());
+        }
+        assertEquals("Size", items.size(), index.size());
+        // Replacing an entry must not add a slot
+        ToDoItem changed = items.get(50);
+        changed.setModTime(changed.getModTime().plusSeconds(60));
+        index.put(changed, changed.getDescription());
+        assertEquals("Size after replacing", items.size(), index.size());
+        for (ToDoItem item : items) {
+            int slot = index.find(item.getId());
+            assertTrue("Item #" + item.getId() + " not found", slot >= 0);
+            assertEquals("Modification time",
+                    item.getModTime().toEpochMilli(),
+                    index.getModTime(slot));
+        }
+    }
+
+    /**
+     * An encrypted description we can&rsquo;t read has no fingerprint
+     * and matches nothing.
+     */
+    @Test
+    public void testEncryptedFingerprint() {
+        ExistingItemIndex index = new ExistingItemIndex(4);
+        ToDoItem item = new ToDoItem();
+        item.setId(5);
+        item.setCreateTime(Instant.now());
+        item.setModTime(Instant.now());
+        item.setPrivate(2);
+        item.setEncryptedDescription(new byte[] { 1, 2, 3, 4 });
+        index.put(item, null);
+        int slot = index.find(5);
+        assertFalse("Fingerprint should be unknown",
+                index.hasFingerprint(slot));
+        assertFalse("Unknown description matched",
+                index.descriptionMatches(slot, ""));
+        index.put(item, "Secret");
+        assertTrue("Fingerprint should be known", index.hasFingerprint(slot));
+        assertTrue("Description should match",
+                index.descriptionMatches(slot, "Secret"));
+    }
+
+    /**
+     * Loading the index with the database&rsquo;s key must fingerprint
+     * the decrypted descriptions of private items; without the key
+     * they are left unknown.
+     */
+    @Test
+    public void testLoadEncrypted() throws Exception {
+        List<ToDoItem> items = addItems(ExistingItemIndex.PAGE_SIZE + 5);
+        StringEncryption se = new StringEncryption();
+        try {
+            se.setPassword("Test".toCharArray());
+            se.addSalt();
+            for (int i = 0; i < items.size(); i += 3) {
+                ToDoItem item = items.get(i);
+                item.setEncryptedDescription(
+                        se.encrypt(item.getDescription()));
+                item.setPrivate(StringEncryption.encryptionType());
+                mockRepo.updateItem(item);
+            }
+
+            ExistingItemIndex index = ExistingItemIndex.load(mockRepo, se);
+            for (ToDoItem item : items) {
+                int slot = index.find(item.getId());
+                assertTrue("Item #" + item.getId() + " description",
+                        index.descriptionMatches(slot,
+                                item.getDescription()));
+            }
+
+            index = ExistingItemIndex.load(mockRepo, null);
+            for (int i = 0; i < items.size(); i++) {
+                int slot = index.find(items.get(i).getId());
+                assertEquals("Item #" + items.get(i).getId()
+                        + " fingerprint known", (i % 3) != 0,
+                        index.hasFingerprint(slot));
+            }
+        } finally {
+            se.forgetPassword();
+        }
+    }
+
+    /**
+     * A description must not match one of a different length,
+     * nor one with the same length but different text.
+     */
+    @Test
+    public void testDescriptionMatches() {
+        ExistingItemIndex index = new ExistingItemIndex(4);
+        ToDoItem item = randomToDo();
+        item.setId(9);
+        index.put(item, "Buy milk");
+        int slot = index.find(9);
+        assertTrue("Same text", index.descriptionMatches(slot,
+                new String("Buy milk")));
+        assertFalse("Longer text",
+                index.descriptionMatches(slot, "Buy milk "));
+        assertFalse("Same length",
+                index.descriptionMatches(slot, "Buy silk"));
+        assertFalse("No text", index.descriptionMatches(slot, null));
+    }
+
+    /** Different descriptions must have different fingerprints */
+    @Test
+    public void testFingerprint() {
+        assertEquals("Same text",
+                ExistingItemIndex.fingerprint("Buy milk"),
+                ExistingItemIndex.fingerprint(new String("Buy milk")));
+        assertNotEquals("Different text",
+                ExistingItemIndex.fingerprint("Buy milk"),
+                ExistingItemIndex.fingerprint("Buy silk"));
+        assertNotEquals("High byte of a character",
+                ExistingItemIndex.fingerprint("ā"),
+                ExistingItemIndex.fingerprint("ȁ"));
+        assertNotEquals("Empty and null",
+                ExistingItemIndex.fingerprint(""),
+                ExistingItemIndex.fingerprint("\u0000"));
+    }
+
+    /**
+     * Merging an export back into the same database should change
+     * nothing, and an item whose description was changed locally
+     * should be added as a new item.
+     */
+    @Test
+    public void testMergeSameExport() throws IOException {
+        List<ToDoItem> items = addItems(300);
+        byte[] xml = export();
+        importXML(xml, ImportType.MERGE);
+        assertEquals("Items after merging the same export",
+                items.size(), mockRepo.countItems());
+
+        ToDoItem changed = mockRepo.getItemById(items.get(10).getId());
+        changed.setDescription(changed.getDescription() + " (changed)");
+        mockRepo.updateItem(changed);
+        importXML(xml, ImportType.MERGE);
+        assertEquals("Items after merging a conflicting item",
+                items.size() + 1, mockRepo.countItems());
+    }
+
+    /**
+     * When an item from the file has to be given a new ID, a later
+     * item in the file with that ID must see the one just added.
+     */
+    @Test
+    public void testAddTwiceGetsNewIds() throws IOException {
+        List<ToDoItem> items = addItems(50);
+        byte[] xml = export();
+        importXML(xml, ImportType.ADD);
+        assertEquals("Items after the first add",
+                items.size() * 2, mockRepo.countItems());
+        importXML(xml, ImportType.ADD);
+        assertEquals("Items after the second add",
+                items.size() * 3, mockRepo.countItems());
+    }
+
+}
@@ -0,0 +1,415 @@
+/*
+ * Copyright © 2026 Trevin Beattie
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.xmission.trevin.android.todo.service;
+
+import static com.xmission.trevin.android.todo.service.XMLExporter.*;
+import static com.xmission.trevin.android.todo.util.RandomToDoUtils.*;
+
+import static org.junit.Assert.*;
+
+import com.xmission.trevin.android.todo.data.MockSharedPreferences;
+import com.xmission.trevin.android.todo.data.ToDoCategory;
+import com.xmission.trevin.android.todo.data.ToDoItem;
+import com.xmission.trevin.android.todo.data.ToDoMetadata;
+import com.xmission.trevin.android.todo.data.ToDoPreferences;
+import com.xmission.trevin.android.todo.provider.MockToDoRepository;
+import com.xmission.trevin.android.todo.provider.ToDoCursor;
+import com.xmission.trevin.android.todo.provider.ToDoRepositoryImpl;
+import com.xmission.trevin.android.todo.provider.ToDoSchema;
+import com.xmission.trevin.android.todo.service.XMLExporter.Watermark;
+import com.xmission.trevin.android.todo.service.XMLImporter.ImportType;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Unit tests for incremental XML exports and applying them
+ * on top of a full export.
+ *
+ * @author Trevin Beattie
+ */
+public class IncrementalExportTests {
+
+    private static final Random RAND = new Random();
+
+    private static MockSharedPreferences underlyingPrefs = null;
+    private static ToDoPreferences mockPrefs = null;
+    private static MockToDoRepository mockRepo = null;
+
+
+    @Before
+    public void initializeRepository() {
+        if (mockPrefs == null) {
+            underlyingPrefs = MockSharedPreferences.getInstance();
+            ToDoPreferences.setSharedPreferences(underlyingPrefs);
+            mockPrefs = ToDoPreferences.getInstance(null);
+        }
+        if (mockRepo == null) {
+            mockRepo = MockToDoRepository.getInstance();
+        }
+        underlyingPrefs.resetMock();
+        mockPrefs.setTimeZone(ZoneOffset.UTC);
+        mockRepo.clear();
+    }
+
+    /**
+     * Add random (unencrypted) To Do items to the mock repository.
+     *
+     * @param count the number of items to add
+     */
+    private static void addItems(int count) {
+        String unfiled = mockRepo.getCategoryById(
+                ToDoCategory.UNFILED).getName();
+        for (int i = 0; i < count; i++) {
+            ToDoItem item = randomToDo();
+            item.setCreateTime(item.getCreateTime()
+                    .truncatedTo(ChronoUnit.MILLIS));
+            item.setModTime(item.getModTime().truncatedTo(ChronoUnit.MILLIS));
+            if (item.getCompleted() != null)
+                item.setCompleted(item.getCompleted()
+                        .truncatedTo(ChronoUnit.MILLIS));
+            item.setCategoryName(unfiled);
+            mockRepo.insertItem(item);
+        }
+    }
+
+    /**
+     * Read all To Do records from the mock repository, sorted by ID.
+     */
+    private static List<ToDoItem> readToDos() {
+        List<ToDoItem> list = new ArrayList<>();
+        ToDoCursor cursor = mockRepo.getItems(
+                ToDoPreferences.ALL_CATEGORIES, true, LocalDate.now(),
+                true, true, ToDoRepositoryImpl.TODO_TABLE_NAME + "."
+                        + ToDoSchema.ToDoItemColumns._ID);
+        try {
+            while (cursor.moveToNext())
+                list.add(cursor.getItem());
+        } finally {
+            cursor.close();
+        }
+        return list;
+    }
+
+    /**
+     * Make a round of random changes to the mock repository:
+     * modify some items, delete some, and add some new ones.
+     *
+     * The changes are made at least a few milliseconds after
+     * the last export, as they would be in real use.
+     *
+     * @return the number of items which a delta should include
+     * (changed or added)
+     */
+    private static int changeItems(int modifyCount, int deleteCount,
+                                   int addCount) {
+        try {
+            Thread.sleep(5);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        List<ToDoItem> items = readToDos();
+        for (int i = 0; i < modifyCount; i++) {
+            ToDoItem item = items.remove(RAND.nextInt(items.size()));
+            item.setDescription(randomSentence());
+            item.setChecked(!item.isChecked());
+            item.setModTime(Instant.now().truncatedTo(ChronoUnit.MILLIS));
+            mockRepo.updateItem(item);
+        }
+        for (int i = 0; i < deleteCount; i++) {
+            ToDoItem item = items.remove(RAND.nextInt(items.size()));
+            mockRepo.deleteItem(item.getId());
+        }
+        addItems(addCount);
+        return modifyCount + addCount;
+    }
+
+    /**
+     * Export the mock repository.
+     *
+     * @param incremental whether to do an incremental export
+     *
+     * @return the exported XML
+     */
+    private static String export(boolean exportPrivate, boolean incremental)
+            throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        XMLExporter.export(mockPrefs, mockRepo, out, exportPrivate,
+                incremental, new MockProgressBar());
+        return new String(out.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    /** Import an export into the mock repository. */
+    private static void importXML(String xml, ImportType importType)
+            throws IOException {
+        XMLImporter.importData(mockPrefs, mockRepo, "test.xml",
+                new ByteArrayInputStream(xml.getBytes(StandardCharsets.UTF_8)),
+                importType, true, null, (String) null,
+                new MockProgressBar());
+    }
+
+    /** Count the occurrences of an element in an XML document */
+    private static int countElements(String xml, String tag) {
+        int count = 0;
+        int i = -1;
+        while ((i = xml.indexOf("<" + tag + " ", i + 1)) >= 0)
+            count++;
+        return count;
+    }
+
+    /**
+     * Restoring a base export followed by each delta in turn
+     * should reproduce the final state of the database, and each
+     * delta should only hold the items which changed.
+     */
+    @Test
+    public void testBaseAndDeltaChain() throws IOException {
+        addItems(200);
+        String base = export(true, true);
+        assertFalse("Base export is marked incremental",
+                base.contains(" " + ATTR_SINCE + "=\""));
+        assertEquals("Items in base export", 200,
+                countElements(base, TODO_ITEM));
+        assertNotNull("No watermark was stored",
+                mockRepo.getMetadataByName(METADATA_EXPORT_WATERMARK));
+
+        List<String> deltas = new ArrayList<>();
+        for (int round = 0; round < 3; round++) {
+            int deleteCount = RAND.nextInt(5) + 1;
+            int changeCount = changeItems(RAND.nextInt(10) + 1,
+                    deleteCount, RAND.nextInt(5) + 1);
+            String delta = export(true, true);
+            assertTrue("Delta is not marked incremental",
+                    delta.contains(" " + ATTR_SINCE + "=\""));
+            assertEquals("Items in delta " + round, changeCount,
+                    countElements(delta, TODO_ITEM));
+            assertEquals("Tombstones in delta " + round, deleteCount,
+                    countElements(delta, TOMBSTONE_ITEM));
+            assertTrue("Delta is not smaller than the base export",
+                    delta.length() < base.length() / 4);
+            deltas.add(delta);
+        }
+        List<ToDoCategory> expectedCategories = mockRepo.getCategories();
+        List<ToDoItem> expectedItems = readToDos();
+
+        mockRepo.clear();
+        importXML(base, ImportType.CLEAN);
+        for (String delta : deltas)
+            importXML(delta, ImportType.UPDATE);
+
+        assertEquals("Categories", expectedCategories,
+                mockRepo.getCategories());
+        assertEquals("To Do items", expectedItems, readToDos());
+    }
+
+    /**
+     * An incremental export with nothing changed should have no
+     * items or tombstones, and importing it should change nothing.
+     */
+    @Test
+    public void testEmptyDelta() throws IOException {
+        addItems(20);
+        export(true, true);
+        String delta = export(true, true);
+        assertEquals("Items in delta", 0, countElements(delta, TODO_ITEM));
+        assertEquals("Tombstones in delta", 0,
+                countElements(delta, TOMBSTONE_ITEM));
+        List<ToDoItem> expectedItems = readToDos();
+        importXML(delta, ImportType.UPDATE);
+        assertEquals("To Do items", expectedItems, readToDos());
+    }
+
+    /**
+     * A regular export must neither use nor move the watermark,
+     * and the watermark itself must never be exported.
+     */
+    @Test
+    public void testFullExportIgnoresWatermark() throws IOException {
+        addItems(20);
+        String full = export(true, false);
+        assertNull("A full export stored a watermark",
+                mockRepo.getMetadataByName(METADATA_EXPORT_WATERMARK));
+        export(true, true);
+        byte[] watermark = mockRepo.getMetadataByName(
+                METADATA_EXPORT_WATERMARK).getValue().clone();
+        changeItems(2, 2, 2);
+        full = export(true, false);
+        assertFalse("The watermark was exported",
+                full.contains(METADATA_EXPORT_WATERMARK));
+        assertEquals("Items in full export", 20,
+                countElements(full, TODO_ITEM));
+        assertArrayEquals("A full export changed the watermark", watermark,
+                mockRepo.getMetadataByName(METADATA_EXPORT_WATERMARK)
+                        .getValue());
+    }
+
+    /**
+     * Changing whether private records are exported
+     * should fall back to a full export.
+     */
+    @Test
+    public void testPrivateChangeForcesFullExport() throws IOException {
+        addItems(30);
+        export(true, true);
+        changeItems(1, 0, 0);
+        String xml = export(false, true);
+        assertFalse("Export with a different private setting"
+                        + " is marked incremental",
+                xml.contains(" " + ATTR_SINCE + "=\""));
+        int publicCount = 0;
+        for (ToDoItem item : readToDos()) {
+            if (!item.isPrivate())
+                publicCount++;
+        }
+        assertEquals("Items in export", publicCount,
+                countElements(xml, TODO_ITEM));
+    }
+
+    /**
+     * A delta must not be used for a clean import, since that
+     * would throw away everything that hadn&rsquo;t changed.
+     */
+    @Test
+    public void testDeltaRejectedForCleanImport() throws IOException {
+        addItems(20);
+        export(true, true);
+        changeItems(2, 1, 1);
+        String delta = export(true, true);
+        List<ToDoItem> expectedItems = readToDos();
+        try {
+            importXML(delta, ImportType.CLEAN);
+            fail("Clean import of a delta succeeded");
+        } catch (IllegalStateException e) {
+            // Success
+        }
+        assertEquals("To Do items", expectedItems, readToDos());
+    }
+
+    /**
+     * When updating, a tombstone should not delete an item
+     * which has been modified since the delta was exported.
+     */
+    @Test
+    public void testUpdateKeepsItemsModifiedAfterDelete() throws IOException {
+        addItems(10);
+        List<ToDoItem> items = readToDos();
+        String base = export(true, true);
+        ToDoItem deleted = items.get(RAND.nextInt(items.size()));
+        mockRepo.deleteItem(deleted.getId());
+        String delta = export(true, true);
+
+        mockRepo.clear();
+        importXML(base, ImportType.CLEAN);
+        ToDoItem kept = mockRepo.getItemById(deleted.getId());
+        kept.setModTime(Instant.now().plusSeconds(60)
+                .truncatedTo(ChronoUnit.MILLIS));
+        mockRepo.updateItem(kept);
+        importXML(delta, ImportType.UPDATE);
+        assertNotNull("Item modified after the delta was deleted",
+                mockRepo.getItemById(deleted.getId()));
+
+        mockRepo.clear();
+        importXML(base, ImportType.CLEAN);
+        importXML(delta, ImportType.UPDATE);
+        assertNull("Deleted item was not removed",
+                mockRepo.getItemById(deleted.getId()));
+    }
+
+    /**
+     * A tombstone outside of an incremental export is an error.
+     */
+    @Test
+    public void testTombstonesInFullExport() throws IOException {
+        addItems(5);
+        String xml = export(true, false).replace("</" + DOCUMENT_TAG + ">",
+                "  <" + TOMBSTONES_TAG + " " + ATTR_COUNT + "=\"1\">\n"
+                        + "    <" + TOMBSTONE_ITEM + " " + ATTR_ID
+                        + "=\"1\"/>\n"
+                        + "  </" + TOMBSTONES_TAG + ">\n"
+                        + "</" + DOCUMENT_TAG + ">");
+        try {
+            importXML(xml, ImportType.UPDATE);
+            fail("Import of tombstones in a full export succeeded");
+        } catch (XMLParseException e) {
+            // Success
+        }
+    }
+
+    /**
+     * The watermark should survive being stored and read back,
+     * even with large gaps between ID&rsquo;s.
+     */
+    @Test
+    public void testWatermarkRoundTrip() {
+        Watermark watermark = new Watermark(RAND.nextBoolean());
+        long[] ids = new long[RAND.nextInt(1000) + 1];
+        long id = 0;
+        for (int i = 0; i < ids.length; i++) {
+            id += (RAND.nextInt(4) == 0)
+                    ? RAND.nextInt(Integer.MAX_VALUE) + 1L : 1;
+            ids[i] = id;
+            ToDoItem item = new ToDoItem();
+            item.setId(id);
+            item.setModTime(Instant.ofEpochMilli(
+                    RAND.nextInt(Integer.MAX_VALUE)));
+            watermark.record(item);
+        }
+        Watermark copy = Watermark.fromBytes(watermark.toBytes());
+        assertEquals("Private flag", watermark.includesPrivate,
+                copy.includesPrivate);
+        assertEquals("Maximum modification time", watermark.maxModTime,
+                copy.maxModTime);
+        assertEquals("Missing ID's", 0, copy.missingFrom(watermark).length);
+        assertEquals("Extra ID's", 0, watermark.missingFrom(copy).length);
+        assertArrayEquals("Recorded ID's", ids,
+                copy.missingFrom(new Watermark(false)));
+    }
+
+    /**
+     * A corrupted watermark should be ignored, resulting in
+     * a full export.
+     */
+    @Test
+    public void testCorruptedWatermark() throws IOException {
+        addItems(20);
+        export(true, true);
+        ToDoMetadata saved = mockRepo.getMetadataByName(
+                METADATA_EXPORT_WATERMARK);
+        mockRepo.upsertMetadata(METADATA_EXPORT_WATERMARK,
+                Arrays.copyOf(saved.getValue(), saved.getValue().length / 2));
+        changeItems(1, 0, 0);
+        String xml = export(true, true);
+        assertFalse("Export with a corrupted watermark"
+                        + " is marked incremental",
+                xml.contains(" " + ATTR_SINCE + "=\""));
+        assertEquals("Items in export", 20, countElements(xml, TODO_ITEM));
+    }
+
+}
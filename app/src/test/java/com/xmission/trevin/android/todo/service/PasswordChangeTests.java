@@ -41,6 +41,7 @@ import java.util.*;
  */
 public class PasswordChangeTests {
 
+    private static final Random RAND = new Random();
     private static final RandomStringUtils SRAND = RandomStringUtils.insecure();
 
     private MockToDoRepository mockRepo = null;
@@ -380,4 +381,245 @@ public class PasswordChangeTests {
         assertEquals("Number of records re-encrypted", 2, lastProgress.current);
     }
 
+    /**
+     * Add a number of private records to the repository, about half
+     * of them encrypted with the global encryption object&rsquo;s
+     * current password.
+     *
+     * @param count the number of records to add
+     * @param clearDescriptions a map in which to record the
+     * original description of each item by its ID
+     * @param clearNotes a map in which to record the original
+     * note of each item by its ID
+     */
+    private void insertPrivateItems(int count,
+                                    Map<Long,String> clearDescriptions,
+                                    Map<Long,String> clearNotes) {
+        final String unfiledName = mockRepo.getCategoryById(
+                ToDoCategory.UNFILED).getName();
+        for (int i = 0; i < count; i++) {
+            ToDoItem item = randomToDo();
+            item.setCategoryName(unfiledName);
+            String description = item.getDescription();
+            String note = item.getNote();
+            if (RAND.nextBoolean()) {
+                item.setEncryptedDescription(
+                        globalEncryption.encrypt(description));
+                item.setDescription(null);
+                if (note != null) {
+                    item.setEncryptedNote(globalEncryption.encrypt(note));
+                    item.setNote(null);
+                }
+                item.setPrivate(StringEncryption.encryptionType());
+            } else {
+                item.setPrivate(StringEncryption.NO_ENCRYPTION);
+            }
+            item = mockRepo.insertItem(item);
+            clearDescriptions.put(item.getId(), description);
+            clearNotes.put(item.getId(), note);
+        }
+    }
+
+    /**
+     * Verify that every record has been encrypted with the
+     * given encryption object.
+     *
+     * @param se the encryption object with the expected key
+     * @param clearDescriptions the original description of each item
+     * @param clearNotes the original note of each item
+     */
+    private void assertAllEncrypted(StringEncryption se,
+                                    Map<Long,String> clearDescriptions,
+                                    Map<Long,String> clearNotes) {
+        for (Map.Entry<Long,String> entry : clearDescriptions.entrySet()) {
+            ToDoItem savedItem = mockRepo.getItemById(entry.getKey());
+            assertNotNull("To Do item #" + entry.getKey() + " not found",
+                    savedItem);
+            assertTrue("To Do item #" + entry.getKey()
+                    + " was not encrypted", savedItem.isEncrypted());
+            assertEquals("Decrypted description of #" + entry.getKey(),
+                    entry.getValue(), se.decrypt(
+                            savedItem.getEncryptedDescription()));
+            String note = clearNotes.get(entry.getKey());
+            assertEquals("Decrypted note of #" + entry.getKey(), note,
+                    (savedItem.getEncryptedNote() == null) ? null
+                            : se.decrypt(savedItem.getEncryptedNote()));
+        }
+    }
+
+    /**
+     * Test changing the password on enough records to fill several
+     * batches, running them through a pool of crypto threads.
+     * Every record must be re-encrypted with the new password
+     * and written back to the right item.
+     */
+    @Test
+    public void testChangePasswordPipeline() {
+
+        // Set up the test data
+        final String oldPassword = SRAND.nextAlphanumeric(8);
+        globalEncryption.setPassword(oldPassword.toCharArray());
+        globalEncryption.addSalt();
+        globalEncryption.storePassword(mockRepo);
+
+        final int count = 700 + RAND.nextInt(100);
+        Map<Long,String> clearDescriptions = new HashMap<>();
+        Map<Long,String> clearNotes = new HashMap<>();
+        insertPrivateItems(count, clearDescriptions, clearNotes);
+
+        final String newPassword = SRAND.nextAlphanumeric(12);
+        globalEncryption.forgetPassword();
+
+        // Call the password change worker
+        PasswordChanger.setCryptoThreads(3);
+        MockProgressBar progressBar;
+        try {
+            progressBar = runPasswordChangeWorker(
+                    oldPassword, newPassword, null);
+        } finally {
+            PasswordChanger.setCryptoThreads(Math.min(4,
+                    Runtime.getRuntime().availableProcessors() - 1));
+        }
+
+        // Verify the results
+        globalEncryption.setPassword(newPassword.toCharArray());
+        assertTrue("New password hash was not stored in the repository",
+                globalEncryption.checkPassword(mockRepo));
+        assertAllEncrypted(globalEncryption, clearDescriptions, clearNotes);
+
+        MockProgressBar.Progress lastProgress = progressBar.getEndProgress();
+        assertNotNull("Progress meter was not updated", lastProgress);
+        assertEquals("Size of the progress meter", count, lastProgress.total);
+        assertEquals("Number of records changed", count, lastProgress.current);
+    }
+
+    /**
+     * Test changing the password in chunks when the change is
+     * interrupted part way through.  The database must be readable
+     * from the checkpoint left behind, a change to a different password
+     * must be refused, and running the change again must finish it.
+     */
+    @Test
+    public void testChangePasswordInChunks() {
+
+        // Set up the test data
+        final String oldPassword = SRAND.nextAlphanumeric(8);
+        globalEncryption.setPassword(oldPassword.toCharArray());
+        globalEncryption.addSalt();
+        globalEncryption.storePassword(mockRepo);
+        byte[] oldHash = mockRepo.getMetadataByName(
+                METADATA_PASSWORD_HASH).getValue();
+
+        final int count = 300 + RAND.nextInt(100);
+        final int chunkSize = 50;
+        final int failAfter = 120 + RAND.nextInt(100);
+        Map<Long,String> clearDescriptions = new HashMap<>();
+        Map<Long,String> clearNotes = new HashMap<>();
+        insertPrivateItems(count, clearDescriptions, clearNotes);
+        globalEncryption.forgetPassword();
+
+        // Simulate the process dying part way through the change
+        final String newPassword = SRAND.nextAlphanumeric(12);
+        StringEncryption oldEncryption = new StringEncryption();
+        oldEncryption.setPassword(oldPassword.toCharArray());
+        StringEncryption newEncryption = new StringEncryption();
+        newEncryption.setPassword(newPassword.toCharArray());
+        newEncryption.addSalt();
+        try {
+            PasswordChanger.changePasswordInChunks(mockRepo,
+                    oldEncryption, newEncryption, chunkSize,
+                    new ProgressBarUpdater() {
+                        @Override
+                        public void updateProgress(String mode,
+                                                   int currentCount,
+                                                   int totalCount,
+                                                   boolean throttle) {
+                            if (currentCount > failAfter)
+                                throw new IllegalStateException(
+                                        "Simulated interruption");
+                        }
+                    });
+            fail("Password change was not interrupted");
+        } catch (IllegalStateException e) {
+            // Expected
+        } finally {
+            oldEncryption.forgetPassword();
+            newEncryption.forgetPassword();
+        }
+
+        // Every item up to the checkpoint must use the new key
+        // and every item after it the old key.
+        PasswordChanger.Checkpoint checkpoint =
+                PasswordChanger.readCheckpoint(mockRepo);
+        assertNotNull("No checkpoint was saved", checkpoint);
+        assertEquals("Number of items changed at the checkpoint",
+                (failAfter / chunkSize) * chunkSize, checkpoint.numChanged);
+        assertEquals("Number of items to change", count,
+                checkpoint.changeTarget);
+        assertArrayEquals("Old password hash in the checkpoint",
+                oldHash, checkpoint.oldPasswordHash);
+        assertArrayEquals("Password hash before the change finished",
+                oldHash, mockRepo.getMetadataByName(
+                        METADATA_PASSWORD_HASH).getValue());
+        oldEncryption.setPassword(oldPassword.toCharArray());
+        assertTrue("Old password does not match the checkpoint",
+                oldEncryption.checkPassword(checkpoint.oldPasswordHash));
+        newEncryption.setPassword(newPassword.toCharArray());
+        assertTrue("New password does not match the checkpoint",
+                newEncryption.checkPassword(checkpoint.newPasswordHash));
+        Map<Long,String> doneDescriptions = new HashMap<>();
+        for (Map.Entry<Long,String> entry : clearDescriptions.entrySet()) {
+            ToDoItem savedItem = mockRepo.getItemById(entry.getKey());
+            if (entry.getKey() <= checkpoint.lastId) {
+                doneDescriptions.put(entry.getKey(), entry.getValue());
+            } else if (savedItem.isEncrypted()) {
+                assertEquals("Description of unchanged item #"
+                        + entry.getKey(), entry.getValue(),
+                        oldEncryption.decrypt(
+                                savedItem.getEncryptedDescription()));
+            } else {
+                assertEquals("Description of unchanged item #"
+                        + entry.getKey(), entry.getValue(),
+                        savedItem.getDescription());
+            }
+        }
+        assertEquals("Number of items before the checkpoint",
+                checkpoint.numChanged, doneDescriptions.size());
+        assertAllEncrypted(newEncryption, doneDescriptions, clearNotes);
+        oldEncryption.forgetPassword();
+        newEncryption.forgetPassword();
+
+        // A change to some other password must wait for this one
+        runPasswordChangeWorker(oldPassword, SRAND.nextAlphanumeric(10),
+                PasswordMismatchException.class);
+        assertTrue("Checkpoint was removed by a conflicting change",
+                PasswordChanger.hasCheckpoint(mockRepo));
+
+        // Resume the change
+        oldEncryption.setPassword(oldPassword.toCharArray());
+        newEncryption.setPassword(newPassword.toCharArray());
+        newEncryption.addSalt();
+        MockProgressBar progressBar = new MockProgressBar();
+        try {
+            PasswordChanger.changePasswordInChunks(mockRepo,
+                    oldEncryption, newEncryption, chunkSize, progressBar);
+        } finally {
+            oldEncryption.forgetPassword();
+            newEncryption.forgetPassword();
+        }
+
+        // Verify the results
+        assertFalse("Checkpoint was not removed",
+                PasswordChanger.hasCheckpoint(mockRepo));
+        globalEncryption.setPassword(newPassword.toCharArray());
+        assertTrue("New password hash was not stored in the repository",
+                globalEncryption.checkPassword(mockRepo));
+        assertAllEncrypted(globalEncryption, clearDescriptions, clearNotes);
+
+        MockProgressBar.Progress lastProgress = progressBar.getEndProgress();
+        assertNotNull("Progress meter was not updated", lastProgress);
+        assertEquals("Size of the progress meter", count, lastProgress.total);
+        assertEquals("Number of records changed", count, lastProgress.current);
+    }
+
 }
@@ -0,0 +1,297 @@
+/*
+ * Copyright © 2026 Trevin Beattie
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.xmission.trevin.android.todo.service;
+
+import static com.xmission.trevin.android.todo.service.ProgressBarUpdater.*;
+import static org.junit.Assert.*;
+
+import androidx.work.Data;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Tests for throttling progress updates and measuring throughput.
+ *
+ * @author Trevin Beattie
+ */
+public class ProgressAggregatorTests {
+
+    /** A progress update which was forwarded to the listener */
+    private static class Update {
+        final String mode;
+        final int current;
+        final int total;
+        final float rate;
+        final long eta;
+        Update(String mode, int current, int total, float rate, long eta) {
+            this.mode = mode;
+            this.current = current;
+            this.total = total;
+            this.rate = rate;
+            this.eta = eta;
+        }
+    }
+
+    /** The simulated internal time in nanoseconds */
+    private long clock;
+
+    private final List<Update> updates = new ArrayList<>();
+
+    private final ProgressAggregator.Listener listener =
+            new ProgressAggregator.Listener() {
+        @Override
+        public void onProgress(String modeString,
+                               int currentCount, int totalCount,
+                               float recordsPerSecond, long etaMillis) {
+            updates.add(new Update(modeString, currentCount, totalCount,
+                    recordsPerSecond, etaMillis));
+        }
+    };
+
+    @Before
+    public void resetClock() {
+        clock = 1000000000L;
+        updates.clear();
+    }
+
+    /**
+     * Create an aggregator which uses the simulated clock.
+     *
+     * @param intervalMillis the minimum time between updates
+     * @param percentStep the progress which forces an update
+     *
+     * @return the aggregator
+     */
+    private ProgressAggregator newAggregator(
+            long intervalMillis, int percentStep) {
+        return new ProgressAggregator(listener, intervalMillis, percentStep) {
+            @Override
+            protected long nanoTime() {
+                return clock;
+            }
+        };
+    }
+
+    /** Advance the simulated clock by the given number of milliseconds */
+    private void advance(long millis) {
+        clock += millis * 1000000L;
+    }
+
+    /**
+     * The progress and summary data published by the workers
+     * must carry the aggregated figures.
+     */
+    @Test
+    public void testWorkerData() {
+        Data progress = ProgressAggregator.toProgressData(
+                "Items", 250, 1000, 50.0f, 15000);
+        assertEquals("Progress mode", "Items",
+                progress.getString(PROGRESS_CURRENT_MODE));
+        assertEquals("Progress count", 250,
+                progress.getInt(PROGRESS_CURRENT_COUNT, -1));
+        assertEquals("Progress total", 1000,
+                progress.getInt(PROGRESS_MAX_COUNT, -1));
+        assertEquals("Progress rate", 50.0f,
+                progress.getFloat(PROGRESS_RECORDS_PER_SECOND, -1), 0.0f);
+        assertEquals("Progress ETA", 15000,
+                progress.getLong(PROGRESS_ETA_MILLIS, 0));
+
+        ProgressAggregator aggregator = newAggregator(250, 5);
+        aggregator.updateProgress("Items", 0, 1000, false);
+        advance(2000);
+        aggregator.updateProgress("Items", 1000, 1000, false);
+        Data summary = aggregator.toSummaryData();
+        assertEquals("Summary count", 1000,
+                summary.getInt(PROGRESS_CURRENT_COUNT, -1));
+        assertEquals("Summary rate", 500.0f,
+                summary.getFloat(PROGRESS_RECORDS_PER_SECOND, -1), 0.01f);
+        assertEquals("Summary elapsed time", 2000,
+                summary.getLong(PROGRESS_ELAPSED_MILLIS, -1));
+    }
+
+    /** The first update must always be forwarded */
+    @Test
+    public void testFirstUpdateForwarded() {
+        ProgressAggregator aggregator = newAggregator(250, 5);
+        aggregator.updateProgress("Start", 0, 0, true);
+        assertEquals("Number of updates", 1, updates.size());
+        assertEquals("Mode", "Start", updates.get(0).mode);
+        assertEquals("Rate", 0.0f, updates.get(0).rate, 0.0f);
+        assertEquals("ETA", -1, updates.get(0).eta);
+    }
+
+    /**
+     * Throttled updates within the interval and step are dropped,
+     * but the aggregator still keeps track of the latest count.
+     */
+    @Test
+    public void testThrottledWithinInterval() {
+        ProgressAggregator aggregator = newAggregator(250, 5);
+        aggregator.updateProgress("Items", 0, 1000, true);
+        for (int i = 1; i < 50; i++) {
+            advance(1);
+            aggregator.updateProgress("Items", i, 1000, true);
+        }
+        assertEquals("Number of updates", 1, updates.size());
+        assertEquals("Latest count", 49, aggregator.getCurrentCount());
+    }
+
+    /** A throttled update is forwarded once the interval passes */
+    @Test
+    public void testForwardAfterInterval() {
+        ProgressAggregator aggregator = newAggregator(250, 5);
+        aggregator.updateProgress("Items", 0, 1000, true);
+        advance(249);
+        aggregator.updateProgress("Items", 1, 1000, true);
+        assertEquals("Updates before the interval", 1, updates.size());
+        advance(1);
+        aggregator.updateProgress("Items", 2, 1000, true);
+        assertEquals("Updates after the interval", 2, updates.size());
+        assertEquals("Forwarded count", 2, updates.get(1).current);
+    }
+
+    /** A throttled update is forwarded once the count advances enough */
+    @Test
+    public void testForwardOnPercentStep() {
+        ProgressAggregator aggregator = newAggregator(250, 5);
+        aggregator.updateProgress("Items", 0, 1000, true);
+        aggregator.updateProgress("Items", 49, 1000, true);
+        assertEquals("Updates below the step", 1, updates.size());
+        aggregator.updateProgress("Items", 50, 1000, true);
+        assertEquals("Updates at the step", 2, updates.size());
+        aggregator.updateProgress("Items", 99, 1000, true);
+        assertEquals("Updates below the next step", 2, updates.size());
+        aggregator.updateProgress("Items", 100, 1000, true);
+        assertEquals("Updates at the next step", 3, updates.size());
+    }
+
+    /** Unthrottled updates and changes of mode are always forwarded */
+    @Test
+    public void testUnthrottledAndModeChange() {
+        ProgressAggregator aggregator = newAggregator(250, 5);
+        aggregator.updateProgress("Items", 0, 1000, true);
+        aggregator.updateProgress("Items", 1, 1000, false);
+        assertEquals("Updates after unthrottled", 2, updates.size());
+        aggregator.updateProgress("Writing", 2, 1000, true);
+        assertEquals("Updates after mode change", 3, updates.size());
+        assertEquals("Mode", "Writing", updates.get(2).mode);
+        aggregator.updateProgress("Writing", 3, 1000, true);
+        assertEquals("Updates after same mode", 3, updates.size());
+    }
+
+    /** Verify the computed rate and estimated time remaining */
+    @Test
+    public void testRateAndEta() {
+        ProgressAggregator aggregator = newAggregator(250, 5);
+        aggregator.updateProgress("Items", 0, 1000, true);
+        advance(1000);
+        aggregator.updateProgress("Items", 100, 1000, true);
+        assertEquals("Number of updates", 2, updates.size());
+        assertEquals("Rate", 100.0f, updates.get(1).rate, 0.01f);
+        assertEquals("ETA", 9000, updates.get(1).eta);
+        assertEquals("Rate from getter", 100.0f,
+                aggregator.getRecordsPerSecond(), 0.01f);
+        assertEquals("Elapsed time", 1000, aggregator.getElapsedMillis());
+    }
+
+    /** A change of total starts a new phase for measuring the rate */
+    @Test
+    public void testTotalChangeResetsRate() {
+        ProgressAggregator aggregator = newAggregator(250, 5);
+        aggregator.updateProgress("Categories", 0, 10, true);
+        advance(10000);
+        aggregator.updateProgress("Categories", 10, 10, true);
+        assertEquals("Category rate", 1.0f, updates.get(1).rate, 0.01f);
+        aggregator.updateProgress("Items", 0, 500, true);
+        assertEquals("Number of updates", 3, updates.size());
+        assertEquals("Rate at start of phase", 0.0f,
+                updates.get(2).rate, 0.0f);
+        assertEquals("ETA at start of phase", -1, updates.get(2).eta);
+        advance(500);
+        aggregator.updateProgress("Items", 250, 500, true);
+        assertEquals("Item rate", 500.0f, updates.get(3).rate, 0.01f);
+        assertEquals("Item ETA", 500, updates.get(3).eta);
+        assertEquals("Elapsed time", 10500, aggregator.getElapsedMillis());
+    }
+
+    /** An indeterminate total is only throttled by time */
+    @Test
+    public void testIndeterminateTotal() {
+        ProgressAggregator aggregator = newAggregator(250, 5);
+        aggregator.updateProgress("Reading", 0, 0, true);
+        for (int i = 1; i <= 1000; i++)
+            aggregator.updateProgress("Reading", i, 0, true);
+        assertEquals("Number of updates", 1, updates.size());
+        advance(250);
+        aggregator.updateProgress("Reading", 1001, 0, true);
+        assertEquals("Number of updates after interval", 2, updates.size());
+        assertTrue("Rate should be measured", updates.get(1).rate > 0);
+        assertEquals("ETA", -1, updates.get(1).eta);
+    }
+
+    /**
+     * Reporting every record of a long operation should only forward
+     * a bounded number of updates: at most one per interval plus
+     * one per step.
+     */
+    @Test
+    public void testPerRecordReporting() {
+        ProgressAggregator aggregator = newAggregator(250, 5);
+        final int total = 100000;
+        aggregator.updateProgress("Items", 0, total, true);
+        for (int i = 1; i <= total; i++) {
+            // 10 seconds in total
+            clock += 100000L;
+            aggregator.updateProgress("Items", i, total, true);
+        }
+        aggregator.updateProgress("Items", total, total, false);
+        assertTrue(String.format("Too many updates forwarded: %d",
+                updates.size()), updates.size() <= 2 + 40 + 20);
+        Update last = updates.get(updates.size() - 1);
+        assertEquals("Final count", total, last.current);
+        assertEquals("Final rate", 10000.0f, last.rate, 1.0f);
+        assertEquals("Final ETA", 0, last.eta);
+    }
+
+    /** Invalid intervals and steps are rejected */
+    @Test
+    public void testInvalidArguments() {
+        try {
+            new ProgressAggregator(listener, -1, 5);
+            fail("Negative interval was accepted");
+        } catch (IllegalArgumentException e) {
+            // Success
+        }
+        try {
+            new ProgressAggregator(listener, 250, 0);
+            fail("Zero step was accepted");
+        } catch (IllegalArgumentException e) {
+            // Success
+        }
+        try {
+            new ProgressAggregator(listener, 250, 101);
+            fail("Step over 100% was accepted");
+        } catch (IllegalArgumentException e) {
+            // Success
+        }
+    }
+
+}
@@ -0,0 +1,156 @@
+/*
+ * Copyright © 2026 Trevin Beattie
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.xmission.trevin.android.todo.service;
+
+import static com.xmission.trevin.android.todo.util.RandomToDoUtils.*;
+
+import static org.junit.Assert.*;
+
+import com.xmission.trevin.android.todo.data.MockSharedPreferences;
+import com.xmission.trevin.android.todo.data.ToDoPreferences;
+import com.xmission.trevin.android.todo.provider.MockToDoRepository;
+import com.xmission.trevin.android.todo.service.XMLImporter.ImportType;
+import com.xmission.trevin.android.todo.util.StringEncryption;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Ignore;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.time.ZoneOffset;
+import java.util.Locale;
+
+/**
+ * Timing comparison of restoring binary snapshots and XML exports.
+ * This takes too long and depends too much on the machine to run
+ * with the unit tests; remove the {@link Ignore} annotation to run
+ * it by hand.  The snapshot format itself is tested by
+ * {@link SnapshotTests}.
+ *
+ * @author Trevin Beattie
+ */
+@Ignore("Benchmark; run by hand")
+public class SnapshotBenchmark {
+
+    private static MockSharedPreferences underlyingPrefs = null;
+    private static ToDoPreferences mockPrefs = null;
+    private static MockToDoRepository mockRepo = null;
+    private StringEncryption globalEncryption = null;
+
+    /** Temporary file holding the snapshot under test */
+    private File snapshotFile = null;
+
+    @Before
+    public void initializeRepository() throws IOException {
+        if (mockPrefs == null) {
+            underlyingPrefs = MockSharedPreferences.getInstance();
+            ToDoPreferences.setSharedPreferences(underlyingPrefs);
+            mockPrefs = ToDoPreferences.getInstance(null);
+        }
+        if (mockRepo == null) {
+            mockRepo = MockToDoRepository.getInstance();
+        }
+        underlyingPrefs.resetMock();
+        mockPrefs.setTimeZone(ZoneOffset.UTC);
+        mockRepo.clear();
+        globalEncryption = StringEncryption.holdGlobalEncryption();
+        globalEncryption.forgetPassword();
+        snapshotFile = File.createTempFile("todo", SnapshotExporter.FILE_SUFFIX);
+    }
+
+    @After
+    public void releaseRepository() {
+        globalEncryption.forgetPassword();
+        StringEncryption.releaseGlobalEncryption();
+        if (snapshotFile != null)
+            snapshotFile.delete();
+    }
+
+    /**
+     * Write a snapshot of the mock repository to the temporary file.
+     *
+     * @param exportPrivate whether to include private records
+     */
+    private void exportSnapshot(boolean exportPrivate) throws IOException {
+        SnapshotExporter.export(mockPrefs, mockRepo,
+                new FileOutputStream(snapshotFile), exportPrivate,
+                new MockProgressBar());
+    }
+
+    /** Restore the temporary snapshot file into the mock repository. */
+    private void importSnapshot(
+            ImportType importType, boolean importPrivate,
+            String snapshotPassword, String currentPassword)
+            throws IOException {
+        try (FileInputStream in = new FileInputStream(snapshotFile)) {
+            SnapshotImporter.importData(mockPrefs, mockRepo,
+                    snapshotFile.getName(), in.getChannel(),
+                    importType, importPrivate,
+                    snapshotPassword, currentPassword,
+                    new MockProgressBar());
+        }
+    }
+
+    /**
+     * Time a clean restore of 100,000 items from a snapshot and
+     * from an XML export of the same data, and print the results.
+     */
+    @Test
+    public void testRestoreThroughput() throws IOException {
+        for (int i = 0; i < 100000; i++)
+            mockRepo.insertItem(randomToDo());
+        ByteArrayOutputStream xmlOut = new ByteArrayOutputStream();
+        XMLExporter.export(mockPrefs, mockRepo, xmlOut, true,
+                new MockProgressBar());
+        byte[] xml = xmlOut.toByteArray();
+        long start = System.nanoTime();
+        exportSnapshot(true);
+        long snapshotExportTime = System.nanoTime() - start;
+
+        long xmlTime = 0;
+        long snapshotTime = 0;
+        // Run each import twice so the second pass is warmed up
+        for (int pass = 0; pass < 2; pass++) {
+            mockRepo.clear();
+            start = System.nanoTime();
+            XMLImporter.importData(mockPrefs, mockRepo, "todo.xml",
+                    new ByteArrayInputStream(xml), ImportType.CLEAN, true,
+                    null, (String) null, new MockProgressBar());
+            xmlTime = System.nanoTime() - start;
+
+            mockRepo.clear();
+            start = System.nanoTime();
+            importSnapshot(ImportType.CLEAN, true, null, null);
+            snapshotTime = System.nanoTime() - start;
+        }
+        assertEquals("Number of items restored", 100000,
+                mockRepo.countItems());
+        System.out.println(String.format(Locale.US,
+                "Restore of 100000 items: XML %d KB in %d ms;"
+                        + " snapshot %d KB in %d ms (exported in %d ms)",
+                xml.length / 1024, xmlTime / 1000000,
+                snapshotFile.length() / 1024, snapshotTime / 1000000,
+                snapshotExportTime / 1000000));
+    }
+
+}
@@ -0,0 +1,478 @@
+/*
+ * Copyright © 2026 Trevin Beattie
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.xmission.trevin.android.todo.service;
+
+import static com.xmission.trevin.android.todo.util.RandomToDoUtils.*;
+
+import static org.junit.Assert.*;
+
+import com.xmission.trevin.android.todo.data.MockSharedPreferences;
+import com.xmission.trevin.android.todo.data.ToDoCategory;
+import com.xmission.trevin.android.todo.data.ToDoItem;
+import com.xmission.trevin.android.todo.data.ToDoPreferences;
+import com.xmission.trevin.android.todo.data.repeat.AbstractRepeat;
+import com.xmission.trevin.android.todo.data.repeat.RepeatInterval;
+import com.xmission.trevin.android.todo.data.repeat.RepeatType;
+import com.xmission.trevin.android.todo.provider.MockToDoRepository;
+import com.xmission.trevin.android.todo.provider.ToDoCursor;
+import com.xmission.trevin.android.todo.provider.ToDoRepositoryImpl;
+import com.xmission.trevin.android.todo.provider.ToDoSchema;
+import com.xmission.trevin.android.todo.service.XMLImporter.ImportType;
+import com.xmission.trevin.android.todo.util.StringEncryption;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.StreamCorruptedException;
+import java.nio.channels.FileChannel;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Unit tests for writing and restoring binary snapshots.
+ *
+ * @author Trevin Beattie
+ */
+public class SnapshotTests {
+
+    private static final Random RAND = new Random();
+
+    private static MockSharedPreferences underlyingPrefs = null;
+    private static ToDoPreferences mockPrefs = null;
+    private static MockToDoRepository mockRepo = null;
+    private StringEncryption globalEncryption = null;
+
+    /** Temporary file holding the snapshot under test */
+    private File snapshotFile = null;
+
+    @Before
+    public void initializeRepository() throws IOException {
+        if (mockPrefs == null) {
+            underlyingPrefs = MockSharedPreferences.getInstance();
+            ToDoPreferences.setSharedPreferences(underlyingPrefs);
+            mockPrefs = ToDoPreferences.getInstance(null);
+        }
+        if (mockRepo == null) {
+            mockRepo = MockToDoRepository.getInstance();
+        }
+        underlyingPrefs.resetMock();
+        mockPrefs.setTimeZone(ZoneOffset.UTC);
+        mockRepo.clear();
+        globalEncryption = StringEncryption.holdGlobalEncryption();
+        globalEncryption.forgetPassword();
+        snapshotFile = File.createTempFile("todo", SnapshotExporter.FILE_SUFFIX);
+    }
+
+    @After
+    public void releaseRepository() {
+        globalEncryption.forgetPassword();
+        StringEncryption.releaseGlobalEncryption();
+        if (snapshotFile != null)
+            snapshotFile.delete();
+    }
+
+    /**
+     * Generate a random To Do item which may also have an alarm
+     * and repeat interval.  (Like the app, this only sets an alarm
+     * on items which are due.)  Timestamps are truncated to
+     * milliseconds, which is the precision kept by the database.
+     *
+     * @param repeatType the type of repeat to give the item,
+     * or {@code null} for no repeat
+     */
+    private static ToDoItem randomFullToDo(RepeatType repeatType) {
+        ToDoItem item = randomToDo();
+        item.setCreateTime(item.getCreateTime().truncatedTo(ChronoUnit.MILLIS));
+        item.setModTime(item.getModTime().truncatedTo(ChronoUnit.MILLIS));
+        if (item.getCompleted() != null)
+            item.setCompleted(item.getCompleted()
+                    .truncatedTo(ChronoUnit.MILLIS));
+        if (repeatType != null) {
+            // Keep the due date out of the fifth week of the month,
+            // which the monthly repeats don't accept
+            item.setDue(LocalDate.now().plusDays(RAND.nextInt(366))
+                    .withDayOfMonth(RAND.nextInt(28) + 1));
+            RepeatInterval repeat = repeatType.newInstance(item.getDue());
+            if ((repeat instanceof AbstractRepeat) && RAND.nextBoolean())
+                ((AbstractRepeat) repeat).setEnd(
+                        item.getDue().plusDays(RAND.nextInt(1000) + 1));
+            item.setRepeatInterval(repeat);
+        }
+        if ((item.getDue() != null) && RAND.nextBoolean()) {
+            item.setAlarm(randomAlarm());
+            if (item.getAlarm().getNotificationTime() != null)
+                item.getAlarm().setNotificationTime(item.getAlarm()
+                        .getNotificationTime().truncatedTo(ChronoUnit.MILLIS));
+        }
+        return item;
+    }
+
+    /**
+     * Fill the mock repository with a few categories and random
+     * To Do items, including one of each type of repeat interval.
+     *
+     * @param count the number of items to add
+     */
+    private static void populate(int count) {
+        List<Long> categoryIds = new ArrayList<>();
+        categoryIds.add((long) ToDoCategory.UNFILED);
+        for (int i = 0; i < 5; i++)
+            categoryIds.add(mockRepo.insertCategory(
+                    String.format(Locale.US, "%s %d", randomWord(), i))
+                    .getId());
+        RepeatType[] repeatTypes = RepeatType.values();
+        for (int i = 0; i < count; i++) {
+            ToDoItem item = randomFullToDo((i < repeatTypes.length)
+                    ? repeatTypes[i] : null);
+            long categoryId = categoryIds.get(RAND.nextInt(categoryIds.size()));
+            item.setCategoryId(categoryId);
+            item.setCategoryName(mockRepo.getCategoryById(categoryId).getName());
+            mockRepo.insertItem(item);
+        }
+    }
+
+    /**
+     * Read all To Do records from the mock repository, sorted by ID.
+     */
+    private static List<ToDoItem> readToDos() {
+        List<ToDoItem> list = new ArrayList<>();
+        ToDoCursor cursor = mockRepo.getItems(
+                ToDoPreferences.ALL_CATEGORIES, true, LocalDate.now(),
+                true, true, ToDoRepositoryImpl.TODO_TABLE_NAME + "."
+                        + ToDoSchema.ToDoItemColumns._ID);
+        try {
+            while (cursor.moveToNext())
+                list.add(cursor.getItem());
+        } finally {
+            cursor.close();
+        }
+        return list;
+    }
+
+    /**
+     * Replace the contents of the mock repository with
+     * the given categories and items.
+     */
+    private static void restore(List<ToDoCategory> categories,
+                                List<ToDoItem> items) {
+        mockRepo.clear();
+        for (ToDoCategory category : categories) {
+            if (category.getId() != ToDoCategory.UNFILED)
+                mockRepo.insertCategory(category);
+        }
+        for (ToDoItem item : items)
+            mockRepo.insertItem(item.clone());
+    }
+
+    /**
+     * Write a snapshot of the mock repository to the temporary file.
+     *
+     * @param exportPrivate whether to include private records
+     */
+    private void exportSnapshot(boolean exportPrivate) throws IOException {
+        SnapshotExporter.export(mockPrefs, mockRepo,
+                new FileOutputStream(snapshotFile), exportPrivate,
+                new MockProgressBar());
+    }
+
+    /**
+     * Restore the temporary snapshot file into the mock repository.
+     *
+     * @return the progress indicator at the end of the import
+     */
+    private MockProgressBar importSnapshot(
+            ImportType importType, boolean importPrivate,
+            String snapshotPassword, String currentPassword)
+            throws IOException {
+        MockProgressBar progress = new MockProgressBar();
+        try (FileInputStream in = new FileInputStream(snapshotFile)) {
+            assertTrue("Exported file is not recognized as a snapshot",
+                    SnapshotImporter.isSnapshot(in.getChannel()));
+            SnapshotImporter.importData(mockPrefs, mockRepo,
+                    snapshotFile.getName(), in.getChannel(),
+                    importType, importPrivate,
+                    snapshotPassword, currentPassword, progress);
+        }
+        progress.setEndTime();
+        return progress;
+    }
+
+    /**
+     * A clean restore from a snapshot should reproduce
+     * every To Do item exactly, including its ID.
+     */
+    @Test
+    public void testRoundTrip() throws IOException {
+        populate(RAND.nextInt(100) + RepeatType.values().length);
+        mockPrefs.setSortOrder(RAND.nextInt(5));
+        int sortOrder = mockPrefs.getSortOrder();
+        List<ToDoCategory> expectedCategories = mockRepo.getCategories();
+        List<ToDoItem> expectedItems = readToDos();
+        exportSnapshot(true);
+
+        mockRepo.clear();
+        underlyingPrefs.resetMock();
+        MockProgressBar progress = importSnapshot(
+                ImportType.CLEAN, true, null, null);
+
+        assertEquals("Categories", expectedCategories,
+                mockRepo.getCategories());
+        assertEquals("To Do items", expectedItems, readToDos());
+        assertEquals("Sort order", sortOrder, mockPrefs.getSortOrder());
+        MockProgressBar.Progress endProgress = progress.getEndProgress();
+        assertNotNull("Final progress was not reported", endProgress);
+        assertEquals("Number of records processed",
+                endProgress.total, endProgress.current);
+    }
+
+    /**
+     * Private records should be left out of the snapshot
+     * unless asked for.
+     */
+    @Test
+    public void testPublicOnly() throws IOException {
+        populate(RAND.nextInt(50) + 50);
+        List<ToDoItem> expectedItems = new ArrayList<>();
+        for (ToDoItem item : readToDos()) {
+            if (!item.isPrivate())
+                expectedItems.add(item);
+        }
+        exportSnapshot(false);
+        mockRepo.clear();
+        importSnapshot(ImportType.CLEAN, true, null, null);
+        assertEquals("To Do items", expectedItems, readToDos());
+    }
+
+    /**
+     * Encrypted records should be stored in the snapshot as-is,
+     * then decrypted with the snapshot&rsquo;s password on import.
+     */
+    @Test
+    public void testEncryptedRoundTrip() throws IOException {
+        final String password = Long.toString(RAND.nextLong(), 36);
+        globalEncryption.setPassword(password.toCharArray());
+        globalEncryption.addSalt();
+        globalEncryption.storePassword(mockRepo);
+        List<ToDoItem> expectedItems = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            ToDoItem item = randomFullToDo(null);
+            item.setCategoryName(mockRepo.getCategoryById(
+                    ToDoCategory.UNFILED).getName());
+            if (item.getNote() == null)
+                item.setNote(randomParagraph());
+            ToDoItem stored = item.clone();
+            if (i % 2 == 0) {
+                item.setPrivate(StringEncryption.NO_ENCRYPTION);
+                stored.setEncryptedDescription(
+                        globalEncryption.encrypt(item.getDescription()));
+                stored.setEncryptedNote(
+                        globalEncryption.encrypt(item.getNote()));
+                stored.setPrivate(StringEncryption.encryptionType());
+            }
+            stored = mockRepo.insertItem(stored);
+            item.setId(stored.getId());
+            expectedItems.add(item);
+        }
+        globalEncryption.forgetPassword();
+        exportSnapshot(true);
+
+        mockRepo.clear();
+        importSnapshot(ImportType.CLEAN, true, password, null);
+        List<ToDoItem> actualItems = readToDos();
+        assertEquals("Number of items", expectedItems.size(),
+                actualItems.size());
+        for (int i = 0; i < expectedItems.size(); i++) {
+            ToDoItem expected = expectedItems.get(i);
+            ToDoItem actual = actualItems.get(i);
+            assertEquals("Item ID", expected.getId(), actual.getId());
+            assertEquals("Description of item " + expected.getId(),
+                    expected.getDescription(), actual.getDescription());
+            assertEquals("Note of item " + expected.getId(),
+                    expected.getNote(), actual.getNote());
+            assertEquals("Privacy of item " + expected.getId(),
+                    expected.getPrivate(), actual.getPrivate());
+        }
+    }
+
+    /**
+     * Importing a snapshot should have exactly the same effect
+     * as importing an XML export of the same data, for every
+     * import type.
+     */
+    @Test
+    public void testImportTypesMatchXML() throws IOException {
+        populate(RAND.nextInt(50) + 50);
+        ByteArrayOutputStream xmlOut = new ByteArrayOutputStream();
+        XMLExporter.export(mockPrefs, mockRepo, xmlOut, true,
+                new MockProgressBar());
+        byte[] xml = xmlOut.toByteArray();
+        exportSnapshot(true);
+
+        // Make some changes to the database before importing
+        List<ToDoItem> items = readToDos();
+        for (int i = 0; i < items.size(); i++) {
+            switch (RAND.nextInt(4)) {
+                case 0:
+                    mockRepo.deleteItem(items.get(i).getId());
+                    break;
+                case 1:
+                    ToDoItem item = items.get(i);
+                    item.setDescription(randomSentence());
+                    item.setModTime(Instant.now()
+                            .plusSeconds(RAND.nextInt(86400) - 43200)
+                            .truncatedTo(ChronoUnit.MILLIS));
+                    mockRepo.updateItem(item);
+                    break;
+            }
+        }
+        for (int i = 0; i < 10; i++) {
+            ToDoItem item = randomFullToDo(null);
+            item.setCategoryName(mockRepo.getCategoryById(
+                    ToDoCategory.UNFILED).getName());
+            mockRepo.insertItem(item);
+        }
+        List<ToDoCategory> startCategories = mockRepo.getCategories();
+        List<ToDoItem> startItems = readToDos();
+
+        for (ImportType importType : ImportType.values()) {
+            restore(startCategories, startItems);
+            XMLImporter.importData(mockPrefs, mockRepo, "todo.xml",
+                    new ByteArrayInputStream(xml), importType, true,
+                    null, (String) null, new MockProgressBar());
+            List<ToDoCategory> xmlCategories = mockRepo.getCategories();
+            List<ToDoItem> xmlItems = readToDos();
+
+            restore(startCategories, startItems);
+            importSnapshot(importType, true, null, null);
+            assertEquals(importType + " categories", xmlCategories,
+                    mockRepo.getCategories());
+            assertEquals(importType + " items", xmlItems, readToDos());
+        }
+    }
+
+    /**
+     * Overwrite part of the snapshot file.
+     *
+     * @param offset the position in the file to write,
+     * or a negative number to count from the end of the file
+     * @param data the bytes to write
+     */
+    private void overwrite(long offset, byte[] data) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(snapshotFile, "rw")) {
+            raf.seek((offset < 0) ? raf.length() + offset : offset);
+            raf.write(data);
+        }
+    }
+
+    /**
+     * Check that importing the snapshot file fails without
+     * changing the repository.
+     *
+     * @param message the assertion message
+     */
+    private void assertImportFails(String message) throws IOException {
+        List<ToDoItem> before = readToDos();
+        try (FileInputStream in = new FileInputStream(snapshotFile)) {
+            SnapshotImporter.importData(mockPrefs, mockRepo,
+                    snapshotFile.getName(), in.getChannel(),
+                    ImportType.CLEAN, true, null, (String) null,
+                    new MockProgressBar());
+            fail(message + " was not detected");
+        } catch (StreamCorruptedException e) {
+            // Success
+        }
+        assertEquals(message + ": repository was changed",
+                before, readToDos());
+    }
+
+    /** A snapshot with any byte changed should be rejected */
+    @Test
+    public void testCorruptedData() throws IOException {
+        populate(20);
+        exportSnapshot(true);
+        long length = snapshotFile.length();
+        // Flip a byte somewhere in the records
+        long offset = SnapshotExporter.HEADER_SIZE + RAND.nextInt(
+                (int) (length - SnapshotExporter.HEADER_SIZE
+                        - SnapshotExporter.TRAILER_SIZE));
+        byte[] b = new byte[1];
+        try (RandomAccessFile raf = new RandomAccessFile(snapshotFile, "r")) {
+            raf.seek(offset);
+            b[0] = (byte) ~raf.read();
+        }
+        overwrite(offset, b);
+        assertImportFails("Corruption at offset " + offset);
+    }
+
+    /** A truncated snapshot should be rejected */
+    @Test
+    public void testTruncated() throws IOException {
+        populate(20);
+        exportSnapshot(true);
+        try (RandomAccessFile raf = new RandomAccessFile(snapshotFile, "rw")) {
+            raf.setLength(raf.length() - RAND.nextInt(100) - 1);
+        }
+        assertImportFails("Truncation");
+    }
+
+    /** A file which is not a snapshot should not be recognized as one */
+    @Test
+    public void testBadMagic() throws IOException {
+        populate(5);
+        exportSnapshot(true);
+        overwrite(0, "<?xml ve".getBytes());
+        try (FileInputStream in = new FileInputStream(snapshotFile)) {
+            assertFalse("Bad magic number recognized as a snapshot",
+                    SnapshotImporter.isSnapshot(in.getChannel()));
+        }
+        assertImportFails("Bad magic number");
+    }
+
+    /**
+     * A snapshot from a newer version of the app should be
+     * rejected with a plain {@link IOException}.
+     */
+    @Test
+    public void testNewerVersion() throws IOException {
+        exportSnapshot(true);
+        overwrite(SnapshotExporter.MAGIC.length, new byte[] {
+                0, 0, 0, (byte) (SnapshotExporter.FORMAT_VERSION + 1) });
+        try {
+            importSnapshot(ImportType.CLEAN, true, null, null);
+            fail("Newer format version was accepted");
+        } catch (StreamCorruptedException e) {
+            fail("Newer format version was reported as corruption");
+        } catch (IOException e) {
+            // Success
+        }
+    }
+
+}
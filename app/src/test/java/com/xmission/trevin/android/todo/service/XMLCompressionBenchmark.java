@@ -0,0 +1,111 @@
+/*
+ * Copyright © 2026 Trevin Beattie
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.xmission.trevin.android.todo.service;
+
+import static com.xmission.trevin.android.todo.util.RandomToDoUtils.randomToDo;
+
+import com.xmission.trevin.android.todo.data.MockSharedPreferences;
+import com.xmission.trevin.android.todo.data.ToDoPreferences;
+import com.xmission.trevin.android.todo.provider.MockToDoRepository;
+
+import org.junit.Before;
+import org.junit.Ignore;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Locale;
+import java.util.zip.Deflater;
+
+/**
+ * Timing of XML exports at different compression levels.  This takes
+ * too long and depends too much on the machine to run with the unit
+ * tests; remove the {@link Ignore} annotation to run it by hand.
+ * Compression itself is tested by {@link XMLCompressionTests}.
+ *
+ * @author Trevin Beattie
+ */
+@Ignore("Benchmark; run by hand")
+public class XMLCompressionBenchmark {
+
+    private static MockSharedPreferences underlyingPrefs = null;
+    private static ToDoPreferences mockPrefs = null;
+    private static MockToDoRepository mockRepo = null;
+
+    @Before
+    public void initializeRepository() {
+        if (mockPrefs == null) {
+            underlyingPrefs = MockSharedPreferences.getInstance();
+            ToDoPreferences.setSharedPreferences(underlyingPrefs);
+            mockPrefs = ToDoPreferences.getInstance(null);
+        }
+        if (mockRepo == null) {
+            mockRepo = MockToDoRepository.getInstance();
+        }
+        underlyingPrefs.resetMock();
+        mockRepo.clear();
+    }
+
+    /**
+     * Export the mock repository.
+     *
+     * @param level the compression level, or {@code null}
+     * to export uncompressed XML
+     *
+     * @return the exported data
+     */
+    private byte[] export(Integer level) throws IOException {
+        ByteArrayOutputStream outStream = new ByteArrayOutputStream();
+        OutputStream out = (level == null) ? outStream
+                : XMLCompression.compress(outStream, level);
+        XMLExporter.export(mockPrefs, mockRepo, out, false,
+                new MockProgressBar());
+        return outStream.toByteArray();
+    }
+
+    /**
+     * Time exporting a large To Do list at several compression levels
+     * and print the time taken and resulting size.  The timing is
+     * informational; on the device, writing fewer bytes to slow
+     * storage more than makes up for the time spent compressing.
+     */
+    @Test
+    public void testCompressionThroughput() throws IOException {
+        for (int i = 0; i < 20000; i++)
+            mockRepo.insertItem(randomToDo());
+        Integer[] levels = { null, Deflater.BEST_SPEED,
+                XMLCompression.DEFAULT_LEVEL, Deflater.DEFAULT_COMPRESSION,
+                Deflater.BEST_COMPRESSION };
+        StringBuilder sb = new StringBuilder("Export of 20000 items:");
+        for (Integer level : levels) {
+            long elapsed = 0;
+            int size = 0;
+            // Run each export twice so the second pass is warmed up
+            for (int pass = 0; pass < 2; pass++) {
+                long start = System.nanoTime();
+                size = export(level).length;
+                elapsed = System.nanoTime() - start;
+            }
+            sb.append(String.format(Locale.US, " %s %d KB in %d ms;",
+                    (level == null) ? "uncompressed" : ("level " + level),
+                    size / 1024, elapsed / 1000000));
+        }
+        System.out.println(sb);
+    }
+
+}
@@ -0,0 +1,179 @@
+/*
+ * Copyright © 2026 Trevin Beattie
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.xmission.trevin.android.todo.service;
+
+import static com.xmission.trevin.android.todo.util.RandomToDoUtils.randomToDo;
+
+import static org.junit.Assert.*;
+
+import com.xmission.trevin.android.todo.data.MockSharedPreferences;
+import com.xmission.trevin.android.todo.data.ToDoPreferences;
+import com.xmission.trevin.android.todo.provider.MockToDoRepository;
+import com.xmission.trevin.android.todo.service.XMLImporter.ImportType;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.Random;
+import java.util.zip.Deflater;
+
+/**
+ * Tests for compressing XML exports and detecting compressed imports.
+ *
+ * @author Trevin Beattie
+ */
+public class XMLCompressionTests {
+
+    private static final Random RAND = new Random();
+
+    private static MockSharedPreferences underlyingPrefs = null;
+    private static ToDoPreferences mockPrefs = null;
+    private static MockToDoRepository mockRepo = null;
+
+    @Before
+    public void initializeRepository() {
+        if (mockPrefs == null) {
+            underlyingPrefs = MockSharedPreferences.getInstance();
+            ToDoPreferences.setSharedPreferences(underlyingPrefs);
+            mockPrefs = ToDoPreferences.getInstance(null);
+        }
+        if (mockRepo == null) {
+            mockRepo = MockToDoRepository.getInstance();
+        }
+        underlyingPrefs.resetMock();
+        mockRepo.clear();
+    }
+
+    /**
+     * Export the mock repository.
+     *
+     * @param level the compression level, or {@code null}
+     * to export uncompressed XML
+     *
+     * @return the exported data
+     */
+    private byte[] export(Integer level) throws IOException {
+        ByteArrayOutputStream outStream = new ByteArrayOutputStream();
+        OutputStream out = (level == null) ? outStream
+                : XMLCompression.compress(outStream, level);
+        XMLExporter.export(mockPrefs, mockRepo, out, false,
+                new MockProgressBar());
+        return outStream.toByteArray();
+    }
+
+    /** Read everything from a stream */
+    private static byte[] readAll(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        int n;
+        while ((n = in.read(buffer)) > 0)
+            out.write(buffer, 0, n);
+        return out.toByteArray();
+    }
+
+    /** Remove the export timestamp, which differs between exports */
+    private static String maskExportTime(byte[] xml) {
+        return new String(xml, StandardCharsets.UTF_8).replaceFirst(
+                XMLExporter.ATTR_EXPORTED + "=\"[^\"]*\"", "");
+    }
+
+    /**
+     * A compressed export should start with the gzip magic number
+     * and inflate to the same XML as an uncompressed export, while
+     * uncompressed data should pass through unchanged.
+     */
+    @Test
+    public void testRoundTrip() throws IOException {
+        for (int i = 0; i < 200; i++)
+            mockRepo.insertItem(randomToDo());
+        byte[] plain = export(null);
+        int level = RAND.nextInt(10) - 1;
+        byte[] compressed = export(level);
+        assertTrue(String.format(Locale.US,
+                "Compressed size at level %d (%d bytes) is not smaller"
+                + " than the XML (%d bytes)", level,
+                compressed.length, plain.length),
+                (level == Deflater.NO_COMPRESSION)
+                        || (compressed.length < plain.length));
+        assertEquals("First byte", 0x1f, compressed[0] & 0xff);
+        assertEquals("Second byte", 0x8b, compressed[1] & 0xff);
+
+        assertEquals("Inflated XML", maskExportTime(plain),
+                maskExportTime(readAll(XMLCompression.decompress(
+                        new ByteArrayInputStream(compressed)))));
+        assertArrayEquals("Uncompressed XML", plain,
+                readAll(XMLCompression.decompress(
+                        new ByteArrayInputStream(plain))));
+    }
+
+    /** Checking for compression must not consume any of the data */
+    @Test
+    public void testIsCompressed() throws IOException {
+        byte[][] samples = {
+                {}, { 0x1f }, { 0x1f, 0x00, 0x00 }, { '<', '?', 'x' },
+                { 0x1f, (byte) 0x8b, 8, 0 } };
+        boolean[] expected = { false, false, false, false, true };
+        for (int i = 0; i < samples.length; i++) {
+            InputStream in = new ByteArrayInputStream(samples[i]);
+            assertEquals("Sample " + i, expected[i],
+                    XMLCompression.isCompressed(in));
+            assertArrayEquals("Sample " + i + " after checking",
+                    samples[i], readAll(in));
+        }
+    }
+
+    /** Invalid compression levels should be rejected */
+    @Test
+    public void testInvalidLevel() throws IOException {
+        for (int level : new int[] { -2, 10 }) {
+            try {
+                XMLCompression.compress(new ByteArrayOutputStream(), level);
+                fail("Accepted compression level " + level);
+            } catch (IllegalArgumentException e) {
+                // Success
+            }
+        }
+    }
+
+    /** A compressed export should import the same as an uncompressed one */
+    @Test
+    public void testImportCompressed() throws IOException {
+        int count = RAND.nextInt(50) + 50;
+        for (int i = 0; i < count; i++) {
+            mockRepo.insertItem(randomToDo());
+        }
+        int expected = mockRepo.countItems()
+                - mockRepo.countPrivateItems();
+        byte[] compressed = export(XMLCompression.DEFAULT_LEVEL);
+        mockRepo.clear();
+        XMLImporter.importData(mockPrefs, mockRepo, "todo.xml.gz",
+                XMLCompression.decompress(
+                        new ByteArrayInputStream(compressed)),
+                ImportType.CLEAN, false, null, (String) null,
+                new MockProgressBar());
+        assertEquals("Number of items imported",
+                expected, mockRepo.countItems());
+    }
+
+}
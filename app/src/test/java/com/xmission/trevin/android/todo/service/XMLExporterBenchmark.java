@@ -0,0 +1,140 @@
+/*
+ * Copyright © 2026 Trevin Beattie
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.xmission.trevin.android.todo.service;
+
+import static com.xmission.trevin.android.todo.util.RandomToDoUtils.randomToDo;
+
+import static org.junit.Assert.*;
+
+import com.xmission.trevin.android.todo.data.MockSharedPreferences;
+import com.xmission.trevin.android.todo.data.ToDoPreferences;
+import com.xmission.trevin.android.todo.provider.MockToDoRepository;
+
+import org.junit.Before;
+import org.junit.Ignore;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+
+/**
+ * Timing of the {@link XMLExporter} on a large To Do list, with and
+ * without the format pool.  These take too long and depend too much
+ * on the machine to run with the unit tests; remove the {@link Ignore}
+ * annotation to run them by hand.  The exported XML is checked by
+ * {@link XMLExporterTests}.
+ */
+@Ignore("Benchmark; run by hand")
+public class XMLExporterBenchmark {
+
+    private static MockSharedPreferences underlyingPrefs = null;
+    private static ToDoPreferences mockPrefs = null;
+    private static MockToDoRepository mockRepo = null;
+
+    @Before
+    public void initializeRepository() {
+        if (mockPrefs == null) {
+            underlyingPrefs = MockSharedPreferences.getInstance();
+            ToDoPreferences.setSharedPreferences(underlyingPrefs);
+            mockPrefs = ToDoPreferences.getInstance(null);
+        }
+        if (mockRepo == null) {
+            mockRepo = MockToDoRepository.getInstance();
+        }
+        underlyingPrefs.resetMock();
+        mockRepo.clear();
+    }
+
+    /**
+     * Export the mock repository with a given number of format threads.
+     *
+     * @return the exported XML with the export timestamp removed,
+     * since that is the only part which may differ between runs
+     */
+    private String exportWithThreads(int threads) throws Exception {
+        ByteArrayOutputStream outStream = new ByteArrayOutputStream();
+        XMLExporter.setFormatThreads(threads);
+        try {
+            XMLExporter.export(mockPrefs, mockRepo, outStream, true,
+                    new MockProgressBar());
+        } finally {
+            XMLExporter.setFormatThreads(Math.min(4,
+                    Runtime.getRuntime().availableProcessors() - 1));
+        }
+        return new String(outStream.toByteArray(), StandardCharsets.UTF_8)
+                .replaceFirst(" " + XMLExporter.ATTR_EXPORTED + "=\"[^\"]*\"",
+                        "");
+    }
+
+    /**
+     * Time exporting a large To Do list and print the throughput.
+     * This only checks that the export produced something;
+     * the timing is informational.
+     */
+    @Test
+    public void testExportThroughput() throws Exception {
+        final int count = 20000;
+        for (int i = 0; i < count; i++)
+            mockRepo.insertItem(randomToDo());
+        long elapsed = 0;
+        int size = 0;
+        // Run the export twice so the second pass is warmed up
+        for (int pass = 0; pass < 2; pass++) {
+            ByteArrayOutputStream outStream = new ByteArrayOutputStream();
+            long start = System.nanoTime();
+            XMLExporter.export(mockPrefs, mockRepo, outStream, true,
+                    new MockProgressBar());
+            elapsed = System.nanoTime() - start;
+            size = outStream.size();
+        }
+        assertTrue("Export is empty", size > 0);
+        System.out.println(String.format(Locale.US,
+                "Exported %d items (%d KB) in %d ms: %.1f MB/s",
+                count, size / 1024, elapsed / 1000000,
+                size * 1000.0 / elapsed));
+    }
+
+    /**
+     * Time exporting a large To Do list with and without
+     * the format pool.  The timing is informational;
+     * it depends on how many cores are available.
+     */
+    @Test
+    public void testParallelExportThroughput() throws Exception {
+        final int count = 20000;
+        for (int i = 0; i < count; i++)
+            mockRepo.insertItem(randomToDo());
+        final int[] threadCounts = { 1, 3 };
+        long[] elapsed = new long[threadCounts.length];
+        // Run each export twice so the second pass is warmed up
+        for (int pass = 0; pass < 2; pass++) {
+            for (int t = 0; t < threadCounts.length; t++) {
+                long start = System.nanoTime();
+                exportWithThreads(threadCounts[t]);
+                elapsed[t] = System.nanoTime() - start;
+            }
+        }
+        System.out.println(String.format(Locale.US,
+                "Exported %d items in %d ms on 1 thread, %d ms with"
+                        + " %d format threads (%d cores available)",
+                count, elapsed[0] / 1000000, elapsed[1] / 1000000,
+                threadCounts[1],
+                Runtime.getRuntime().availableProcessors()));
+    }
+
+}
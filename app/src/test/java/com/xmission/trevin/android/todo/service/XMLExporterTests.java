@@ -1504,4 +1504,128 @@ public class XMLExporterTests {
         runRepeatTest(repeat);
     }
 
+    /**
+     * Verify that the XML emitter escapes and encodes text exactly the
+     * way a UTF-8 {@link java.io.PrintStream} would after escaping it
+     * with {@link XMLExporter#escapeXML(String)}, including characters
+     * outside the basic plane, unpaired surrogates (which become
+     * &lsquo;?&rsquo;), and surrogate pairs which straddle the
+     * emitter&rsquo;s internal chunk and buffer boundaries.
+     */
+    @Test
+    public void testEmitterText() throws Exception {
+        List<String> samples = new ArrayList<>();
+        samples.add("Plain text");
+        samples.add("Tom & Jerry <cartoon> \"quoted\" 'single'");
+        samples.add("caf\u00e9 \u4e2d\u6587 \u07ff\u0800\uffff");
+        samples.add("Smile \uD83D\uDE00 please");
+        samples.add("Lone high \uD83D surrogate");
+        samples.add("Lone low \uDE00 surrogate");
+        samples.add("Ends with high \uD83D");
+        samples.add("\uDE00\uD83D backwards");
+        for (int offset = 1020; offset < 1030; offset++) {
+            char[] padding = new char[offset];
+            Arrays.fill(padding, 'x');
+            samples.add(new String(padding) + "\uD83D\uDE00&yyyyyyyyyy");
+        }
+        StringBuilder big = new StringBuilder();
+        while (big.length() < 3 * XMLEmitter.BUFFER_SIZE)
+            big.append("&\uD83D\uDE00\u4e2d<").append(
+                    SRAND.nextAlphanumeric(0, 50));
+        samples.add(big.toString());
+
+        for (String sample : samples) {
+            ByteArrayOutputStream expected = new ByteArrayOutputStream();
+            java.io.PrintStream ps = new java.io.PrintStream(
+                    expected, false, "UTF-8");
+            ps.print(escapeXML(sample));
+            ps.print(sample);
+            ps.close();
+            ByteArrayOutputStream actual = new ByteArrayOutputStream();
+            XMLEmitter emitter = new XMLEmitter(actual);
+            emitter.text(sample);
+            emitter.raw(sample);
+            emitter.close();
+            assertArrayEquals(String.format(Locale.US,
+                    "Encoding of %d-character string", sample.length()),
+                    expected.toByteArray(), actual.toByteArray());
+        }
+    }
+
+    /**
+     * Verify the emitter&rsquo;s number, boolean, and Base64 output
+     * against the standard conversions.
+     */
+    @Test
+    public void testEmitterValues() throws Exception {
+        long[] numbers = { 0, 1, -1, 9, 10, 99, 100, 12345,
+                Integer.MAX_VALUE, Integer.MIN_VALUE,
+                Long.MAX_VALUE, Long.MIN_VALUE, RAND.nextLong() };
+        StringBuilder expected = new StringBuilder();
+        ByteArrayOutputStream actual = new ByteArrayOutputStream();
+        XMLEmitter emitter = new XMLEmitter(actual);
+        for (long n : numbers) {
+            expected.append(n).append(' ');
+            emitter.number(n);
+            emitter.raw(" ");
+        }
+        expected.append(true).append(false);
+        emitter.bool(true);
+        emitter.bool(false);
+        for (int len = 0; len < 200; len += RAND.nextInt(7) + 1) {
+            byte[] data = new byte[len];
+            RAND.nextBytes(data);
+            expected.append(encodeBase64(data)).append(
+                    XMLEmitter.LINE_SEPARATOR);
+            emitter.base64(data);
+            emitter.newline();
+        }
+        emitter.close();
+        assertEquals(expected.toString(), new String(
+                actual.toByteArray(), StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Export the mock repository with a given number of format threads.
+     *
+     * @return the exported XML with the export timestamp removed,
+     * since that is the only part which may differ between runs
+     */
+    private String exportWithThreads(int threads) throws Exception {
+        ByteArrayOutputStream outStream = new ByteArrayOutputStream();
+        XMLExporter.setFormatThreads(threads);
+        try {
+            XMLExporter.export(mockPrefs, mockRepo, outStream, true,
+                    new MockProgressBar());
+        } finally {
+            XMLExporter.setFormatThreads(Math.min(4,
+                    Runtime.getRuntime().availableProcessors() - 1));
+        }
+        return new String(outStream.toByteArray(), StandardCharsets.UTF_8)
+                .replaceFirst(" " + XMLExporter.ATTR_EXPORTED + "=\"[^\"]*\"",
+                        "");
+    }
+
+    /**
+     * Formatting items on several threads must produce exactly
+     * the same output as formatting them on one.
+     */
+    @Test
+    public void testParallelExportIdentical() throws Exception {
+        // Make sure the last batch is a partial one
+        final int count = 4 * XMLExporter.ITEM_BATCH_SIZE
+                + RAND.nextInt(XMLExporter.ITEM_BATCH_SIZE - 1) + 1;
+        for (int i = 0; i < count; i++) {
+            ToDoItem item = randomToDo();
+            if ((item.getDue() != null) && RAND.nextBoolean())
+                item.setAlarm(randomAlarm());
+            mockRepo.insertItem(item);
+        }
+        String expected = exportWithThreads(1);
+        assertEquals("Items exported", count,
+                expected.split("<" + XMLExporter.TODO_ITEM + " ").length - 1);
+        assertEquals("Output with 3 format threads", expected,
+                exportWithThreads(3));
+    }
+
 }
@@ -0,0 +1,228 @@
+/*
+ * Copyright © 2026 Trevin Beattie
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.xmission.trevin.android.todo.service;
+
+import static com.xmission.trevin.android.todo.util.RandomToDoUtils.*;
+
+import static org.junit.Assert.*;
+
+import com.xmission.trevin.android.todo.data.MockSharedPreferences;
+import com.xmission.trevin.android.todo.data.ToDoCategory;
+import com.xmission.trevin.android.todo.data.ToDoItem;
+import com.xmission.trevin.android.todo.data.ToDoPreferences;
+import com.xmission.trevin.android.todo.provider.MockToDoRepository;
+import com.xmission.trevin.android.todo.service.XMLImporter.Engine;
+import com.xmission.trevin.android.todo.service.XMLImporter.ImportType;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Ignore;
+import org.junit.Test;
+import org.xml.sax.Attributes;
+import org.xml.sax.helpers.DefaultHandler;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.time.ZoneOffset;
+import java.time.temporal.ChronoUnit;
+import java.util.Locale;
+
+import javax.xml.parsers.SAXParserFactory;
+
+/**
+ * Timing comparisons of the SAX and pull parser engines of the
+ * {@link XMLImporter}.  These take too long and depend too much on
+ * the machine to run with the unit tests; remove the {@link Ignore}
+ * annotation to run them by hand.  The correctness of both engines
+ * is covered by {@link XMLImportEngineTests}.
+ *
+ * @author Trevin Beattie
+ */
+@Ignore("Benchmark; run by hand")
+public class XMLImportEngineBenchmark {
+
+    private static MockSharedPreferences underlyingPrefs = null;
+    private static ToDoPreferences mockPrefs = null;
+    private static MockToDoRepository mockRepo = null;
+
+    /** The engine that was in use before each benchmark */
+    private Engine originalEngine;
+
+    @Before
+    public void initializeRepository() {
+        if (mockPrefs == null) {
+            underlyingPrefs = MockSharedPreferences.getInstance();
+            ToDoPreferences.setSharedPreferences(underlyingPrefs);
+            mockPrefs = ToDoPreferences.getInstance(null);
+        }
+        if (mockRepo == null) {
+            mockRepo = MockToDoRepository.getInstance();
+        }
+        underlyingPrefs.resetMock();
+        mockPrefs.setTimeZone(ZoneOffset.UTC);
+        mockRepo.clear();
+        originalEngine = XMLImporter.getEngine();
+    }
+
+    @After
+    public void restoreEngine() {
+        XMLImporter.setEngine(originalEngine);
+    }
+
+    /**
+     * Add random (unencrypted) To Do items to the mock repository.
+     *
+     * @param count the number of items to add
+     */
+    private static void addItems(int count) {
+        String unfiled = mockRepo.getCategoryById(
+                ToDoCategory.UNFILED).getName();
+        for (int i = 0; i < count; i++) {
+            ToDoItem item = randomToDo();
+            item.setCreateTime(item.getCreateTime()
+                    .truncatedTo(ChronoUnit.MILLIS));
+            item.setModTime(item.getModTime().truncatedTo(ChronoUnit.MILLIS));
+            if (item.getCompleted() != null)
+                item.setCompleted(item.getCompleted()
+                        .truncatedTo(ChronoUnit.MILLIS));
+            item.setCategoryName(unfiled);
+            mockRepo.insertItem(item);
+        }
+    }
+
+    /** Export the mock repository including private items */
+    private static byte[] export() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        XMLExporter.export(mockPrefs, mockRepo, out, true,
+                new MockProgressBar());
+        return out.toByteArray();
+    }
+
+    /**
+     * Do a clean import using a given engine.
+     *
+     * @param xml the document to import
+     * @param engine the parser to use
+     */
+    private static void importXML(byte[] xml, Engine engine)
+            throws IOException {
+        XMLImporter.setEngine(engine);
+        XMLImporter.importData(mockPrefs, mockRepo, "test.xml",
+                new ByteArrayInputStream(xml),
+                ImportType.CLEAN, true, null, (String) null,
+                new MockProgressBar());
+    }
+
+    /**
+     * Parse a document with a given engine without importing anything,
+     * to measure the cost of the parser alone.
+     *
+     * @param xml the document to parse
+     * @param engine the parser to use
+     * @param handler the handler for the document&rsquo;s contents
+     */
+    private static void parseOnly(byte[] xml, Engine engine,
+                                  DefaultHandler handler) throws Exception {
+        if (engine == Engine.PULL) {
+            new XMLPullReader().parse(new ByteArrayInputStream(xml), handler);
+        } else {
+            SAXParserFactory.newInstance().newSAXParser().parse(
+                    new ByteArrayInputStream(xml), handler);
+        }
+    }
+
+    /**
+     * Compare the time it takes each engine to parse a large export,
+     * with a handler that only counts the elements and characters.
+     */
+    @Test
+    public void testParserThroughput() throws Exception {
+        final int itemCount = 20000;
+        final int rounds = 5;
+        addItems(itemCount);
+        byte[] xml = export();
+        final long[] counts = new long[2];
+        DefaultHandler handler = new DefaultHandler() {
+            @Override
+            public void startElement(String uri, String localName,
+                                     String qName, Attributes attributes) {
+                counts[0]++;
+                for (int i = attributes.getLength() - 1; i >= 0; i--)
+                    counts[1] += attributes.getValue(i).length();
+            }
+            @Override
+            public void characters(char[] ch, int start, int length) {
+                counts[1] += length;
+            }
+        };
+        long[] bestNanos = new long[Engine.values().length];
+        long[] elementCounts = new long[Engine.values().length];
+        for (int round = 0; round < rounds; round++) {
+            for (Engine engine : Engine.values()) {
+                counts[0] = counts[1] = 0;
+                long start = System.nanoTime();
+                parseOnly(xml, engine, handler);
+                long elapsed = System.nanoTime() - start;
+                elementCounts[engine.ordinal()] = counts[0];
+                if ((round == 0) || (elapsed < bestNanos[engine.ordinal()]))
+                    bestNanos[engine.ordinal()] = elapsed;
+            }
+        }
+        assertEquals("Elements seen by each engine",
+                elementCounts[Engine.SAX.ordinal()],
+                elementCounts[Engine.PULL.ordinal()]);
+        for (Engine engine : Engine.values())
+            System.out.println(String.format(Locale.US,
+                    "%s parser: %d KB in %.1f ms (%.1f MB/s)",
+                    engine, xml.length / 1024,
+                    bestNanos[engine.ordinal()] / 1.0e+6,
+                    xml.length * 1.0e+3 / bestNanos[engine.ordinal()]));
+    }
+
+    /**
+     * Compare the time it takes each engine to import a large export.
+     * The engines take turns so that neither benefits from running
+     * after the other has warmed up.
+     */
+    @Test
+    public void testEngineThroughput() throws IOException {
+        final int itemCount = 10000;
+        final int rounds = 3;
+        addItems(itemCount);
+        byte[] xml = export();
+        long[] bestNanos = new long[Engine.values().length];
+        for (int round = 0; round < rounds; round++) {
+            for (Engine engine : Engine.values()) {
+                mockRepo.clear();
+                long start = System.nanoTime();
+                importXML(xml, engine);
+                long elapsed = System.nanoTime() - start;
+                assertEquals(engine + " import count",
+                        itemCount, mockRepo.countItems());
+                if ((round == 0) || (elapsed < bestNanos[engine.ordinal()]))
+                    bestNanos[engine.ordinal()] = elapsed;
+            }
+        }
+        for (Engine engine : Engine.values())
+            System.out.println(String.format(Locale.US,
+                    "%s engine: %d items (%d KB) in %.1f ms",
+                    engine, itemCount, xml.length / 1024,
+                    bestNanos[engine.ordinal()] / 1.0e+6));
+    }
+
+}
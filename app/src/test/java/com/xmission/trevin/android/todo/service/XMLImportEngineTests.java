@@ -0,0 +1,359 @@
+/*
+ * Copyright © 2026 Trevin Beattie
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.xmission.trevin.android.todo.service;
+
+import static com.xmission.trevin.android.todo.util.RandomToDoUtils.*;
+
+import static org.junit.Assert.*;
+
+import com.xmission.trevin.android.todo.data.MockSharedPreferences;
+import com.xmission.trevin.android.todo.data.ToDoCategory;
+import com.xmission.trevin.android.todo.data.ToDoItem;
+import com.xmission.trevin.android.todo.data.ToDoPreferences;
+import com.xmission.trevin.android.todo.provider.MockToDoRepository;
+import com.xmission.trevin.android.todo.provider.ToDoCursor;
+import com.xmission.trevin.android.todo.provider.ToDoRepositoryImpl;
+import com.xmission.trevin.android.todo.provider.ToDoSchema;
+import com.xmission.trevin.android.todo.service.XMLImporter.Engine;
+import com.xmission.trevin.android.todo.service.XMLImporter.ImportType;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.xml.sax.Attributes;
+import org.xml.sax.helpers.DefaultHandler;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.xml.parsers.SAXParserFactory;
+
+/**
+ * Tests comparing the SAX and pull parser engines of the
+ * {@link XMLImporter}: both must import the same data, reject the
+ * same documents, and report errors at the same locations.
+ *
+ * @author Trevin Beattie
+ */
+public class XMLImportEngineTests {
+
+    private static MockSharedPreferences underlyingPrefs = null;
+    private static ToDoPreferences mockPrefs = null;
+    private static MockToDoRepository mockRepo = null;
+
+    /** The engine that was in use before each test */
+    private Engine originalEngine;
+
+    @Before
+    public void initializeRepository() {
+        if (mockPrefs == null) {
+            underlyingPrefs = MockSharedPreferences.getInstance();
+            ToDoPreferences.setSharedPreferences(underlyingPrefs);
+            mockPrefs = ToDoPreferences.getInstance(null);
+        }
+        if (mockRepo == null) {
+            mockRepo = MockToDoRepository.getInstance();
+        }
+        underlyingPrefs.resetMock();
+        mockPrefs.setTimeZone(ZoneOffset.UTC);
+        mockRepo.clear();
+        originalEngine = XMLImporter.getEngine();
+    }
+
+    @After
+    public void restoreEngine() {
+        XMLImporter.setEngine(originalEngine);
+    }
+
+    /**
+     * Add random (unencrypted) To Do items to the mock repository.
+     *
+     * @param count the number of items to add
+     */
+    private static void addItems(int count) {
+        String unfiled = mockRepo.getCategoryById(
+                ToDoCategory.UNFILED).getName();
+        for (int i = 0; i < count; i++) {
+            ToDoItem item = randomToDo();
+            item.setCreateTime(item.getCreateTime()
+                    .truncatedTo(ChronoUnit.MILLIS));
+            item.setModTime(item.getModTime().truncatedTo(ChronoUnit.MILLIS));
+            if (item.getCompleted() != null)
+                item.setCompleted(item.getCompleted()
+                        .truncatedTo(ChronoUnit.MILLIS));
+            item.setCategoryName(unfiled);
+            mockRepo.insertItem(item);
+        }
+    }
+
+    /** Read all To Do records from the mock repository, sorted by ID */
+    private static List<ToDoItem> readToDos() {
+        List<ToDoItem> list = new ArrayList<>();
+        ToDoCursor cursor = mockRepo.getItems(
+                ToDoPreferences.ALL_CATEGORIES, true, LocalDate.now(),
+                true, true, ToDoRepositoryImpl.TODO_TABLE_NAME + "."
+                        + ToDoSchema.ToDoItemColumns._ID);
+        try {
+            while (cursor.moveToNext())
+                list.add(cursor.getItem());
+        } finally {
+            cursor.close();
+        }
+        return list;
+    }
+
+    /** Export the mock repository including private items */
+    private static byte[] export() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        XMLExporter.export(mockPrefs, mockRepo, out, true,
+                new MockProgressBar());
+        return out.toByteArray();
+    }
+
+    /**
+     * Do a clean import using a given engine.
+     *
+     * @param xml the document to import
+     * @param engine the parser to use
+     */
+    private static void importXML(byte[] xml, Engine engine)
+            throws IOException {
+        XMLImporter.setEngine(engine);
+        XMLImporter.importData(mockPrefs, mockRepo, "test.xml",
+                new ByteArrayInputStream(xml),
+                ImportType.CLEAN, true, null, (String) null,
+                new MockProgressBar());
+    }
+
+    /**
+     * Import a document which should be rejected.
+     *
+     * @param xml the document to import
+     * @param engine the parser to use
+     *
+     * @return the exception thrown by the importer
+     */
+    private static XMLParseException importError(String xml, Engine engine)
+            throws IOException {
+        try {
+            importXML(xml.getBytes(StandardCharsets.UTF_8), engine);
+            fail(String.format("%s engine accepted an invalid document",
+                    engine));
+            return null;
+        } catch (XMLParseException e) {
+            return e;
+        }
+    }
+
+    /**
+     * Verify that both engines reject a document with the same
+     * kind of exception at the same location.
+     *
+     * @param xml the invalid document
+     * @param expectedClass the exception class we expect
+     * @param expectedLine the line number at which the error is expected
+     */
+    private static void assertSameError(
+            String xml, Class<? extends XMLParseException> expectedClass,
+            int expectedLine) throws IOException {
+        XMLParseException saxError = importError(xml, Engine.SAX);
+        XMLParseException pullError = importError(xml, Engine.PULL);
+        assertEquals("SAX exception", expectedClass, saxError.getClass());
+        assertEquals("Pull parser exception",
+                expectedClass, pullError.getClass());
+        assertEquals("SAX line number",
+                expectedLine, saxError.getLineNumber());
+        assertEquals("Pull parser line number",
+                saxError.getLineNumber(), pullError.getLineNumber());
+        assertEquals("Pull parser column number",
+                saxError.getColumn(), pullError.getColumn());
+        if (expectedClass != XMLParseException.class)
+            // Messages from our own validation must match exactly
+            assertEquals("Error message",
+                    saxError.getMessage(), pullError.getMessage());
+    }
+
+    @Test
+    public void testUnexpectedElement() throws IOException {
+        assertSameError("<?xml version=\"1.0\" encoding=\"utf-8\"?>\n"
+                        + "<ToDoApp version=\"2\">\n"
+                        + "  <Categories count=\"0\">\n"
+                        + "    <Bogus/>\n"
+                        + "  </Categories>\n"
+                        + "</ToDoApp>\n",
+                XMLUnexpectedElementException.class, 4);
+    }
+
+    /**
+     * An element in the wrong place is reported by the parse state
+     * as an {@link IllegalStateException}, which has no location;
+     * both engines must let it through unchanged.
+     */
+    @Test
+    public void testMisplacedElement() throws IOException {
+        String xml = "<?xml version=\"1.0\" encoding=\"utf-8\"?>\n"
+                + "<ToDoApp version=\"2\">\n"
+                + "  <category id=\"1\">Stray</category>\n"
+                + "</ToDoApp>\n";
+        String[] messages = new String[Engine.values().length];
+        for (Engine engine : Engine.values()) {
+            try {
+                importXML(xml.getBytes(StandardCharsets.UTF_8), engine);
+                fail(engine + " engine accepted a misplaced element");
+            } catch (IllegalStateException e) {
+                messages[engine.ordinal()] = e.getMessage();
+            }
+        }
+        assertEquals("Error message", messages[Engine.SAX.ordinal()],
+                messages[Engine.PULL.ordinal()]);
+    }
+
+    @Test
+    public void testBadAttributeValue() throws IOException {
+        assertSameError("<?xml version=\"1.0\" encoding=\"utf-8\"?>\n"
+                        + "<ToDoApp version=\"2\">\n"
+                        + "  <Categories count=\"1\">\n"
+                        + "    <category id=\"0\">Unfiled</category>\n"
+                        + "  </Categories>\n"
+                        + "  <ToDoList count=\"1\">\n"
+                        + "    <to-do id=\"1\" checked=\"false\""
+                        + " category=\"0\" priority=\"high\">\n"
+                        + "    </to-do>\n"
+                        + "  </ToDoList>\n"
+                        + "</ToDoApp>\n",
+                XMLBadValueException.class, 7);
+    }
+
+    @Test
+    public void testMissingAttribute() throws IOException {
+        assertSameError("<?xml version=\"1.0\" encoding=\"utf-8\"?>\n"
+                        + "<ToDoApp version=\"2\">\n"
+                        + "  <Categories count=\"1\">\n"
+                        + "    <category>Nameless</category>\n"
+                        + "  </Categories>\n"
+                        + "</ToDoApp>\n",
+                XMLMissingRequiredAttributeException.class, 4);
+    }
+
+    @Test
+    public void testUnsupportedVersion() throws IOException {
+        assertSameError("<?xml version=\"1.0\" encoding=\"utf-8\"?>\n"
+                        + "\n"
+                        + "<ToDoApp version=\"9\" total-records=\"0\">\n"
+                        + "</ToDoApp>\n",
+                XMLBadValueException.class, 3);
+    }
+
+    @Test
+    public void testTombstonesInFullExport() throws IOException {
+        assertSameError("<?xml version=\"1.0\" encoding=\"utf-8\"?>\n"
+                        + "<ToDoApp version=\"2\">\n"
+                        + "  <Categories count=\"0\">\n"
+                        + "  </Categories>\n"
+                        + "  <ToDoList count=\"0\">\n"
+                        + "  </ToDoList>\n"
+                        + "  <Tombstones count=\"1\">\n"
+                        + "  </Tombstones>\n"
+                        + "</ToDoApp>\n",
+                XMLParseException.class, 7);
+    }
+
+    @Test
+    public void testMismatchedEndTag() throws IOException {
+        String xml = "<?xml version=\"1.0\" encoding=\"utf-8\"?>\n"
+                + "<ToDoApp version=\"2\">\n"
+                + "  <Categories count=\"0\">\n"
+                + "  </Metadata>\n"
+                + "</ToDoApp>\n";
+        // Well-formedness errors come from the parsers themselves,
+        // so only the line is compared.
+        XMLParseException saxError = importError(xml, Engine.SAX);
+        XMLParseException pullError = importError(xml, Engine.PULL);
+        assertEquals("SAX line number", 4, saxError.getLineNumber());
+        assertEquals("Pull parser line number",
+                4, pullError.getLineNumber());
+    }
+
+    /** Both engines must import exactly the same items */
+    @Test
+    public void testSameImport() throws IOException {
+        addItems(500);
+        List<ToDoItem> original = readToDos();
+        byte[] xml = export();
+        for (Engine engine : Engine.values()) {
+            mockRepo.clear();
+            importXML(xml, engine);
+            assertEquals(engine + " import", original, readToDos());
+        }
+    }
+
+    /**
+     * Parse a document with a given engine without importing anything,
+     * to measure the cost of the parser alone.
+     *
+     * @param xml the document to parse
+     * @param engine the parser to use
+     * @param handler the handler for the document&rsquo;s contents
+     */
+    private static void parseOnly(byte[] xml, Engine engine,
+                                  DefaultHandler handler) throws Exception {
+        if (engine == Engine.PULL) {
+            new XMLPullReader().parse(new ByteArrayInputStream(xml), handler);
+        } else {
+            SAXParserFactory.newInstance().newSAXParser().parse(
+                    new ByteArrayInputStream(xml), handler);
+        }
+    }
+
+    /**
+     * Both parsers must report the same elements and text to the
+     * handler for the same document.
+     */
+    @Test
+    public void testParserEventParity() throws Exception {
+        addItems(200);
+        byte[] xml = export();
+        long[][] counts = new long[Engine.values().length][];
+        for (Engine engine : Engine.values()) {
+            final long[] engineCounts = new long[2];
+            parseOnly(xml, engine, new DefaultHandler() {
+                @Override
+                public void startElement(String uri, String localName,
+                                         String qName, Attributes attributes) {
+                    engineCounts[0]++;
+                    for (int i = attributes.getLength() - 1; i >= 0; i--)
+                        engineCounts[1] += attributes.getValue(i).length();
+                }
+            });
+            counts[engine.ordinal()] = engineCounts;
+        }
+        assertEquals("Elements seen by each engine",
+                counts[Engine.SAX.ordinal()][0],
+                counts[Engine.PULL.ordinal()][0]);
+        assertEquals("Attribute text seen by each engine",
+                counts[Engine.SAX.ordinal()][1],
+                counts[Engine.PULL.ordinal()][1]);
+    }
+
+}
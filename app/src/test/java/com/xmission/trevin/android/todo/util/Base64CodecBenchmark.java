@@ -0,0 +1,102 @@
+/*
+ * Copyright © 2026 Trevin Beattie
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.xmission.trevin.android.todo.util;
+
+import static org.junit.Assert.*;
+
+import org.junit.Ignore;
+import org.junit.Test;
+
+import java.util.Base64;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Timing of the Base64 codec against the JDK&rsquo;s.  This depends
+ * too much on the machine to run with the unit tests; remove the
+ * {@link Ignore} annotation to run it by hand.  The codec&rsquo;s
+ * output is checked by {@link Base64CodecTests}.
+ *
+ * @author Trevin Beattie
+ */
+@Ignore("Benchmark; run by hand")
+public class Base64CodecBenchmark {
+
+    private static final Random RAND = new Random();
+
+    /**
+     * Time how long it takes to encode and decode a batch of data
+     * the size of typical encrypted notes and print the throughput,
+     * along with that of the JDK&rsquo;s codec for comparison.
+     * The timing is informational.
+     */
+    @Test
+    public void testThroughput() {
+        byte[][] messages = new byte[2000][];
+        long totalBytes = 0;
+        for (int i = 0; i < messages.length; i++) {
+            messages[i] = new byte[RAND.nextInt(4096) + 16];
+            RAND.nextBytes(messages[i]);
+            totalBytes += messages[i].length;
+        }
+        byte[] separator = { '\n' };
+        byte[] buffer = new byte[Base64Codec.encodedLength(4200, 1)];
+        char[][] texts = new char[messages.length][];
+        byte[][] jdkTexts = new byte[messages.length][];
+        Base64.Encoder jdkEncoder = Base64.getUrlEncoder().withoutPadding();
+        Base64.Decoder jdkDecoder = Base64.getUrlDecoder();
+        long[] elapsed = new long[4];
+        // Run each codec twice so the second pass is warmed up
+        for (int pass = 0; pass < 2; pass++) {
+            long start = System.nanoTime();
+            for (int m = 0; m < messages.length; m++) {
+                int len = Base64Codec.encode(messages[m], 0,
+                        messages[m].length, buffer, 0, separator);
+                if (texts[m] == null) {
+                    texts[m] = new char[len];
+                    for (int i = 0; i < len; i++)
+                        texts[m][i] = (char) buffer[i];
+                }
+            }
+            elapsed[0] = System.nanoTime() - start;
+            start = System.nanoTime();
+            for (int m = 0; m < messages.length; m++)
+                assertEquals(messages[m].length, Base64Codec.decode(
+                        texts[m], 0, texts[m].length).length);
+            elapsed[1] = System.nanoTime() - start;
+            start = System.nanoTime();
+            for (int m = 0; m < messages.length; m++)
+                jdkTexts[m] = jdkEncoder.encode(messages[m]);
+            elapsed[2] = System.nanoTime() - start;
+            start = System.nanoTime();
+            for (int m = 0; m < messages.length; m++)
+                assertEquals(messages[m].length,
+                        jdkDecoder.decode(jdkTexts[m]).length);
+            elapsed[3] = System.nanoTime() - start;
+        }
+        System.out.println(String.format(Locale.US,
+                "%d messages (%d KB): codec encode %.1f MB/s,"
+                + " decode %.1f MB/s; JDK encode %.1f MB/s,"
+                + " decode %.1f MB/s",
+                messages.length, totalBytes / 1024,
+                totalBytes * 1000.0 / elapsed[0],
+                totalBytes * 1000.0 / elapsed[1],
+                totalBytes * 1000.0 / elapsed[2],
+                totalBytes * 1000.0 / elapsed[3]));
+    }
+
+}
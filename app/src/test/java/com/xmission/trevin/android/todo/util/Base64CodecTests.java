@@ -0,0 +1,137 @@
+/*
+ * Copyright © 2026 Trevin Beattie
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.xmission.trevin.android.todo.util;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Tests for the Base64 codec used by the XML import and export.
+ *
+ * @author Trevin Beattie
+ */
+public class Base64CodecTests {
+
+    private static final Random RAND = new Random();
+
+    /** Line separators to try encoding with */
+    private static final String[] SEPARATORS = { "\n", "\r\n" };
+
+    /**
+     * Generate a data length to test, favoring the sizes
+     * around the ends of lines.
+     */
+    private static int randomLength() {
+        if (RAND.nextBoolean())
+            return RAND.nextInt(4) * Base64Codec.LINE_BYTES
+                    + RAND.nextInt(7) - 3 + 3;
+        return RAND.nextInt(2000);
+    }
+
+    /**
+     * Encode random data of random lengths and verify that:
+     * the output matches the JDK&rsquo;s URL-safe encoder without
+     * padding once the line breaks are removed; no line is shorter
+     * than 64 characters except the last; {@link
+     * Base64Codec#encodedLength(int, int)} is exact; encoding the data
+     * in pieces gives the same result; and decoding the output from
+     * the middle of a larger character array gives back the original.
+     */
+    @Test
+    public void testRoundTrip() {
+        Base64.Encoder reference = Base64.getUrlEncoder().withoutPadding();
+        for (int n = 0; n < 500; n++) {
+            byte[] data = new byte[randomLength()];
+            RAND.nextBytes(data);
+            String separator = SEPARATORS[n % SEPARATORS.length];
+            byte[] sepBytes = separator.getBytes(StandardCharsets.US_ASCII);
+            String encoded = Base64Codec.encode(data, separator);
+            String message = String.format(Locale.US,
+                    "Encoding of %d bytes", data.length);
+
+            assertEquals(message, reference.encodeToString(data),
+                    encoded.replace(separator, ""));
+            assertEquals(message + " length", Base64Codec.encodedLength(
+                    data.length, sepBytes.length), encoded.length());
+            String[] lines = encoded.split(separator);
+            for (int i = 0; i < lines.length - 1; i++)
+                assertEquals(message + " line " + (i + 1) + " length",
+                        Base64Codec.LINE_CHARACTERS, lines[i].length());
+
+            // Encode the same data in pieces of whole lines
+            byte[] pieces = new byte[encoded.length() + 10];
+            int pos = 5;
+            int from = 0;
+            while (from < data.length) {
+                int to = Math.min(data.length, from
+                        + (RAND.nextInt(3) + 1) * Base64Codec.LINE_BYTES);
+                pos = Base64Codec.encode(data, from, to,
+                        pieces, pos, sepBytes);
+                from = to;
+            }
+            assertEquals(message + " in pieces", encoded, new String(
+                    pieces, 5, pos - 5, StandardCharsets.US_ASCII));
+
+            char[] text = new char[encoded.length() + 20];
+            Arrays.fill(text, '!');
+            encoded.getChars(0, encoded.length(), text, 7);
+            assertArrayEquals(message + " decoded", data,
+                    Base64Codec.decode(text, 7, encoded.length()));
+        }
+    }
+
+    /**
+     * The decoder should also accept the standard alphabet,
+     * padding, and arbitrary whitespace.
+     */
+    @Test
+    public void testDecodeStandard() {
+        for (int n = 0; n < 200; n++) {
+            byte[] data = new byte[randomLength()];
+            RAND.nextBytes(data);
+            String encoded = Base64.getMimeEncoder().encodeToString(data)
+                    .replace("A", " A\t");
+            assertArrayEquals(String.format(Locale.US,
+                    "Decoding of %d bytes", data.length),
+                    data, Base64Codec.decode(encoded));
+        }
+    }
+
+    /** Decoding should reject any characters outside of Base64 */
+    @Test
+    public void testDecodeInvalid() {
+        assertNull(Base64Codec.decode((String) null));
+        for (char c : new char[] { '!', '.', '@', '[', '~',
+                '\u007f', '\u0080', 'é', '中' }) {
+            try {
+                Base64Codec.decode("abcd" + c + "efgh");
+                fail("Decoding accepted invalid character U+"
+                        + Integer.toHexString(c));
+            } catch (IllegalArgumentException e) {
+                // Success
+            }
+        }
+    }
+
+}
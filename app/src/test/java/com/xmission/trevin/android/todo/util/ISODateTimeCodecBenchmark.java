@@ -0,0 +1,94 @@
+/*
+ * Copyright © 2026 Trevin Beattie
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.xmission.trevin.android.todo.util;
+
+import org.junit.Ignore;
+import org.junit.Test;
+
+import java.time.Instant;
+import java.time.format.DateTimeFormatter;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Timing of the fixed-layout ISO-8601 codec against the standard
+ * {@link DateTimeFormatter}.  This depends too much on the machine
+ * to run with the unit tests; remove the {@link Ignore} annotation
+ * to run it by hand.  The codec&rsquo;s output is checked by
+ * {@link ISODateTimeCodecTests}.
+ *
+ * @author Trevin Beattie
+ */
+@Ignore("Benchmark; run by hand")
+public class ISODateTimeCodecBenchmark {
+
+    private static final Random RAND = new Random();
+
+    /** Generate a random timestamp in the years 0000&ndash;9999 */
+    private static long randomMillis() {
+        long millis = ISODateTimeCodec.MIN_FIXED_MILLIS + (long) (RAND.nextDouble()
+                * (ISODateTimeCodec.MAX_FIXED_MILLIS
+                - ISODateTimeCodec.MIN_FIXED_MILLIS));
+        // Make sure we see timestamps on whole seconds too
+        if (RAND.nextBoolean())
+            millis -= Math.floorMod(millis, 1000L);
+        return millis;
+    }
+
+    /**
+     * Time how long it takes to format and parse a batch of
+     * timestamps with the codec and with the standard formatter,
+     * and print the rates.  The timing is informational.
+     */
+    @Test
+    public void testThroughput() {
+        Instant[] timestamps = new Instant[50000];
+        String[] texts = new String[timestamps.length];
+        for (int i = 0; i < timestamps.length; i++)
+            timestamps[i] = Instant.ofEpochMilli(randomMillis());
+        byte[] buffer = new byte[ISODateTimeCodec.TIMESTAMP_MAX_LENGTH];
+        long[] elapsed = new long[4];
+        // Run each twice so the second pass is warmed up
+        for (int pass = 0; pass < 2; pass++) {
+            long start = System.nanoTime();
+            for (Instant t : timestamps)
+                ISODateTimeCodec.formatTimestamp(t.toEpochMilli(), buffer, 0);
+            elapsed[0] = System.nanoTime() - start;
+            start = System.nanoTime();
+            for (int i = 0; i < timestamps.length; i++)
+                texts[i] = DateTimeFormatter.ISO_INSTANT.format(timestamps[i]);
+            elapsed[1] = System.nanoTime() - start;
+            start = System.nanoTime();
+            for (String s : texts)
+                ISODateTimeCodec.parseTimestamp(s);
+            elapsed[2] = System.nanoTime() - start;
+            start = System.nanoTime();
+            for (String s : texts)
+                Instant.parse(s);
+            elapsed[3] = System.nanoTime() - start;
+        }
+        System.out.println(String.format(Locale.US,
+                "%d timestamps: codec format %.0f ns, parse %.0f ns;"
+                + " java.time format %.0f ns, parse %.0f ns",
+                timestamps.length,
+                (double) elapsed[0] / timestamps.length,
+                (double) elapsed[2] / timestamps.length,
+                (double) elapsed[1] / timestamps.length,
+                (double) elapsed[3] / timestamps.length));
+    }
+
+}
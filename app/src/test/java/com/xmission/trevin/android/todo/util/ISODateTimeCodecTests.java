@@ -0,0 +1,224 @@
+/*
+ * Copyright © 2026 Trevin Beattie
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.xmission.trevin.android.todo.util;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import java.time.*;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Tests for the fixed-layout ISO-8601 codec, checking it against
+ * the standard {@link DateTimeFormatter}s.
+ *
+ * @author Trevin Beattie
+ */
+public class ISODateTimeCodecTests {
+
+    private static final Random RAND = new Random();
+
+    /** Timestamps at interesting points in the calendar */
+    private static final String[] SPECIAL_TIMESTAMPS = {
+            "0000-01-01T00:00:00Z", "0000-02-29T12:00:00Z",
+            "0000-12-31T23:59:59.999Z", "0001-01-01T00:00:00Z",
+            "1899-12-31T23:59:59Z", "1900-02-28T23:59:59Z",
+            "1900-03-01T00:00:00Z", "1969-12-31T23:59:59.999Z",
+            "1970-01-01T00:00:00Z", "1970-01-01T00:00:00.001Z",
+            "2000-02-29T00:00:00Z", "2000-03-01T00:00:00Z",
+            "2024-02-29T23:59:59.500Z", "2100-02-28T10:00:00Z",
+            "2100-03-01T10:00:00Z", "9999-12-31T23:59:59.999Z",
+    };
+
+    /** Generate a random timestamp in the years 0000&ndash;9999 */
+    private static long randomMillis() {
+        long millis = ISODateTimeCodec.MIN_FIXED_MILLIS + (long) (RAND.nextDouble()
+                * (ISODateTimeCodec.MAX_FIXED_MILLIS
+                - ISODateTimeCodec.MIN_FIXED_MILLIS));
+        // Make sure we see timestamps on whole seconds too
+        if (RAND.nextBoolean())
+            millis -= Math.floorMod(millis, 1000L);
+        return millis;
+    }
+
+    /**
+     * Format and parse timestamps throughout the supported range,
+     * including the limits and the days around leap days, and verify
+     * they match {@link DateTimeFormatter#ISO_INSTANT} and
+     * {@link Instant#parse(CharSequence)}.
+     */
+    @Test
+    public void testTimestampRoundTrip() {
+        List<Instant> timestamps = new ArrayList<>();
+        for (String s : SPECIAL_TIMESTAMPS)
+            timestamps.add(Instant.parse(s));
+        for (int i = 0; i < 10000; i++)
+            timestamps.add(Instant.ofEpochMilli(randomMillis()));
+        for (Instant t : timestamps) {
+            assertTrue("Fixed layout of " + t,
+                    ISODateTimeCodec.isFixedLayout(t));
+            String expected = DateTimeFormatter.ISO_INSTANT.format(t);
+            String actual = ISODateTimeCodec.formatTimestamp(t);
+            assertEquals("Formatted timestamp", expected, actual);
+            assertEquals("Parsed timestamp " + actual, t,
+                    ISODateTimeCodec.parseTimestamp(actual));
+        }
+    }
+
+    /**
+     * Timestamps outside of the fixed layout &mdash; beyond the
+     * years 0000&ndash;9999 or with more precision than milliseconds
+     * &mdash; should fall back to the standard formatter and parser.
+     */
+    @Test
+    public void testTimestampFallback() {
+        Instant[] timestamps = {
+                Instant.ofEpochMilli(ISODateTimeCodec.MIN_FIXED_MILLIS - 1),
+                Instant.ofEpochMilli(ISODateTimeCodec.MAX_FIXED_MILLIS + 1),
+                Instant.parse("+12345-06-07T08:09:10Z"),
+                Instant.parse("-0100-01-01T00:00:00Z"),
+                Instant.ofEpochSecond(1700000000L, 123456789),
+                Instant.ofEpochSecond(1700000000L, 120000),
+        };
+        for (Instant t : timestamps) {
+            assertFalse("Fixed layout of " + t,
+                    ISODateTimeCodec.isFixedLayout(t));
+            String expected = DateTimeFormatter.ISO_INSTANT.format(t);
+            String actual = ISODateTimeCodec.formatTimestamp(t);
+            assertEquals("Formatted timestamp", expected, actual);
+            assertEquals("Parsed timestamp " + actual, t,
+                    ISODateTimeCodec.parseTimestamp(actual));
+        }
+        // Other layouts the general parser accepts
+        for (String s : new String[] { "2026-10-18T12:34:56.7Z",
+                "2026-10-18T12:34:56.123456Z", "2016-12-31T23:59:60Z" })
+            assertEquals("Parsed timestamp " + s, Instant.parse(s),
+                    ISODateTimeCodec.parseTimestamp(s));
+    }
+
+    /** Invalid timestamps should be rejected just like the standard parser */
+    @Test
+    public void testTimestampInvalid() {
+        for (String s : new String[] { "2023-02-29T00:00:00Z",
+                "1900-02-29T00:00:00Z", "2026-13-01T00:00:00Z",
+                "2026-04-31T00:00:00Z", "2026-01-01T25:00:00Z",
+                "2026-01-01T12:60:00Z", "2026-01-01 12:00:00Z",
+                "2026-01-01T12:00:00", "2026-1-01T12:00:00.000Z",
+                "2026-01-01T12:00:00,000Z", "20x6-01-01T12:00:00Z" }) {
+            try {
+                Instant t = ISODateTimeCodec.parseTimestamp(s);
+                fail(String.format("Parsed \"%s\" as %s", s, t));
+            } catch (DateTimeParseException e) {
+                // Success
+            }
+        }
+    }
+
+    /**
+     * Format and parse every day of a few years around leap days and
+     * century boundaries, plus random days throughout the supported
+     * range, and verify they match {@link LocalDate}.
+     */
+    @Test
+    public void testDateRoundTrip() {
+        List<LocalDate> dates = new ArrayList<>();
+        for (int year : new int[] { 0, 1, 1899, 1900, 1969, 1970,
+                1999, 2000, 2023, 2024, 2100, 9999 }) {
+            for (LocalDate d = LocalDate.of(year, 1, 1);
+                 d.getYear() == year; d = d.plusDays(1))
+                dates.add(d);
+        }
+        long minDay = LocalDate.of(0, 1, 1).toEpochDay();
+        long maxDay = LocalDate.of(9999, 12, 31).toEpochDay();
+        for (int i = 0; i < 10000; i++)
+            dates.add(LocalDate.ofEpochDay(minDay
+                    + (long) (RAND.nextDouble() * (maxDay - minDay + 1))));
+        byte[] buffer = new byte[ISODateTimeCodec.DATE_LENGTH];
+        for (LocalDate d : dates) {
+            String expected = d.format(DateTimeFormatter.ISO_LOCAL_DATE);
+            assertEquals("Formatted date", expected,
+                    ISODateTimeCodec.formatDate(d));
+            assertEquals("Epoch day of " + expected, d.toEpochDay(),
+                    ISODateTimeCodec.toEpochDay(d.getYear(),
+                            d.getMonthValue(), d.getDayOfMonth()));
+            ISODateTimeCodec.formatDate(d.toEpochDay(), buffer, 0);
+            assertEquals("Date formatted from epoch day", expected,
+                    new String(buffer, 0, buffer.length));
+            assertEquals("Parsed date", d,
+                    ISODateTimeCodec.parseDate(expected));
+        }
+        // Out of range dates fall back to the standard formatter
+        for (LocalDate d : new LocalDate[] { LocalDate.of(10000, 1, 1),
+                LocalDate.of(-1, 12, 31), LocalDate.MAX, LocalDate.MIN }) {
+            String expected = d.format(DateTimeFormatter.ISO_LOCAL_DATE);
+            assertEquals("Formatted date", expected,
+                    ISODateTimeCodec.formatDate(d));
+            assertEquals("Parsed date", d,
+                    ISODateTimeCodec.parseDate(expected));
+        }
+        for (String s : new String[] { "2023-02-29", "1900-02-29",
+                "2026-00-10", "2026-06-31", "2026-6-30", "2026/06/30" }) {
+            try {
+                LocalDate d = ISODateTimeCodec.parseDate(s);
+                fail(String.format("Parsed \"%s\" as %s", s, d));
+            } catch (DateTimeParseException e) {
+                // Success
+            }
+        }
+    }
+
+    /**
+     * Format and parse every second of the day and verify they match
+     * {@link LocalTime}, including the short <tt>HH:mm</tt> layout and
+     * times with fractional seconds.
+     */
+    @Test
+    public void testTimeRoundTrip() {
+        for (int second = 0; second < 86400; second++) {
+            LocalTime t = LocalTime.ofSecondOfDay(second);
+            String expected = t.format(DateTimeFormatter.ISO_LOCAL_TIME);
+            assertEquals("Formatted time", expected,
+                    ISODateTimeCodec.formatTime(t));
+            assertEquals("Parsed time", t,
+                    ISODateTimeCodec.parseTime(expected));
+            if (second % 60 == 0)
+                assertEquals("Parsed short time", t,
+                        ISODateTimeCodec.parseTime(expected.substring(0, 5)));
+        }
+        LocalTime t = LocalTime.of(13, 14, 15, 500000000);
+        assertEquals("Formatted time",
+                t.format(DateTimeFormatter.ISO_LOCAL_TIME),
+                ISODateTimeCodec.formatTime(t));
+        assertEquals("Parsed time", t,
+                ISODateTimeCodec.parseTime("13:14:15.5"));
+        for (String s : new String[] { "24:00:00", "12:60", "12:00:60",
+                "1:00:00", "12-00-00", "noon" }) {
+            try {
+                LocalTime parsed = ISODateTimeCodec.parseTime(s);
+                fail(String.format("Parsed \"%s\" as %s", s, parsed));
+            } catch (DateTimeParseException e) {
+                // Success
+            }
+        }
+    }
+
+}
@@ -0,0 +1,126 @@
+/*
+ * Copyright © 2026 Trevin Beattie
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.xmission.trevin.android.todo.util;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Tests for the primitive long-to-int hash map
+ *
+ * @author Trevin Beattie
+ */
+public class LongIntHashMapTests {
+
+    /** Random number generator for some tests */
+    final Random RAND = new Random();
+
+    /** Test looking up keys in an empty map */
+    @Test
+    public void testEmpty() {
+        LongIntHashMap map = new LongIntHashMap();
+        assertTrue("Map is empty", map.isEmpty());
+        assertEquals("Size", 0, map.size());
+        assertEquals("Missing key", -1, map.get(42L, -1));
+        assertFalse("Contains key", map.containsKey(42L));
+        assertEquals("Missing zero key", -1, map.get(0L, -1));
+    }
+
+    /**
+     * Test storing sequential keys (as would be typical of item IDs)
+     * well past the initial capacity, and reading them all back.
+     */
+    @Test
+    public void testSequentialKeys() {
+        final int count = 10000;
+        LongIntHashMap map = new LongIntHashMap();
+        for (int i = 0; i < count; i++)
+            map.put(i + 1, i);
+        assertEquals("Size", count, map.size());
+        for (int i = 0; i < count; i++)
+            assertEquals("Value for key " + (i + 1), i, map.get(i + 1, -1));
+        assertEquals("Key past the end", -1, map.get(count + 1, -1));
+    }
+
+    /** Test that putting an existing key replaces its value */
+    @Test
+    public void testReplace() {
+        LongIntHashMap map = new LongIntHashMap();
+        map.put(7L, 1);
+        map.put(7L, 2);
+        assertEquals("Size", 1, map.size());
+        assertEquals("Replaced value", 2, map.get(7L, -1));
+    }
+
+    /**
+     * Test storing the key which the map uses internally
+     * to mark empty slots.
+     */
+    @Test
+    public void testZeroKey() {
+        LongIntHashMap map = new LongIntHashMap();
+        map.put(0L, 99);
+        map.put(Long.MIN_VALUE, 98);
+        map.put(Long.MAX_VALUE, 97);
+        assertEquals("Size", 3, map.size());
+        assertTrue("Contains zero key", map.containsKey(0L));
+        assertEquals("Value for 0", 99, map.get(0L, -1));
+        assertEquals("Value for MIN_VALUE", 98, map.get(Long.MIN_VALUE, -1));
+        assertEquals("Value for MAX_VALUE", 97, map.get(Long.MAX_VALUE, -1));
+        map.clear();
+        assertFalse("Contains zero key after clear", map.containsKey(0L));
+    }
+
+    /** Compare the map against a {@link HashMap} using random keys */
+    @Test
+    public void testRandomKeys() {
+        LongIntHashMap map = new LongIntHashMap(16);
+        Map<Long,Integer> expected = new HashMap<>();
+        for (int i = 0; i < 5000; i++) {
+            long key = RAND.nextLong();
+            int value = RAND.nextInt();
+            map.put(key, value);
+            expected.put(key, value);
+        }
+        assertEquals("Size", expected.size(), map.size());
+        for (Map.Entry<Long,Integer> entry : expected.entrySet())
+            assertEquals("Value for key " + entry.getKey(),
+                    (int) entry.getValue(), map.get(entry.getKey(), -1));
+    }
+
+    /** Test clearing and refilling the map */
+    @Test
+    public void testClear() {
+        LongIntHashMap map = new LongIntHashMap();
+        for (int i = 1; i <= 100; i++)
+            map.put(i, i);
+        map.clear();
+        assertTrue("Map is empty after clear", map.isEmpty());
+        assertFalse("Contains old key", map.containsKey(50L));
+        for (int i = 1; i <= 100; i++)
+            map.put(i * 3L, -i);
+        assertEquals("Size after refill", 100, map.size());
+        assertEquals("Value after refill", -50, map.get(150L, 0));
+        assertFalse("Contains old key after refill", map.containsKey(50L));
+    }
+
+}
@@ -0,0 +1,205 @@
+/*
+ * Copyright © 2026 Trevin Beattie
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.xmission.trevin.android.todo.util;
+
+import static org.junit.Assert.*;
+
+import com.xmission.trevin.android.crypto.DataLengthException;
+import com.xmission.trevin.android.crypto.InvalidCipherTextException;
+
+import org.apache.commons.lang3.RandomStringUtils;
+import org.junit.Test;
+
+import java.util.Random;
+
+/**
+ * Tests for using the platform&rsquo;s AES cipher in place of the
+ * bundled engine
+ *
+ * @author Trevin Beattie
+ */
+public class PlatformCipherTests {
+
+    /** Random number generator for some tests */
+    final Random RAND = new Random();
+    /** Random string generator for use in the tests */
+    final RandomStringUtils STRING_GEN = RandomStringUtils.insecure();
+
+    /**
+     * Every Java platform supports AES in ECB mode with PKCS #5
+     * padding, so the self-test should find a usable transformation.
+     */
+    @Test
+    public void testSelfTest() {
+        String transformation = PlatformCipher.selfTest();
+        assertNotNull("No platform transformation passed", transformation);
+        assertTrue("Platform cipher is not verified",
+                StringEncryption.verifyPlatformCipher());
+    }
+
+    /** Transformations which don&rsquo;t match ours must be rejected */
+    @Test
+    public void testRejectIncompatibleTransformations() {
+        assertFalse("Unpadded transformation was accepted",
+                PlatformCipher.verify("AES/ECB/NoPadding"));
+        assertFalse("Chained transformation was accepted",
+                PlatformCipher.verify("AES/CBC/PKCS5Padding"));
+        assertFalse("Nonexistent transformation was accepted",
+                PlatformCipher.verify("Bogus/ECB/PKCS5Padding"));
+    }
+
+    /**
+     * Encrypt random messages with random keys using both kinds of
+     * cipher context, and verify that they produce the same cipher
+     * text and can decrypt each other&rsquo;s output.
+     */
+    @Test
+    public void testContextsMatch() throws InvalidCipherTextException {
+        String transformation = PlatformCipher.selfTest();
+        assertNotNull("No platform transformation passed", transformation);
+        for (int i = 0; i < 100; i++) {
+            byte[] key = new byte[(i % 3) * 8 + 16];
+            RAND.nextBytes(key);
+            CipherContext bundled = new CipherContext.Bundled(key);
+            CipherContext platform =
+                    new CipherContext.Platform(key, transformation);
+            byte[] plain = new byte[RAND.nextInt(300)];
+            RAND.nextBytes(plain);
+            byte[] bundledCode = bundled.encrypt(plain);
+            byte[] platformCode = platform.encrypt(plain);
+            assertArrayEquals("Cipher text of message " + i,
+                    bundledCode, platformCode);
+            assertArrayEquals("Platform decryption of message " + i,
+                    plain, platform.decrypt(bundledCode));
+            assertArrayEquals("Bundled decryption of message " + i,
+                    plain, bundled.decrypt(platformCode));
+        }
+    }
+
+    /**
+     * A decryption failure in the platform cipher must be reported
+     * the same way as in the bundled engine, and must not prevent
+     * the thread from decrypting good data afterward.
+     */
+    @Test
+    public void testPlatformDecryptionFailure()
+        throws InvalidCipherTextException {
+        String transformation = PlatformCipher.selfTest();
+        assertNotNull("No platform transformation passed", transformation);
+        byte[] key = new byte[32];
+        RAND.nextBytes(key);
+        CipherContext platform =
+                new CipherContext.Platform(key, transformation);
+        byte[] plain = new byte[40];
+        RAND.nextBytes(plain);
+        byte[] code = platform.encrypt(plain);
+        byte[] truncated = new byte[code.length - 1];
+        System.arraycopy(code, 0, truncated, 0, truncated.length);
+        try {
+            platform.decrypt(truncated);
+            fail("Decrypting a partial block should fail");
+        } catch (InvalidCipherTextException | DataLengthException e) {
+            // Success
+        }
+        assertArrayEquals("Decryption after a failure",
+                plain, platform.decrypt(code));
+    }
+
+    /**
+     * Wiping a platform context must reach the ciphers created on
+     * other threads and zero our copy of the key, and the context
+     * must refuse to be used afterward.
+     */
+    @Test
+    public void testPlatformWipe() throws Exception {
+        String transformation = PlatformCipher.selfTest();
+        assertNotNull("No platform transformation passed", transformation);
+        byte[] key = new byte[32];
+        RAND.nextBytes(key);
+        final CipherContext.Platform platform =
+                new CipherContext.Platform(key, transformation);
+        final byte[] plain = new byte[40];
+        RAND.nextBytes(plain);
+        final byte[] code = platform.encrypt(plain);
+        final Exception[] threadError = new Exception[1];
+        Thread other = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    platform.decrypt(code);
+                } catch (Exception e) {
+                    threadError[0] = e;
+                }
+            }
+        });
+        other.start();
+        other.join();
+        assertNull("Decryption on another thread", threadError[0]);
+        assertEquals("Ciphers created", 2, platform.getCipherCount());
+
+        platform.wipe();
+        assertTrue("Context was not marked as wiped", platform.isWiped());
+        assertEquals("Ciphers remaining after the wipe",
+                0, platform.getCipherCount());
+        try {
+            platform.decrypt(code);
+            fail("Decryption succeeded after the key was wiped");
+        } catch (IllegalStateException e) {
+            // Success
+        }
+
+        CipherContext.WipeableKey wipeable =
+                new CipherContext.WipeableKey(key);
+        wipeable.destroy();
+        assertTrue("Key was not destroyed", wipeable.isDestroyed());
+        try {
+            wipeable.getEncoded();
+            fail("A destroyed key returned its bytes");
+        } catch (IllegalStateException e) {
+            // Success
+        }
+    }
+
+    /**
+     * {@link StringEncryption} must produce identical cipher text
+     * whether or not it is allowed to use the platform cipher.
+     */
+    @Test
+    public void testStringEncryptionCompatibility() {
+        String password = STRING_GEN.nextAlphabetic(5, 10);
+        final String originalText = STRING_GEN.nextAlphanumeric(1, 200);
+
+        StringEncryption se = new StringEncryption();
+        try {
+            se.setPassword(password.toCharArray());
+            se.addSalt();
+            StringEncryption.setUsePlatformCipher(false);
+            byte[] bundledCode = se.encrypt(originalText);
+            // Changing the setting only affects newly generated keys
+            se.setPassword(password.toCharArray());
+            StringEncryption.setUsePlatformCipher(true);
+            byte[] platformCode = se.encrypt(originalText);
+            assertArrayEquals("Cipher text", bundledCode, platformCode);
+            assertEquals("Decrypted text", originalText,
+                    se.decrypt(bundledCode));
+        } finally {
+            StringEncryption.setUsePlatformCipher(true);
+            se.forgetPassword();
+        }
+    }
+
+}
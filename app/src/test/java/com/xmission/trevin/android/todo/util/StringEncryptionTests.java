@@ -18,19 +18,32 @@ package com.xmission.trevin.android.todo.util;
 
 import static org.junit.Assert.*;
 
+import com.xmission.trevin.android.crypto.AESCipher;
+import com.xmission.trevin.android.todo.provider.MockToDoRepository;
+
 import org.apache.commons.lang3.RandomStringUtils;
 import org.junit.Test;
 
 import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
 import java.util.Random;
+import java.util.concurrent.*;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.SecretKeySpec;
 
 /**
  * Tests for encrypting and decrypting private strings
  *
  * @author Trevin Beattie
  */
-// To Do: Add tests for hasPassword, checkPassword, storePassword, and
-// removePassword.  All of these currently require mocking ContentResolver.
+// To Do: Add tests for hasPassword and removePassword.
 public class StringEncryptionTests {
 
     /** Random number generator for some tests */
@@ -38,6 +51,33 @@ public class StringEncryptionTests {
     /** Random string generator for use in the tests */
     final RandomStringUtils STRING_GEN = RandomStringUtils.insecure();
 
+    /*
+     * Fixed password and salt to check against a manually generated key.
+     * The password includes extended UTF-8 characters in order to verify
+     * that we're using the algorithm which looks at all available bits
+     * in Unicode characters, in compliance with PCKS #5.
+     */
+    private static final String TEST_PASSWORD = "FreeBSD 😈 ⅩⅢ½";
+    private static final byte[] TEST_SALT = {
+            (byte) 0xc8, (byte) 0xd8, (byte) 0x24, (byte) 0x7b,
+            (byte) 0xf2, (byte) 0x77, (byte) 0x61, (byte) 0xa1,
+            (byte) 0x34, (byte) 0xcf, (byte) 0x35, (byte) 0xd7,
+            (byte) 0xd0, (byte) 0xfa, (byte) 0x7b, (byte) 0x37,
+            (byte) 0x60, (byte) 0xfe, (byte) 0x61, (byte) 0xf4,
+            (byte) 0x6a, (byte) 0x03, (byte) 0xe1, (byte) 0xba,
+            (byte) 0x5c, (byte) 0x4c, (byte) 0x3e, (byte) 0x46,
+            (byte) 0x94, (byte) 0x1d, (byte) 0x12, (byte) 0xea };
+    private static final byte[] TEST_KEY = {
+            (byte) 0x65, (byte) 0xbe, (byte) 0x4b, (byte) 0x34,
+            (byte) 0xad, (byte) 0x17, (byte) 0xd3, (byte) 0x00,
+            (byte) 0xe9, (byte) 0x85, (byte) 0xc8, (byte) 0xf4,
+            (byte) 0x8a, (byte) 0xb7, (byte) 0xad, (byte) 0xea,
+            (byte) 0x5a, (byte) 0xb6, (byte) 0xbb, (byte) 0xae,
+            (byte) 0x63, (byte) 0x5d, (byte) 0xc2, (byte) 0xe5,
+            (byte) 0xc4, (byte) 0xb0, (byte) 0x6d, (byte) 0xc9,
+            (byte) 0x31, (byte) 0x40, (byte) 0x26, (byte) 0x41
+    };
+
     /**
      * Verify the Password-Based Key Derivation Function.
      * For a given password, this ought to result in the same key
@@ -46,36 +86,11 @@ public class StringEncryptionTests {
     @Test
     public void testGenerateKey() {
 
-        // Fixed password and salt to check against a manually generated key.
-        // The password includes extended UTF-8 characters in order to verify
-        // that we're using the algorithm which looks at all available bits
-        // in Unicode characters, in compliance with PCKS #5.
-        final String testPassword = "FreeBSD 😈 ⅩⅢ½";
-        final byte[] testSalt = {
-                (byte) 0xc8, (byte) 0xd8, (byte) 0x24, (byte) 0x7b,
-                (byte) 0xf2, (byte) 0x77, (byte) 0x61, (byte) 0xa1,
-                (byte) 0x34, (byte) 0xcf, (byte) 0x35, (byte) 0xd7,
-                (byte) 0xd0, (byte) 0xfa, (byte) 0x7b, (byte) 0x37,
-                (byte) 0x60, (byte) 0xfe, (byte) 0x61, (byte) 0xf4,
-                (byte) 0x6a, (byte) 0x03, (byte) 0xe1, (byte) 0xba,
-                (byte) 0x5c, (byte) 0x4c, (byte) 0x3e, (byte) 0x46,
-                (byte) 0x94, (byte) 0x1d, (byte) 0x12, (byte) 0xea };
-        final byte[] expectedKey = {
-                (byte) 0x65, (byte) 0xbe, (byte) 0x4b, (byte) 0x34,
-                (byte) 0xad, (byte) 0x17, (byte) 0xd3, (byte) 0x00,
-                (byte) 0xe9, (byte) 0x85, (byte) 0xc8, (byte) 0xf4,
-                (byte) 0x8a, (byte) 0xb7, (byte) 0xad, (byte) 0xea,
-                (byte) 0x5a, (byte) 0xb6, (byte) 0xbb, (byte) 0xae,
-                (byte) 0x63, (byte) 0x5d, (byte) 0xc2, (byte) 0xe5,
-                (byte) 0xc4, (byte) 0xb0, (byte) 0x6d, (byte) 0xc9,
-                (byte) 0x31, (byte) 0x40, (byte) 0x26, (byte) 0x41
-        };
-
         StringEncryption se = StringEncryption.holdGlobalEncryption();
         try {
-            se.setPassword(testPassword.toCharArray());
-            se.setSalt(testSalt);
-            assertArrayEquals(expectedKey, se.getKey());
+            se.setPassword(TEST_PASSWORD.toCharArray());
+            se.setSalt(TEST_SALT);
+            assertArrayEquals(TEST_KEY, se.getKey());
         } finally {
             StringEncryption.releaseGlobalEncryption();
         }
@@ -141,4 +156,479 @@ public class StringEncryptionTests {
 
     }
 
+    /**
+     * Test that decrypted item text is cached by item ID and modification
+     * time, and that the cache is wiped when the password is forgotten.
+     */
+    @Test
+    public void testDecryptedTextCache() {
+
+        String password = STRING_GEN.nextAlphabetic(5, 10);
+        final String description = STRING_GEN.nextAlphanumeric(10, 40);
+        final String note = STRING_GEN.nextAlphanumeric(20, 200);
+        final long itemId = 1 + RAND.nextInt(1000);
+        final Instant modTime = Instant.now();
+
+        StringEncryption se = StringEncryption.holdGlobalEncryption();
+        try {
+            se.setPassword(password.toCharArray());
+            se.addSalt();
+            byte[] encryptedDescription = se.encrypt(description);
+            byte[] encryptedNote = se.encrypt(note);
+            assertEquals("Cached fields before decryption",
+                    0, se.getCachedTextCount());
+
+            assertEquals("Decrypted description", description,
+                    se.decryptDescription(itemId, modTime,
+                            encryptedDescription));
+            assertEquals("Decrypted note", note,
+                    se.decryptNote(itemId, modTime, encryptedNote));
+            assertEquals("Cached fields after decryption",
+                    2, se.getCachedTextCount());
+
+            // The cached text should be returned for the same mod time
+            // even if the cipher text is different (which would never
+            // happen in practice, but proves we didn't decrypt again).
+            assertEquals("Cached description", description,
+                    se.decryptDescription(itemId, modTime, encryptedNote));
+
+            // A different mod time must not return the cached text
+            assertEquals("Description after modification", note,
+                    se.decryptDescription(itemId, modTime.plusMillis(1),
+                            encryptedNote));
+
+            se.forgetPassword();
+            assertEquals("Cached fields after forgetting the password",
+                    0, se.getCachedTextCount());
+        } finally {
+            StringEncryption.releaseGlobalEncryption();
+        }
+
+    }
+
+    /**
+     * Test that text decrypted before the cache was cleared is not
+     * put back into the cache afterward.
+     */
+    @Test
+    public void testDecryptedTextCacheClearedDuringDecrypt() {
+        DecryptedTextCache cache = new DecryptedTextCache(10);
+        long generation = cache.getGeneration();
+        cache.put(generation, 1, 1000, DecryptedTextCache.DESCRIPTION,
+                "Current text");
+        assertEquals("Cached text", "Current text",
+                cache.get(1, 1000, DecryptedTextCache.DESCRIPTION));
+
+        // Another thread starts decrypting, then the cache is cleared
+        generation = cache.getGeneration();
+        cache.clear();
+        cache.put(generation, 2, 1000, DecryptedTextCache.NOTE,
+                "Stale text");
+        assertEquals("Cached fields after a stale put", 0, cache.size());
+        assertNull("Stale text was cached",
+                cache.get(2, 1000, DecryptedTextCache.NOTE));
+    }
+
+    /**
+     * Test that text encrypted by the per-thread ciphers can be
+     * decrypted by a stand-alone {@link AESCipher} with the same key,
+     * and vice-versa, so existing data remains readable.
+     */
+    @Test
+    public void testCipherCompatibility() throws GeneralSecurityException {
+
+        String password = STRING_GEN.nextAlphabetic(5, 10);
+        final String originalText = STRING_GEN.nextAlphanumeric(1, 100);
+
+        StringEncryption se = StringEncryption.holdGlobalEncryption();
+        try {
+            se.setPassword(password.toCharArray());
+            se.addSalt();
+            SecretKeySpec spec = new SecretKeySpec(se.getKey(), "AES");
+
+            AESCipher cipher = new AESCipher();
+            cipher.init(Cipher.ENCRYPT_MODE, spec);
+            byte[] expected = cipher.doFinal(
+                    originalText.getBytes(StandardCharsets.UTF_8));
+            byte[] encrypted = se.encrypt(originalText);
+            assertArrayEquals("Encrypted bytes", expected, encrypted);
+
+            cipher = new AESCipher();
+            cipher.init(Cipher.DECRYPT_MODE, spec);
+            assertEquals("Decrypted text", originalText, new String(
+                    cipher.doFinal(encrypted), StandardCharsets.UTF_8));
+        } finally {
+            StringEncryption.releaseGlobalEncryption();
+        }
+
+    }
+
+    /**
+     * Test encrypting and decrypting with the same encryption object
+     * from several threads at once.  Every thread must get back
+     * exactly the text it encrypted.
+     */
+    @Test
+    public void testConcurrentEncryption() throws Exception {
+
+        String password = STRING_GEN.nextAlphabetic(5, 10);
+        final int threadCount = 8;
+        final int iterations = 500;
+
+        final StringEncryption se = StringEncryption.holdGlobalEncryption();
+        try {
+            se.setPassword(password.toCharArray());
+            se.addSalt();
+            final String[][] texts = new String[threadCount][iterations];
+            for (int t = 0; t < threadCount; t++)
+                for (int i = 0; i < iterations; i++)
+                    texts[t][i] = STRING_GEN.nextAlphanumeric(0, 300);
+
+            ExecutorService executor =
+                    Executors.newFixedThreadPool(threadCount);
+            try {
+                List<Future<Integer>> results = new ArrayList<>();
+                final CountDownLatch startSignal = new CountDownLatch(1);
+                for (int t = 0; t < threadCount; t++) {
+                    final String[] myTexts = texts[t];
+                    results.add(executor.submit(new Callable<Integer>() {
+                        @Override
+                        public Integer call() throws Exception {
+                            startSignal.await();
+                            int mismatches = 0;
+                            for (String text : myTexts) {
+                                byte[] code = se.encrypt(text);
+                                if (!text.equals(se.decrypt(code)))
+                                    mismatches++;
+                            }
+                            return mismatches;
+                        }
+                    }));
+                }
+                startSignal.countDown();
+                for (int t = 0; t < threadCount; t++)
+                    assertEquals("Mismatched text in thread " + t,
+                            0, (int) results.get(t).get(60, TimeUnit.SECONDS));
+            } finally {
+                executor.shutdownNow();
+            }
+        } finally {
+            StringEncryption.releaseGlobalEncryption();
+        }
+
+    }
+
+    /**
+     * Test the batch encryption and decryption methods.  Since the
+     * cipher is deterministic for a given key, each string in the batch
+     * must encrypt to exactly the same bytes as it does on its own.
+     */
+    @Test
+    public void testBatchEncryption() {
+
+        String password = STRING_GEN.nextAlphabetic(5, 10);
+        final String[] texts = new String[20];
+        for (int i = 0; i < texts.length; i++)
+            texts[i] = (i % 5 == 4) ? null
+                    : STRING_GEN.nextAlphanumeric(0, 50 * i);
+        texts[1] = "Garçon, ένα μπουκάλι вина よろしければ 𓇭🍷";
+        // An unpaired surrogate must be replaced the same way either way
+        texts[2] = "Broken \ud83c surrogate";
+
+        StringEncryption se = StringEncryption.holdGlobalEncryption();
+        try {
+            se.setPassword(password.toCharArray());
+            se.addSalt();
+            byte[][] encrypted = new byte[texts.length][];
+            se.encryptAll(texts, encrypted);
+            for (int i = 0; i < texts.length; i++) {
+                if (texts[i] == null)
+                    assertNull("Encrypted null at " + i, encrypted[i]);
+                else
+                    assertArrayEquals("Encrypted text " + i,
+                            se.encrypt(texts[i]), encrypted[i]);
+            }
+
+            String[] decrypted = new String[texts.length];
+            se.decryptAll(encrypted, decrypted);
+            for (int i = 0; i < texts.length; i++) {
+                if (i == 2)
+                    assertEquals("Decrypted text 2",
+                            se.decrypt(se.encrypt(texts[2])), decrypted[2]);
+                else
+                    assertEquals("Decrypted text " + i,
+                            texts[i], decrypted[i]);
+            }
+
+            String[] pair = se.decryptAll(se.encryptAll(texts[1], null));
+            assertEquals("Decrypted description", texts[1], pair[0]);
+            assertNull("Decrypted note", pair[1]);
+        } finally {
+            StringEncryption.releaseGlobalEncryption();
+        }
+
+    }
+
+    /** Test encrypting and decrypting into caller-provided buffers */
+    @Test
+    public void testBufferEncryption() {
+
+        String password = STRING_GEN.nextAlphabetic(5, 10);
+        byte[] original = new byte[RAND.nextInt(100)];
+        RAND.nextBytes(original);
+
+        StringEncryption se = StringEncryption.holdGlobalEncryption();
+        try {
+            se.setPassword(password.toCharArray());
+            se.addSalt();
+            int codeLength = StringEncryption.getEncryptedLength(original.length);
+            byte[] code = new byte[codeLength + 7];
+            assertEquals("Encrypted length", codeLength,
+                    se.encrypt(original, 0, original.length, code, 7));
+            assertArrayEquals("Encrypted bytes", se.encrypt(original),
+                    Arrays.copyOfRange(code, 7, 7 + codeLength));
+
+            byte[] plain = new byte[codeLength + 3];
+            int len = se.decryptBytes(code, 7, codeLength, plain, 3);
+            assertEquals("Decrypted length", original.length, len);
+            assertArrayEquals("Decrypted bytes", original,
+                    Arrays.copyOfRange(plain, 3, 3 + len));
+
+            try {
+                se.decryptBytes(code, 7, codeLength - 1, plain, 0);
+                fail("Decrypting a partial block should fail");
+            } catch (EncryptionException e) {
+                // Success
+            }
+        } finally {
+            StringEncryption.releaseGlobalEncryption();
+        }
+
+    }
+
+    /**
+     * Test checking a password against a hash in the original
+     * {@link StringEncryption#BUNDLED_ENCRYPTION} format,
+     * which has a 16-bit key iteration count.
+     */
+    @Test
+    public void testCheckLegacyPasswordHash() throws Exception {
+        byte[] header = { (byte) StringEncryption.BUNDLED_ENCRYPTION,
+                (byte) (TEST_SALT.length - 2),
+                0, (byte) (TEST_KEY.length - 2),
+                (byte) (999 >> 8), (byte) 999 };
+        MessageDigest md = MessageDigest.getInstance("SHA-256");
+        md.update(header);
+        md.update(TEST_SALT);
+        md.update(TEST_KEY);
+        byte[] hash = md.digest();
+        byte[] storedHash = new byte[header.length
+                + TEST_SALT.length + hash.length];
+        System.arraycopy(header, 0, storedHash, 0, header.length);
+        System.arraycopy(TEST_SALT, 0, storedHash,
+                header.length, TEST_SALT.length);
+        System.arraycopy(hash, 0, storedHash,
+                header.length + TEST_SALT.length, hash.length);
+
+        StringEncryption se = new StringEncryption();
+        try {
+            se.setPassword(TEST_PASSWORD.toCharArray());
+            assertTrue("Correct password did not match",
+                    se.checkPassword(storedHash));
+            assertEquals("Key iteration count", 1000,
+                    se.getKeyIterationCount());
+            assertArrayEquals("Key", TEST_KEY, se.getKey());
+            se.setPassword(STRING_GEN.nextAlphabetic(5, 10).toCharArray());
+            assertFalse("Wrong password matched",
+                    se.checkPassword(storedHash));
+        } finally {
+            se.forgetPassword();
+        }
+    }
+
+    /**
+     * Test that a new password gets a calibrated key iteration count,
+     * and that its stored hash can be checked by another object
+     * which then derives the same key.
+     */
+    @Test
+    public void testCalibratedPasswordHash() throws Exception {
+        MockToDoRepository mockRepo = MockToDoRepository.getInstance();
+        mockRepo.clear();
+        String password = STRING_GEN.nextAlphabetic(5, 10);
+        StringEncryption se = new StringEncryption();
+        StringEncryption se2 = new StringEncryption();
+        try {
+            se.setPassword(password.toCharArray());
+            se.addSalt();
+            assertEquals("Key iteration count",
+                    StringEncryption.getCalibratedIterationCount(),
+                    se.getKeyIterationCount());
+            se.storePassword(mockRepo);
+            byte[] storedHash = mockRepo.getMetadataByName(
+                    StringEncryption.METADATA_PASSWORD_HASH).getValue();
+            assertEquals("Encryption type in the password hash",
+                    StringEncryption.CALIBRATED_ENCRYPTION, storedHash[0]);
+
+            se2.setPassword(password.toCharArray());
+            assertTrue("Correct password did not match",
+                    se2.checkPassword(mockRepo));
+            assertEquals("Key iteration count from the hash",
+                    se.getKeyIterationCount(), se2.getKeyIterationCount());
+            assertArrayEquals("Key", se.getKey(), se2.getKey());
+            se2.setPassword((password + "x").toCharArray());
+            assertFalse("Wrong password matched",
+                    se2.checkPassword(mockRepo));
+        } finally {
+            se.forgetPassword();
+            se2.forgetPassword();
+            mockRepo.clear();
+        }
+    }
+
+    /**
+     * Test that a password hash whose key iteration count is outside
+     * the range we would calibrate is rejected without deriving a key.
+     */
+    @Test
+    public void testRejectIterationCountOutOfRange() throws Exception {
+        int[] badCounts = { 1, 999, 10000001, Integer.MAX_VALUE, -1 };
+        StringEncryption se = new StringEncryption();
+        try {
+            se.setPassword(TEST_PASSWORD.toCharArray());
+            for (int count : badCounts) {
+                // The count is stored less one, as an unsigned int
+                byte[] storedHash = new byte[8 + TEST_SALT.length + 32];
+                storedHash[0] = (byte) StringEncryption.CALIBRATED_ENCRYPTION;
+                storedHash[1] = (byte) (TEST_SALT.length - 2);
+                storedHash[3] = (byte) (TEST_KEY.length - 2);
+                int stored = count - 1;
+                for (int i = 0; i < 4; i++)
+                    storedHash[4 + i] = (byte) (stored >> (24 - 8 * i));
+                System.arraycopy(TEST_SALT, 0, storedHash, 8,
+                        TEST_SALT.length);
+                try {
+                    se.checkPassword(storedHash);
+                    fail("Accepted a key iteration count of "
+                            + Integer.toUnsignedString(count));
+                } catch (InvalidPasswordHashException e) {
+                    // Success
+                }
+            }
+        } finally {
+            se.forgetPassword();
+        }
+    }
+
+    /**
+     * Test that the calibrated iteration count scales with the
+     * target derivation time and stays within its limits.
+     */
+    @Test
+    public void testCalibration() {
+        int shortCount = StringEncryption.calibrateIterationCount(20);
+        int longCount = StringEncryption.calibrateIterationCount(200);
+        assertTrue("Iteration count " + shortCount + " is below the minimum",
+                shortCount >= 1000);
+        assertTrue("Iteration count " + longCount + " is above the maximum",
+                longCount <= 10000000);
+        assertTrue(String.format(Locale.US, "Iteration count for 200 ms (%d)"
+                + " is not more than for 20 ms (%d)", longCount, shortCount),
+                (longCount > shortCount) || (shortCount == 1000)
+                        || (longCount == 10000000));
+    }
+
+    /**
+     * Test borrowing the global key: workers starting while the same
+     * key is lent out share one handle, the handle keeps working if
+     * the global key is forgotten, and it is wiped once every
+     * borrower has released it.
+     */
+    @Test
+    public void testBorrowGlobalKey() throws Exception {
+        MockToDoRepository mockRepo = MockToDoRepository.getInstance();
+        mockRepo.clear();
+        final String originalText = STRING_GEN.nextAlphanumeric(10, 40);
+        StringEncryption se = StringEncryption.holdGlobalEncryption();
+        StringEncryption.KeyHandle handle1 = null;
+        StringEncryption.KeyHandle handle2 = null;
+        try {
+            se.forgetPassword();
+            assertNull("Borrowed a key before one was set",
+                    StringEncryption.borrowGlobalKey());
+            se.setPassword(STRING_GEN.nextAlphabetic(5, 10).toCharArray());
+            se.addSalt();
+            se.storePassword(mockRepo);
+            byte[] encrypted = se.encrypt(originalText);
+
+            handle1 = StringEncryption.borrowGlobalKey();
+            assertNotNull("Could not borrow the global key", handle1);
+            handle2 = StringEncryption.borrowGlobalKey();
+            assertSame("Second borrower got a different handle",
+                    handle1, handle2);
+            StringEncryption borrowed = handle1.getEncryption();
+            assertNotSame("Handle returned the global object", se, borrowed);
+            assertArrayEquals("Borrowed key", se.getKey(), borrowed.getKey());
+            assertTrue("Borrowed key does not match the password hash",
+                    borrowed.checkPassword(mockRepo));
+            assertEquals("Decrypted with the borrowed key",
+                    originalText, borrowed.decrypt(encrypted));
+
+            // Hiding private records must not affect the worker
+            se.forgetPassword();
+            assertNull("Borrowed a key after it was forgotten",
+                    StringEncryption.borrowGlobalKey());
+            assertEquals("Decrypted after the global key was forgotten",
+                    originalText, borrowed.decrypt(encrypted));
+
+            handle1.release();
+            handle1 = null;
+            assertTrue("Key was wiped while still borrowed",
+                    borrowed.hasKey());
+            handle2.release();
+            assertFalse("Key was not wiped after release",
+                    borrowed.hasKey());
+            try {
+                handle2.getEncryption();
+                fail("Got the encryption from a released handle");
+            } catch (IllegalStateException e) {
+                // Success
+            }
+            handle2 = null;
+        } finally {
+            if (handle1 != null)
+                handle1.release();
+            if (handle2 != null)
+                handle2.release();
+            se.forgetPassword();
+            StringEncryption.releaseGlobalEncryption();
+            mockRepo.clear();
+        }
+    }
+
+    /** Test taking over the key of another encryption object */
+    @Test
+    public void testAdoptKey() {
+        final String originalText = STRING_GEN.nextAlphanumeric(10, 40);
+        StringEncryption source = new StringEncryption();
+        StringEncryption target = new StringEncryption();
+        try {
+            source.setPassword(TEST_PASSWORD.toCharArray());
+            source.setSalt(TEST_SALT);
+            byte[] encrypted = source.encrypt(originalText);
+            target.setPassword(STRING_GEN.nextAlphabetic(5, 10).toCharArray());
+            target.addSalt();
+            target.adoptKey(source);
+            assertArrayEquals("Adopted key", TEST_KEY, target.getKey());
+            assertArrayEquals("Adopted password",
+                    TEST_PASSWORD.toCharArray(), target.getPassword());
+            source.forgetPassword();
+            assertEquals("Decrypted with the adopted key",
+                    originalText, target.decrypt(encrypted));
+        } finally {
+            source.forgetPassword();
+            target.forgetPassword();
+        }
+    }
+
 }